@@ -0,0 +1,202 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Appointment Class
+// ! This class represents an appointment made by a patient with a doctor.
+// Fields are kept small because the clinic holds every appointment in memory:
+// the typed texts are pooled, the parsed slot is two numbers and the status is
+// its ordinal.
+class Appointment {
+    private static final AtomicInteger counter = new AtomicInteger(1); // * Shared by all booking threads
+    private static final Status[] STATUSES = Status.values(); // * By ordinal
+    private static final int NO_DAY = Integer.MIN_VALUE;
+    private int appointmentID;
+    private String date; // * As typed, pooled, so every "Mon" is the same String
+    private String time;
+    private int epochDay; // * Parsed date, used by the day index
+    private short minuteOfDay; // * Parsed time, used to order a day's bookings
+    private volatile byte status; // * Ordinal, read by report and event threads
+    private Patient patient;
+    private Doctor doctor;
+    private Treatment treatment;
+    private int registrationFeeCents;
+
+    // * Constructor to initialize an Appointment object with date, time,
+    // patient,and doctor
+    public Appointment(String date, String time, Patient patient, Doctor doctor, Treatment treatment) {
+        this.appointmentID = counter.getAndIncrement(); // * Assign a unique ID and increment the counter
+        setDateTime(date, time);
+        this.status = (byte) Status.BOOKED.ordinal(); // ! Set the initial status to BOOKED
+        this.patient = patient;
+        this.doctor = doctor;
+        this.treatment = treatment;
+        this.registrationFeeCents = 50_000; // ! Default registration fee, LKR 500.00
+    }
+
+    // * Constructor to rebuild a saved appointment, keeping its original ID
+    Appointment(int appointmentID, String date, String time, Status status, Patient patient, Doctor doctor,
+            Treatment treatment) {
+        this(appointmentID, date, AppointmentDates.parseDate(date), time, status, patient, doctor, treatment);
+    }
+
+    // ! Rebuilds an appointment on the day its date resolved to when it was
+    // made, a saved "Mon" stays on that Monday whenever it is loaded
+    Appointment(int appointmentID, String date, LocalDate day, String time, Status status, Patient patient,
+            Doctor doctor, Treatment treatment) {
+        this.appointmentID = appointmentID;
+        setDateTime(date, day, time);
+        this.status = (byte) status.ordinal();
+        this.patient = patient;
+        this.doctor = doctor;
+        this.treatment = treatment;
+        this.registrationFeeCents = 50_000;
+        resumeIDsFrom(appointmentID + 1); // ! Never hand out a restored ID again
+    }
+
+    // * ID the next new appointment will get
+    static int getNextID() {
+        return counter.get();
+    }
+
+    static void resumeIDsFrom(int nextID) {
+        counter.accumulateAndGet(nextID, Math::max);
+    }
+
+    // * Getters for appointment details
+    public int getAppointmentID() {
+        return appointmentID;
+    }
+
+    // * Getter for registration fee
+    public double getRegistrationFee() {
+        return Money.toMajor(registrationFeeCents);
+    }
+
+    public long getRegistrationFeeCents() {
+        return registrationFeeCents;
+    }
+
+    // * The fee saved with an archived appointment, it is set once when the row is read back
+    void restoreRegistrationFeeCents(long cents) {
+        this.registrationFeeCents = Math.toIntExact(cents);
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getTime() {
+        return time;
+    }
+
+    // * Shared instances, see AppointmentDates.day()
+    public LocalDate getLocalDate() {
+        return epochDay == NO_DAY ? null : AppointmentDates.day(epochDay);
+    }
+
+    public LocalTime getLocalTime() {
+        return minuteOfDay < 0 ? null : AppointmentDates.minute(minuteOfDay);
+    }
+
+    public Status getStatus() {
+        return STATUSES[status];
+    }
+
+    public Patient getPatient() {
+        return patient;
+    }
+
+    public Doctor getDoctor() {
+        return doctor;
+    }
+
+    // ! Method to move the appointment to a new date and time
+    public void reschedule(String date, String time) {
+        reschedule(date, AppointmentDates.parseDate(date), time);
+    }
+
+    // * Moves it to a day resolved earlier, the typed date is only shown
+    public void reschedule(String date, LocalDate day, String time) {
+        transitionTo(Status.RESCHEDULED);
+        setDateTime(date, day, time);
+        DetailCache.APPOINTMENTS.invalidate(this);
+    }
+
+    private void setDateTime(String date, String time) {
+        setDateTime(date, AppointmentDates.parseDate(date), time);
+    }
+
+    // * Keeps the typed values for display and the parsed values for indexing
+    private void setDateTime(String date, LocalDate localDate, String time) {
+        LocalTime localTime = AppointmentDates.parseTime(time);
+        this.date = TextPool.intern(date);
+        this.time = TextPool.intern(time);
+        this.epochDay = localDate == null ? NO_DAY : Math.toIntExact(localDate.toEpochDay());
+        this.minuteOfDay = (short) (localTime == null ? -1 : localTime.getHour() * 60 + localTime.getMinute());
+    }
+
+    // ! Same method name operates on different types of objects. Cached until
+    // the appointment changes, see DetailCache.
+    public String getDetails() {
+        return DetailCache.APPOINTMENTS.get(this, Appointment::renderDetails);
+    }
+
+    String renderDetails() {
+        return "Appointment ID: " + appointmentID + ", Date: " + date + ", Time: " + time + ", Status: " + getStatus() +
+                ", Patient: " + patient.name + ", Doctor: " + doctor.name + ", Treatment: " + treatment.getDetails();
+    }
+
+    // * Checks the visit can still take place, nothing changes so the cached details stay
+    public void confirm() {
+        Status current = getStatus();
+        if (!current.isActive()) {
+            throw new IllegalStateException(current.getLabel() + " appointments cannot be confirmed.");
+        }
+    }
+
+    public void cancel() {
+        transitionTo(Status.CANCELED);
+    }
+
+    // ! The only way the status changes, an invalid transition is refused
+    public void transitionTo(Status next) {
+        checkTransition(next);
+        status = (byte) next.ordinal();
+        DetailCache.APPOINTMENTS.invalidate(this);
+    }
+
+    // ! Completes the visit with the treatment that was given instead of the
+    // booked one, it is billed and counted with that treatment from now on
+    public void completeWith(Treatment given) {
+        checkTransition(Status.COMPLETED);
+        treatment = given; // * Before the volatile status write, which publishes it
+        transitionTo(Status.COMPLETED);
+    }
+
+    private void checkTransition(Status next) {
+        Status current = getStatus();
+        if (!current.canBecome(next)) {
+            throw new IllegalStateException(
+                    "Appointment " + appointmentID + " cannot go from " + current + " to " + next + ".");
+        }
+    }
+
+    public Treatment getTreatment() {
+        return treatment;
+    }
+
+    // ! Lists the catalog and reads a treatment ID, null when no treatment has it
+    public static Treatment selectTreatment(Scanner scanner, TreatmentCatalog catalog) {
+        TreatmentCatalog.Snapshot treatments = catalog.snapshot(); // * One version for the list and the lookup
+        System.out.println("Available Treatments:");
+        for (Treatment treatment : treatments.list()) {
+            System.out.println(treatment.getTreatmentID() + ". " + treatment.getDetails());
+        }
+        System.out.print("Select a treatment by ID: ");
+        int choice = scanner.nextInt();
+        scanner.nextLine(); // Consume newline
+        return treatments.find(choice);
+    }
+}
@@ -0,0 +1,188 @@
+import java.text.ParsePosition;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.TextStyle;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Locale;
+
+// Appointment Dates Helper
+// ! Turns the free form date and time the operator types ("Mon", "10:00am")
+// into real LocalDate and LocalTime values so appointments can be indexed by day.
+final class AppointmentDates {
+    // * Accepted time layouts: 10:00am, 10am, 10:00 AM and 14:30
+    private static final DateTimeFormatter[] TIME_FORMATS = {
+            caseInsensitive("h:mma"), caseInsensitive("ha"), caseInsensitive("h:mm a"),
+            caseInsensitive("h a"), caseInsensitive("H:mm")
+    };
+
+    private static final DateTimeFormatter DISPLAY_TIME = DateTimeFormatter.ofPattern("hh:mma", Locale.ENGLISH);
+
+    // ! Shared instances for appointments that keep only an epoch day and a
+    // minute of the day: every booking of a day hands out the same LocalDate
+    private static final int CACHED_DAYS = 1 << 16; // * 1970-01-01 to 2149, filled on first use
+    private static final LocalDate[] DAYS = new LocalDate[CACHED_DAYS];
+    private static final LocalTime[] MINUTES = new LocalTime[24 * 60];
+
+    static {
+        for (int minute = 0; minute < MINUTES.length; minute++) {
+            MINUTES[minute] = LocalTime.of(minute / 60, minute % 60);
+        }
+    }
+
+    private AppointmentDates() {
+    }
+
+    private static DateTimeFormatter caseInsensitive(String pattern) {
+        return new DateTimeFormatterBuilder().parseCaseInsensitive().appendPattern(pattern)
+                .toFormatter(Locale.ENGLISH);
+    }
+
+    // ! Parses an ISO date (yyyy-MM-dd) or a weekday name such as "Mon" or
+    // "Monday". A weekday resolves to its next occurrence, today included.
+    // Returns null if the text is not a date.
+    public static LocalDate parseDate(String text) {
+        return parseDate(text, LocalDate.now());
+    }
+
+    // * Same as above, weekdays resolve relative to the given day
+    public static LocalDate parseDate(String text, LocalDate today) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        String value = text.trim();
+        LocalDate iso = parseIsoDate(value);
+        if (iso != null) {
+            return iso;
+        }
+        DayOfWeek day = parseDayOfWeek(value);
+        if (day != null) {
+            return today.with(TemporalAdjusters.nextOrSame(day));
+        }
+        return parse(value, DateTimeFormatter.ISO_LOCAL_DATE) ? LocalDate.parse(value) : null;
+    }
+
+    // * Matches "Mon", "mon", "Monday" and so on, null if it is not a weekday
+    public static DayOfWeek parseDayOfWeek(String text) {
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (day.getDisplayName(TextStyle.SHORT, Locale.ENGLISH).equalsIgnoreCase(text)
+                    || day.getDisplayName(TextStyle.FULL, Locale.ENGLISH).equalsIgnoreCase(text)) {
+                return day;
+            }
+        }
+        return null;
+    }
+
+    // ! Parses a time such as "10:00am" or "14:30", null if it is not a time
+    public static LocalTime parseTime(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        String value = text.trim();
+        LocalTime common = parseClockTime(value);
+        if (common != null) {
+            return common;
+        }
+        for (DateTimeFormatter format : TIME_FORMATS) {
+            if (parse(value, format)) {
+                return LocalTime.parse(value, format);
+            }
+        }
+        return null;
+    }
+
+    // * The shared LocalDate of an epoch day. Racing threads may both create
+    // it, either copy is equal and immutable.
+    public static LocalDate day(int epochDay) {
+        if (epochDay < 0 || epochDay >= CACHED_DAYS) {
+            return LocalDate.ofEpochDay(epochDay);
+        }
+        LocalDate day = DAYS[epochDay];
+        if (day == null) {
+            day = LocalDate.ofEpochDay(epochDay);
+            DAYS[epochDay] = day;
+        }
+        return day;
+    }
+
+    // * The shared LocalTime of a minute of the day (0 to 1439)
+    public static LocalTime minute(int minuteOfDay) {
+        return MINUTES[minuteOfDay];
+    }
+
+    // * Formats a time the way the operator types it, e.g. 10:15am
+    public static String formatTime(LocalTime time) {
+        if (time.getSecond() != 0 || time.getNano() != 0) {
+            return DISPLAY_TIME.format(time).toLowerCase(Locale.ENGLISH);
+        }
+        int hour = time.getHour() % 12 == 0 ? 12 : time.getHour() % 12;
+        char[] text = { (char) ('0' + hour / 10), (char) ('0' + hour % 10), ':',
+                (char) ('0' + time.getMinute() / 10), (char) ('0' + time.getMinute() % 10),
+                time.getHour() < 12 ? 'a' : 'p', 'm' };
+        return new String(text);
+    }
+
+    // ! Fast paths for the layouts imports and the journal use all the time,
+    // read by hand. Anything they do not accept goes through the formatters.
+
+    // * yyyy-MM-dd, null if it is not exactly that
+    private static LocalDate parseIsoDate(String value) {
+        if (value.length() != 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return null;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 7);
+        int day = digits(value, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > YearMonth.of(year, month).lengthOfMonth()) {
+            return null;
+        }
+        return LocalDate.of(year, month, day);
+    }
+
+    // * h:mma or hh:mma such as 10:00am, null if it is not exactly that
+    private static LocalTime parseClockTime(String value) {
+        int colon = value.indexOf(':');
+        if ((colon != 1 && colon != 2) || value.length() != colon + 5) {
+            return null;
+        }
+        int hour = digits(value, 0, colon);
+        int minute = digits(value, colon + 1, colon + 3);
+        char half = Character.toLowerCase(value.charAt(colon + 3));
+        char m = Character.toLowerCase(value.charAt(colon + 4));
+        if (hour < 1 || hour > 12 || minute < 0 || minute > 59 || (half != 'a' && half != 'p') || m != 'm') {
+            return null;
+        }
+        return LocalTime.of(hour % 12 + (half == 'p' ? 12 : 0), minute);
+    }
+
+    // * Value of the ASCII digits from start to end, -1 if any is not a digit
+    private static int digits(String value, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    // * Checks the layout without throwing, so bad input stays cheap to reject
+    private static boolean parse(String value, DateTimeFormatter format) {
+        ParsePosition position = new ParsePosition(0);
+        if (format.parseUnresolved(value, position) == null || position.getIndex() != value.length()) {
+            return false;
+        }
+        try {
+            format.parse(value); // * Also rejects values such as 2024-02-30 or 25:00
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+}
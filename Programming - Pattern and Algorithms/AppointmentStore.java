@@ -0,0 +1,320 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Appointment Store
+// ! Off-heap, column oriented home of the archived appointment history. Every
+// column is a memory-mapped file of fixed width values, so a row costs 31
+// bytes (plus 4 for the ID index) outside the Java heap instead of an object
+// graph with Strings inside it. Rows are appended in day order, so the rows
+// of a day are found by a binary search. The files outlive the process, the
+// snapshot records how many rows it counts on and resume() takes them back.
+class AppointmentStore implements AutoCloseable {
+    static final int NO_DATE = Integer.MIN_VALUE; // * Date or time that could not be parsed
+    private static final int SEGMENT_ROWS = 1 << 20; // * Rows per mapped region of a column
+    private static final Status[] STATUSES = Status.values();
+
+    private final Column ids;
+    private final Column patients;
+    private final Column doctors;
+    private final Column treatments;
+    private final Column days;
+    private final Column minutes;
+    private final Column statuses;
+    private final Column fees;
+    private final List<Column> columns = new ArrayList<>();
+    // * Row + 1 at the position of each appointment ID, counted from the
+    // first ID of the branch, 0 where there is none. The IDs of a branch are
+    // dense from there, so this mapped file is the ID index and needs no heap.
+    private final Column rowsByID;
+    private final int firstID;
+
+    private int size;
+
+    // ! Opens the store in the directory, empty until resume() keeps the rows
+    // an earlier run saved. Rows past the size are written over.
+    AppointmentStore(Path directory) throws IOException {
+        this(directory, ClinicPartitions.firstID(0));
+    }
+
+    // * Store of a branch, it holds the IDs of the branch's range
+    AppointmentStore(Path directory, int firstID) throws IOException {
+        this.firstID = firstID;
+        Files.createDirectories(directory);
+        ids = column(directory, "appointment_id", 4);
+        patients = column(directory, "patient", 4);
+        doctors = column(directory, "doctor", 4);
+        treatments = column(directory, "treatment", 4);
+        days = column(directory, "epoch_day", 4);
+        minutes = column(directory, "minute_of_day", 2);
+        statuses = column(directory, "status", 1);
+        fees = column(directory, "fee_cents", 8);
+        rowsByID = new Column(directory.resolve("row_by_id.idx"), 4);
+    }
+
+    private Column column(Path directory, String name, int width) throws IOException {
+        Column column = new Column(directory.resolve(name + ".col"), width);
+        columns.add(column);
+        return column;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // ! Keeps the first rows of the files, as many as the snapshot counted
+    public void resume(int rows) throws IOException {
+        for (Column column : columns) {
+            if (!column.holds(rows)) {
+                throw new IOException("The appointment store has fewer than " + rows + " rows.");
+            }
+        }
+        if (rows > 0) {
+            for (Column column : columns) {
+                column.ensureRow(rows - 1);
+            }
+        }
+        rowsByID.mapFile(); // * The saved entries, rowOf() checks them against the rows
+        size = rows;
+    }
+
+    // ! Writes the mapped rows through to the files, before a snapshot counts on them
+    public void force() {
+        for (Column column : columns) {
+            column.force();
+        }
+        rowsByID.force();
+    }
+
+    // ! Appends a row and returns its number
+    public int append(int appointmentID, int patientRef, int doctorRef, int treatmentID, LocalDate date,
+            LocalTime time, Status status, long feeCents) throws IOException {
+        if (!accepts(appointmentID)) {
+            throw new IllegalArgumentException("Appointment " + appointmentID + " is outside the range of the store.");
+        }
+        int day = date == null ? NO_DATE : (int) date.toEpochDay();
+        if (size > 0 && day < getEpochDay(size - 1)) {
+            throw new IllegalArgumentException("Rows are appended in day order, " + date + " is too early.");
+        }
+        int row = size;
+        for (Column column : columns) {
+            column.ensureRow(row);
+        }
+        int entry = appointmentID - firstID;
+        rowsByID.ensureRow(entry);
+        rowsByID.buffer(entry).putInt(rowsByID.offset(entry), row + 1);
+        ids.buffer(row).putInt(ids.offset(row), appointmentID);
+        patients.buffer(row).putInt(patients.offset(row), patientRef);
+        doctors.buffer(row).putInt(doctors.offset(row), doctorRef);
+        treatments.buffer(row).putInt(treatments.offset(row), treatmentID);
+        fees.buffer(row).putLong(fees.offset(row), feeCents);
+        days.buffer(row).putInt(days.offset(row), day);
+        minutes.buffer(row).putShort(minutes.offset(row),
+                (short) (time == null ? -1 : time.getHour() * 60 + time.getMinute()));
+        statuses.buffer(row).put(statuses.offset(row), (byte) status.ordinal());
+        size++;
+        return row;
+    }
+
+    // * Column readers by row number
+    public int getAppointmentID(int row) {
+        return ids.buffer(row).getInt(ids.offset(row));
+    }
+
+    public int getPatientRef(int row) {
+        return patients.buffer(row).getInt(patients.offset(row));
+    }
+
+    public int getDoctorRef(int row) {
+        return doctors.buffer(row).getInt(doctors.offset(row));
+    }
+
+    public int getTreatmentID(int row) {
+        return treatments.buffer(row).getInt(treatments.offset(row));
+    }
+
+    public int getEpochDay(int row) {
+        return days.buffer(row).getInt(days.offset(row));
+    }
+
+    public int getMinuteOfDay(int row) {
+        return minutes.buffer(row).getShort(minutes.offset(row));
+    }
+
+    public Status getStatus(int row) {
+        return STATUSES[statuses.buffer(row).get(statuses.offset(row))];
+    }
+
+    public long getFeeCents(int row) {
+        return fees.buffer(row).getLong(fees.offset(row));
+    }
+
+    // ! Row of an appointment ID, or -1 if it is not in the store. An entry
+    // left by a row past the size, or one written over since, does not count.
+    public int rowOf(int appointmentID) {
+        if (!accepts(appointmentID) || !rowsByID.hasRow(appointmentID - firstID)) {
+            return -1;
+        }
+        int entry = appointmentID - firstID;
+        int row = rowsByID.buffer(entry).getInt(rowsByID.offset(entry)) - 1;
+        return row >= 0 && row < size && getAppointmentID(row) == appointmentID ? row : -1;
+    }
+
+    // * True for the IDs of the branch range, imported IDs of others stay out
+    public boolean accepts(int appointmentID) {
+        return appointmentID >= firstID && appointmentID - firstID < ClinicPartitions.ID_RANGE;
+    }
+
+    // ! First row on or after the day, size() when every row is earlier
+    public int firstRowFrom(LocalDate date) {
+        long day = date.toEpochDay();
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getEpochDay(mid) < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Column column : columns) {
+            column.close();
+        }
+        rowsByID.close();
+    }
+
+    // Column Class
+    // ! One fixed width column, mapped in segments as it grows.
+    private static final class Column {
+        private final FileChannel channel;
+        private final int width;
+        private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+        Column(Path file, int width) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.width = width;
+        }
+
+        void ensureRow(int row) throws IOException {
+            while (row / SEGMENT_ROWS >= segments.size()) {
+                long start = (long) segments.size() * SEGMENT_ROWS * width;
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, (long) SEGMENT_ROWS * width));
+            }
+        }
+
+        boolean hasRow(int row) {
+            return row / SEGMENT_ROWS < segments.size();
+        }
+
+        void mapFile() throws IOException {
+            while ((long) segments.size() * SEGMENT_ROWS * width < channel.size()) {
+                ensureRow(segments.size() * SEGMENT_ROWS);
+            }
+        }
+
+        boolean holds(int rows) throws IOException {
+            return channel.size() >= (long) rows * width;
+        }
+
+        void force() {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+
+        MappedByteBuffer buffer(int row) {
+            return segments.get(row / SEGMENT_ROWS);
+        }
+
+        int offset(int row) {
+            return (row % SEGMENT_ROWS) * width;
+        }
+
+        void close() throws IOException {
+            segments.clear();
+            channel.close();
+        }
+    }
+
+    // View Class
+    // ! Flyweight over one row with the read side of the Appointment API. One
+    // view can be moved across millions of rows without allocating, the
+    // patient and doctor are looked up by their position in the repository.
+    static final class View {
+        private final AppointmentStore store;
+        private final ClinicRepository repository;
+        private final TreatmentCatalog treatments;
+        private int row = -1;
+
+        View(AppointmentStore store, ClinicRepository repository, TreatmentCatalog treatments) {
+            this.store = store;
+            this.repository = repository;
+            this.treatments = treatments;
+        }
+
+        // * Points the view at a row, returns false past the end of the store
+        public boolean moveTo(int row) {
+            this.row = row;
+            return row >= 0 && row < store.size();
+        }
+
+        public int getAppointmentID() {
+            return store.getAppointmentID(row);
+        }
+
+        public double getRegistrationFee() {
+            return store.getFeeCents(row) / 100.0;
+        }
+
+        public long getRegistrationFeeCents() {
+            return store.getFeeCents(row);
+        }
+
+        public LocalDate getLocalDate() {
+            int day = store.getEpochDay(row);
+            return day == NO_DATE ? null : LocalDate.ofEpochDay(day);
+        }
+
+        public LocalTime getLocalTime() {
+            int minute = store.getMinuteOfDay(row);
+            return minute < 0 ? null : LocalTime.of(minute / 60, minute % 60);
+        }
+
+        public Status getStatus() {
+            return store.getStatus(row);
+        }
+
+        public Patient getPatient() {
+            return repository.getPatientAt(store.getPatientRef(row));
+        }
+
+        public Doctor getDoctor() {
+            return repository.getDoctorAt(store.getDoctorRef(row));
+        }
+
+        public Treatment getTreatment() {
+            return treatments.find(store.getTreatmentID(row));
+        }
+
+        public String getDetails() {
+            Treatment treatment = getTreatment();
+            return "Appointment ID: " + getAppointmentID() + ", Date: " + getLocalDate() + ", Time: " + getLocalTime()
+                    + ", Status: " + getStatus() + ", Patient: " + getPatient().name + ", Doctor: "
+                    + getDoctor().name + ", Treatment: " + (treatment == null ? "-" : treatment.getDetails());
+        }
+    }
+}
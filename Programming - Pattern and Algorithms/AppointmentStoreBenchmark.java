@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Appointment Store Benchmark
+// ! The store mode of ClinicBenchmark: fills the memory-mapped AppointmentStore,
+// then archives a clinic into it and checks every lookup before and after a restart.
+final class AppointmentStoreBenchmark {
+    private AppointmentStoreBenchmark() {
+    }
+
+    // ! Fills the memory-mapped store and scans it, reporting heap growth
+    static void runStore(int rows) throws IOException {
+        Path directory = Files.createTempDirectory("aurora-store");
+        LocalDate firstDay = LocalDate.of(2020, 1, 1);
+        LocalTime opening = LocalTime.of(9, 0);
+        long heapBefore = BenchmarkFixture.usedHeap();
+
+        long start = System.nanoTime();
+        try (AppointmentStore store = new AppointmentStore(directory)) {
+            for (int i = 0; i < rows; i++) {
+                store.append(i + 1, i % 500_000, i % 40, 1 + i % 4, firstDay.plusDays(i / 400),
+                        opening.plusMinutes(15 * (i % 32)), Status.BOOKED, 50_000);
+            }
+            double appendSeconds = (System.nanoTime() - start) / 1e9;
+
+            // * Column scan: fees of the bookings on the last 30 days
+            start = System.nanoTime();
+            int fromDay = store.getEpochDay(rows - 1) - 30;
+            long fees = 0;
+            for (int row = 0; row < store.size(); row++) {
+                if (store.getEpochDay(row) >= fromDay) {
+                    fees += store.getFeeCents(row);
+                }
+            }
+            double scanSeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("Rows appended:     %,d in %.2f s%n", rows, appendSeconds);
+            System.out.printf("Column scan:       %.3f s (fees %d)%n", scanSeconds, fees);
+            System.out.printf("Lookup by ID:      row %d%n", store.rowOf(rows / 2));
+            System.out.printf("Heap growth:       %,d bytes (%.1f per row)%n", BenchmarkFixture.usedHeap() - heapBefore,
+                    (BenchmarkFixture.usedHeap() - heapBefore) / (double) rows);
+        }
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    // ! Old closed appointments move into the store and leave the heap, and
+    // every lookup still finds them, before and after a restart
+    static boolean checkArchive(int count) throws IOException {
+        Path directory = Files.createTempDirectory("aurora-archive");
+        Doctor doctor = new Doctor("Dr. Archive", "archive@aurora.lk", "0770000000", "D001");
+        List<Treatment> treatments = new ArrayList<>();
+        treatments.add(new Treatment(1, "Acne Treatment", 2750.00));
+        treatments.add(new Treatment(2, "Skin Whitening", 7650.00));
+        TreatmentCatalog catalog = TreatmentCatalog.of(treatments);
+        Status[] closed = { Status.COMPLETED, Status.CANCELED, Status.NO_SHOW, Status.COMPLETED };
+
+        ClinicService service = openArchiveClinic(directory, doctor, catalog);
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            patients.add(BenchmarkFixture.register(service, i));
+        }
+        // * Two years back to tomorrow, every tenth one still booked
+        LocalDate firstDay = LocalDate.now().minusDays(730);
+        List<Appointment> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LocalDate day = firstDay.plusDays(731L * i / count);
+            batch.add(new Appointment(service.nextAppointmentID(), day.toString(), day,
+                    AppointmentDates.formatTime(LocalTime.of(9, 0).plusMinutes(15 * (i % 32))),
+                    i % 10 == 0 ? Status.BOOKED : closed[i % closed.length], patients.get(i % patients.size()),
+                    doctor, treatments.get(i % treatments.size())));
+        }
+        service.getPersistence().importAppointments(batch);
+        Map<Integer, String> expected = new HashMap<>();
+        for (Appointment appointment : batch) {
+            expected.put(appointment.getAppointmentID(), archiveKey(appointment));
+        }
+        ClinicRepository repository = service.getRepository();
+        LocalDate archivedDay = firstDay.plusDays(100);
+        List<String> dayBefore = keys(repository.findAppointmentsOn(archivedDay));
+        List<String> historyBefore = keys(repository.findHistoryOfPatient(BenchmarkFixture.nic(7), 0, 1_000));
+        long spendBefore = repository.findLifetimeSpendCentsOfPatient(BenchmarkFixture.nic(7));
+
+        List<String> problems = new ArrayList<>();
+        service.rebuildTotals(); // * The import is not published, the totals start from a recount
+        String totalsBefore = service.getAnalytics().total().toString();
+        int archived = service.archiveHistory();
+        int inMemory = repository.getAppointmentsInMemory().size();
+        if (archived == 0 || archived + inMemory != count || repository.getAppointmentCount() != count) {
+            problems.add(archived + " archived and " + inMemory + " in memory of " + count);
+        }
+        checkArchived(repository, expected, archivedDay, dayBefore, historyBefore, spendBefore, "archived",
+                problems);
+        AppointmentStore.View view = new AppointmentStore.View(repository.getStore(), repository, catalog);
+        if (!view.moveTo(0) || view.getDoctor() != doctor
+                || view.getPatient() != repository.findAppointmentByID(view.getAppointmentID()).getPatient()) {
+            problems.add("The first row does not show its patient and doctor");
+        }
+
+        // * Restart from the snapshot and the store files
+        closeArchiveClinic(service);
+        service = openArchiveClinic(directory, doctor, catalog);
+        repository = service.getRepository();
+        if (repository.getArchivedCount() != archived
+                || repository.getAppointmentsInMemory().size() != inMemory) {
+            problems.add("After a restart " + repository.getArchivedCount() + " archived and "
+                    + repository.getAppointmentsInMemory().size() + " in memory");
+        }
+        checkArchived(repository, expected, archivedDay, dayBefore, historyBefore, spendBefore, "after restart",
+                problems);
+        // * The startup recount read the archive through store views, a second one must agree
+        String totalsAfter = service.getAnalytics().total().toString();
+        List<String> drift = service.rebuildTotals();
+        if (!totalsAfter.equals(totalsBefore) || !drift.isEmpty()) {
+            problems.add("After a restart the totals are " + totalsAfter + ", were " + totalsBefore + " (drift "
+                    + drift + ")");
+        }
+        closeArchiveClinic(service);
+        checkBranchIndex(directory.resolve("branch"), problems);
+
+        System.out.printf("Archived:          %,d of %,d appointments, %,d left in memory%n", archived, count,
+                inMemory);
+        return BenchmarkFixture.report(problems);
+    }
+
+    // ! The ID index of the last branch starts at the branch's first ID, so
+    // it stays one segment instead of billions of empty entries
+    private static void checkBranchIndex(Path directory, List<String> problems) throws IOException {
+        int branch = ClinicPartitions.MAX_BRANCHES - 1;
+        int firstID = ClinicPartitions.firstID(branch);
+        try (AppointmentStore store = new AppointmentStore(directory, firstID)) {
+            store.append(firstID + 41, 0, 0, 1, LocalDate.now(), LocalTime.NOON, Status.COMPLETED, 50_000);
+            if (store.rowOf(firstID + 41) != 0 || store.rowOf(firstID) != -1 || store.rowOf(41) != -1) {
+                problems.add("The ID index of branch " + branch + " does not find its row");
+            }
+        }
+        long indexBytes = Files.size(directory.resolve("row_by_id.idx"));
+        if (indexBytes > Files.size(directory.resolve("appointment_id.col"))) {
+            problems.add("The ID index of branch " + branch + " takes " + indexBytes + " bytes for one row");
+        }
+    }
+
+    private static ClinicService openArchiveClinic(Path directory, Doctor doctor, TreatmentCatalog catalog)
+            throws IOException {
+        ClinicRepository repository = new ClinicRepository();
+        repository.addDoctor(doctor);
+        repository.attachStore(new AppointmentStore(directory.resolve("store")), catalog);
+        ClinicPersistence persistence = new ClinicPersistence(directory, repository, catalog, 100_000);
+        return new ClinicService(repository, persistence, new SchedulingEngine(), catalog);
+    }
+
+    private static void closeArchiveClinic(ClinicService service) throws IOException {
+        service.close();
+        service.getPersistence().close();
+        service.getRepository().getStore().close();
+    }
+
+    private static void checkArchived(ClinicRepository repository, Map<Integer, String> expected,
+            LocalDate archivedDay, List<String> dayBefore, List<String> historyBefore, long spendBefore,
+            String when, List<String> problems) {
+        for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+            Appointment found = repository.findAppointmentByID(entry.getKey());
+            if (found == null || !archiveKey(found).equals(entry.getValue())) {
+                problems.add("Appointment " + entry.getKey() + " " + when + " is "
+                        + (found == null ? "missing" : archiveKey(found)) + ", was " + entry.getValue());
+                return;
+            }
+        }
+        if (!keys(repository.findAppointmentsOn(archivedDay)).equals(dayBefore)) {
+            problems.add("The bookings of " + archivedDay + " changed " + when);
+        }
+        if (!keys(repository.findHistoryOfPatient(BenchmarkFixture.nic(7), 0, 1_000)).equals(historyBefore)) {
+            problems.add("The history of a patient changed " + when);
+        }
+        if (repository.findLifetimeSpendCentsOfPatient(BenchmarkFixture.nic(7)) != spendBefore) {
+            problems.add("The lifetime spend of a patient changed " + when);
+        }
+    }
+
+    // * What must survive the archive, the typed date aside
+    private static String archiveKey(Appointment appointment) {
+        return appointment.getAppointmentID() + " " + appointment.getLocalDate() + " " + appointment.getLocalTime()
+                + " " + appointment.getStatus() + " " + appointment.getPatient().getNIC() + " "
+                + appointment.getDoctor().employeeID + " " + appointment.getTreatment().getTreatmentID() + " "
+                + appointment.getRegistrationFeeCents();
+    }
+
+    private static List<String> keys(List<Appointment> appointments) {
+        List<String> keys = new ArrayList<>(appointments.size());
+        for (Appointment appointment : appointments) {
+            keys.add(archiveKey(appointment));
+        }
+        return keys;
+    }
+}
@@ -1,276 +1,134 @@
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.InputMismatchException;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
-
-// Base Class: Person
-// ! This class represents a generic person with basic contact information.
-class Person {
-    protected String name;
-    protected String email;
-    protected String contactNumber;
-
-    // ! Constructor to initialize a Person object
-    public Person(String name, String email, String contactNumber) {
-        this.name = name;
-        this.email = email;
-        this.contactNumber = contactNumber;
-    }
-
-    // ! This method access the information without exposing the data directly
-    public String getContactInfo() {
-        return "Name: " + name + ", Email: " + email + ", Contact: " + contactNumber;
-    }
-}
-
-// Patient Class extending Person
-// ! Inheriting basic contact information from the Person class.
-class Patient extends Person {
-    private String nic; // * National Identity Card number of the patient
-
-    public Patient(String name, String email, String contactNumber, String nic) {
-        super(name, email, contactNumber); // * Call to the superclass constructor to set
-        this.nic = nic;
-    }
-
-    public String getNIC() {
-        return nic;
-    }
-}
-
-// Doctor Class extending Person
-// ! Inheriting properties and methods from the Person class.
-class Doctor extends Person {
-    private List<String> schedule = new ArrayList<>(); // * List to hold the doctor's availability
-    protected String employeeID; // Unique identifier for the doctor
-
-    public Doctor(String name, String email, String contactNumber, String employeeID) {
-        super(name, email, contactNumber); // * Call to the superclass constructor
-        this.employeeID = employeeID; // Set the employee ID
-        addAvailability(); // ! Method to populate the doctor's schedule
-    }
-
-    // ! Private method to add availability times to the doctor's schedule
-    private void addAvailability() {
-
-    }
-
-    public List<String> getSchedule() {
-        return schedule;
-    }
-
-    public String getEmployeeDetails() {
-        return "Employee ID: " + employeeID + ", " + getContactInfo();
-    }
-}
-
-// Appointment Status Enum
-// ! Represents the possible statuses of an appointment.
-enum Status {
-    BOOKED, CANCELED, COMPLETED;
-}
-
-// Appointment Class
-// ! This class represents an appointment made by a patient with a doctor.
-class Appointment {
-    private static int counter = 1;
-    private int appointmentID;
-    private String date;
-    private String time;
-    private Status status;
-    private Patient patient;
-    private Doctor doctor;
-    private Treatment treatment;
-    private double registrationFee;
-
-    // * Constructor to initialize an Appointment object with date, time,
-    // patient,and doctor
-    public Appointment(String date, String time, Patient patient, Doctor doctor, Treatment treatment) {
-        this.appointmentID = counter++; // * Assign a unique ID and increment the counter
-        this.date = date;
-        this.time = time;
-        this.status = Status.BOOKED; // ! Set the initial status to BOOKED
-        this.patient = patient;
-        this.doctor = doctor;
-        this.treatment = treatment;
-        this.registrationFee = 500.0; // ! Default registration fee
-    }
-
-    // * Getters for appointment details
-    public int getAppointmentID() {
-        return appointmentID;
-    }
-
-    // * Getter for registration fee
-    public double getRegistrationFee() {
-        return registrationFee;
-    }
-
-    public String getDate() {
-        return date;
-    }
-
-    public String getTime() {
-        return time;
-    }
-
-    public Patient getPatient() {
-        return patient;
-    }
-
-    public Doctor getDoctor() {
-        return doctor;
-    }
-
-    // ! Method to update the date and time of the appointment
-    public void updateDateTime(String date, String time) {
-        this.date = date;
-        this.time = time;
-        System.out.println("Appointment updated to Date: " + date + ", Time: " + time);
-    }
-
-    // ! Same method name operates on different types of objects
-    public String getDetails() {
-        return "Appointment ID: " + appointmentID + ", Date: " + date + ", Time: " + time + ", Status: " + status +
-                ", Patient: " + patient.name + ", Doctor: " + doctor.name + ", Treatment: " + treatment.getDetails();
-    }
-
-    public void confirm() {
-        status = Status.BOOKED;
-        System.out.println("Appointment confirmed for: " + patient.name + " with Dr. " + doctor.name);
-    }
-
-    public void cancel() {
-        status = Status.CANCELED;
-        System.out.println("Appointment canceled for: " + patient.name);
-    }
-
-    public Treatment getTreatment() {
-        return treatment;
-    }
-
-    public static Treatment selectTreatment(Scanner scanner, List<Treatment> availableTreatments) {
-        System.out.println("Available Treatments:");
-        for (int i = 0; i < availableTreatments.size(); i++) {
-            System.out.println((i + 1) + ". " + availableTreatments.get(i).getDetails());
-        }
-        System.out.print("Select a treatment by number: ");
-        int choice = scanner.nextInt();
-        scanner.nextLine(); // Consume newline
-        return availableTreatments.get(choice - 1);
-    }
-}
-
-// Treatment Class
-// ! This class represents a treatment that can be provided to a patient.
-class Treatment {
-    private int treatmentID;
-    private String name;
-    private double price;
-
-    public Treatment(int treatmentID, String name, double price) {
-        this.treatmentID = treatmentID;
-        this.name = name;
-        this.price = price;
-    }
-
-    // * Method to get a formatted string of treatment details
-    public String getDetails() {
-        return "Name: " + name + ", Price: LKR " + price;
-    }
-
-    // * Method to calculate the final price of the treatment
-    public double calculateFinalPrice() {
-        return price;
-    }
-}
-
-// Payment Class
-// ! This class represents a payment transaction for a specific amount.
-class Payment {
-    private static final double TAX_RATE = 0.025; // * Constant representing the tax rate (2.5%)
-    private double amount; // * The amount to be processed for payment
-
-    public Payment(double amount) {
-        this.amount = amount;
-    }
-
-    // * Method to calculate the total amount including tax
-    public double calculateTotalAmount() {
-        return Math.round(amount * (1 + TAX_RATE) * 100.0) / 100.0;
-    }
-}
-
-// Invoice Class
-// ! This class represents an invoice generated for a specific appointment and
-// treatment.
-class Invoice {
-    private int invoiceID;
-    private Appointment appointment;
-    private Treatment treatment;
-    private Payment payment;
-
-    public Invoice(int invoiceID, Appointment appointment, Treatment treatment) {
-        this.invoiceID = invoiceID;
-        this.appointment = appointment;
-        this.treatment = treatment;
-        this.payment = new Payment(treatment.calculateFinalPrice());
-        // Create a payment object based on treatment price
-    }
-
-    // ! This Method allowing users to generate an invoice without needing to
-    // understand calculations for taxes and totals.
-    public void generateInvoice() {
-        System.out.println("\n" + "=".repeat(30));
-        System.out.println("               INVOICE               ");
-        System.out.println("=" + "=".repeat(28) + "=");
-
-        // Display appointment details
-        System.out.printf("Appointment ID:    %d%n", appointment.getAppointmentID());
-        System.out.printf("Patient:           %s%n", appointment.getPatient().name);
-        System.out.printf("Date:              %s%n", appointment.getDate());
-        System.out.printf("Time:              %s%n", appointment.getTime());
-        System.out.println("-".repeat(30));
-
-        // Display treatment details
-        System.out.printf("%s%n", treatment.getDetails());
-        System.out.printf("Registration Fee:  LKR %.2f%n", appointment.getRegistrationFee());
-
-        // Calculate and display tax
-        double tax = treatment.calculateFinalPrice() * 0.025;
-        System.out.printf("Tax (2.5%%):       LKR %.2f%n", tax);
-
-        // Calculate and display total amount
-        double totalAmount = payment.calculateTotalAmount();
-        System.out.printf("Total:            LKR %.2f%n", totalAmount);
-
-        System.out.println("=" + "=".repeat(28) + "=");
-        System.out.println("Thank you for choosing our services!");
-        System.out.println("=" + "=".repeat(30));
-    }
-}
+import java.util.concurrent.TimeUnit;
 
 // Main Program Class
 // ! This class serves as the entry point for the Aurora Skin Care Clinic.
 public class AuroraSkinCareSystem {
-    static List<Patient> patients = new ArrayList<>();
-    static List<Doctor> doctors = new ArrayList<>();
-    static List<Appointment> appointments = new ArrayList<>();
-    static List<Treatment> availableTreatments = new ArrayList<>();
-    static int invoiceCounter = 1; // * Counter for generating unique invoice IDs
+    static ClinicRepository repository = new ClinicRepository(); // * Records and their lookup indexes
+    static TreatmentCatalog treatments; // * Treatments and prices, from treatments.csv in the data directory
+    static ClinicPersistence persistence; // * Journal and snapshots of the clinic state
+    static SchedulingEngine scheduler = new SchedulingEngine(); // * Slot calendars of the doctors
+    static ClinicService service; // * Booking operations shared by all terminals
+    static ClinicReminders reminders; // * Appointment reminders, only while the menu or the HTTP API runs
+    static final int SEARCH_RESULT_LIMIT = 10; // * Most name matches shown by a search
+    static final int HISTORY_PAGE_SIZE = 10; // * Appointments of a patient's history shown at a time
 
     // ! Main method to run the application
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in); // * Scanner for user input
 
+        // ! With --generate <file> <operations> [seed] a synthetic workload script is written, nothing is loaded
+        if (args.length >= 3 && args[0].equals("--generate")) {
+            generateScript(Paths.get(args[1]), Long.parseLong(args[2]),
+                    args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime());
+            return;
+        }
+
         // ! Manually add initial doctors
-        doctors.add(new Doctor("Dr. Ijlan", "mohamedijlan02@gmail.com", "0776778795", "D001"));
-        doctors.add(new Doctor("Dr. Brian", "jacobmichaelbrian01@gmail.com", "0764517561", "D002"));
+        repository.addDoctor(new Doctor("Dr. Ijlan", "mohamedijlan02@gmail.com", "0776778795", "D001"));
+        repository.addDoctor(new Doctor("Dr. Brian", "jacobmichaelbrian01@gmail.com", "0764517561", "D002"));
+
+        // ! Load the treatment catalog, the first start writes it with the opening prices
+        Path dataDirectory = Paths.get(System.getProperty("aurora.data.dir", "aurora-data"));
+        List<Treatment> openingTreatments = new ArrayList<>();
+        openingTreatments.add(new Treatment(1, "Acne Treatment", 2750.00));
+        openingTreatments.add(new Treatment(2, "Skin Whitening", 7650.00));
+        openingTreatments.add(new Treatment(3, "Mole Removal", 3850.00));
+        openingTreatments.add(new Treatment(4, "Laser Treatment", 12500.00));
+        try {
+            treatments = TreatmentCatalog.open(dataDirectory, openingTreatments);
+        } catch (IOException e) {
+            System.out.println("Could not load the treatment catalog: " + e.getMessage());
+            return;
+        }
+        treatments.watch(Long.getLong("aurora.catalog.poll.ms", 2_000), TimeUnit.MILLISECONDS); // * Picks up edits
+
+        // ! The branch this process serves, it picks the range of appointment and invoice IDs
+        int branch = Integer.getInteger("aurora.branch", 0);
+        try {
+            ClinicPartitions.checkBranch(branch);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
 
-        availableTreatments.add(new Treatment(1, "Acne Treatment", 2750.00));
-        availableTreatments.add(new Treatment(2, "Skin Whitening", 7650.00));
-        availableTreatments.add(new Treatment(3, "Mole Removal", 3850.00));
-        availableTreatments.add(new Treatment(4, "Laser Treatment", 12500.00));
+        // ! Old closed appointments live off-heap in the column store, the snapshot counts on its rows
+        try {
+            repository.attachStore(new AppointmentStore(dataDirectory.resolve("store"),
+                    ClinicPartitions.firstID(branch)), treatments);
+        } catch (IOException e) {
+            System.out.println("Could not open the appointment store: " + e.getMessage());
+            return;
+        }
+
+        // ! Restore the saved patients and appointments (snapshot and journal tail)
+        int snapshotInterval = Integer.getInteger("aurora.snapshot.interval", 10_000);
+        try {
+            persistence = new ClinicPersistence(dataDirectory, repository, treatments, snapshotInterval);
+        } catch (IOException e) {
+            System.out.println("Could not load the clinic data from " + dataDirectory + ": " + e.getMessage());
+            return;
+        }
+
+        // ! Mark the slots of the restored bookings in the doctors' calendars, archived ones are long past
+        for (Appointment appointment : repository.getAppointmentsInMemory()) {
+            if (appointment.getStatus().holdsSlot() && appointment.getLocalDate() != null
+                    && appointment.getLocalTime() != null) {
+                scheduler.restore(appointment.getDoctor(), appointment.getLocalDate(), appointment.getLocalTime());
+            }
+        }
+        try {
+            service = new ClinicService(repository, persistence, scheduler, treatments, branch,
+                    System.getProperty("aurora.branch.name", ClinicPartitions.DEFAULT_BRANCH_NAME));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            closePersistence();
+            return;
+        }
+
+        // ! With --http [port] the clinic is served as a JSON API instead of the menu
+        if (args.length > 0 && args[0].equals("--http")) {
+            startReminders(dataDirectory);
+            startHttpServer(args.length > 1 ? Integer.parseInt(args[1]) : Integer.getInteger("aurora.http.port", 8080));
+            return;
+        }
+        // ! With --import <dir> the CSV files of the directory are loaded, --export <dir> writes them
+        if (args.length >= 2 && (args[0].equals("--import") || args[0].equals("--export"))) {
+            runCsv(args[0].equals("--import"), Paths.get(args[1]));
+            closePersistence();
+            return;
+        }
+        // ! With --invoices <from> <to> [file] the completed appointments of the range are billed
+        if (args.length >= 3 && args[0].equals("--invoices")) {
+            runInvoiceBatch(args[1], args[2], args.length > 3 ? args[3] : null);
+            closePersistence();
+            return;
+        }
+        // ! With --script <file> [--quiet] the operations of the file run instead of the menu
+        if (args.length >= 2 && args[0].equals("--script")) {
+            runScript(Paths.get(args[1]), args.length > 2 && args[2].equals("--quiet"));
+            closePersistence();
+            return;
+        }
+        startReminders(dataDirectory);
 
         // ! Handle user options with a switch statement
         while (true) {
@@ -287,7 +145,9 @@ public class AuroraSkinCareSystem {
             System.out.println("7. Search Patient by Name or NIC");
             System.out.println("8. Cancel Appointment");
             System.out.println("9. Generate Invoice");
-            System.out.println("10. Exit");
+            System.out.println("11. Clinic Reports");
+            System.out.println("12. Record Visit Outcome");
+            System.out.println("10. Exit"); // * Exit keeps its number so existing habits and scripts still work
             System.out.print("Select an option: ");
             System.out.println("=" + "=".repeat(40));
 
@@ -323,7 +183,14 @@ public class AuroraSkinCareSystem {
                     case 9:
                         generateInvoice(scanner);
                         break;
+                    case 11:
+                        viewReports(scanner);
+                        break;
+                    case 12:
+                        recordVisitOutcome(scanner);
+                        break;
                     case 10:
+                        closePersistence();
                         System.out.println("Exiting the system. Goodbye!");
                         return;
                     default:
@@ -334,10 +201,138 @@ public class AuroraSkinCareSystem {
             } catch (InputMismatchException e) {
                 System.out.println("Invalid input. Please enter a number.");
                 scanner.nextLine(); // Clear the invalid input
+            } catch (UncheckedIOException e) {
+                // ! The journal write failed, so the change was not applied
+                System.out.println("Could not save the change: " + e.getCause().getMessage());
+            } catch (NoSuchElementException e) {
+                closePersistence(); // * Input ended without choosing Exit
+                return;
             }
         }
     }
 
+    // ! Sends reminders of the upcoming appointments to the outbox file of the
+    // data directory. -Daurora.reminders=false turns them off, the lead time,
+    // rate and batch size are aurora.reminders.lead.hours, .rate and .batch.
+    static void startReminders(Path dataDirectory) {
+        if ("false".equalsIgnoreCase(System.getProperty("aurora.reminders"))) {
+            return;
+        }
+        try {
+            reminders = new ClinicReminders(repository,
+                    new ClinicReminders.FileSender(dataDirectory.resolve("outbox.txt")), Clock.systemDefaultZone(),
+                    Duration.ofHours(Long.getLong("aurora.reminders.lead.hours",
+                            ClinicReminders.DEFAULT_LEAD.toHours())),
+                    Double.parseDouble(System.getProperty("aurora.reminders.rate",
+                            String.valueOf(ClinicReminders.DEFAULT_RATE))),
+                    Integer.getInteger("aurora.reminders.batch", ClinicReminders.DEFAULT_BATCH));
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Reminders are off, could not start them: " + e.getMessage());
+            return;
+        }
+        service.getEvents().subscribe("reminders", reminders); // * Before the rebuild, so no booking is missed
+        reminders.rebuild(repository.getAppointmentsInMemory()); // * Archived appointments are closed, none is due
+        reminders.start();
+    }
+
+    // ! Starts the HTTP API, the data is saved when the process is stopped
+    static void startHttpServer(int port) {
+        ClinicHttpServer server;
+        try {
+            server = new ClinicHttpServer(service, port);
+        } catch (IOException e) {
+            System.out.println("Could not start the HTTP server on port " + port + ": " + e.getMessage());
+            closePersistence();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            closePersistence();
+        }, "clinic-shutdown"));
+        server.start();
+        System.out.println("Aurora Skin Care Clinic API (" + service.getBranchName() + " branch) listening on port "
+                + server.getPort());
+    }
+
+    // ! Writes the invoices of every completed appointment in the range to one file
+    static void runInvoiceBatch(String fromText, String toText, String fileName) {
+        LocalDate from = AppointmentDates.parseDate(fromText);
+        LocalDate to = from == null ? null : AppointmentDates.parseDate(toText, from);
+        if (from == null || to == null || to.isBefore(from)) {
+            System.out.println("Invalid date range. Use days (Mon, Wed, Fri, Sat) or yyyy-MM-dd.");
+            return;
+        }
+        Path file = Paths.get(fileName != null ? fileName : "invoices-" + from + "-to-" + to + ".txt");
+        try {
+            InvoiceBatch.Summary summary = new InvoiceBatch(service).run(from, to, file);
+            System.out.printf("Invoices written: %d (LKR %s) to %s in %.2f s%n", summary.getInvoices(),
+                    Money.format(summary.getBilledCents()), file, summary.getSeconds());
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Could not write the invoices: " + e.getMessage());
+        }
+    }
+
+    // ! Imports or exports doctors.csv, patients.csv and appointments.csv
+    static void runCsv(boolean load, Path directory) {
+        ClinicCsv csv = new ClinicCsv(service, new ClinicCsv.ConsoleProgress());
+        try {
+            if (load) {
+                for (ClinicCsv.Report report : csv.importDirectory(directory)) {
+                    System.out.println(report);
+                    for (String error : report.getErrors()) {
+                        System.out.println("  Rejected " + error);
+                    }
+                }
+            } else {
+                csv.exportDirectory(directory).forEach(
+                        (file, rows) -> System.out.printf("%s: %,d rows written%n", directory.resolve(file), rows));
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Could not " + (load ? "import" : "export") + " the CSV files: " + e.getMessage());
+        }
+    }
+
+    // ! Runs a script of operations and reports how fast they went. The
+    // output is buffered, --quiet drops it and prints progress instead.
+    static void runScript(Path file, boolean quiet) {
+        PrintStream out = quiet ? new PrintStream(OutputStream.nullOutputStream())
+                : new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        ClinicScript script = new ClinicScript(service, out, quiet ? new ClinicCsv.ConsoleProgress() : null);
+        try {
+            System.out.println(script.run(file));
+        } catch (IOException | UncheckedIOException e) {
+            out.flush();
+            System.out.println("Could not run the script " + file + ": " + e.getMessage());
+        }
+    }
+
+    // ! Writes a synthetic workload script with the given number of operations
+    static void generateScript(Path file, long operations, long seed) {
+        try {
+            new ClinicScript.Generator(seed).write(file, operations);
+            System.out.printf("%s: %,d operations written (seed %d)%n", file, operations, seed);
+        } catch (IOException e) {
+            System.out.println("Could not write the script: " + e.getMessage());
+        }
+    }
+
+    // ! Writes a final snapshot and closes the journal and the appointment store
+    static void closePersistence() {
+        try {
+            treatments.close();
+            if (service != null) {
+                service.close(); // * Lets the event subscribers catch up first
+            }
+            if (reminders != null) {
+                reminders.close();
+            }
+            persistence.close();
+            repository.getStore().close();
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Could not save the clinic data: " + e.getMessage());
+        }
+    }
+
     // ! Method to register a new patient.
     public static void registerPatient(Scanner scanner) {
         System.out.println("\n" + "=".repeat(40));
@@ -353,13 +348,12 @@ public class AuroraSkinCareSystem {
         System.out.print("Enter NIC: ");
         String nic = scanner.nextLine().trim();
 
-        // Validate input (simple validation example)
-        if (name.isEmpty() || email.isEmpty() || contactNumber.isEmpty() || nic.isEmpty()) {
-            System.out.println("All fields are required. Please try again.");
+        try {
+            service.registerPatient(name, email, contactNumber, nic);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println(e.getMessage());
             return;
         }
-
-        patients.add(new Patient(name, email, contactNumber, nic));
         System.out.println("Patient Registered Successfully.");
         System.out.println("=" + "=".repeat(40));
     }
@@ -386,48 +380,95 @@ public class AuroraSkinCareSystem {
         System.out.print("Enter Time (e.g., 10:00am): ");
         String time = scanner.nextLine().trim();
 
-        // Display and select doctor
+        if (AppointmentDates.parseDate(date) == null || AppointmentDates.parseTime(time) == null) {
+            System.out.println("Invalid date or time. Use a day (Mon, Wed, Fri, Sat) or yyyy-MM-dd, and a time like 10:00am.");
+            return;
+        }
+
+        // Display and select doctor, 0 leaves it to the clinic: the least busy doctor free then
+        List<Doctor> doctors = repository.getDoctors();
+        DoctorAssignment assignment = service.getAssignment();
+        Doctor suggested = assignment.pick(scheduler, AppointmentDates.parseDate(date),
+                AppointmentDates.parseTime(time));
         System.out.println("Select Doctor:");
+        System.out.println("0: Any doctor (" + (suggested == null ? "nobody is free then" : suggested.name) + ")");
         for (int i = 0; i < doctors.size(); i++) {
-            System.out.printf("%d: %s%n", i + 1, doctors.get(i).name);
+            System.out.printf("%d: %s (%d active appointments)%n", i + 1, doctors.get(i).name,
+                    assignment.getLoad(doctors.get(i)));
         }
-        System.out.print("Select Doctor (1-" + doctors.size() + "): ");
+        System.out.print("Select Doctor (0-" + doctors.size() + "): ");
         int docChoice = scanner.nextInt();
         scanner.nextLine(); // Consume newline
 
-        if (docChoice < 1 || docChoice > doctors.size()) {
+        if (docChoice < 0 || docChoice > doctors.size()) {
             System.out.println("Invalid doctor selection. Please try again.");
             return;
         }
-        Doctor doctor = doctors.get(docChoice - 1);
+        Doctor doctor = docChoice == 0 ? null : doctors.get(docChoice - 1);
 
-        // Assuming availableTreatments is a List<Treatment>
-        System.out.println("Select Treatment Type:");
-        for (int i = 0; i < availableTreatments.size(); i++) {
-            System.out.printf("%d: %s%n", i + 1, availableTreatments.get(i).getDetails());
-        }
-        System.out.print("Select Treatment (1-" + availableTreatments.size() + "): ");
-        int treatmentChoice = scanner.nextInt();
-        scanner.nextLine(); // Consume newline
-
-        if (treatmentChoice < 1 || treatmentChoice > availableTreatments.size()) {
+        // Select the treatment by its ID in the catalog
+        Treatment selectedTreatment = Appointment.selectTreatment(scanner, treatments);
+        if (selectedTreatment == null) {
             System.out.println("Invalid treatment selection. Please try again.");
             return;
         }
-        
-
-        // Get the actual Treatment object instead of a string
-        Treatment selectedTreatment = availableTreatments.get(treatmentChoice - 1);
 
-        // Create and add the appointment
-        Appointment appointment = new Appointment(date, time, patient, doctor, selectedTreatment);
-        appointments.add(appointment);
+        // Create and add the appointment, the service reserves the slot first
+        Appointment appointment;
+        try {
+            appointment = doctor == null ? service.bookWithAnyDoctor(patient, selectedTreatment, date, time)
+                    : service.bookAppointment(patient, doctor, selectedTreatment, date, time);
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+            if (doctor == null) {
+                SchedulingEngine.Slot any = scheduler.nextFreeSlot(doctors, AppointmentDates.parseDate(date),
+                        AppointmentDates.parseTime(time));
+                System.out.println("Earliest slot with any doctor: " + (any == null ? "none in the next year" : any));
+                return;
+            }
+            printNextFreeSlots(doctor, AppointmentDates.parseDate(date), AppointmentDates.parseTime(time));
+            offerWaitlist(scanner, patient, doctor, selectedTreatment, date);
+            return;
+        }
 
         System.out.println("Appointment booked successfully.");
         System.out.println("Appointment Details: " + appointment.getDetails());
         System.out.println("=" + "=".repeat(40));
     }
 
+    // ! Puts the patient on the waitlist of a fully booked day, if they want to wait.
+    static void offerWaitlist(Scanner scanner, Patient patient, Doctor doctor, Treatment treatment, String date) {
+        System.out.print("Join the waitlist for " + date + " with " + doctor.name + "? (y/n): ");
+        if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            return;
+        }
+        System.out.print("Priority (Urgent, Follow-up, Routine): ");
+        ClinicWaitlist.Priority priority = ClinicWaitlist.Priority.parse(scanner.nextLine());
+        if (priority == null) {
+            System.out.println("Invalid priority. The patient was not added to the waitlist.");
+            return;
+        }
+        try {
+            ClinicWaitlist.Entry entry = service.joinWaitlist(patient, doctor, treatment, date, priority);
+            System.out.println("Added to the waitlist. " + entry.getDetails());
+            System.out.println("The patient gets the first slot freed on that day.");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // ! Suggests the next free slot of the doctor and of any doctor.
+    static void printNextFreeSlots(Doctor doctor, LocalDate date, LocalTime time) {
+        SchedulingEngine.Slot mine = scheduler.nextFreeSlot(doctor, date, time);
+        SchedulingEngine.Slot any = scheduler.nextFreeSlot(repository.getDoctors(), date, time);
+        System.out.println("Working hours: " + String.join(", ", doctor.getSchedule()));
+        System.out.println("Next available slot: " + (mine == null ? "none in the next year" : mine));
+        if (any != null && mine != null && any.getDoctor() != doctor && any.getDate().atTime(any.getTime())
+                .isBefore(mine.getDate().atTime(mine.getTime()))) {
+            System.out.println("Earliest slot with any doctor: " + any);
+        }
+    }
+
     // ! Method to update the details of an existing appointment.
     public static void updateAppointment(Scanner scanner) {
         System.out.println("\n" + "=".repeat(40));
@@ -443,14 +484,33 @@ public class AuroraSkinCareSystem {
             System.out.println("Appointment not found. Please check the ID and try again.");
             return;
         }
+        if (!appointment.getStatus().isActive()) {
+            System.out.println(appointment.getStatus().getLabel() + " appointments cannot be updated.");
+            return;
+        }
 
         System.out.print("Enter New Date (| Mon | Wed | Fri | Sat |): ");
         String newDate = scanner.nextLine().trim(); // * Get new appointment date
         System.out.print("Enter New Time (e.g., 10:00am): ");
         String newTime = scanner.nextLine().trim(); // * Get new appointment time
 
-        // Update the appointment's date and time
-        appointment.updateDateTime(newDate, newTime); // * Update method call
+        if (AppointmentDates.parseDate(newDate) == null || AppointmentDates.parseTime(newTime) == null) {
+            System.out.println("Invalid date or time. Use a day (Mon, Wed, Fri, Sat) or yyyy-MM-dd, and a time like 10:00am.");
+            return;
+        }
+
+        // Update the appointment's date and time, the old slot is kept if the new one is taken
+        try {
+            service.rescheduleAppointment(appointment, newDate, newTime); // * Update method call
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+            if (appointment.getStatus().isActive()) {
+                printNextFreeSlots(appointment.getDoctor(), AppointmentDates.parseDate(newDate),
+                        AppointmentDates.parseTime(newTime));
+            }
+            return;
+        }
+        System.out.println("Appointment updated to Date: " + newDate + ", Time: " + newTime);
         System.out.println("Appointment updated successfully.");
         System.out.println("Updated Appointment Details: " + appointment.getDetails());
         System.out.println("=" + "=".repeat(40));
@@ -462,27 +522,31 @@ public class AuroraSkinCareSystem {
         System.out.println("         View Appointments by Date         ");
         System.out.println("=" + "=".repeat(38) + "=");
 
+        System.out.println("A range can be given as: <from> to <to> (e.g., 2024-10-14 to 2024-10-20)");
         System.out.print("Enter Date (| Mon | Wed | Fri | Sat |) to filter appointments: ");
         String date = scanner.nextLine().trim(); // Get the date from the user to filter appointments
 
-        boolean found = false; // Flag to check if any appointments are found
-        for (Appointment appTime : appointments) {
-            if (appTime.getDate().equals(date)) { // Check if the appointment's date matches the input date
-                System.out.println(appTime.getDetails());
-                found = true; // Set the flag to true if at least one appointment is found
-            }
+        List<Appointment> found;
+        try {
+            found = service.findAppointmentsOn(date);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        for (Appointment appTime : found) {
+            System.out.println(appTime.getDetails());
         }
 
-        if (!found) {
+        if (found.isEmpty()) {
             System.out.println("No appointments found for the date: " + date);
         }
 
         System.out.println("=" + "=".repeat(40));
     }
 
-    // ! Method to search for an appointment by ID or patient name.
+    // ! Method to search for an appointment by ID, patient NIC or patient name.
     public static void searchAppointment(Scanner scanner) {
-        System.out.print("Enter Appointment ID or Patient Name to search: ");
+        System.out.print("Enter Appointment ID, Patient NIC or Patient Name to search: ");
         String input = scanner.nextLine();
 
         try {
@@ -494,12 +558,38 @@ public class AuroraSkinCareSystem {
                 System.out.println("No appointment found with ID: " + id);
             }
         } catch (NumberFormatException e) {
-            // * Handle case where input is not an integer (search by patient name)
-            for (Appointment appTime : appointments) {
-                // * Check if the patient's name matches the input
-                if (appTime.getPatient().name.equalsIgnoreCase(input)) {
-                    System.out.println(appTime.getDetails());
-                }
+            Patient patient = findPatientByNic(input.trim());
+            if (patient != null) {
+                showPatientHistory(scanner, patient);
+                return;
+            }
+            // * Handle case where input is not an integer or a NIC (search by patient name)
+            for (Appointment appTime : service.findAppointmentsOfPatient(input, SEARCH_RESULT_LIMIT)) {
+                System.out.println(appTime.getDetails());
+            }
+        }
+    }
+
+    // ! Shows the visits of a patient a page at a time, newest first, so
+    // upcoming bookings come before the past ones.
+    static void showPatientHistory(Scanner scanner, Patient patient) {
+        String nic = patient.getNIC();
+        int total = repository.countHistoryOfPatient(nic);
+        Appointment lastVisit = repository.findLastVisitOfPatient(nic);
+        System.out.println("Patient: " + patient.getContactInfo());
+        System.out.println("Appointments: " + total + ", lifetime spend: LKR "
+                + Money.format(repository.findLifetimeSpendCentsOfPatient(nic)));
+        System.out.println("Last visit: " + (lastVisit == null ? "none yet" : lastVisit.getDetails()));
+        for (int page = 0; page * HISTORY_PAGE_SIZE < total; page++) {
+            for (Appointment appointment : service.findPatientHistory(nic, page, HISTORY_PAGE_SIZE)) {
+                System.out.println(appointment.getDetails());
+            }
+            if ((page + 1) * HISTORY_PAGE_SIZE >= total) {
+                break;
+            }
+            System.out.print("Press Enter for older appointments, or Q to stop: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                break;
             }
         }
     }
@@ -513,18 +603,13 @@ public class AuroraSkinCareSystem {
         System.out.print("Enter Doctor Name or ID (D***): ");
         String input = scanner.nextLine().trim(); // Get input and trim whitespace
 
-        boolean found = false; // Flag to check if the doctor is found
-        for (Doctor doctor : doctors) {
-            // Check if the doctor's name or employee ID matches the input (case
-            // insensitive)
-            if (doctor.name.equalsIgnoreCase(input) || doctor.employeeID.equalsIgnoreCase(input)) {
-                System.out.println("Doctor Found: " + doctor.getEmployeeDetails());
-                found = true; // Set the flag to true if the doctor is found
-                break;
-            }
-        }
+        // Look up the doctor by employee ID first, then by name (case insensitive)
+        Doctor doctor = service.findDoctor(input);
 
-        if (!found) {
+        if (doctor != null) {
+            System.out.println("Doctor Found: " + doctor.getEmployeeDetails());
+            System.out.println("Availability: " + String.join(", ", doctor.getSchedule()));
+        } else {
             System.out.println("Doctor not found. Please check the name or ID and try again.");
         }
 
@@ -540,12 +625,21 @@ public class AuroraSkinCareSystem {
         System.out.print("Enter Patient Name or NIC to search: ");
         String input = scanner.nextLine().trim(); // Get input and trim whitespace
 
-        for (Patient patient : patients) {
-            // * Check if the patient's name or NIC matches the input (case insensitive)
-            if (patient.name.equalsIgnoreCase(input) || patient.getNIC().equalsIgnoreCase(input)) {
-                System.out.println("Patient Found: " + patient.getContactInfo() + ", NIC: " + patient.getNIC());
-                return;
+        // * Check the NIC index first, then the name index (case insensitive)
+        Patient patient = service.findPatient(input);
+        if (patient != null) {
+            System.out.println("Patient Found: " + patient.getContactInfo() + ", NIC: " + patient.getNIC());
+            return;
+        }
+
+        // * No exact match, list the closest partial or misspelt names instead
+        List<Patient> similar = service.searchPatients(input, SEARCH_RESULT_LIMIT);
+        if (!similar.isEmpty()) {
+            System.out.println("No exact match. Closest matches:");
+            for (Patient match : similar) {
+                System.out.println("Patient Found: " + match.getContactInfo() + ", NIC: " + match.getNIC());
             }
+            return;
         }
         System.out.println("Patient not found. Please check the name or NIC and try again.");
 
@@ -562,7 +656,15 @@ public class AuroraSkinCareSystem {
         Appointment appointment = findAppointmentByID(id); // * Find the appointment by ID
 
         if (appointment != null) {
-            appointment.cancel(); // * Call the cancel method on the appointment if found
+            try {
+                Appointment backfilled = service.cancelAppointment(appointment); // * Cancel the appointment if found
+                System.out.println("Appointment canceled for: " + appointment.getPatient().name);
+                if (backfilled != null) {
+                    System.out.println("The slot was given to the waitlist: " + backfilled.getDetails());
+                }
+            } catch (IllegalStateException e) {
+                System.out.println(e.getMessage());
+            }
         } else {
             System.out.println("Appointment not found.");
         }
@@ -584,42 +686,151 @@ public class AuroraSkinCareSystem {
             return;
         }
 
-        System.out.print(
-                "Select Treatment Type (1: Acne Treatment, 2: Skin Whitening, 3: Mole Removal, 4: Laser Treatment): ");
-        int treatmentChoice = scanner.nextInt();
-        Treatment treatment;
+        // ! Determine the treatment by its ID in the catalog, it is priced as on the visit day
+        Treatment treatment = Appointment.selectTreatment(scanner, treatments);
+        if (treatment == null) {
+            System.out.println("Invalid treatment option.");
+            return;
+        }
 
-        // ! Determine the treatment based on user selection
-        switch (treatmentChoice) {
-            case 1:
-                treatment = new Treatment(1, "Acne Treatment", 2750.00);
-                break;
-            case 2:
-                treatment = new Treatment(2, "Skin Whitening", 7650.00);
-                break;
-            case 3:
-                treatment = new Treatment(3, "Mole Removal", 3850.00);
-                break;
-            case 4:
-                treatment = new Treatment(4, "Laser Treatment", 12500.00);
-                break;
-            default:
-                System.out.println("Invalid treatment option.");
+        // * Create a new Invoice object using the next invoice ID, this completes the visit.
+        Invoice invoice;
+        try {
+            invoice = service.issueInvoice(appointment, treatment);
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        invoice.generateInvoice();
+
+        System.out.println("=" + "=".repeat(40));
+    }
+
+    // ! Method to record whether a patient came to the appointment.
+    public static void recordVisitOutcome(Scanner scanner) {
+        System.out.println("\n" + "=".repeat(40));
+        System.out.println("          Record Visit Outcome          ");
+        System.out.println("=" + "=".repeat(38) + "=");
+
+        System.out.print("Enter Appointment ID: ");
+        int id = scanner.nextInt();
+        scanner.nextLine(); // * Consume the newline character
+        Appointment appointment = findAppointmentByID(id);
+        if (appointment == null) {
+            System.out.println("Appointment not found.");
+            return;
+        }
+
+        System.out.print("Outcome (1: Completed, 2: No-show): ");
+        String outcome = scanner.nextLine().trim();
+        try {
+            if (outcome.equals("1")) {
+                service.completeAppointment(appointment);
+            } else if (outcome.equals("2")) {
+                service.markNoShow(appointment);
+            } else {
+                System.out.println("Invalid outcome option.");
                 return;
+            }
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+            return;
         }
+        System.out.println("Updated Appointment Details: " + appointment.getDetails());
+        System.out.println("=" + "=".repeat(40));
+    }
 
-        // * Create a new Invoice object using the generated invoice ID.
-        Invoice invoice = new Invoice(invoiceCounter++, appointment, treatment);
-        invoice.generateInvoice();
+    // ! Method to show revenue, bookings and cancellations from the running totals.
+    public static void viewReports(Scanner scanner) {
+        System.out.println("\n" + "=".repeat(40));
+        System.out.println("              Clinic Reports              ");
+        System.out.println("=" + "=".repeat(38) + "=");
 
+        ClinicAnalytics analytics = service.getAnalytics();
+        System.out.println("Overall: " + reportLine(analytics.total()));
+        System.out.println("By treatment:");
+        for (Treatment treatment : treatments.list()) {
+            System.out.println("  " + treatment.getName() + ": "
+                    + reportLine(analytics.forTreatment(treatment.getTreatmentID())));
+        }
+        System.out.println("By doctor:");
+        for (Doctor doctor : repository.getDoctors()) {
+            System.out.println("  " + doctor.name + ": " + reportLine(analytics.forDoctor(doctor)));
+        }
+        if (ClinicMetrics.ENABLED) {
+            System.out.println("Response times (median / 99th percentile / slowest):");
+            ClinicMetrics metrics = service.getMetrics();
+            for (ClinicMetrics.Operation operation : ClinicMetrics.Operation.values()) {
+                ClinicMetrics.Histogram.Snapshot latency = metrics.latency(operation).snapshot();
+                if (latency.getCount() > 0) {
+                    System.out.printf("  %s: %d calls, %.3f / %.3f / %.3f ms, %d failed%n", operation.getLabel(),
+                            latency.getCount(), latency.percentile(0.5) / 1e6, latency.percentile(0.99) / 1e6,
+                            metrics.latency(operation).getMaxNanos() / 1e6, metrics.getFailures(operation));
+                }
+            }
+        }
+        if (reminders != null) {
+            System.out.printf("Reminders: %,d scheduled, %,d sent, %,d skipped, %,d failed batches%n",
+                    reminders.getScheduled(), reminders.getSent(), reminders.getSkipped(),
+                    reminders.getFailedBatches());
+            if (reminders.getLastFailure() != null) {
+                System.out.println("  Last failure: " + reminders.getLastFailure());
+            }
+        }
+        for (Map.Entry<String, Long> failed : service.getEvents().getFailures().entrySet()) {
+            if (failed.getValue() > 0) {
+                System.out.printf("Event subscriber %s: %,d events failed, last %s%n", failed.getKey(),
+                        failed.getValue(), service.getEvents().getLastFailure(failed.getKey()));
+            }
+        }
+        System.out.printf("Treatment catalog: version %d, %,d edits reloaded, %,d refused%n",
+                treatments.snapshot().getVersion(), treatments.getWatchedReloads(), treatments.getRefusedReloads());
+        if (treatments.getLastReloadFailure() != null) {
+            System.out.println("  Last refused: " + treatments.getLastReloadFailure());
+        }
+        if (persistence.getFailedSnapshots() > 0) {
+            System.out.printf("Snapshots: %,d failed, last %s%n", persistence.getFailedSnapshots(),
+                    persistence.getLastSnapshotFailure());
+        }
+        DoctorAssignment assignment = service.getAssignment();
+        System.out.println("Least loaded doctors:");
+        for (Doctor doctor : assignment.byLoad(5)) {
+            System.out.printf("  %s: %,d active appointments%n", doctor.name, assignment.getLoad(doctor));
+        }
+        if (DetailCache.BUDGET_BYTES > 0) {
+            System.out.println("Detail caches:");
+            for (DetailCache<?> cache : DetailCache.all()) {
+                System.out.println("  " + cache);
+            }
+        }
+
+        System.out.print("Enter Date or range for daily figures (blank to skip): ");
+        String dates = scanner.nextLine().trim();
+        if (!dates.isEmpty()) {
+            String[] range = dates.split("(?i)\\s+to\\s+", 2);
+            LocalDate from = AppointmentDates.parseDate(range[0]);
+            LocalDate to = range.length == 2 && from != null ? AppointmentDates.parseDate(range[1], from) : from;
+            if (from == null || to == null) {
+                System.out.println("Invalid date. Use a day (Mon, Wed, Fri, Sat) or yyyy-MM-dd.");
+                return;
+            }
+            for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+                System.out.println("  " + day + ": " + reportLine(analytics.forDay(day)));
+            }
+        }
         System.out.println("=" + "=".repeat(40));
     }
 
+    static String reportLine(ClinicAnalytics.Counters counters) {
+        return String.format("%d booked, %d canceled (%.1f%%), %d completed, %d no-shows, revenue LKR %s",
+                counters.getBooked(), counters.getCanceled(), counters.getCancellationRate() * 100,
+                counters.getCompleted(), counters.getNoShows(), Money.format(counters.getRevenueCents()));
+    }
+
     // ! Method to find a patient by NIC.
     public static Patient findPatientByNic(String nic) {
-        // * Use a stream to filter the list of patients and find the first patient with
-        // the matching NIC
-        return patients.stream().filter(p -> p.getNIC().equals(nic)).findFirst().orElse(null);
+        // * Use the NIC hash index instead of scanning the list of patients
+        return repository.findPatientByNic(nic);
     }
 
     // ! Method to search for a patient by NIC with user feedback.
@@ -644,9 +855,9 @@ public class AuroraSkinCareSystem {
 
     // ! Method to find an appointment by ID.
     public static Appointment findAppointmentByID(int id) {
-        // * Use a stream to filter the list of appointments and find the first
-        // appointment with the matching ID
-        return appointments.stream().filter(a -> a.getAppointmentID() == id).findFirst().orElse(null);
+        // * Use the appointment ID hash index instead of scanning the list of
+        // appointments
+        return repository.findAppointmentByID(id);
     }
 
     // ! Method to search for an appointment by ID with user feedback.
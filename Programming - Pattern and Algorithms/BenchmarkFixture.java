@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Benchmark Fixture
+// ! Shared by the benchmark modes: synthetic names and NICs, a clinic opened
+// on a data directory and closed again, the checks several modes run on
+// their appointments, and the PASS or FAIL verdict every checking mode ends with.
+final class BenchmarkFixture {
+    static final int KEYS = 4096; // * Power of two, keys are picked with a mask
+    static final String[] FIRST_NAMES = { "Anura", "Kamala", "Nimal", "Anushka", "Sunil", "Dilani",
+            "Ruwan", "Ishara", "Mohamed", "Fathima", "Kasun", "Tharushi", "Brian", "Ijlan", "Sanduni", "Chaminda" };
+    static final String[] LAST_NAMES = { "Perera", "Fernando", "Silva", "Jayasinghe", "Bandara",
+            "Wickramasinghe", "Rathnayake", "Dissanayake", "Aathi", "Kumara", "Herath", "Gunawardena" };
+    static final long SCAN_BUDGET = 200_000_000L; // * Records visited per scan measurement
+
+    private BenchmarkFixture() {
+    }
+
+    // * Builds a realistic patient name from common first and last names
+    static String name(int i) {
+        return FIRST_NAMES[i % FIRST_NAMES.length] + " " + LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length];
+    }
+
+    // * Builds a 12 digit NIC number for the synthetic patient
+    static String nic(int i) {
+        return String.format("%012d", 200000000000L + i);
+    }
+
+    // * Synthetic patient number i, not registered anywhere
+    static Patient patient(int i) {
+        return new Patient(name(i), "patient" + i + "@mail.com", "07" + i, nic(i));
+    }
+
+    // * The same patient registered at the clinic
+    static Patient register(ClinicService clinic, int i) {
+        return clinic.registerPatient(name(i), "patient" + i + "@mail.com", "07" + i, nic(i));
+    }
+
+    static String dateOf(int i) {
+        return LocalDate.of(2026, 1, 1).plusDays(i % 365).toString();
+    }
+
+    static String timeOf(int i) {
+        return String.format("%02d:%02d", 8 + (i / 365) % 10, 15 * (i % 4));
+    }
+
+    static ClinicService openClinic(Path directory, TreatmentCatalog treatments) throws IOException {
+        ClinicRepository repository = new ClinicRepository();
+        repository.attachStore(new AppointmentStore(directory.resolve("store")), treatments);
+        ClinicPersistence persistence = new ClinicPersistence(directory, repository, treatments, 10_000);
+        SchedulingEngine scheduler = new SchedulingEngine();
+        for (Appointment appointment : repository.getAppointmentsInMemory()) {
+            if (appointment.getStatus().holdsSlot()) {
+                scheduler.restore(appointment.getDoctor(), appointment.getLocalDate(), appointment.getLocalTime());
+            }
+        }
+        return new ClinicService(repository, persistence, scheduler, treatments);
+    }
+
+    static void closeClinic(ClinicService service) throws IOException {
+        service.close();
+        service.getPersistence().close();
+        service.getRepository().getStore().close();
+    }
+
+    static void deleteTree(Path directory) throws IOException {
+        try (var files = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) files.sorted((a, b) -> b.compareTo(a))::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // * Every ID once, every booked slot once, one appointment per successful booking
+    static void checkConsistency(List<Appointment> appointments, int booked, String when,
+            List<String> problems) {
+        Set<Integer> ids = new HashSet<>();
+        Set<String> slots = new HashSet<>();
+        for (Appointment appointment : appointments) {
+            if (!ids.add(appointment.getAppointmentID())) {
+                problems.add("Duplicate appointment ID " + appointment.getAppointmentID() + " " + when);
+            }
+            if (appointment.getStatus().holdsSlot() && !slots.add(appointment.getDoctor().employeeID + " "
+                    + appointment.getLocalDate() + " " + appointment.getLocalTime())) {
+                problems.add("Double booking " + appointment.getDetails() + " " + when);
+            }
+        }
+        if (appointments.size() != booked) {
+            problems.add(appointments.size() + " appointments for " + booked + " bookings " + when);
+        }
+    }
+
+    // * Same IDs with the same slot, status, patient, doctor and treatment
+    static void compare(List<Appointment> expected, List<Appointment> actual, String when,
+            List<String> problems) {
+        if (expected.size() != actual.size()) {
+            problems.add(actual.size() + " appointments " + when + ", expected " + expected.size());
+            return;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            Appointment a = expected.get(i);
+            Appointment b = actual.get(i);
+            if (a.getAppointmentID() != b.getAppointmentID() || !a.getLocalDate().equals(b.getLocalDate())
+                    || !a.getLocalTime().equals(b.getLocalTime()) || a.getStatus() != b.getStatus()
+                    || !a.getPatient().getNIC().equals(b.getPatient().getNIC())
+                    || !a.getDoctor().employeeID.equals(b.getDoctor().employeeID)
+                    || a.getTreatment().getTreatmentID() != b.getTreatment().getTreatmentID()) {
+                problems.add("Appointment " + a.getAppointmentID() + " differs " + when + ": " + b.getDetails());
+                return;
+            }
+        }
+    }
+
+    // ! Prints every problem and the verdict, true when there were none
+    static boolean report(List<String> problems) {
+        for (String problem : problems) {
+            System.out.println("FAIL: " + problem);
+        }
+        System.out.println(problems.isEmpty() ? "PASS" : "FAIL");
+        return problems.isEmpty();
+    }
+}
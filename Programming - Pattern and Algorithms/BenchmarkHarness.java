@@ -0,0 +1,120 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+// Benchmark Harness
+// ! Small measurement loop for ClinicBenchmark: a timed warmup, then timed
+// batches of calls. Reports throughput, latency percentiles per call and the
+// bytes allocated per call by the measuring thread.
+class BenchmarkHarness {
+    private static final long MIN_BATCH_NANOS = 2_000; // * Keeps System.nanoTime() out of short calls
+    private static final int MAX_SAMPLES = 1 << 20;
+
+    // ! One call of the code under test, the result feeds a sink so the JIT keeps it
+    interface Operation {
+        long run(int i);
+    }
+
+    // Result Class
+    static final class Result {
+        final String name;
+        final double opsPerSecond;
+        final double p50;
+        final double p90;
+        final double p99;
+        final double p999;
+        final double bytesPerOp;
+        final int batch;
+
+        Result(String name, double opsPerSecond, double p50, double p90, double p99, double p999, double bytesPerOp,
+                int batch) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.bytesPerOp = bytesPerOp;
+            this.batch = batch;
+        }
+    }
+
+    private final long warmupNanos;
+    private final long measureNanos;
+    private final long[] samples = new long[MAX_SAMPLES];
+    private long sink;
+
+    BenchmarkHarness(double warmupSeconds, double measureSeconds) {
+        this.warmupNanos = (long) (warmupSeconds * 1e9);
+        this.measureNanos = (long) (measureSeconds * 1e9);
+    }
+
+    public Result measure(String name, Operation operation) {
+        // * Warmup, also finds a batch size long enough to time reliably
+        int batch = 1;
+        int i = 0;
+        long warmupEnd = System.nanoTime() + warmupNanos;
+        while (System.nanoTime() < warmupEnd) {
+            long start = System.nanoTime();
+            for (int b = 0; b < batch; b++) {
+                sink += operation.run(i++);
+            }
+            if (System.nanoTime() - start < MIN_BATCH_NANOS && batch < 1 << 16) {
+                batch <<= 1;
+            }
+        }
+
+        // * Measurement, one sample per batch holding the mean time of its calls
+        int count = 0;
+        long calls = 0;
+        long allocatedBefore = allocatedBytes();
+        long begin = System.nanoTime();
+        long end = begin + measureNanos;
+        long now = begin;
+        while (now < end) {
+            long start = now;
+            for (int b = 0; b < batch; b++) {
+                sink += operation.run(i++);
+            }
+            now = System.nanoTime();
+            samples[count++ & (MAX_SAMPLES - 1)] = now - start;
+            calls += batch;
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+        double seconds = (now - begin) / 1e9;
+
+        int kept = Math.min(count, MAX_SAMPLES);
+        long[] sorted = Arrays.copyOf(samples, kept);
+        Arrays.sort(sorted);
+        return new Result(name, calls / seconds, percentile(sorted, 0.50, batch), percentile(sorted, 0.90, batch),
+                percentile(sorted, 0.99, batch), percentile(sorted, 0.999, batch),
+                allocated < 0 ? Double.NaN : allocated / (double) calls, batch);
+    }
+
+    private static double percentile(long[] sorted, double fraction, int batch) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / (double) batch;
+    }
+
+    // * Bytes allocated by this thread so far, -1 if the JVM cannot tell
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    public long getSink() {
+        return sink;
+    }
+
+    static void printHeader() {
+        System.out.printf("%-34s %14s %10s %10s %10s %10s %12s%n", "Operation", "ops/s", "p50 ns", "p90 ns",
+                "p99 ns", "p99.9 ns", "bytes/op");
+    }
+
+    static void print(Result result) {
+        System.out.printf("%-34s %,14.0f %10.1f %10.1f %10.1f %10.1f %12.1f%n", result.name, result.opsPerSecond,
+                result.p50, result.p90, result.p99, result.p999, result.bytesPerOp);
+    }
+}
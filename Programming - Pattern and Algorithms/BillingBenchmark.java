@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Billing Benchmark
+// ! The batch and money modes of ClinicBenchmark: InvoiceBatch throughput, and
+// Money and Tariff against BigDecimal.
+final class BillingBenchmark {
+    private BillingBenchmark() {
+    }
+
+    // ! Bills a day's worth of completed visits with InvoiceBatch and reports
+    // the run time and the heap left in use
+    static void runBatch(int count) throws IOException {
+        Path directory = Files.createTempDirectory("aurora-batch");
+        Doctor doctor = new Doctor("Dr. Bench", "bench@aurora.lk", "0770000000", "D001");
+        List<Treatment> treatments = new ArrayList<>();
+        treatments.add(new Treatment(1, "Acne Treatment", 2750.00));
+        treatments.add(new Treatment(2, "Skin Whitening", 7650.00));
+        treatments.add(new Treatment(3, "Mole Removal", 3850.00));
+        ClinicRepository repository = new ClinicRepository();
+        repository.addDoctor(doctor);
+        ClinicPersistence persistence = new ClinicPersistence(directory, repository, TreatmentCatalog.of(treatments),
+                Integer.MAX_VALUE);
+        ClinicService service = new ClinicService(repository, persistence, new SchedulingEngine(),
+                TreatmentCatalog.of(treatments));
+
+        LocalDate day = LocalDate.now();
+        int nextID = Appointment.getNextID();
+        for (int i = 0; i < count; i++) {
+            Patient patient = BenchmarkFixture.patient(i);
+            repository.addPatient(patient);
+            repository.addAppointment(new Appointment(nextID + i, day.toString(),
+                    AppointmentDates.formatTime(LocalTime.of(9, 0).plusMinutes(i % 600)), Status.COMPLETED, patient,
+                    doctor, treatments.get(i % treatments.size())));
+        }
+
+        long heapBefore = BenchmarkFixture.usedHeap();
+        InvoiceBatch.Summary summary = new InvoiceBatch(service).run(day, day, directory.resolve("invoices.txt"));
+        System.out.printf("Invoices:          %,d in %.2f s (%,.0f per second)%n", summary.getInvoices(),
+                summary.getSeconds(), summary.getInvoices() / summary.getSeconds());
+        System.out.printf("File:              %,d bytes, LKR %s billed%n", summary.getBytes(),
+                Money.format(summary.getBilledCents()));
+        System.out.printf("Heap growth:       %,d bytes%n", BenchmarkFixture.usedHeap() - heapBefore);
+
+        persistence.close();
+        BenchmarkFixture.deleteTree(directory);
+    }
+
+    // ! Random amounts and rates, half-cent ties and overflow edges priced by
+    // Money and Tariff and by BigDecimal, which must agree on every case
+    static boolean runMoneyCheck(int cases, long seed) {
+        Random random = new Random(seed);
+        BigDecimal hundredPercent = BigDecimal.valueOf(Money.BASIS_POINTS);
+        for (int i = 0; i < cases; i++) {
+            long cents;
+            switch (i % 4) {
+                case 0:
+                    cents = random.nextInt(10_000_000); // * Everyday prices
+                    break;
+                case 1:
+                    cents = 200 * (long) random.nextInt(1_000_000) + 100; // * Tax lands on half a cent at 2.5%
+                    break;
+                case 2:
+                    cents = random.nextLong() / Money.BASIS_POINTS; // * Huge and negative amounts
+                    break;
+                default:
+                    cents = random.nextLong(); // * Mostly overflows
+            }
+            int basisPoints = i % 3 == 0 ? 250 : random.nextInt(2 * Money.BASIS_POINTS);
+            long fee = random.nextInt(100_000);
+            String failure = null;
+
+            BigDecimal exactTax = BigDecimal.valueOf(cents).multiply(BigDecimal.valueOf(basisPoints))
+                    .divide(hundredPercent, 0, RoundingMode.HALF_UP);
+            BigDecimal exactTotal = BigDecimal.valueOf(cents).add(BigDecimal.valueOf(fee)).add(exactTax);
+            boolean fitsLong = BigDecimal.valueOf(cents).multiply(BigDecimal.valueOf(basisPoints)).toBigInteger()
+                    .bitLength() < 64
+                    && exactTotal.toBigInteger().bitLength() < 64;
+            try {
+                Tariff.Bill bill = new Tariff(basisPoints).bill(cents, fee);
+                if (!fitsLong) {
+                    failure = "overflow was not detected";
+                } else if (bill.getTaxCents() != exactTax.longValueExact()) {
+                    failure = "tax " + bill.getTaxCents() + " expected " + exactTax;
+                } else if (bill.getTotalCents() != exactTotal.longValueExact()) {
+                    failure = "total " + bill.getTotalCents() + " expected " + exactTotal;
+                } else if (!Money.format(bill.getTotalCents()).equals(BigDecimal.valueOf(bill.getTotalCents(), 2)
+                        .toPlainString())) {
+                    failure = "formatted as " + Money.format(bill.getTotalCents());
+                }
+            } catch (ArithmeticException e) {
+                if (fitsLong) {
+                    failure = "unexpected overflow";
+                }
+            }
+            if (failure == null && Math.abs(cents) < 1L << 40) {
+                BigDecimal rupees = BigDecimal.valueOf(cents, 2);
+                long expected = rupees.add(rupees.multiply(new BigDecimal("0.025")).setScale(2, RoundingMode.HALF_UP))
+                        .unscaledValue().longValueExact();
+                long actual = new Payment(rupees.doubleValue()).calculateTotalCents();
+                if (actual != expected) {
+                    failure = "payment total " + actual + " expected " + expected;
+                }
+            }
+            if (failure != null) {
+                System.out.printf("FAIL (seed %d, case %d): %d cents at %d bps, fee %d: %s%n", seed, i, cents,
+                        basisPoints, fee, failure);
+                return false;
+            }
+        }
+        System.out.printf("PASS: %,d cases agree with BigDecimal (seed %d)%n", cases, seed);
+        return true;
+    }
+}
@@ -0,0 +1,258 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+// Clinic Analytics
+// ! Running totals for the management dashboard: bookings, cancellations,
+// completed visits and revenue, overall and per treatment, doctor and day.
+// Every lifecycle event adds to a few LongAdders on the event bus thread, so
+// reading a figure never scans the appointments. A rebuild recomputes all
+// totals from the full history in parallel and reports any drift, the
+// recount covers the events published before it, those are not added again.
+class ClinicAnalytics implements ClinicEventBus.Subscriber {
+    static final Counters EMPTY = new Counters();
+    private static final int ARCHIVE_CHUNK = 1 << 16; // * Archived rows per task of a rebuild
+
+    // Counters Class
+    // ! Totals of one treatment, doctor or day. Bookings count every
+    // appointment made, so canceled and completed ones are included.
+    static final class Counters {
+        private final LongAdder booked = new LongAdder();
+        private final LongAdder canceled = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder noShows = new LongAdder();
+        private final LongAdder revenueCents = new LongAdder();
+
+        public long getBooked() {
+            return booked.sum();
+        }
+
+        public long getCanceled() {
+            return canceled.sum();
+        }
+
+        public long getCompleted() {
+            return completed.sum();
+        }
+
+        public long getNoShows() {
+            return noShows.sum();
+        }
+
+        public long getRevenueCents() {
+            return revenueCents.sum();
+        }
+
+        // * Share of the bookings that were canceled, 0 without bookings
+        public double getCancellationRate() {
+            long bookings = getBooked();
+            return bookings == 0 ? 0 : getCanceled() / (double) bookings;
+        }
+
+        boolean sameAs(Counters other) {
+            return getBooked() == other.getBooked() && getCanceled() == other.getCanceled()
+                    && getCompleted() == other.getCompleted() && getNoShows() == other.getNoShows()
+                    && getRevenueCents() == other.getRevenueCents();
+        }
+
+        @Override
+        public String toString() {
+            return "booked " + getBooked() + ", canceled " + getCanceled() + ", completed " + getCompleted()
+                    + ", no-shows " + getNoShows() + ", revenue LKR " + Money.format(getRevenueCents());
+        }
+    }
+
+    // Tables Class
+    // ! One complete set of totals, swapped as a whole by a rebuild.
+    private static final class Tables {
+        final long firstSequence; // * Events before it are already counted
+        final Counters total = new Counters();
+        final Map<Integer, Counters> byTreatment = new ConcurrentHashMap<>();
+        final Map<String, Counters> byDoctor = new ConcurrentHashMap<>();
+        final Map<LocalDate, Counters> byDay = new ConcurrentHashMap<>();
+
+        Tables(long firstSequence) {
+            this.firstSequence = firstSequence;
+        }
+    }
+
+    private volatile Tables tables = new Tables(0);
+
+    // ! Counts one saved transition. The day comes from the event, the
+    // appointment may have moved again since.
+    @Override
+    public void onEvent(ClinicEventBus.Event event) {
+        Tables t = tables;
+        if (event.getSequence() < t.firstSequence) {
+            return; // * Published before the recount, which includes it
+        }
+        Appointment appointment = event.getAppointment();
+        Treatment treatment = event.getTreatment();
+        switch (event.getStatus()) {
+            case BOOKED:
+                for (Counters counters : countersOf(t, treatment, appointment, event.getDate())) {
+                    counters.booked.increment();
+                }
+                break;
+            case RESCHEDULED: // * The booking now counts on its new day
+                if (event.getPreviousDate() != null) {
+                    dayCounters(t, event.getPreviousDate()).booked.decrement();
+                }
+                if (event.getDate() != null) {
+                    dayCounters(t, event.getDate()).booked.increment();
+                }
+                break;
+            case CANCELED:
+                for (Counters counters : countersOf(t, treatment, appointment, event.getDate())) {
+                    counters.canceled.increment();
+                }
+                break;
+            case COMPLETED:
+                Treatment booked = event.getPreviousTreatment();
+                if (booked != null && booked.getTreatmentID() != treatment.getTreatmentID()) {
+                    // * Given another treatment than booked, the booking counts for that one now
+                    treatmentCounters(t, booked).booked.decrement();
+                    treatmentCounters(t, treatment).booked.increment();
+                }
+                long revenue = revenueOf(treatment, appointment.getRegistrationFeeCents(), event.getDate());
+                for (Counters counters : countersOf(t, treatment, appointment, event.getDate())) {
+                    counters.completed.increment();
+                    counters.revenueCents.add(revenue);
+                }
+                break;
+            case NO_SHOW:
+                for (Counters counters : countersOf(t, treatment, appointment, event.getDate())) {
+                    counters.noShows.increment();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // ! Dashboard queries, each a map lookup
+
+    public Counters total() {
+        return tables.total;
+    }
+
+    public Counters forTreatment(int treatmentID) {
+        return tables.byTreatment.getOrDefault(treatmentID, EMPTY);
+    }
+
+    public Counters forDoctor(Doctor doctor) {
+        return tables.byDoctor.getOrDefault(doctor.employeeID, EMPTY);
+    }
+
+    public Counters forDay(LocalDate date) {
+        return tables.byDay.getOrDefault(date, EMPTY);
+    }
+
+    // * Treatment IDs that have any totals, in order
+    public List<Integer> getTreatmentIDs() {
+        return new ArrayList<>(new TreeMap<>(tables.byTreatment).keySet());
+    }
+
+    // ! Recomputes every total from the history on a parallel stream, swaps
+    // the new totals in and returns one line per figure that had drifted.
+    // The history must include every event published before firstSequence and
+    // none after it, ClinicService.rebuildTotals() holds off publishing while
+    // it takes it. Events not yet handled by the bus thread may show up as
+    // drift. Archived rows are read in chunks through one store view each, so
+    // the archive never comes back onto the heap.
+    public List<String> rebuild(ClinicRepository.History history, long firstSequence) {
+        Tables fresh = new Tables(firstSequence);
+        history.getInMemory().parallelStream().forEach(appointment -> count(fresh, appointment.getTreatment(),
+                appointment.getDoctor(), appointment.getLocalDate(), appointment.getStatus(),
+                appointment.getRegistrationFeeCents()));
+        int archived = history.getArchivedCount();
+        IntStream.range(0, (archived + ARCHIVE_CHUNK - 1) / ARCHIVE_CHUNK).parallel().forEach(chunk -> {
+            AppointmentStore.View row = history.archiveView();
+            int end = Math.min(archived, (chunk + 1) * ARCHIVE_CHUNK);
+            for (int i = chunk * ARCHIVE_CHUNK; i < end && row.moveTo(i); i++) {
+                count(fresh, row.getTreatment(), row.getDoctor(), row.getLocalDate(), row.getStatus(),
+                        row.getRegistrationFeeCents());
+            }
+        });
+
+        Tables old = tables;
+        tables = fresh;
+        List<String> drift = new ArrayList<>();
+        compare("Total", old.total, fresh.total, drift);
+        compare("Treatment ", old.byTreatment, fresh.byTreatment, drift);
+        compare("Doctor ", old.byDoctor, fresh.byDoctor, drift);
+        compare("Day ", old.byDay, fresh.byDay, drift);
+        return drift;
+    }
+
+    private static <K> void compare(String label, Map<K, Counters> old, Map<K, Counters> fresh, List<String> drift) {
+        for (Map.Entry<K, Counters> entry : fresh.entrySet()) {
+            compare(label + entry.getKey(), old.getOrDefault(entry.getKey(), EMPTY), entry.getValue(), drift);
+        }
+        for (Map.Entry<K, Counters> entry : old.entrySet()) {
+            if (!fresh.containsKey(entry.getKey())) {
+                compare(label + entry.getKey(), entry.getValue(), EMPTY, drift);
+            }
+        }
+    }
+
+    private static void compare(String label, Counters old, Counters fresh, List<String> drift) {
+        if (!old.sameAs(fresh)) {
+            drift.add(label + ": was " + old + ", is " + fresh);
+        }
+    }
+
+    // * One appointment of a rebuild, in its final status
+    private static void count(Tables t, Treatment treatment, Doctor doctor, LocalDate date, Status status,
+            long feeCents) {
+        long revenue = status == Status.COMPLETED ? revenueOf(treatment, feeCents, date) : 0;
+        for (Counters counters : countersOf(t, treatment, doctor, date)) {
+            counters.booked.increment();
+            if (status == Status.CANCELED) {
+                counters.canceled.increment();
+            } else if (status == Status.COMPLETED) {
+                counters.completed.increment();
+                counters.revenueCents.add(revenue);
+            } else if (status == Status.NO_SHOW) {
+                counters.noShows.increment();
+            }
+        }
+    }
+
+    // * Revenue of a completed visit, the total of its bill at the price of the visit day
+    static long revenueOf(Appointment appointment) {
+        return revenueOf(appointment.getTreatment(), appointment.getRegistrationFeeCents(),
+                appointment.getLocalDate());
+    }
+
+    private static long revenueOf(Treatment treatment, long feeCents, LocalDate date) {
+        return Tariff.STANDARD.bill(treatment.getPriceCents(date), feeCents).getTotalCents();
+    }
+
+    private static Counters[] countersOf(Tables t, Treatment given, Appointment appointment, LocalDate date) {
+        return countersOf(t, given, appointment.getDoctor(), date);
+    }
+
+    // * Total, treatment, doctor and (when the date is known) day counters
+    private static Counters[] countersOf(Tables t, Treatment given, Doctor doctorOf, LocalDate date) {
+        Counters treatment = treatmentCounters(t, given);
+        Counters doctor = t.byDoctor.computeIfAbsent(doctorOf.employeeID, k -> new Counters());
+        if (date == null) {
+            return new Counters[] { t.total, treatment, doctor };
+        }
+        return new Counters[] { t.total, treatment, doctor, dayCounters(t, date) };
+    }
+
+    private static Counters treatmentCounters(Tables t, Treatment treatment) {
+        return t.byTreatment.computeIfAbsent(treatment.getTreatmentID(), k -> new Counters());
+    }
+
+    private static Counters dayCounters(Tables t, LocalDate date) {
+        return t.byDay.computeIfAbsent(date, k -> new Counters());
+    }
+}
@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Benchmark Class
+// ! Compares the repository hash indexes with the linear scans they replaced,
+// and dispatches the other modes to the benchmark next to the code they cover.
+// The checking modes print PASS or FAIL and exit with 0 or 1.
+// Run with: java -Xmx3g ClinicBenchmark [sizes...]
+//      or: java ClinicBenchmark ops [records] [seconds per operation]
+//      or: java ClinicBenchmark store [rows] [archived] (off-heap appointment store and archive)
+//      or: java ClinicBenchmark stress [threads] [operations per thread]
+//      or: java ClinicBenchmark batch [completed appointments] (batch invoicing)
+//      or: java ClinicBenchmark money [cases] [seed] (Money and Tariff against BigDecimal)
+//      or: java -Xmx3g ClinicBenchmark csv [rows] (CSV import, export and restart round trip)
+//      or: java ClinicBenchmark catalog [reloads] [readers] (price versions and hot reload)
+//      or: java [-Daurora.metrics=false] ClinicBenchmark metrics [patients] (histogram accuracy, overhead)
+//      or: java -Xmx3g ClinicBenchmark footprint [records] (heap bytes per patient and appointment)
+//      or: java ClinicBenchmark waitlist [threads] [waiting per doctor] (backfill of a burst of cancellations)
+//      or: java ClinicBenchmark partitions [branches] [appointments per branch] (in process, then one each)
+//      or: java ClinicBenchmark script [operations] (generated workload, replayed twice and after a restart)
+//      or: java ClinicBenchmark details [appointments] [listings] (detail string cache, invalidation, eviction)
+//      or: java -Xmx3g ClinicBenchmark reminders [timers] (timing wheel at scale, rate-limited dispatch)
+//      or: java ClinicBenchmark assign [doctors] [bookings] (doctor load buckets at scale, automatic booking)
+//      or: java ClinicBenchmark history [patients] [seconds per operation] (patient timelines against a scan)
+//      or: java ClinicBenchmark calendar (slot calendars rolling over midnight)
+public class ClinicBenchmark {
+    private static final int INDEX_LOOKUPS = 1_000_000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String mode = args.length > 0 && !Character.isDigit(args[0].charAt(0)) ? args[0] : "lookups";
+        boolean passed;
+        switch (mode) {
+            case "ops":
+                runOperations(intArg(args, 1, 100_000), doubleArg(args, 2, 2.0));
+                return;
+            case "batch":
+                BillingBenchmark.runBatch(intArg(args, 1, 50_000));
+                return;
+            case "store":
+                AppointmentStoreBenchmark.runStore(intArg(args, 1, 10_000_000));
+                passed = AppointmentStoreBenchmark.checkArchive(intArg(args, 2, 20_000));
+                break;
+            case "money":
+                passed = BillingBenchmark.runMoneyCheck(intArg(args, 1, 1_000_000),
+                        args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime());
+                break;
+            case "csv":
+                passed = ClinicCsvBenchmark.runCsv(intArg(args, 1, 1_000_000));
+                break;
+            case "catalog":
+                passed = TreatmentCatalogBenchmark.runCatalog(intArg(args, 1, 2_000), intArg(args, 2, 4));
+                break;
+            case "metrics":
+                passed = ClinicMetricsBenchmark.runMetrics(intArg(args, 1, 100_000));
+                break;
+            case "footprint":
+                passed = FootprintBenchmark.runFootprint(intArg(args, 1, 1_000_000));
+                break;
+            case "waitlist":
+                passed = ClinicWaitlistBenchmark.runWaitlist(intArg(args, 1, 8), intArg(args, 2, 20));
+                break;
+            case "partitions":
+                passed = ClinicPartitionsBenchmark.runPartitions(intArg(args, 1, 3), intArg(args, 2, 40));
+                break;
+            case "script":
+                passed = ClinicScriptBenchmark.runScript(intArg(args, 1, 100_000));
+                break;
+            case "details":
+                passed = DetailCacheBenchmark.runDetails(intArg(args, 1, 100_000), intArg(args, 2, 20_000));
+                break;
+            case "reminders":
+                passed = ClinicRemindersBenchmark.runReminders(intArg(args, 1, 2_000_000));
+                break;
+            case "assign":
+                passed = DoctorAssignmentBenchmark.runAssign(intArg(args, 1, 100_000), intArg(args, 2, 400));
+                break;
+            case "history":
+                passed = PatientHistoryBenchmark.runHistory(intArg(args, 1, 50_000), doubleArg(args, 2, 1.0));
+                break;
+            case "stress":
+                passed = ClinicServiceBenchmark.runStress(
+                        intArg(args, 1, Runtime.getRuntime().availableProcessors() * 4), intArg(args, 2, 2_000));
+                break;
+            case "calendar":
+                passed = SchedulingEngineBenchmark.runCalendar();
+                break;
+            default:
+                int[] sizes = { 10_000, 100_000, 1_000_000 };
+                if (args.length > 0) {
+                    sizes = new int[args.length];
+                    for (int i = 0; i < args.length; i++) {
+                        sizes[i] = Integer.parseInt(args[i]);
+                    }
+                }
+                System.out.printf("%-10s %-22s %14s %14s%n", "Records", "Lookup", "Scan (ns/op)", "Index (ns/op)");
+                for (int size : sizes) {
+                    runLookups(size);
+                }
+                return;
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static int intArg(String[] args, int index, int fallback) {
+        return args.length > index ? Integer.parseInt(args[index]) : fallback;
+    }
+
+    private static double doubleArg(String[] args, int index, double fallback) {
+        return args.length > index ? Double.parseDouble(args[index]) : fallback;
+    }
+
+    // ! Builds a synthetic clinic with the given number of patients and
+    // appointments and measures both lookup styles on it.
+    private static void runLookups(int size) {
+        Doctor doctor = new Doctor("Dr. Bench", "bench@aurora.lk", "0770000000", "D001");
+        Treatment treatment = new Treatment(1, "Acne Treatment", 2750.00);
+        ClinicRepository repository = new ClinicRepository();
+        List<Patient> patients = new ArrayList<>(size);
+        List<Appointment> appointments = new ArrayList<>(size);
+        repository.addDoctor(doctor);
+
+        for (int i = 0; i < size; i++) {
+            Patient patient = BenchmarkFixture.patient(i);
+            Appointment appointment = new Appointment("Mon", "10:00am", patient, doctor, treatment);
+            patients.add(patient);
+            appointments.add(appointment);
+            repository.addPatient(patient);
+            repository.addAppointment(appointment);
+        }
+        int firstID = appointments.get(0).getAppointmentID();
+
+        // * Lookup keys are prepared up front so only the lookups are timed
+        Random random = new Random(42);
+        String[] nicKeys = new String[BenchmarkFixture.KEYS];
+        int[] idKeys = new int[BenchmarkFixture.KEYS];
+        for (int i = 0; i < BenchmarkFixture.KEYS; i++) {
+            nicKeys[i] = BenchmarkFixture.nic(random.nextInt(size));
+            idKeys[i] = firstID + random.nextInt(size);
+        }
+        int scanLookups = (int) Math.max(10, Math.min(INDEX_LOOKUPS, BenchmarkFixture.SCAN_BUDGET / size));
+        long sink = 0;
+
+        // * Patient by NIC
+        long start = System.nanoTime();
+        for (int i = 0; i < scanLookups; i++) {
+            String key = nicKeys[i & (BenchmarkFixture.KEYS - 1)];
+            Patient found = patients.stream().filter(p -> p.getNIC().equals(key)).findFirst().orElse(null);
+            sink += found.hashCode();
+        }
+        double scanNic = (System.nanoTime() - start) / (double) scanLookups;
+
+        start = System.nanoTime();
+        for (int i = 0; i < INDEX_LOOKUPS; i++) {
+            sink += repository.findPatientByNic(nicKeys[i & (BenchmarkFixture.KEYS - 1)]).hashCode();
+        }
+        double indexNic = (System.nanoTime() - start) / (double) INDEX_LOOKUPS;
+
+        // * Appointment by ID
+        start = System.nanoTime();
+        for (int i = 0; i < scanLookups; i++) {
+            int id = idKeys[i & (BenchmarkFixture.KEYS - 1)];
+            Appointment found = appointments.stream().filter(a -> a.getAppointmentID() == id).findFirst()
+                    .orElse(null);
+            sink += found.hashCode();
+        }
+        double scanID = (System.nanoTime() - start) / (double) scanLookups;
+
+        start = System.nanoTime();
+        for (int i = 0; i < INDEX_LOOKUPS; i++) {
+            sink += repository.findAppointmentByID(idKeys[i & (BenchmarkFixture.KEYS - 1)]).hashCode();
+        }
+        double indexID = (System.nanoTime() - start) / (double) INDEX_LOOKUPS;
+
+        // * Patient name search, the scan only handles the exact case insensitive match
+        String[] names = { "Anu", "prera", "kamala fernando", "Silvaa" };
+        start = System.nanoTime();
+        for (int i = 0; i < scanLookups; i++) {
+            String key = names[i & 3];
+            sink += patients.stream().filter(p -> p.name.equalsIgnoreCase(key)).count();
+        }
+        double scanName = (System.nanoTime() - start) / (double) scanLookups;
+
+        int nameLookups = INDEX_LOOKUPS / 10;
+        start = System.nanoTime();
+        for (int i = 0; i < nameLookups; i++) {
+            sink += repository.searchPatientsByName(names[i & 3], 10).size();
+        }
+        double indexName = (System.nanoTime() - start) / (double) nameLookups;
+
+        System.out.printf("%-10d %-22s %14.1f %14.1f%n", size, "findPatientByNic", scanNic, indexNic);
+        System.out.printf("%-10d %-22s %14.1f %14.1f%n", size, "findAppointmentByID", scanID, indexID);
+        System.out.printf("%-10d %-22s %14.1f %14.1f%n", size, "searchPatientsByName", scanName, indexName);
+        if (sink == 42) {
+            System.out.println(); // * Keeps the JIT from removing the lookups
+        }
+    }
+
+    // ! Throughput, latency percentiles and allocation of the core operations
+    // on a synthetic clinic of the given size
+    private static void runOperations(int size, double seconds) {
+        Doctor doctor = new Doctor("Dr. Bench", "bench@aurora.lk", "0770000000", "D001");
+        Treatment treatment = new Treatment(1, "Acne Treatment", 2750.00);
+        ClinicRepository repository = new ClinicRepository();
+        repository.addDoctor(doctor);
+        String[] days = { "Mon", "Wed", "Fri", "Sat" };
+        LocalDate firstDay = LocalDate.now();
+        List<Appointment> appointments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Patient patient = BenchmarkFixture.patient(i);
+            repository.addPatient(patient);
+            // * Spread over a year so a day bucket holds about size / 365 bookings
+            Appointment appointment = new Appointment(firstDay.plusDays(i % 365).toString(), "10:00am", patient,
+                    doctor, treatment);
+            appointments.add(appointment);
+            repository.addAppointment(appointment);
+        }
+        int firstID = appointments.get(0).getAppointmentID();
+
+        Random random = new Random(42);
+        String[] nicKeys = new String[BenchmarkFixture.KEYS];
+        int[] idKeys = new int[BenchmarkFixture.KEYS];
+        LocalDate[] dateKeys = new LocalDate[BenchmarkFixture.KEYS];
+        Invoice[] invoices = new Invoice[BenchmarkFixture.KEYS];
+        Payment[] payments = new Payment[BenchmarkFixture.KEYS];
+        for (int i = 0; i < BenchmarkFixture.KEYS; i++) {
+            int record = random.nextInt(size);
+            nicKeys[i] = BenchmarkFixture.nic(record);
+            idKeys[i] = firstID + record;
+            dateKeys[i] = firstDay.plusDays(random.nextInt(365));
+            invoices[i] = new Invoice(i + 1, appointments.get(record), treatment);
+            payments[i] = new Payment(1000 + random.nextInt(20_000) + random.nextInt(100) / 100.0);
+        }
+
+        BenchmarkHarness harness = new BenchmarkHarness(Math.min(1.0, seconds / 2), seconds);
+        System.out.printf("Records: %,d, %.1f s per operation%n", size, seconds);
+        BenchmarkHarness.printHeader();
+        BenchmarkHarness.print(harness.measure("findPatientByNic",
+                i -> repository.findPatientByNic(nicKeys[i & (BenchmarkFixture.KEYS - 1)]).hashCode()));
+        BenchmarkHarness.print(harness.measure("findAppointmentByID",
+                i -> repository.findAppointmentByID(idKeys[i & (BenchmarkFixture.KEYS - 1)]).getAppointmentID()));
+        BenchmarkHarness.print(harness.measure("viewAppointmentsByDate (day)",
+                i -> repository.findAppointmentsOn(dateKeys[i & (BenchmarkFixture.KEYS - 1)]).size()));
+        BenchmarkHarness.print(harness.measure("viewAppointmentsByDate (week)",
+                i -> repository.findAppointmentsBetween(dateKeys[i & (BenchmarkFixture.KEYS - 1)],
+                        dateKeys[i & (BenchmarkFixture.KEYS - 1)].plusDays(6)).size()));
+        BenchmarkHarness.print(harness.measure("AppointmentDates.parseDate",
+                i -> AppointmentDates.parseDate(days[i & 3]).getDayOfYear()));
+        BenchmarkHarness.print(harness.measure("Appointment.getDetails",
+                i -> appointments.get(idKeys[i & (BenchmarkFixture.KEYS - 1)] - firstID).getDetails().length()));
+        BenchmarkHarness.print(harness.measure("Payment.calculateTotalAmount",
+                i -> (long) payments[i & (BenchmarkFixture.KEYS - 1)].calculateTotalAmount()));
+
+        // * The invoice prints, so its output goes nowhere while it is measured
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        BenchmarkHarness.Result invoice;
+        try {
+            invoice = harness.measure("Invoice.generateInvoice", i -> {
+                invoices[i & (BenchmarkFixture.KEYS - 1)].generateInvoice();
+                return i;
+            });
+        } finally {
+            System.setOut(console);
+        }
+        BenchmarkHarness.print(invoice);
+        InvoiceRenderer renderer = new InvoiceRenderer();
+        StringBuilder buffer = new StringBuilder(1024);
+        BenchmarkHarness.print(harness.measure("InvoiceRenderer.render (reused)", i -> {
+            buffer.setLength(0);
+            return renderer.render(invoices[i & (BenchmarkFixture.KEYS - 1)], buffer).length();
+        }));
+        System.out.println(harness.getSink() == 42 ? " " : ""); // * Keeps the JIT from removing the calls
+    }
+
+}
@@ -0,0 +1,399 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Clinic CSV
+// ! Bulk import and export of the clinic records as CSV files, for migrating
+// records from another system. A directory holds doctors.csv, patients.csv
+// and appointments.csv; each starts with a header row naming its columns (in
+// any order, extra columns are ignored). Files are streamed through CsvReader,
+// rows are validated with the checks of the menu plus duplicate NIC, employee
+// ID and appointment ID detection, and the valid ones are saved in batches of
+// one journal record each. Rejected rows are counted and the first few are
+// reported with their line numbers.
+class ClinicCsv {
+    static final String DOCTORS_FILE = "doctors.csv";
+    static final String PATIENTS_FILE = "patients.csv";
+    static final String APPOINTMENTS_FILE = "appointments.csv";
+    static final String[] DOCTOR_COLUMNS = { "name", "email", "contactNumber", "employeeID" };
+    static final String[] PATIENT_COLUMNS = { "name", "email", "contactNumber", "nic" };
+    static final String[] APPOINTMENT_COLUMNS = { "id", "date", "time", "status", "nic", "employeeID",
+            "treatmentID" };
+
+    static final int BATCH_ROWS = 4096;
+    private static final int BATCH_CHARS = 1 << 18; // * Keeps a batch well inside one journal record
+    private static final int MAX_ERRORS = 20; // * Rejected rows listed in a report
+
+    // Progress Interface
+    // ! Called after every batch with how far the file has been read.
+    interface Progress {
+        void update(Path file, long bytesRead, long totalBytes, long rows);
+    }
+
+    // Console Progress Class
+    // ! Prints a line each time another tenth of a file has been read.
+    static final class ConsoleProgress implements Progress {
+        private Path file;
+        private long shown;
+
+        @Override
+        public void update(Path file, long bytesRead, long totalBytes, long rows) {
+            long tenths = totalBytes == 0 ? 10 : bytesRead * 10 / totalBytes;
+            if (!file.equals(this.file)) {
+                this.file = file;
+                shown = 0;
+            }
+            if (tenths > shown) {
+                shown = tenths;
+                System.out.printf("%s: %d%% (%,d rows)%n", file.getFileName(), tenths * 10, rows);
+            }
+        }
+    }
+
+    // Report Class
+    // ! Outcome of one imported file.
+    static final class Report {
+        private final Path file;
+        private long rows;
+        private long imported;
+        private long rejected;
+        private final List<String> errors = new ArrayList<>();
+        private double seconds;
+
+        Report(Path file) {
+            this.file = file;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        // * The first rejected rows, "line N: reason"
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        void reject(long line, String reason) {
+            rejected++;
+            if (errors.size() < MAX_ERRORS) {
+                errors.add("line " + line + ": " + reason);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %,d rows, %,d imported, %,d rejected in %.2f s (%,.0f rows/s)",
+                    file.getFileName(), rows, imported, rejected, seconds, seconds > 0 ? rows / seconds : 0);
+        }
+    }
+
+    private final ClinicService service;
+    private final Progress progress;
+
+    ClinicCsv(ClinicService service, Progress progress) {
+        this.service = service;
+        this.progress = progress;
+    }
+
+    // ! Imports the files the directory has, doctors first so the
+    // appointments can refer to them, then takes a snapshot
+    public List<Report> importDirectory(Path directory) throws IOException {
+        List<Report> reports = new ArrayList<>();
+        Path doctors = directory.resolve(DOCTORS_FILE);
+        Path patients = directory.resolve(PATIENTS_FILE);
+        Path appointments = directory.resolve(APPOINTMENTS_FILE);
+        if (Files.exists(doctors)) {
+            reports.add(importDoctors(doctors));
+        }
+        if (Files.exists(patients)) {
+            reports.add(importPatients(patients));
+        }
+        if (Files.exists(appointments)) {
+            reports.add(importAppointments(appointments));
+        }
+        if (reports.isEmpty()) {
+            throw new IOException("No " + DOCTORS_FILE + ", " + PATIENTS_FILE + " or " + APPOINTMENTS_FILE + " in "
+                    + directory);
+        }
+        service.finishImport();
+        return reports;
+    }
+
+    public Report importDoctors(Path file) throws IOException {
+        Report report = new Report(file);
+        long start = System.nanoTime();
+        try (CsvReader csv = new CsvReader(file)) {
+            int[] column = header(csv, DOCTOR_COLUMNS);
+            Set<String> seen = new HashSet<>();
+            while (csv.next()) {
+                report.rows++;
+                String[] fields = required(csv, column);
+                if (fields == null) {
+                    report.reject(csv.getLine(), "all fields are required");
+                    continue;
+                }
+                String key = fields[3].toUpperCase(Locale.ROOT);
+                if (!seen.add(key) || service.getRepository().findDoctorByEmployeeID(fields[3]) != null) {
+                    report.reject(csv.getLine(), "duplicate employee ID " + fields[3]);
+                    continue;
+                }
+                service.importDoctor(new Doctor(fields[0], fields[1], fields[2], fields[3]));
+                report.imported++;
+            }
+            progress.update(file, csv.position(), csv.size(), report.rows);
+        }
+        report.seconds = (System.nanoTime() - start) / 1e9;
+        return report;
+    }
+
+    public Report importPatients(Path file) throws IOException {
+        Report report = new Report(file);
+        long start = System.nanoTime();
+        try (CsvReader csv = new CsvReader(file)) {
+            int[] column = header(csv, PATIENT_COLUMNS);
+            List<Patient> batch = new ArrayList<>(BATCH_ROWS);
+            Set<String> batchNics = new HashSet<>(); // * Earlier batches are already in the NIC index
+            int batchChars = 0;
+            while (csv.next()) {
+                report.rows++;
+                String[] fields = required(csv, column);
+                if (fields == null) {
+                    report.reject(csv.getLine(), "all fields are required");
+                    continue;
+                }
+                if (!batchNics.add(fields[3].toUpperCase(Locale.ROOT))
+                        || service.getRepository().findPatientByNicIgnoreCase(fields[3]) != null) {
+                    report.reject(csv.getLine(), "duplicate NIC " + fields[3]);
+                    continue;
+                }
+                batch.add(new Patient(fields[0], fields[1], fields[2], fields[3]));
+                batchChars += length(fields);
+                if (batch.size() == BATCH_ROWS || batchChars >= BATCH_CHARS) {
+                    service.importPatients(batch);
+                    report.imported += batch.size();
+                    batch = new ArrayList<>(BATCH_ROWS); // * The saved batch is kept by the journal apply
+                    batchNics.clear();
+                    batchChars = 0;
+                    progress.update(file, csv.position(), csv.size(), report.rows);
+                }
+            }
+            if (!batch.isEmpty()) {
+                service.importPatients(batch);
+                report.imported += batch.size();
+            }
+            progress.update(file, csv.position(), csv.size(), report.rows);
+        }
+        report.seconds = (System.nanoTime() - start) / 1e9;
+        return report;
+    }
+
+    // ! Appointments refer to a patient by NIC, a doctor by employee ID and a
+    // treatment by ID. A blank ID gets the next appointment ID, a blank status
+    // means BOOKED.
+    public Report importAppointments(Path file) throws IOException {
+        Report report = new Report(file);
+        long start = System.nanoTime();
+        ClinicRepository repository = service.getRepository();
+        Map<String, Doctor> doctors = new HashMap<>(); // * Few doctors, looked up once each
+        try (CsvReader csv = new CsvReader(file)) {
+            int[] column = header(csv, APPOINTMENT_COLUMNS);
+            List<Appointment> batch = new ArrayList<>(BATCH_ROWS);
+            List<Long> lines = new ArrayList<>(BATCH_ROWS); // * Line of each batched row, for slot conflicts
+            Set<Integer> batchIDs = new HashSet<>();
+            while (csv.next()) {
+                report.rows++;
+                String reason = null;
+                Appointment appointment = null;
+                try {
+                    boolean hasID = !csv.isBlank(column[0]);
+                    int id = hasID ? csv.getInt(column[0]) : 0;
+                    String date = csv.get(column[1]).trim();
+                    String time = csv.get(column[2]).trim();
+                    String statusName = csv.get(column[3]).trim().toUpperCase(Locale.ROOT).replace('-', '_');
+                    Status status = statusName.isEmpty() ? Status.BOOKED : Status.valueOf(statusName);
+                    Patient patient = repository.findPatientByNicIgnoreCase(csv.get(column[4]).trim());
+                    Doctor doctor = doctors.computeIfAbsent(csv.get(column[5]).trim().toUpperCase(Locale.ROOT),
+                            repository::findDoctorByEmployeeID);
+                    Treatment treatment = service.findTreatment(csv.getInt(column[6]));
+                    LocalDate localDate = AppointmentDates.parseDate(date);
+                    LocalTime localTime = AppointmentDates.parseTime(time);
+
+                    if (hasID && id <= 0) {
+                        reason = "invalid ID " + id;
+                    } else if (hasID && (!batchIDs.add(id) || repository.findAppointmentByID(id) != null)) {
+                        reason = "duplicate appointment ID " + id;
+                    } else if (localDate == null || localTime == null) {
+                        reason = "invalid date or time";
+                    } else if (patient == null) {
+                        reason = "unknown patient NIC " + csv.get(column[4]).trim();
+                    } else if (doctor == null) {
+                        reason = "unknown doctor " + csv.get(column[5]).trim();
+                    } else if (treatment == null) {
+                        reason = "unknown treatment " + csv.get(column[6]).trim();
+                    } else if (hasID) {
+                        appointment = new Appointment(id, date, time, status, patient, doctor, treatment);
+                    } else {
+                        appointment = new Appointment(service.nextAppointmentID(), date, time, Status.BOOKED,
+                                patient, doctor, treatment);
+                        if (status != Status.BOOKED) {
+                            appointment.transitionTo(status);
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    reason = "invalid field: " + e.getMessage(); // * Number or status that does not parse
+                }
+                if (appointment == null) {
+                    report.reject(csv.getLine(), reason);
+                    continue;
+                }
+                batch.add(appointment);
+                lines.add(csv.getLine());
+                if (batch.size() == BATCH_ROWS) {
+                    saveAppointments(batch, lines, report);
+                    batch = new ArrayList<>(BATCH_ROWS);
+                    lines.clear();
+                    batchIDs.clear();
+                    progress.update(file, csv.position(), csv.size(), report.rows);
+                }
+            }
+            if (!batch.isEmpty()) {
+                saveAppointments(batch, lines, report);
+            }
+            progress.update(file, csv.position(), csv.size(), report.rows);
+        }
+        report.seconds = (System.nanoTime() - start) / 1e9;
+        return report;
+    }
+
+    private void saveAppointments(List<Appointment> batch, List<Long> lines, Report report) {
+        List<Appointment> rejected = new ArrayList<>();
+        service.importAppointments(batch, rejected);
+        report.imported += batch.size() - rejected.size();
+        if (rejected.isEmpty()) {
+            return;
+        }
+        // * Both lists are in file order, so one pass finds the lines
+        int next = 0;
+        for (int i = 0; i < batch.size() && next < rejected.size(); i++) {
+            if (batch.get(i) == rejected.get(next)) {
+                report.reject(lines.get(i), "slot taken or outside the doctor's hours: "
+                        + batch.get(i).getDoctor().employeeID + " " + batch.get(i).getLocalDate() + " "
+                        + batch.get(i).getTime());
+                next++;
+            }
+        }
+    }
+
+    // ! Writes the three files into the directory, existing ones are replaced
+    public Map<String, Long> exportDirectory(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        ClinicRepository repository = service.getRepository();
+        Map<String, Long> rows = new LinkedHashMap<>(); // * In the order the files are written
+
+        try (CsvWriter csv = new CsvWriter(directory.resolve(DOCTORS_FILE))) {
+            header(csv, DOCTOR_COLUMNS);
+            for (Doctor doctor : repository.getDoctors()) {
+                csv.field(doctor.name).field(doctor.getEmail()).field(doctor.contactNumber).field(doctor.employeeID);
+                csv.endRow();
+            }
+            rows.put(DOCTORS_FILE, csv.getRows() - 1);
+        }
+        try (CsvWriter csv = new CsvWriter(directory.resolve(PATIENTS_FILE))) {
+            header(csv, PATIENT_COLUMNS);
+            for (Patient patient : repository.getPatients()) {
+                csv.field(patient.name).field(patient.getEmail()).field(patient.contactNumber).field(patient.getNIC());
+                csv.endRow();
+            }
+            rows.put(PATIENTS_FILE, csv.getRows() - 1);
+        }
+        try (CsvWriter csv = new CsvWriter(directory.resolve(APPOINTMENTS_FILE))) {
+            header(csv, APPOINTMENT_COLUMNS);
+            for (Appointment appointment : repository.getAppointments()) {
+                // * Resolved dates, a day name would mean another day when imported later
+                csv.field(appointment.getAppointmentID());
+                csv.field(appointment.getLocalDate() != null ? appointment.getLocalDate().toString()
+                        : appointment.getDate());
+                csv.field(appointment.getLocalTime() != null ? AppointmentDates.formatTime(appointment.getLocalTime())
+                        : appointment.getTime());
+                csv.field(appointment.getStatus().name()).field(appointment.getPatient().getNIC())
+                        .field(appointment.getDoctor().employeeID).field(appointment.getTreatment().getTreatmentID());
+                csv.endRow();
+            }
+            rows.put(APPOINTMENTS_FILE, csv.getRows() - 1);
+        }
+        return rows;
+    }
+
+    // * Index of each column in the file, from its header row
+    static int[] header(CsvReader csv, String[] columns) throws IOException {
+        if (!csv.next()) {
+            throw new IOException(csv.getFile() + " is empty, a header row is required");
+        }
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < csv.fieldCount(); i++) {
+            positions.put(csv.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        int[] column = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            Integer position = positions.get(columns[i].toLowerCase(Locale.ROOT));
+            if (position == null) {
+                throw new IOException(csv.getFile() + " has no " + columns[i] + " column");
+            }
+            column[i] = position;
+        }
+        return column;
+    }
+
+    private static void header(CsvWriter csv, String[] columns) throws IOException {
+        for (String column : columns) {
+            csv.field(column);
+        }
+        csv.endRow();
+    }
+
+    // * The trimmed fields, or null when one is blank (the registerPatient rule)
+    private static String[] required(CsvReader csv, int[] column) {
+        String[] fields = new String[column.length];
+        for (int i = 0; i < column.length; i++) {
+            if (csv.isBlank(column[i])) {
+                return null;
+            }
+            fields[i] = csv.get(column[i]).trim();
+        }
+        return fields;
+    }
+
+    private static int length(String[] fields) {
+        int length = 0;
+        for (String field : fields) {
+            length += field.length();
+        }
+        return length;
+    }
+}
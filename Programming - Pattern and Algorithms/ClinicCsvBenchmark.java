@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Clinic CSV Benchmark
+// ! The csv mode of ClinicBenchmark: import, export and restart round trip of ClinicCsv.
+final class ClinicCsvBenchmark {
+    private ClinicCsvBenchmark() {
+    }
+
+    // ! Writes patients and appointments as CSV with a few bad rows, imports
+    // them, exports them again and imports the export into a second clinic;
+    // both must hold the same records, also after a restart
+    static boolean runCsv(int rows) throws IOException {
+        Path directory = Files.createTempDirectory("aurora-csv");
+        Path input = Files.createDirectories(directory.resolve("input"));
+        Path export = directory.resolve("export");
+        List<Treatment> treatments = new ArrayList<>();
+        treatments.add(new Treatment(1, "Acne Treatment", 2750.00));
+        treatments.add(new Treatment(2, "Skin Whitening", 7650.00));
+        TreatmentCatalog catalog = TreatmentCatalog.of(treatments);
+        Status[] history = { Status.COMPLETED, Status.COMPLETED, Status.COMPLETED, Status.CANCELED,
+                Status.NO_SHOW };
+        String oddName = "Perera, \"Nimal\" Jr.";
+        int future = 0;
+
+        long start = System.nanoTime();
+        try (CsvWriter doctors = new CsvWriter(input.resolve(ClinicCsv.DOCTORS_FILE));
+                CsvWriter patients = new CsvWriter(input.resolve(ClinicCsv.PATIENTS_FILE));
+                CsvWriter appointments = new CsvWriter(input.resolve(ClinicCsv.APPOINTMENTS_FILE))) {
+            doctors.field("name").field("email").field("contactNumber").field("employeeID").endRow();
+            for (int i = 1; i <= 8; i++) {
+                doctors.field("Dr. Csv " + i).field("csv" + i + "@aurora.lk").field("077000000" + i)
+                        .field(String.format("C%03d", i)).endRow();
+            }
+            doctors.field("Dr. Twice").field("twice@aurora.lk").field("0770000009").field("c001").endRow();
+
+            // * Columns in another order than the export, the header decides
+            patients.field("nic").field("name").field("email").field("contactNumber").endRow();
+            for (int i = 0; i < rows; i++) {
+                patients.field(BenchmarkFixture.nic(i)).field(i == 0 ? oddName : BenchmarkFixture.name(i))
+                        .field("patient" + i + "@mail.com").field("07" + i).endRow();
+            }
+            patients.field("999999999999").field("No Email").field(" ").field("0700").endRow();
+            patients.field(BenchmarkFixture.nic(rows / 2)).field("Same Nic").field("same@mail.com").field("0701")
+                    .endRow();
+
+            appointments.field("id").field("date").field("time").field("status").field("nic").field("employeeID")
+                    .field("treatmentID").endRow();
+            LocalDate today = LocalDate.now();
+            for (int i = 0; i < rows; i++) {
+                appointments.field("").field(today.minusDays(1 + i % 1000).toString()).field("10:00am")
+                        .field(history[i % history.length].name()).field(BenchmarkFixture.nic(i))
+                        .field(String.format("C%03d", 1 + i % 8)).field(1 + i % 2).endRow();
+            }
+            // * Bookings in the calendar, one slot per doctor and working day, then one taken twice
+            Doctor sample = new Doctor("Dr. Sample", "", "", "");
+            String lastSlot = null;
+            for (LocalDate day = today.plusDays(1); future < 200; day = day.plusDays(1)) {
+                LocalTime[] hours = sample.getWorkingHours(day.getDayOfWeek());
+                if (hours == null) {
+                    continue;
+                }
+                for (int d = 1; d <= 8 && future < 200; d++, future++) {
+                    appointments.field("").field(day.toString()).field(AppointmentDates.formatTime(hours[0]))
+                            .field("BOOKED").field(BenchmarkFixture.nic(future))
+                            .field(String.format("C%03d", d)).field(1).endRow();
+                    lastSlot = day + "," + AppointmentDates.formatTime(hours[0]) + ",C" + String.format("%03d", d);
+                }
+            }
+            String[] taken = lastSlot.split(",");
+            appointments.field("").field(taken[0]).field(taken[1]).field("").field(BenchmarkFixture.nic(1))
+                    .field(taken[2]).field(2).endRow();
+            appointments.field("").field("someday").field("10:00am").field("").field(BenchmarkFixture.nic(2))
+                    .field("C001").field(1).endRow();
+            appointments.field("").field(today.toString()).field("10:00am").field("").field("000000000000")
+                    .field("C001").field(1).endRow();
+        }
+        System.out.printf("Files written:     %,d patients, %,d appointments in %.2f s%n", rows, rows + future,
+                (System.nanoTime() - start) / 1e9);
+
+        List<String> problems = new ArrayList<>();
+        long heapBefore = BenchmarkFixture.usedHeap();
+        ClinicCsv.Progress quiet = (file, read, total, count) -> {
+        };
+        Path first = directory.resolve("first");
+        ClinicService service = BenchmarkFixture.openClinic(first, catalog);
+        List<ClinicCsv.Report> reports = new ClinicCsv(service, new ClinicCsv.ConsoleProgress())
+                .importDirectory(input);
+        for (ClinicCsv.Report report : reports) {
+            System.out.println(report);
+            for (String error : report.getErrors()) {
+                System.out.println("  Rejected " + error);
+            }
+        }
+        System.out.printf("Heap growth:       %,d bytes (%.0f per row)%n", BenchmarkFixture.usedHeap() - heapBefore,
+                (BenchmarkFixture.usedHeap() - heapBefore) / (double) (2L * rows));
+        expect(reports.get(0), 8, 1, problems);
+        expect(reports.get(1), rows, 2, problems);
+        expect(reports.get(2), rows + future, 3, problems);
+        if (!oddName.equals(service.findPatient(BenchmarkFixture.nic(0)).name)) {
+            problems.add("Quoted name read back as " + service.findPatient(BenchmarkFixture.nic(0)).name);
+        }
+
+        start = System.nanoTime();
+        new ClinicCsv(service, quiet).exportDirectory(export);
+        System.out.printf("Export:            %.2f s%n", (System.nanoTime() - start) / 1e9);
+        List<Appointment> before = service.getRepository().getAppointments();
+        BenchmarkFixture.closeClinic(service);
+
+        // * The export imported into an empty clinic, and the first clinic after a restart
+        ClinicService copy = BenchmarkFixture.openClinic(directory.resolve("second"), catalog);
+        List<ClinicCsv.Report> again = new ClinicCsv(copy, quiet).importDirectory(export);
+        expect(again.get(1), rows, 0, problems);
+        expect(again.get(2), rows + future, 0, problems);
+        BenchmarkFixture.compare(before, copy.getRepository().getAppointments(), "after export and import", problems);
+        BenchmarkFixture.closeClinic(copy);
+        ClinicService restarted = BenchmarkFixture.openClinic(first, catalog);
+        BenchmarkFixture.compare(before, restarted.getRepository().getAppointments(), "after restart", problems);
+        if (restarted.getRepository().getPatients().size() != rows) {
+            problems.add(restarted.getRepository().getPatients().size() + " patients after restart");
+        }
+        BenchmarkFixture.closeClinic(restarted);
+
+        BenchmarkFixture.report(problems);
+        BenchmarkFixture.deleteTree(directory);
+        return problems.isEmpty();
+    }
+
+    private static void expect(ClinicCsv.Report report, long imported, long rejected, List<String> problems) {
+        if (report.getImported() != imported || report.getRejected() != rejected) {
+            problems.add(report.getFile().getFileName() + ": " + report.getImported() + " imported and "
+                    + report.getRejected() + " rejected, expected " + imported + " and " + rejected);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Clinic Event Bus
+// ! Publishes every lifecycle transition of an appointment to in-process
+// subscribers without making the booking thread wait for them. Events are
+// written into a fixed ring of reused slots (the Disruptor pattern): a
+// publisher claims the next sequence number, fills the slot and marks it
+// published, and every subscriber follows on its own thread with its own
+// sequence. Publishing allocates nothing and only waits when the slowest
+// subscriber is a whole ring behind.
+class ClinicEventBus implements AutoCloseable {
+    static final int DEFAULT_CAPACITY = 1 << 12; // * Power of two, see index()
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Subscriber Interface
+    // ! Called on the subscriber's own thread, once per event and in publishing
+    // order. The event is a reused slot, copy what must be kept.
+    interface Subscriber {
+        void onEvent(Event event);
+    }
+
+    // Event Class
+    // ! One transition: the appointment, the state it left (null for a new
+    // booking) and the state it entered, with its slot at that moment.
+    static final class Event {
+        private long sequence;
+        private Appointment appointment;
+        private Status previousStatus;
+        private Status status;
+        private LocalDate date;
+        private LocalTime time;
+        private LocalDate previousDate;
+        private LocalTime previousTime;
+        private Treatment treatment;
+        private Treatment previousTreatment;
+        private long timestamp;
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public Appointment getAppointment() {
+            return appointment;
+        }
+
+        public Status getPreviousStatus() {
+            return previousStatus;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public LocalTime getTime() {
+            return time;
+        }
+
+        // * Slot before a reschedule, the same as the current one otherwise
+        public LocalDate getPreviousDate() {
+            return previousDate;
+        }
+
+        public LocalTime getPreviousTime() {
+            return previousTime;
+        }
+
+        // * Treatment at that moment, a visit may be completed with another one than was booked
+        public Treatment getTreatment() {
+            return treatment;
+        }
+
+        public Treatment getPreviousTreatment() {
+            return previousTreatment;
+        }
+
+        // * Wall clock milliseconds of the transition
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    private final Event[] ring;
+    private final int mask;
+    private final AtomicLongArray published; // * Sequence last published in each slot
+    private final AtomicLong claimed = new AtomicLong(); // * Next sequence to hand out
+    private volatile Consumer[] consumers = new Consumer[0];
+    private volatile boolean running = true;
+
+    ClinicEventBus() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    ClinicEventBus(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        ring = new Event[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Event();
+        }
+        mask = capacity - 1;
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    // ! Starts a subscriber thread, it receives the events published from now on
+    public synchronized void subscribe(String name, Subscriber subscriber) {
+        if (!running) {
+            throw new IllegalStateException("The event bus is closed.");
+        }
+        Consumer consumer = new Consumer(name, subscriber, claimed.get());
+        Consumer[] grown = Arrays.copyOf(consumers, consumers.length + 1);
+        grown[grown.length - 1] = consumer;
+        consumers = grown;
+        consumer.thread.start();
+    }
+
+    // ! Publishes the transition the appointment just made. Callers hold the
+    // appointment's lock, so the events of one appointment are in order.
+    public void publish(Appointment appointment, Status previousStatus, LocalDate previousDate,
+            LocalTime previousTime) {
+        publish(appointment, previousStatus, previousDate, previousTime, appointment.getTreatment());
+    }
+
+    public void publish(Appointment appointment, Status previousStatus, LocalDate previousDate,
+            LocalTime previousTime, Treatment previousTreatment) {
+        if (consumers.length == 0) {
+            return; // * Nobody listens, skip the ring
+        }
+        long sequence = claimed.getAndIncrement();
+        // * The slot is free once every subscriber is past its previous lap
+        for (int tries = 0; sequence - ring.length >= slowestSequence(); tries++) {
+            idle(tries);
+        }
+        Event event = ring[index(sequence)];
+        event.sequence = sequence;
+        event.appointment = appointment;
+        event.previousStatus = previousStatus;
+        event.status = appointment.getStatus();
+        event.date = appointment.getLocalDate();
+        event.time = appointment.getLocalTime();
+        event.previousDate = previousStatus == null ? event.date : previousDate;
+        event.previousTime = previousStatus == null ? event.time : previousTime;
+        event.treatment = appointment.getTreatment();
+        event.previousTreatment = previousTreatment;
+        event.timestamp = System.currentTimeMillis();
+        published.set(index(sequence), sequence); // ! Volatile write, makes the fields above visible
+    }
+
+    // * Events handed out so far
+    public long getPublishedCount() {
+        return claimed.get();
+    }
+
+    // * Events a subscriber threw on, by subscriber name in subscription order
+    public Map<String, Long> getFailures() {
+        Map<String, Long> failures = new LinkedHashMap<>();
+        for (Consumer consumer : consumers) {
+            failures.put(consumer.name, consumer.failures.get());
+        }
+        return failures;
+    }
+
+    // * What the subscriber threw last, null if it never failed
+    public String getLastFailure(String name) {
+        for (Consumer consumer : consumers) {
+            if (consumer.name.equals(name)) {
+                return consumer.lastFailure;
+            }
+        }
+        return null;
+    }
+
+    // ! Waits until every subscriber has handled the events published before
+    // the call, false if that took longer than the timeout
+    public boolean awaitIdle(long timeout, TimeUnit unit) {
+        long target = claimed.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int tries = 0; slowestSequence() < target; tries++) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            idle(tries);
+        }
+        return true;
+    }
+
+    private long slowestSequence() {
+        long slowest = Long.MAX_VALUE;
+        for (Consumer consumer : consumers) {
+            slowest = Math.min(slowest, consumer.next.get());
+        }
+        return slowest;
+    }
+
+    // * Spin briefly, then yield, then sleep, so an idle bus costs almost no CPU
+    private static void idle(int tries) {
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (tries < YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    // ! Lets the subscribers finish the published events, then stops them
+    @Override
+    public void close() {
+        synchronized (this) {
+            running = false;
+        }
+        for (Consumer consumer : consumers) {
+            try {
+                consumer.thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Consumer Class
+    // ! A subscriber with its thread and the sequence of the next event it reads.
+    private final class Consumer implements Runnable {
+        final String name;
+        final Subscriber subscriber;
+        final AtomicLong next;
+        final Thread thread;
+        final AtomicLong failures = new AtomicLong();
+        volatile String lastFailure;
+
+        Consumer(String name, Subscriber subscriber, long first) {
+            this.name = name;
+            this.subscriber = subscriber;
+            this.next = new AtomicLong(first);
+            this.thread = new Thread(this, "clinic-events-" + name);
+            this.thread.setDaemon(true); // * Never keeps the process alive, the journal has the data
+        }
+
+        @Override
+        public void run() {
+            long sequence = next.get();
+            int tries = 0;
+            while (true) {
+                // * Handle every published event in one batch, then move the sequence once
+                long start = sequence;
+                while (published.get(index(sequence)) == sequence) {
+                    try {
+                        subscriber.onEvent(ring[index(sequence)]);
+                    } catch (RuntimeException e) {
+                        // ! A failing subscriber must not stop the others or lose its place, the
+                        // failure is counted for the reports
+                        lastFailure = "event " + sequence + ": " + e;
+                        failures.incrementAndGet();
+                    }
+                    sequence++;
+                }
+                if (sequence != start) {
+                    next.set(sequence);
+                    tries = 0;
+                } else if (!running && sequence >= claimed.get()) {
+                    return;
+                } else {
+                    idle(tries);
+                    tries = Math.min(tries + 1, YIELD_TRIES); // * Stays asleep between events
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,710 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// HTTP API Class
+// ! JSON over HTTP in front of ClinicService, for online booking and kiosks.
+// Every request runs on its own virtual thread when the JVM has them (Java 21
+// and later) and on a cached thread pool otherwise.
+//
+//   GET    /doctors?q=<name or ID>            GET  /patients?q=<name or NIC>, ?nic=<NIC> (exact)
+//   GET    /patients/<NIC>/history[?page=<from 0>&size=<per page>] (newest first, last visit, lifetime spend)
+//   POST   /patients                          POST /invoices
+//   GET    /appointments/<id>                 GET  /appointments?date=<day or range>
+//   GET    /appointments?patient=<name>       POST /appointments (doctor "any" for the least loaded)
+//   PUT    /appointments/<id> (reschedule)    DELETE /appointments/<id> (cancel)
+//   POST   /appointments/<id>/complete        POST /appointments/<id>/no-show
+//   GET    /analytics[?date=<day or range>]   POST /analytics/rebuild (drift check)
+//   GET    /treatments[/<id>]                 POST /treatments/reload (re-read the catalog file)
+//   GET    /waitlist?doctor=<name or ID>&date=<day>   POST /waitlist   DELETE /waitlist/<id>
+//   GET    /branch[?date=<day or range>] (branch, ID range and totals, see ClinicPartitions)
+//   GET    /metrics (operation latencies in the Prometheus text format)
+//
+// A POST to a collection answers 201 with what it created, every other
+// success answers 200. Errors map to 400 (invalid input), 404 (not found), 405
+// (no such method on the path), 409 (slot taken or a transition the
+// appointment cannot make) and 503 (the change could not be saved).
+class ClinicHttpServer implements AutoCloseable {
+    private static final int BACKLOG = 1024;
+    private static final int MAX_BODY = 64 * 1024;
+    private static final int SEARCH_RESULT_LIMIT = 10;
+    private static final int MAX_REPORT_DAYS = 366;
+
+    static {
+        // ! The JDK server writes the headers and the body of a response in
+        // separate packets. With Nagle's algorithm on, the body then waits for the
+        // client's delayed ACK, about 40 ms per small JSON answer. Read once when
+        // the first server is created, so an explicit -D setting still wins.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final ClinicService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // ! Route handlers return the JSON body of a successful response
+    private interface Route {
+        String handle(String method, String[] path, Map<String, String> query, Map<String, String> body);
+    }
+
+    // MethodNotAllowedException Class
+    // ! Thrown by a route that has the path but not the method, answered with 405
+    private static final class MethodNotAllowedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MethodNotAllowedException(String method) {
+            super(method);
+        }
+    }
+
+    ClinicHttpServer(ClinicService service, int port) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/patients", handler(this::patients));
+        server.createContext("/doctors", handler(this::doctors));
+        server.createContext("/appointments", handler(this::appointments));
+        server.createContext("/invoices", handler(this::invoices));
+        server.createContext("/analytics", handler(this::analytics));
+        server.createContext("/treatments", handler(this::treatments));
+        server.createContext("/waitlist", handler(this::waitlist));
+        server.createContext("/branch", handler(this::branch));
+        server.createContext("/metrics", this::metrics);
+    }
+
+    // * Virtual thread per request when available, looked up by reflection so
+    // the code still compiles and runs on Java 17
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1); // * Seconds to let running exchanges finish
+        executor.shutdown();
+    }
+
+    // ! Routes
+
+    private String patients(String method, String[] path, Map<String, String> query, Map<String, String> body) {
+        if (method.equals("POST") && path.length == 1) {
+            return patientJson(service.registerPatient(body.get("name"), body.get("email"),
+                    body.get("contactNumber"), body.get("nic")));
+        }
+        if (method.equals("GET") && path.length == 1 && query.containsKey("nic")) {
+            return patientJson(found(service.getRepository().findPatientByNicIgnoreCase(query.get("nic")),
+                    "Patient not found."));
+        }
+        if (method.equals("GET") && path.length == 1) {
+            String q = required(query, "q");
+            Patient patient = service.findPatient(q);
+            List<Patient> matches = patient != null ? List.of(patient)
+                    : service.searchPatients(q, SEARCH_RESULT_LIMIT);
+            StringBuilder json = new StringBuilder("[");
+            for (Patient match : matches) {
+                json.append(json.length() > 1 ? "," : "").append(patientJson(match));
+            }
+            return json.append(']').toString();
+        }
+        if (method.equals("GET") && path.length == 3 && path[2].equals("history")) {
+            return historyJson(path[1], query.containsKey("page") ? number(query.get("page")) : 0,
+                    query.containsKey("size") ? number(query.get("size")) : SEARCH_RESULT_LIMIT);
+        }
+        throw new MethodNotAllowedException(method);
+    }
+
+    private String historyJson(String nic, int page, int pageSize) {
+        ClinicRepository repository = service.getRepository();
+        Patient patient = found(repository.findPatientByNicIgnoreCase(nic), "Patient not found.");
+        StringBuilder json = new StringBuilder("{\"patient\":").append(patientJson(patient))
+                .append(",\"total\":").append(repository.countHistoryOfPatient(nic))
+                .append(",\"page\":").append(page).append(",\"size\":").append(pageSize)
+                .append(",\"lifetimeSpend\":")
+                .append(Money.format(repository.findLifetimeSpendCentsOfPatient(nic)));
+        Appointment last = repository.findLastVisitOfPatient(nic);
+        json.append(",\"lastVisit\":").append(last == null ? "null" : appointmentJson(last))
+                .append(",\"appointments\":[");
+        List<Appointment> appointments = service.findPatientHistory(nic, page, pageSize);
+        for (int i = 0; i < appointments.size(); i++) {
+            json.append(i > 0 ? "," : "").append(appointmentJson(appointments.get(i)));
+        }
+        return json.append("]}").toString();
+    }
+
+    private String doctors(String method, String[] path, Map<String, String> query, Map<String, String> body) {
+        if (!method.equals("GET") || path.length != 1) {
+            throw new MethodNotAllowedException(method);
+        }
+        String q = query.get("q");
+        if (q != null) {
+            return doctorJson(found(service.findDoctor(q), "Doctor not found."));
+        }
+        StringBuilder json = new StringBuilder("[");
+        for (Doctor doctor : service.getRepository().getDoctors()) {
+            json.append(json.length() > 1 ? "," : "").append(doctorJson(doctor));
+        }
+        return json.append(']').toString();
+    }
+
+    private String appointments(String method, String[] path, Map<String, String> query,
+            Map<String, String> body) {
+        if (path.length == 1) {
+            if (method.equals("POST")) {
+                Patient patient = found(service.getRepository().findPatientByNicIgnoreCase(required(body, "nic")),
+                        "Patient not found. Please register the patient first.");
+                String doctorQuery = required(body, "doctor");
+                Doctor doctor = doctorQuery.trim().equalsIgnoreCase("any") ? null
+                        : found(service.findDoctor(doctorQuery), "Doctor not found.");
+                Treatment treatment = found(service.findTreatment(number(required(body, "treatment"))),
+                        "Treatment not found.");
+                return appointmentJson(doctor == null
+                        ? service.bookWithAnyDoctor(patient, treatment, required(body, "date"), required(body, "time"))
+                        : service.bookAppointment(patient, doctor, treatment, required(body, "date"),
+                                required(body, "time")));
+            }
+            if (method.equals("GET")) {
+                List<Appointment> found = query.containsKey("patient")
+                        ? service.findAppointmentsOfPatient(query.get("patient"), SEARCH_RESULT_LIMIT)
+                        : service.findAppointmentsOn(required(query, "date"));
+                StringBuilder json = new StringBuilder("[");
+                for (Appointment appointment : found) {
+                    json.append(json.length() > 1 ? "," : "").append(appointmentJson(appointment));
+                }
+                return json.append(']').toString();
+            }
+        } else if (path.length == 2) {
+            Appointment appointment = found(service.findAppointment(number(path[1])), "Appointment not found.");
+            switch (method) {
+                case "GET":
+                    return appointmentJson(appointment);
+                case "PUT":
+                    service.rescheduleAppointment(appointment, required(body, "date"), required(body, "time"));
+                    return appointmentJson(appointment);
+                case "DELETE":
+                    service.cancelAppointment(appointment);
+                    return appointmentJson(appointment);
+                default:
+                    break;
+            }
+        } else if (path.length == 3 && method.equals("POST")) {
+            Appointment appointment = found(service.findAppointment(number(path[1])), "Appointment not found.");
+            if (path[2].equals("complete")) {
+                service.completeAppointment(appointment);
+                return appointmentJson(appointment);
+            }
+            if (path[2].equals("no-show")) {
+                service.markNoShow(appointment);
+                return appointmentJson(appointment);
+            }
+        }
+        throw new MethodNotAllowedException(method);
+    }
+
+    private String invoices(String method, String[] path, Map<String, String> query, Map<String, String> body) {
+        if (!method.equals("POST") || path.length != 1) {
+            throw new MethodNotAllowedException(method);
+        }
+        Appointment appointment = found(service.findAppointment(number(required(body, "appointment"))),
+                "Appointment not found.");
+        Treatment treatment = body.containsKey("treatment")
+                ? found(service.findTreatment(number(body.get("treatment"))), "Treatment not found.")
+                : appointment.getTreatment();
+        return invoiceJson(service.issueInvoice(appointment, treatment));
+    }
+
+    private String analytics(String method, String[] path, Map<String, String> query, Map<String, String> body) {
+        ClinicAnalytics analytics = service.getAnalytics();
+        if (method.equals("POST") && path.length == 2 && path[1].equals("rebuild")) {
+            StringBuilder json = new StringBuilder("{\"drift\":[");
+            int count = 0;
+            for (String line : service.rebuildTotals()) {
+                json.append(count++ > 0 ? "," : "").append(Json.quote(line));
+            }
+            return json.append("]}").toString();
+        }
+        if (!method.equals("GET") || path.length != 1) {
+            throw new MethodNotAllowedException(method);
+        }
+        StringBuilder json = new StringBuilder("{\"total\":").append(countersJson(analytics.total()));
+        json.append(",\"treatments\":{");
+        int count = 0;
+        for (Treatment treatment : service.getTreatments().list()) {
+            json.append(count++ > 0 ? "," : "").append(Json.quote(String.valueOf(treatment.getTreatmentID())))
+                    .append(':').append(countersJson(analytics.forTreatment(treatment.getTreatmentID())));
+        }
+        json.append("},\"doctors\":{");
+        count = 0;
+        for (Doctor doctor : service.getRepository().getDoctors()) {
+            json.append(count++ > 0 ? "," : "").append(Json.quote(doctor.employeeID)).append(':')
+                    .append(countersJson(analytics.forDoctor(doctor)));
+        }
+        json.append('}');
+        if (query.containsKey("date")) {
+            String[] range = query.get("date").trim().split("(?i)\\s+to\\s+", 2);
+            LocalDate from = AppointmentDates.parseDate(range[0]);
+            LocalDate to = range.length == 2 && from != null ? AppointmentDates.parseDate(range[1], from) : from;
+            if (from == null || to == null || ChronoUnit.DAYS.between(from, to) > MAX_REPORT_DAYS) {
+                throw new IllegalArgumentException("Invalid date range.");
+            }
+            json.append(",\"days\":{");
+            for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+                json.append(day.equals(from) ? "" : ",").append(Json.quote(day.toString())).append(':')
+                        .append(countersJson(analytics.forDay(day)));
+            }
+            json.append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    private String treatments(String method, String[] path, Map<String, String> query, Map<String, String> body) {
+        TreatmentCatalog catalog = service.getTreatments();
+        if (method.equals("POST") && path.length == 2 && path[1].equals("reload")) {
+            try {
+                return catalogJson(catalog.reload());
+            } catch (IOException e) {
+                // * The file is refused, the current prices stay
+                throw new IllegalStateException("Treatment catalog not reloaded: " + e.getMessage());
+            }
+        }
+        if (!method.equals("GET") || path.length > 2) {
+            throw new MethodNotAllowedException(method);
+        }
+        if (path.length == 2) {
+            return treatmentJson(found(catalog.find(number(path[1])), "Treatment not found."));
+        }
+        return catalogJson(catalog.snapshot());
+    }
+
+    private String waitlist(String method, String[] path, Map<String, String> query, Map<String, String> body) {
+        ClinicWaitlist waitlist = service.getWaitlist();
+        if (method.equals("POST") && path.length == 1) {
+            Patient patient = found(service.getRepository().findPatientByNicIgnoreCase(required(body, "nic")),
+                    "Patient not found. Please register the patient first.");
+            Doctor doctor = found(service.findDoctor(required(body, "doctor")), "Doctor not found.");
+            Treatment treatment = found(service.findTreatment(number(required(body, "treatment"))),
+                    "Treatment not found.");
+            ClinicWaitlist.Priority priority = body.containsKey("priority")
+                    ? ClinicWaitlist.Priority.parse(body.get("priority")) : ClinicWaitlist.Priority.ROUTINE;
+            if (priority == null) {
+                throw new IllegalArgumentException("Priority must be Urgent, Follow-up or Routine.");
+            }
+            return waitlistJson(service.joinWaitlist(patient, doctor, treatment, required(body, "date"), priority));
+        }
+        if (method.equals("GET") && path.length == 1) {
+            Doctor doctor = found(service.findDoctor(required(query, "doctor")), "Doctor not found.");
+            LocalDate date = AppointmentDates.parseDate(required(query, "date"));
+            if (date == null) {
+                throw new IllegalArgumentException("Invalid date: " + query.get("date"));
+            }
+            StringBuilder json = new StringBuilder("[");
+            for (ClinicWaitlist.Entry entry : waitlist.list(doctor, date)) {
+                json.append(json.length() > 1 ? "," : "").append(waitlistJson(entry));
+            }
+            return json.append(']').toString();
+        }
+        if (method.equals("DELETE") && path.length == 2) {
+            ClinicWaitlist.Entry entry = found(waitlist.find(number(path[1])), "Waitlist entry not found.");
+            if (!waitlist.remove(entry)) {
+                throw new NoSuchElementException("Waitlist entry not found.");
+            }
+            return waitlistJson(entry);
+        }
+        throw new MethodNotAllowedException(method);
+    }
+
+    // * Flat object, so a gathering process can read it with Json.parseObject()
+    private String branch(String method, String[] path, Map<String, String> query, Map<String, String> body) {
+        if (!method.equals("GET") || path.length != 1) {
+            throw new MethodNotAllowedException(method);
+        }
+        ClinicPartitions.Totals totals = ClinicPartitions.Totals.of(service, query.get("date"));
+        return "{\"branch\":" + service.getBranch() + ",\"name\":" + Json.quote(service.getBranchName())
+                + ",\"firstID\":" + ClinicPartitions.firstID(service.getBranch()) + ",\"lastID\":"
+                + ClinicPartitions.lastID(service.getBranch()) + ",\"patients\":" + totals.getPatients()
+                + ",\"appointments\":" + totals.getAppointments() + ",\"booked\":" + totals.getBooked()
+                + ",\"canceled\":" + totals.getCanceled() + ",\"completed\":" + totals.getCompleted()
+                + ",\"noShows\":" + totals.getNoShows() + ",\"revenue\":" + Money.format(totals.getRevenueCents())
+                + "}";
+    }
+
+    // ! Plain text for the Prometheus scraper, so it bypasses the JSON handler
+    private void metrics(HttpExchange exchange) throws IOException {
+        byte[] bytes;
+        int status = 200;
+        if (exchange.getRequestMethod().equals("GET")) {
+            StringBuilder text = service.getMetrics().appendPrometheus(new StringBuilder(4096));
+            bytes = ClinicMetrics.appendSubscriberFailures(text, service.getEvents()).toString()
+                    .getBytes(StandardCharsets.UTF_8);
+        } else {
+            status = 405;
+            bytes = "Method not allowed\n".getBytes(StandardCharsets.UTF_8);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // ! Reads the request, runs the route and maps exceptions to status codes
+    private HttpHandler handler(Route route) {
+        return exchange -> {
+            int status;
+            String response;
+            try {
+                String method = exchange.getRequestMethod();
+                String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/+");
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                String text = method.equals("POST") || method.equals("PUT") ? readBody(exchange) : "";
+                // * Actions such as POST /appointments/<id>/complete need no body
+                Map<String, String> body = text.isBlank() ? Map.of() : Json.parseObject(text);
+                response = route.handle(method, path, query, body);
+                // * POST /patients and the like create, POST /appointments/<id>/complete and the like act
+                status = method.equals("POST") && path.length == 1 ? 201 : 200;
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                response = error(e.getMessage());
+            } catch (NoSuchElementException e) {
+                status = 404;
+                response = error(e.getMessage());
+            } catch (IllegalStateException e) {
+                status = 409;
+                response = error(e.getMessage());
+            } catch (MethodNotAllowedException e) {
+                status = 405;
+                response = error("Method not allowed: " + e.getMessage());
+            } catch (UncheckedIOException e) {
+                status = 503;
+                response = error("Could not save the change: " + e.getCause().getMessage());
+            } catch (RuntimeException e) {
+                status = 500;
+                response = error("Internal error");
+            }
+
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        };
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY + 1);
+            if (bytes.length > MAX_BODY) {
+                throw new IllegalArgumentException("Request body is too large.");
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static String required(Map<String, String> values, String name) {
+        String value = values.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing field: " + name);
+        }
+        return value;
+    }
+
+    private static int number(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+
+    private static <T> T found(T value, String message) {
+        if (value == null) {
+            throw new NoSuchElementException(message);
+        }
+        return value;
+    }
+
+    // ! JSON views of the domain objects
+
+    private static String error(String message) {
+        return "{\"error\":" + Json.quote(message) + "}";
+    }
+
+    static String patientJson(Patient patient) {
+        return "{\"name\":" + Json.quote(patient.name) + ",\"email\":" + Json.quote(patient.getEmail())
+                + ",\"contactNumber\":" + Json.quote(patient.contactNumber) + ",\"nic\":" + Json.quote(patient.getNIC())
+                + "}";
+    }
+
+    static String doctorJson(Doctor doctor) {
+        StringBuilder schedule = new StringBuilder("[");
+        for (String day : doctor.getSchedule()) {
+            schedule.append(schedule.length() > 1 ? "," : "").append(Json.quote(day));
+        }
+        return "{\"employeeID\":" + Json.quote(doctor.employeeID) + ",\"name\":" + Json.quote(doctor.name)
+                + ",\"email\":" + Json.quote(doctor.getEmail())
+                + ",\"contactNumber\":" + Json.quote(doctor.contactNumber)
+                + ",\"schedule\":" + schedule.append(']') + "}";
+    }
+
+    static String countersJson(ClinicAnalytics.Counters counters) {
+        return "{\"booked\":" + counters.getBooked() + ",\"canceled\":" + counters.getCanceled()
+                + ",\"completed\":" + counters.getCompleted() + ",\"noShows\":" + counters.getNoShows()
+                + ",\"revenue\":" + Money.format(counters.getRevenueCents()) + "}";
+    }
+
+    static String treatmentJson(Treatment treatment) {
+        StringBuilder prices = new StringBuilder("[");
+        for (int v = 0; v < treatment.getVersionCount(); v++) {
+            LocalDate from = treatment.getEffectiveFrom(v);
+            prices.append(v > 0 ? "," : "").append("{\"from\":")
+                    .append(from.equals(LocalDate.MIN) ? "null" : Json.quote(from.toString()))
+                    .append(",\"price\":").append(Money.format(treatment.getVersionPriceCents(v))).append('}');
+        }
+        return "{\"id\":" + treatment.getTreatmentID() + ",\"name\":" + Json.quote(treatment.getName())
+                + ",\"price\":" + treatment.calculateFinalPrice() + ",\"prices\":" + prices.append(']') + "}";
+    }
+
+    static String catalogJson(TreatmentCatalog.Snapshot catalog) {
+        StringBuilder json = new StringBuilder("{\"version\":").append(catalog.getVersion())
+                .append(",\"treatments\":[");
+        for (Treatment treatment : catalog.list()) {
+            json.append(treatment == catalog.list().get(0) ? "" : ",").append(treatmentJson(treatment));
+        }
+        return json.append("]}").toString();
+    }
+
+    static String appointmentJson(Appointment appointment) {
+        return "{\"id\":" + appointment.getAppointmentID() + ",\"date\":" + Json.quote(appointment.getDate())
+                + ",\"time\":" + Json.quote(appointment.getTime())
+                + ",\"scheduledDate\":" + Json.quote(String.valueOf(appointment.getLocalDate()))
+                + ",\"scheduledTime\":" + Json.quote(String.valueOf(appointment.getLocalTime()))
+                + ",\"status\":" + Json.quote(appointment.getStatus().name())
+                + ",\"patient\":{\"name\":" + Json.quote(appointment.getPatient().name) + ",\"nic\":"
+                + Json.quote(appointment.getPatient().getNIC()) + "}"
+                + ",\"doctor\":{\"employeeID\":" + Json.quote(appointment.getDoctor().employeeID) + ",\"name\":"
+                + Json.quote(appointment.getDoctor().name) + "}"
+                + ",\"treatment\":" + treatmentJson(appointment.getTreatment())
+                + ",\"registrationFee\":" + appointment.getRegistrationFee() + "}";
+    }
+
+    static String waitlistJson(ClinicWaitlist.Entry entry) {
+        return "{\"id\":" + entry.getID() + ",\"date\":" + Json.quote(entry.getDate().toString())
+                + ",\"priority\":" + Json.quote(entry.getPriority().name())
+                + ",\"patient\":{\"name\":" + Json.quote(entry.getPatient().name) + ",\"nic\":"
+                + Json.quote(entry.getPatient().getNIC()) + "}"
+                + ",\"doctor\":{\"employeeID\":" + Json.quote(entry.getDoctor().employeeID) + ",\"name\":"
+                + Json.quote(entry.getDoctor().name) + "}"
+                + ",\"treatment\":" + entry.getTreatment().getTreatmentID() + "}";
+    }
+
+    static String invoiceJson(Invoice invoice) {
+        return "{\"invoiceID\":" + invoice.getInvoiceID() + ",\"appointmentID\":"
+                + invoice.getAppointment().getAppointmentID()
+                + ",\"treatment\":" + treatmentJson(invoice.getTreatment())
+                + ",\"price\":" + Money.format(invoice.getBill().getTreatmentCents())
+                + ",\"registrationFee\":" + Money.format(invoice.getBill().getRegistrationFeeCents())
+                + ",\"tax\":" + Money.format(invoice.getBill().getTaxCents()) + ",\"total\":"
+                + Money.format(invoice.getBill().getTotalCents()) + "}";
+    }
+
+    // Json Class
+    // ! Just enough JSON for the API: flat request objects and quoted strings.
+    static final class Json {
+        private Json() {
+        }
+
+        static String quote(String value) {
+            if (value == null) {
+                return "null";
+            }
+            StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        out.append("\\\"");
+                        break;
+                    case '\\':
+                        out.append("\\\\");
+                        break;
+                    case '\n':
+                        out.append("\\n");
+                        break;
+                    case '\r':
+                        out.append("\\r");
+                        break;
+                    case '\t':
+                        out.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            out.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            out.append(c);
+                        }
+                }
+            }
+            return out.append('"').toString();
+        }
+
+        // * Parses {"key": value, ...} where every value is a string, number,
+        // boolean or null. Values are returned as text, null values are left out.
+        static Map<String, String> parseObject(String text) {
+            Map<String, String> values = new HashMap<>();
+            int[] at = { skipSpace(text, 0) };
+            expect(text, at, '{');
+            if (peek(text, at) == '}') {
+                return values;
+            }
+            while (true) {
+                String key = readString(text, at);
+                expect(text, at, ':');
+                String value = peek(text, at) == '"' ? readString(text, at) : readLiteral(text, at);
+                if (value != null) {
+                    values.put(key, value);
+                }
+                char next = peek(text, at);
+                at[0]++;
+                if (next == '}') {
+                    break;
+                }
+                if (next != ',') {
+                    throw new IllegalArgumentException("Invalid JSON near position " + at[0]);
+                }
+            }
+            if (skipSpace(text, at[0]) != text.length()) {
+                throw new IllegalArgumentException("Invalid JSON after position " + at[0]);
+            }
+            return values;
+        }
+
+        private static int skipSpace(String text, int i) {
+            while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            return i;
+        }
+
+        private static char peek(String text, int[] at) {
+            at[0] = skipSpace(text, at[0]);
+            if (at[0] >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            return text.charAt(at[0]);
+        }
+
+        private static void expect(String text, int[] at, char c) {
+            if (peek(text, at) != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at position " + at[0]);
+            }
+            at[0]++;
+        }
+
+        private static String readString(String text, int[] at) {
+            expect(text, at, '"');
+            StringBuilder out = new StringBuilder();
+            int i = at[0];
+            while (i < text.length() && text.charAt(i) != '"') {
+                char c = text.charAt(i++);
+                if (c == '\\' && i < text.length()) {
+                    char escaped = text.charAt(i++);
+                    switch (escaped) {
+                        case 'n':
+                            out.append('\n');
+                            break;
+                        case 'r':
+                            out.append('\r');
+                            break;
+                        case 't':
+                            out.append('\t');
+                            break;
+                        case 'b':
+                            out.append('\b');
+                            break;
+                        case 'f':
+                            out.append('\f');
+                            break;
+                        case 'u':
+                            if (i + 4 > text.length()) {
+                                throw new IllegalArgumentException("Invalid escape in JSON string");
+                            }
+                            out.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+                            i += 4;
+                            break;
+                        default:
+                            out.append(escaped); // * \" \\ and \/
+                    }
+                } else {
+                    out.append(c);
+                }
+            }
+            if (i >= text.length()) {
+                throw new IllegalArgumentException("Unterminated JSON string");
+            }
+            at[0] = i + 1;
+            return out.toString();
+        }
+
+        private static String readLiteral(String text, int[] at) {
+            int start = at[0];
+            int i = start;
+            while (i < text.length() && ",} \t\r\n".indexOf(text.charAt(i)) < 0) {
+                i++;
+            }
+            String literal = text.substring(start, i);
+            at[0] = i;
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false")
+                    || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+                return literal;
+            }
+            throw new IllegalArgumentException("Unsupported JSON value at position " + start);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Journal Class
+// ! Append-only write-ahead log of domain events. Each record is
+// [length][sequence][type][payload][crc32]. Appends from any thread are
+// batched by a single writer thread, so one fsync makes a whole group durable.
+class ClinicJournal implements AutoCloseable {
+    private static final int HEADER = 8 + 1; // * Sequence number and event type
+    private static final int MAX_RECORD = 1 << 20;
+
+    // ! Receives the records read back from the journal
+    interface RecordHandler {
+        void apply(long sequence, byte type, DataInputStream payload) throws IOException;
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Thread writer;
+    private final CRC32 crc = new CRC32();
+
+    // * Guarded by this: the pending group and the sequence numbers
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private ByteArrayOutputStream flushing = new ByteArrayOutputStream();
+    private long lastSequence;
+    private long durableSequence;
+    private IOException failure;
+    private boolean closed;
+
+    // ! Opens the journal, replays every valid record after the given sequence
+    // and cuts off a torn record left by a crash
+    ClinicJournal(Path file, long afterSequence, RecordHandler handler) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long validEnd = replay(afterSequence, handler);
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        lastSequence = Math.max(lastSequence, afterSequence);
+        durableSequence = lastSequence;
+
+        writer = new Thread(this::writeLoop, "clinic-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    private long replay(long afterSequence, RecordHandler handler) throws IOException {
+        long validEnd = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < HEADER || length > MAX_RECORD) {
+                    break; // * Garbage after a torn write
+                }
+                byte[] body = new byte[length];
+                int checksum;
+                try {
+                    in.readFully(body);
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                ByteBuffer header = ByteBuffer.wrap(body, 0, HEADER);
+                long sequence = header.getLong();
+                byte type = header.get();
+                if (sequence > afterSequence) {
+                    handler.apply(sequence, type,
+                            new DataInputStream(new ByteArrayInputStream(body, HEADER, length - HEADER)));
+                }
+                lastSequence = Math.max(lastSequence, sequence);
+                validEnd += 4 + length + 4;
+            }
+        }
+        return validEnd;
+    }
+
+    // ! Appends one event and waits until it is on disk. Concurrent callers
+    // are grouped into the same fsync by the writer thread.
+    public long append(byte type, byte[] payload) throws IOException {
+        long sequence;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Journal is closed");
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            sequence = ++lastSequence;
+            byte[] body = ByteBuffer.allocate(HEADER + payload.length).putLong(sequence).put(type).put(payload)
+                    .array();
+            crc.reset();
+            crc.update(body);
+            DataOutputStream out = new DataOutputStream(pending);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeInt((int) crc.getValue());
+            notifyAll();
+
+            while (durableSequence < sequence && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the journal");
+                }
+            }
+            if (durableSequence < sequence) {
+                throw failure;
+            }
+        }
+        return sequence;
+    }
+
+    // * Writer thread: swaps the pending group out, writes it and fsyncs once
+    private void writeLoop() {
+        while (true) {
+            ByteArrayOutputStream group;
+            long groupEnd;
+            synchronized (this) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                group = pending;
+                pending = flushing;
+                flushing = group;
+                groupEnd = lastSequence;
+            }
+
+            IOException error = null;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(group.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            synchronized (this) {
+                group.reset();
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableSequence = groupEnd;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    // * Sequence of the last record handed to the journal
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    // ! Empties the journal once a snapshot covers everything in it. Callers
+    // must make sure no append is in flight.
+    public synchronized void reset() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,261 @@
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Clinic Metrics
+// ! Call counts, failures and latency histograms of the clinic operations,
+// recorded by ClinicService and dumped in the Prometheus text format. Recording
+// is a few uncontended atomic adds and allocates nothing. With
+// -Daurora.metrics=false the flag below is a constant false, the JIT drops the
+// recording code and no clock is read at all.
+class ClinicMetrics {
+    static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("aurora.metrics"));
+
+    // Operation Enum
+    // ! The operations of the main menu (and the matching HTTP routes).
+    enum Operation {
+        REGISTER_PATIENT("register_patient"),
+        BOOK_APPOINTMENT("book_appointment"),
+        UPDATE_APPOINTMENT("update_appointment"),
+        VIEW_BY_DATE("view_by_date"),
+        SEARCH_APPOINTMENTS("search_appointments"),
+        PATIENT_HISTORY("patient_history"),
+        SEARCH_DOCTOR("search_doctor"),
+        SEARCH_PATIENT("search_patient"),
+        CANCEL_APPOINTMENT("cancel_appointment"),
+        ISSUE_INVOICE("issue_invoice"),
+        RECORD_OUTCOME("record_outcome"),
+        JOIN_WAITLIST("join_waitlist"),
+        BACKFILL("backfill");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final Histogram[] latencies = new Histogram[Operation.values().length];
+    private final LongAdder[] failures = new LongAdder[Operation.values().length];
+
+    ClinicMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new Histogram();
+            failures[i] = new LongAdder();
+        }
+    }
+
+    // ! Start of an operation, pass it to record() when the operation ends
+    public long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public void record(Operation operation, long start) {
+        if (ENABLED) {
+            latencies[operation.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    // * The operation threw, it is still recorded by record()
+    public void failed(Operation operation) {
+        if (ENABLED) {
+            failures[operation.ordinal()].increment();
+        }
+    }
+
+    public Histogram latency(Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    public long getFailures(Operation operation) {
+        return failures[operation.ordinal()].sum();
+    }
+
+    // ! The metrics in the Prometheus text exposition format (version 0.0.4)
+    public StringBuilder appendPrometheus(StringBuilder out) {
+        out.append("# HELP aurora_operation_seconds Latency of clinic operations.\n");
+        out.append("# TYPE aurora_operation_seconds summary\n");
+        for (Operation operation : Operation.values()) {
+            Histogram.Snapshot latency = latency(operation).snapshot();
+            String label = "operation=\"" + operation.getLabel() + "\"";
+            for (double quantile : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+                out.append("aurora_operation_seconds{").append(label).append(",quantile=\"").append(quantile)
+                        .append("\"} ").append(latency.getCount() == 0 ? "NaN" : seconds(latency.percentile(quantile)))
+                        .append('\n'); // * NaN is how Prometheus spells "no calls yet"
+            }
+            out.append("aurora_operation_seconds_sum{").append(label).append("} ")
+                    .append(seconds(latency.getSumNanos())).append('\n');
+            out.append("aurora_operation_seconds_count{").append(label).append("} ").append(latency.getCount())
+                    .append('\n');
+        }
+        out.append("# HELP aurora_operation_max_seconds Slowest call of each operation.\n");
+        out.append("# TYPE aurora_operation_max_seconds gauge\n");
+        for (Operation operation : Operation.values()) {
+            out.append("aurora_operation_max_seconds{operation=\"").append(operation.getLabel()).append("\"} ")
+                    .append(seconds(latency(operation).getMaxNanos())).append('\n');
+        }
+        out.append("# HELP aurora_operation_failures_total Calls that ended with an error.\n");
+        out.append("# TYPE aurora_operation_failures_total counter\n");
+        for (Operation operation : Operation.values()) {
+            out.append("aurora_operation_failures_total{operation=\"").append(operation.getLabel()).append("\"} ")
+                    .append(getFailures(operation)).append('\n');
+        }
+        appendCaches(out);
+        return out;
+    }
+
+    // * Events each subscriber of the bus threw on, skipped and counted there
+    static StringBuilder appendSubscriberFailures(StringBuilder out, ClinicEventBus events) {
+        out.append("# HELP aurora_event_failures_total Events a subscriber failed to handle.\n");
+        out.append("# TYPE aurora_event_failures_total counter\n");
+        for (Map.Entry<String, Long> failed : events.getFailures().entrySet()) {
+            out.append("aurora_event_failures_total{subscriber=\"").append(failed.getKey()).append("\"} ")
+                    .append(failed.getValue()).append('\n');
+        }
+        return out;
+    }
+
+    // * Hits, misses and size of the detail string caches (see DetailCache)
+    private static void appendCaches(StringBuilder out) {
+        DetailCache<?>[] caches = DetailCache.all();
+        out.append("# HELP aurora_detail_cache_hits_total Detail strings served from the cache.\n");
+        out.append("# TYPE aurora_detail_cache_hits_total counter\n");
+        for (DetailCache<?> cache : caches) {
+            out.append("aurora_detail_cache_hits_total{cache=\"").append(cache.getName()).append("\"} ")
+                    .append(cache.getHits()).append('\n');
+        }
+        out.append("# HELP aurora_detail_cache_misses_total Detail strings rendered on a miss.\n");
+        out.append("# TYPE aurora_detail_cache_misses_total counter\n");
+        for (DetailCache<?> cache : caches) {
+            out.append("aurora_detail_cache_misses_total{cache=\"").append(cache.getName()).append("\"} ")
+                    .append(cache.getMisses()).append('\n');
+        }
+        out.append("# HELP aurora_detail_cache_evictions_total Least recently used strings dropped for room.\n");
+        out.append("# TYPE aurora_detail_cache_evictions_total counter\n");
+        for (DetailCache<?> cache : caches) {
+            out.append("aurora_detail_cache_evictions_total{cache=\"").append(cache.getName()).append("\"} ")
+                    .append(cache.getEvictions()).append('\n');
+        }
+        out.append("# HELP aurora_detail_cache_bytes Estimated size of the cached strings.\n");
+        out.append("# TYPE aurora_detail_cache_bytes gauge\n");
+        for (DetailCache<?> cache : caches) {
+            out.append("aurora_detail_cache_bytes{cache=\"").append(cache.getName()).append("\"} ")
+                    .append(cache.getBytes()).append('\n');
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    // Histogram Class
+    // ! Log-linear latency histogram in the HdrHistogram layout: every power of
+    // two is split into 16 equal buckets, so any recorded value is known to
+    // within 1/16 (6.25%) from 1 ns to hours in under a thousand counters.
+    // Recording is one atomic increment and no allocation.
+    static final class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS; // * Up to exponent 63
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0; // * The clock is monotonic, but be safe
+            }
+            counts.incrementAndGet(bucket(nanos));
+            sum.add(nanos);
+            long seen = max.get();
+            while (nanos > seen && !max.compareAndSet(seen, nanos)) { // * Only written by a new maximum
+                seen = max.get();
+            }
+        }
+
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        // * Values below 16 have a bucket each, then 16 buckets per power of two
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        // * Largest value that lands in the bucket
+        static long highestIn(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+            return lowest + (1L << (exponent - SUB_BITS)) - 1;
+        }
+
+        // ! Copy of the counters, taken without stopping the recorders
+        public Snapshot snapshot() {
+            long[] copy = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] = counts.get(i);
+                count += copy[i];
+            }
+            return new Snapshot(copy, count, sum.sum(), max.get());
+        }
+
+        // Snapshot Class
+        static final class Snapshot {
+            private final long[] counts;
+            private final long count;
+            private final long sumNanos;
+            private final long maxNanos;
+
+            private Snapshot(long[] counts, long count, long sumNanos, long maxNanos) {
+                this.counts = counts;
+                this.count = count;
+                this.sumNanos = sumNanos;
+                this.maxNanos = maxNanos;
+            }
+
+            public long getCount() {
+                return count;
+            }
+
+            public long getSumNanos() {
+                return sumNanos;
+            }
+
+            public long getMeanNanos() {
+                return count == 0 ? 0 : sumNanos / count;
+            }
+
+            // ! Value at or below which the fraction of calls fell, never above the maximum
+            public long percentile(double fraction) {
+                if (count == 0) {
+                    return 0;
+                }
+                long rank = Math.max(1, (long) Math.ceil(fraction * count));
+                long seen = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    seen += counts[i];
+                    if (seen >= rank) {
+                        return Math.min(highestIn(i), maxNanos);
+                    }
+                }
+                return maxNanos;
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Clinic Metrics Benchmark
+// ! The metrics mode of ClinicBenchmark: histogram accuracy and the cost of timing.
+final class ClinicMetricsBenchmark {
+    private ClinicMetricsBenchmark() {
+    }
+
+    // ! Checks the latency histogram against exact percentiles, then measures
+    // what timing costs on the hot lookups. Run it once more with
+    // -Daurora.metrics=false to see the same lookups untimed.
+    static boolean runMetrics(int patients) throws IOException {
+        List<String> problems = new ArrayList<>();
+        Random random = new Random(42);
+        ClinicMetrics.Histogram histogram = new ClinicMetrics.Histogram();
+        long[] values = new long[1_000_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 25); // * 1 ns to a minute, evenly over the magnitudes
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        ClinicMetrics.Histogram.Snapshot snapshot = histogram.snapshot();
+        for (double fraction : new double[] { 0.001, 0.1, 0.5, 0.9, 0.99, 0.999, 1.0 }) {
+            long exact = values[(int) Math.ceil(fraction * values.length) - 1];
+            long reported = snapshot.percentile(fraction);
+            if (reported < exact || reported > exact + exact / 16) {
+                problems.add("p" + fraction * 100 + " is " + reported + ", exact " + exact);
+            }
+        }
+        if (snapshot.getCount() != values.length || histogram.getMaxNanos() != values[values.length - 1]) {
+            problems.add("count or maximum differs");
+        }
+
+        Path directory = Files.createTempDirectory("aurora-metrics");
+        List<Treatment> treatments = new ArrayList<>();
+        treatments.add(new Treatment(1, "Acne Treatment", 2750.00));
+        ClinicService service = BenchmarkFixture.openClinic(directory, TreatmentCatalog.of(treatments));
+        service.importDoctor(new Doctor("Dr. Bench", "bench@aurora.lk", "0770000000", "D001"));
+        List<Patient> batch = new ArrayList<>();
+        for (int i = 0; i < patients; i++) {
+            batch.add(BenchmarkFixture.patient(i));
+            if (batch.size() == ClinicCsv.BATCH_ROWS || i == patients - 1) {
+                service.importPatients(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        String[] nicKeys = new String[BenchmarkFixture.KEYS];
+        for (int i = 0; i < BenchmarkFixture.KEYS; i++) {
+            nicKeys[i] = BenchmarkFixture.nic(random.nextInt(patients));
+        }
+        ClinicMetrics metrics = service.getMetrics();
+
+        System.out.println("Metrics " + (ClinicMetrics.ENABLED ? "enabled" : "disabled") + ", " + patients
+                + " patients");
+        BenchmarkHarness harness = new BenchmarkHarness(1.0, 2.0);
+        BenchmarkHarness.printHeader();
+        BenchmarkHarness.print(harness.measure("ClinicMetrics start + record", i -> {
+            long start = metrics.start();
+            metrics.record(ClinicMetrics.Operation.SEARCH_DOCTOR, start);
+            return start;
+        }));
+        BenchmarkHarness.print(harness.measure("ClinicService.findPatient (NIC)",
+                i -> service.findPatient(nicKeys[i & (BenchmarkFixture.KEYS - 1)]).hashCode()));
+        BenchmarkHarness.print(harness.measure("ClinicService.findDoctor",
+                i -> service.findDoctor("D001").hashCode()));
+        if (ClinicMetrics.ENABLED) {
+            ClinicMetrics.Histogram.Snapshot lookups = metrics.latency(ClinicMetrics.Operation.SEARCH_PATIENT)
+                    .snapshot();
+            System.out.printf("Recorded findPatient: %,d calls, p50 %d ns, p99 %d ns%n", lookups.getCount(),
+                    lookups.percentile(0.5), lookups.percentile(0.99));
+            if (lookups.getCount() == 0) {
+                problems.add("the lookups were not recorded");
+            }
+        }
+        BenchmarkFixture.closeClinic(service);
+
+        BenchmarkFixture.report(problems);
+        BenchmarkFixture.deleteTree(directory);
+        return problems.isEmpty();
+    }
+}
@@ -0,0 +1,506 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Clinic Partitions
+// ! The branches of the clinic as partitions. Every branch has its own data
+// directory, journal, calendars and indexes, and hands out appointment and
+// invoice IDs from its own range, so an ID tells which branch it belongs to
+// and branches never coordinate to number a booking. A branch is served in
+// this process (Local) or by another process through its HTTP API (Remote).
+// Queries across branches are sent to every partition at once and gathered
+// with a deadline; a branch that fails or answers too late is reported as
+// unavailable instead of failing the whole query.
+class ClinicPartitions implements AutoCloseable {
+    static final int ID_RANGE = 100_000_000;
+    static final int MAX_BRANCHES = Integer.MAX_VALUE / ID_RANGE; // * 21, so every ID stays an int
+    static final String DEFAULT_BRANCH_NAME = "Main";
+    static final long DEFAULT_TIMEOUT_MILLIS = 2_000;
+    private static final int MAX_REPORT_DAYS = 366;
+
+    private final List<Partition> partitions = new ArrayList<>(); // * By branch
+    private final ExecutorService executor = ClinicHttpServer.newRequestExecutor();
+    private final long timeoutMillis;
+
+    ClinicPartitions() {
+        this(DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    ClinicPartitions(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    // ! ID ranges: branch 0 owns 1 to 100,000,000, branch 1 the next hundred million, and so on
+
+    static int firstID(int branch) {
+        return branch * ID_RANGE + 1;
+    }
+
+    static int lastID(int branch) {
+        return branch * ID_RANGE + ID_RANGE;
+    }
+
+    // * Branch that handed out the appointment or invoice ID
+    static int branchOf(int id) {
+        return (id - 1) / ID_RANGE;
+    }
+
+    static void checkBranch(int branch) {
+        if (branch < 0 || branch >= MAX_BRANCHES) {
+            throw new IllegalArgumentException("Branch must be from 0 to " + (MAX_BRANCHES - 1) + ": " + branch);
+        }
+    }
+
+    // Partition Interface
+    // ! The questions one branch answers for the queries across branches.
+    interface Partition extends AutoCloseable {
+        int getBranch();
+
+        String getName();
+
+        // * Patient registered at the branch with that NIC in any case, or null
+        Patient findPatientByNic(String nic) throws IOException;
+
+        // * Totals of the branch, of a day or range written as "<from> to <to>" or of all time (null)
+        Totals totals(String dates) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    // Totals Class
+    // ! Record counts and appointment outcomes of one branch, or summed over several.
+    static final class Totals {
+        private final long patients;
+        private final long appointments;
+        private final long booked;
+        private final long canceled;
+        private final long completed;
+        private final long noShows;
+        private final long revenueCents;
+
+        Totals(long patients, long appointments, long booked, long canceled, long completed, long noShows,
+                long revenueCents) {
+            this.patients = patients;
+            this.appointments = appointments;
+            this.booked = booked;
+            this.canceled = canceled;
+            this.completed = completed;
+            this.noShows = noShows;
+            this.revenueCents = revenueCents;
+        }
+
+        // ! Totals of a branch served by this process
+        static Totals of(ClinicService service, String dates) {
+            ClinicAnalytics analytics = service.getAnalytics();
+            long patients = service.getRepository().getPatientCount();
+            long appointments = service.getRepository().getAppointmentCount();
+            if (dates == null) {
+                ClinicAnalytics.Counters total = analytics.total();
+                return new Totals(patients, appointments, total.getBooked(), total.getCanceled(),
+                        total.getCompleted(), total.getNoShows(), total.getRevenueCents());
+            }
+            LocalDate[] range = parseRange(dates);
+            Totals sum = new Totals(patients, appointments, 0, 0, 0, 0, 0);
+            for (LocalDate day = range[0]; !day.isAfter(range[1]); day = day.plusDays(1)) {
+                ClinicAnalytics.Counters counters = analytics.forDay(day);
+                sum = sum.plus(new Totals(0, 0, counters.getBooked(), counters.getCanceled(),
+                        counters.getCompleted(), counters.getNoShows(), counters.getRevenueCents()));
+            }
+            return sum;
+        }
+
+        static Totals sum(Collection<Totals> totals) {
+            Totals sum = new Totals(0, 0, 0, 0, 0, 0, 0);
+            for (Totals other : totals) {
+                sum = sum.plus(other);
+            }
+            return sum;
+        }
+
+        Totals plus(Totals other) {
+            return new Totals(patients + other.patients, appointments + other.appointments, booked + other.booked,
+                    canceled + other.canceled, completed + other.completed, noShows + other.noShows,
+                    revenueCents + other.revenueCents);
+        }
+
+        public long getPatients() {
+            return patients;
+        }
+
+        public long getAppointments() {
+            return appointments;
+        }
+
+        public long getBooked() {
+            return booked;
+        }
+
+        public long getCanceled() {
+            return canceled;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getNoShows() {
+            return noShows;
+        }
+
+        public long getRevenueCents() {
+            return revenueCents;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Totals)) {
+                return false;
+            }
+            Totals that = (Totals) other;
+            return patients == that.patients && appointments == that.appointments && booked == that.booked
+                    && canceled == that.canceled && completed == that.completed && noShows == that.noShows
+                    && revenueCents == that.revenueCents;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(appointments * 31 + revenueCents);
+        }
+
+        @Override
+        public String toString() {
+            return "patients=" + patients + ", appointments=" + appointments + ", booked=" + booked + ", canceled="
+                    + canceled + ", completed=" + completed + ", noShows=" + noShows + ", revenue=LKR "
+                    + Money.format(revenueCents);
+        }
+    }
+
+    // * A day, or a range written as "<from> to <to>", as the HTTP analytics route reads it
+    static LocalDate[] parseRange(String dates) {
+        String[] range = dates.trim().split("(?i)\\s+to\\s+", 2);
+        LocalDate from = AppointmentDates.parseDate(range[0]);
+        LocalDate to = range.length == 2 && from != null ? AppointmentDates.parseDate(range[1], from) : from;
+        if (from == null || to == null || to.isBefore(from) || ChronoUnit.DAYS.between(from, to) > MAX_REPORT_DAYS) {
+            throw new IllegalArgumentException("Invalid date range.");
+        }
+        return new LocalDate[] { from, to };
+    }
+
+    // Local Class
+    // ! A branch served by this process.
+    static final class Local implements Partition {
+        private final ClinicService service;
+
+        Local(ClinicService service) {
+            this.service = service;
+        }
+
+        public ClinicService getService() {
+            return service;
+        }
+
+        @Override
+        public int getBranch() {
+            return service.getBranch();
+        }
+
+        @Override
+        public String getName() {
+            return service.getBranchName();
+        }
+
+        @Override
+        public Patient findPatientByNic(String nic) {
+            return service.getRepository().findPatientByNicIgnoreCase(nic);
+        }
+
+        @Override
+        public Totals totals(String dates) {
+            return Totals.of(service, dates);
+        }
+
+        // ! Lets the subscribers finish, then closes the journal and the store
+        @Override
+        public void close() throws IOException {
+            service.close();
+            service.getPersistence().close();
+            service.getRepository().getStore().close();
+        }
+    }
+
+    // Remote Class
+    // ! A branch served by another process, asked through its HTTP API
+    // (GET /branch and GET /patients?nic=).
+    static final class Remote implements Partition {
+        private final HttpClient client;
+        private final URI base;
+        private final int branch;
+        private final String name;
+
+        private Remote(HttpClient client, URI base, int branch, String name) {
+            this.client = client;
+            this.base = base;
+            this.branch = branch;
+            this.name = name;
+        }
+
+        // ! Asks the process which branch it serves
+        static Remote connect(URI base) throws IOException {
+            // * HTTP/1.1 with kept alive connections, the default would try an HTTP/2 upgrade on every request
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(2)).build();
+            Map<String, String> branch = get(client, base.resolve("/branch"));
+            if (branch == null) {
+                throw new IOException(base + " does not serve a branch");
+            }
+            return new Remote(client, base, Integer.parseInt(branch.get("branch")), branch.get("name"));
+        }
+
+        public URI getBase() {
+            return base;
+        }
+
+        @Override
+        public int getBranch() {
+            return branch;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Patient findPatientByNic(String nic) throws IOException {
+            Map<String, String> patient = get(client, base.resolve("/patients?nic=" + encode(nic)));
+            return patient == null ? null
+                    : new Patient(patient.get("name"), patient.get("email"), patient.get("contactNumber"),
+                            patient.get("nic"));
+        }
+
+        @Override
+        public Totals totals(String dates) throws IOException {
+            Map<String, String> json = get(client,
+                    base.resolve(dates == null ? "/branch" : "/branch?date=" + encode(dates)));
+            if (json == null) {
+                throw new IOException(base + " does not serve a branch");
+            }
+            return new Totals(Long.parseLong(json.get("patients")), Long.parseLong(json.get("appointments")),
+                    Long.parseLong(json.get("booked")), Long.parseLong(json.get("canceled")),
+                    Long.parseLong(json.get("completed")), Long.parseLong(json.get("noShows")),
+                    Money.parseCents(json.get("revenue")));
+        }
+
+        @Override
+        public void close() {
+            // * HttpClient has no close before Java 21, its threads are daemons
+        }
+
+        private static String encode(String value) {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8);
+        }
+
+        // * The JSON object of a 200 response, null for 404, IOException for anything else
+        private static Map<String, String> get(HttpClient client, URI uri) throws IOException {
+            HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(5)).GET().build();
+            HttpResponse<String> response;
+            try {
+                response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while asking " + uri, e);
+            }
+            if (response.statusCode() == 404) {
+                return null;
+            }
+            if (response.statusCode() != 200) {
+                throw new IOException(uri + " answered " + response.statusCode() + ": " + response.body());
+            }
+            return ClinicHttpServer.Json.parseObject(response.body());
+        }
+    }
+
+    // Gathered Class
+    // ! Answers of the branches that answered, by branch name in branch order,
+    // and the reason for every branch that did not.
+    static final class Gathered<T> {
+        private final Map<String, T> results = new LinkedHashMap<>();
+        private final Map<String, String> failures = new LinkedHashMap<>();
+
+        // * Branches with no answer (null) are left out
+        public Map<String, T> getResults() {
+            return Collections.unmodifiableMap(results);
+        }
+
+        public Map<String, String> getFailures() {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        public boolean isComplete() {
+            return failures.isEmpty();
+        }
+    }
+
+    // Query Interface
+    private interface Query<T> {
+        T ask(Partition partition) throws IOException;
+    }
+
+    // ! Opens the branches under one directory in this process, one
+    // subdirectory per branch name, branch numbers in the order given
+    static ClinicPartitions openLocal(Path root, List<String> names, TreatmentCatalog treatments,
+            int snapshotInterval) throws IOException {
+        ClinicPartitions partitions = new ClinicPartitions();
+        try {
+            for (int branch = 0; branch < names.size(); branch++) {
+                partitions.add(new Local(openBranch(root.resolve(names.get(branch)), treatments, branch,
+                        names.get(branch), snapshotInterval)));
+            }
+        } catch (IOException | RuntimeException e) {
+            partitions.close();
+            throw e;
+        }
+        return partitions;
+    }
+
+    // ! Restores one branch from its directory: snapshot and journal, the
+    // appointment store and the booked slots of the calendars
+    static ClinicService openBranch(Path directory, TreatmentCatalog treatments, int branch, String name,
+            int snapshotInterval) throws IOException {
+        ClinicRepository repository = new ClinicRepository();
+        repository.attachStore(new AppointmentStore(directory.resolve("store"), firstID(branch)), treatments);
+        ClinicPersistence persistence = new ClinicPersistence(directory, repository, treatments, snapshotInterval);
+        SchedulingEngine scheduler = new SchedulingEngine();
+        for (Appointment appointment : repository.getAppointmentsInMemory()) { // * Archived ones are long past
+            if (appointment.getStatus().holdsSlot() && appointment.getLocalDate() != null
+                    && appointment.getLocalTime() != null) {
+                scheduler.restore(appointment.getDoctor(), appointment.getLocalDate(), appointment.getLocalTime());
+            }
+        }
+        return new ClinicService(repository, persistence, scheduler, treatments, branch, name);
+    }
+
+    // ! Adds a branch, every branch number may appear once
+    public synchronized void add(Partition partition) {
+        for (Partition known : partitions) {
+            if (known.getBranch() == partition.getBranch()) {
+                throw new IllegalArgumentException("Branch " + partition.getBranch() + " is already served by "
+                        + known.getName() + ".");
+            }
+        }
+        partitions.add(partition);
+        partitions.sort((a, b) -> Integer.compare(a.getBranch(), b.getBranch()));
+    }
+
+    public synchronized List<Partition> getPartitions() {
+        return new ArrayList<>(partitions);
+    }
+
+    // * Partition of the branch that handed out the ID, or null if it is not served
+    public synchronized Partition partitionOf(int id) {
+        int branch = branchOf(id);
+        for (Partition partition : partitions) {
+            if (partition.getBranch() == branch) {
+                return partition;
+            }
+        }
+        return null;
+    }
+
+    // ! The branches where a patient with that NIC is registered
+    public Gathered<Patient> findPatientByNic(String nic) {
+        return scatter(partition -> partition.findPatientByNic(nic));
+    }
+
+    // ! Totals of every branch, add them up with Totals.sum()
+    public Gathered<Totals> totals(String dates) {
+        if (dates != null) {
+            parseRange(dates); // * Refuse a bad range here rather than once per branch
+        }
+        return scatter(partition -> partition.totals(dates));
+    }
+
+    // ! Sends the query to every remote partition at once and waits for the
+    // answers until the deadline; what is missing then is reported as a
+    // failure. Local partitions answer from memory in microseconds, less than
+    // a hand-off to another thread costs, so they are asked on this thread
+    // while the remote ones are in flight.
+    private <T> Gathered<T> scatter(Query<T> query) {
+        List<Partition> targets = getPartitions();
+        List<Future<T>> answers = new ArrayList<>(Collections.nCopies(targets.size(), null));
+        for (int i = 0; i < targets.size(); i++) {
+            Partition partition = targets.get(i);
+            if (!(partition instanceof Local)) {
+                answers.set(i, executor.submit(() -> query.ask(partition)));
+            }
+        }
+        Gathered<T> gathered = new Gathered<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (int i = 0; i < targets.size(); i++) {
+            String name = targets.get(i).getName();
+            Future<T> future = answers.get(i);
+            try {
+                T answer = future == null ? query.ask(targets.get(i))
+                        : future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (answer != null) {
+                    gathered.results.put(name, answer);
+                }
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                gathered.failures.put(name, "no answer within " + timeoutMillis + " ms");
+            } catch (ExecutionException e) {
+                gathered.failures.put(name, describe(e.getCause()));
+            } catch (IOException | RuntimeException e) {
+                gathered.failures.put(name, describe(e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                gathered.failures.put(name, "interrupted");
+            }
+        }
+        return gathered;
+    }
+
+    // * Connection errors often have no message, their type says enough then
+    private static String describe(Throwable failure) {
+        return failure.getMessage() != null ? failure.getMessage() : failure.getClass().getSimpleName();
+    }
+
+    // ! Closes every partition, the first failure is thrown after all were tried
+    @Override
+    public synchronized void close() throws IOException {
+        executor.shutdownNow();
+        IOException failure = null;
+        for (Partition partition : partitions) {
+            try {
+                partition.close();
+            } catch (IOException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        partitions.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Clinic Partitions Benchmark
+// ! The partitions mode of ClinicBenchmark: branches in process and as one
+// process each, queried across branches over ClinicPartitions and the HTTP API.
+final class ClinicPartitionsBenchmark {
+    private ClinicPartitionsBenchmark() {
+    }
+
+    // ! Runs the branches in this process and then as one process each, fills
+    // them the same way and checks the queries across branches: every ID is in
+    // its branch's range, a NIC is found in every branch it is registered at,
+    // the totals add up, and a branch that is down is reported, not fatal.
+    static boolean runPartitions(int branches, int appointments) throws IOException {
+        List<String> problems = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int b = 0; b < branches; b++) {
+            names.add("Branch" + b);
+        }
+        List<Treatment> treatments = new ArrayList<>();
+        treatments.add(new Treatment(1, "Acne Treatment", 2750.00));
+        TreatmentCatalog catalog = TreatmentCatalog.of(treatments);
+        List<String> slots = partitionSlots(appointments);
+        String shared = BenchmarkFixture.nic(0); // * A patient registered at every branch
+        long expectedRevenue = 0; // * Billed totals of the invoices, which analytics must agree with
+
+        // * Every branch in this process
+        Path root = Files.createTempDirectory("aurora-partitions");
+        ClinicPartitions local = ClinicPartitions.openLocal(root, names, catalog, 10_000);
+        int patient = 1;
+        for (ClinicPartitions.Partition partition : local.getPartitions()) {
+            ClinicService service = ((ClinicPartitions.Local) partition).getService();
+            service.importDoctor(new Doctor("Dr. Branch", "branch@aurora.lk", "0770000000", "D001"));
+            Doctor doctor = service.findDoctor("D001");
+            Patient sharedPatient = service.registerPatient(BenchmarkFixture.name(0), "p0@mail.com", "070", shared);
+            for (int i = 0; i < appointments; i++, patient++) {
+                Patient booking = i == 0 ? sharedPatient
+                        : BenchmarkFixture.register(service, patient);
+                String[] slot = slots.get(i).split(" ");
+                Appointment appointment = service.bookAppointment(booking, doctor, treatments.get(0), slot[0],
+                        slot[1]);
+                checkBranchID(appointment.getAppointmentID(), partition, "appointment", problems);
+                if (local.partitionOf(appointment.getAppointmentID()) != partition) {
+                    problems.add("appointment " + appointment.getAppointmentID() + " is routed to another branch");
+                }
+                if (i % 2 == 1) {
+                    Invoice invoice = service.issueInvoice(appointment, treatments.get(0));
+                    expectedRevenue += invoice.getBill().getTotalCents();
+                    checkBranchID(invoice.getInvoiceID(), partition, "invoice", problems);
+                }
+            }
+        }
+        // * The analytics totals follow the event bus, let every branch catch up first
+        for (ClinicPartitions.Partition partition : local.getPartitions()) {
+            ((ClinicPartitions.Local) partition).getService().getEvents().awaitIdle(5, TimeUnit.SECONDS);
+        }
+        checkPartitions(local, branches, appointments, shared, BenchmarkFixture.nic(2), expectedRevenue, "in process",
+                problems);
+        long start = System.nanoTime();
+        int lookups = 20_000;
+        for (int i = 0; i < lookups; i++) {
+            local.findPatientByNic(BenchmarkFixture.nic(i % (branches * appointments)));
+        }
+        System.out.printf("In process:  %d branches, scatter-gather NIC lookup %,.0f ns%n", branches,
+                (System.nanoTime() - start) / (double) lookups);
+        local.close();
+        local = ClinicPartitions.openLocal(root, names, catalog, 10_000);
+        checkPartitions(local, branches, appointments, shared, BenchmarkFixture.nic(2), expectedRevenue,
+                "after a restart", problems);
+        for (ClinicPartitions.Partition partition : local.getPartitions()) {
+            ClinicService service = ((ClinicPartitions.Local) partition).getService();
+            String[] slot = slots.get(appointments).split(" ");
+            Appointment next = service.bookAppointment(service.findPatient(shared), service.findDoctor("D001"),
+                    treatments.get(0), slot[0], slot[1]);
+            checkBranchID(next.getAppointmentID(), partition, "appointment after a restart", problems);
+        }
+        local.close();
+        BenchmarkFixture.deleteTree(root);
+
+        // * One process per branch, asked over HTTP
+        root = Files.createTempDirectory("aurora-processes");
+        List<Process> processes = new ArrayList<>();
+        ClinicPartitions remote = new ClinicPartitions();
+        HttpClient client = HttpClient.newHttpClient();
+        try {
+            List<URI> bases = new ArrayList<>();
+            for (int b = 0; b < branches; b++) {
+                int port;
+                try (ServerSocket probe = new ServerSocket(0)) {
+                    port = probe.getLocalPort();
+                }
+                Path directory = Files.createDirectories(root.resolve(names.get(b)));
+                processes.add(new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-cp", System.getProperty("java.class.path"), "-Daurora.data.dir=" + directory,
+                        "-Daurora.branch=" + b, "-Daurora.branch.name=" + names.get(b), "AuroraSkinCareSystem",
+                        "--http", String.valueOf(port)).redirectErrorStream(true)
+                        .redirectOutput(directory.resolve("server.log").toFile()).start());
+                bases.add(URI.create("http://localhost:" + port));
+            }
+            for (URI base : bases) {
+                remote.add(connectWhenUp(base));
+            }
+            patient = 1;
+            for (int b = 0; b < branches; b++) {
+                URI base = bases.get(b);
+                ClinicPartitions.Partition partition = remote.getPartitions().get(b);
+                post(client, base, "/patients", "{\"name\":\"" + BenchmarkFixture.name(0)
+                        + "\",\"email\":\"p0@mail.com\","
+                        + "\"contactNumber\":\"070\",\"nic\":\"" + shared + "\"}");
+                for (int i = 0; i < appointments; i++, patient++) {
+                    String nic = i == 0 ? shared : BenchmarkFixture.nic(patient);
+                    if (i > 0) {
+                        post(client, base, "/patients", "{\"name\":\"" + BenchmarkFixture.name(patient)
+                                + "\",\"email\":\"p"
+                                + patient + "@mail.com\",\"contactNumber\":\"07" + patient + "\",\"nic\":\"" + nic
+                                + "\"}");
+                    }
+                    String[] slot = slots.get(i).split(" ");
+                    int id = jsonNumber(post(client, base, "/appointments", "{\"nic\":\"" + nic
+                            + "\",\"doctor\":\"D001\",\"treatment\":\"1\",\"date\":\"" + slot[0]
+                            + "\",\"time\":\"" + slot[1] + "\"}"), "id");
+                    checkBranchID(id, partition, "appointment", problems);
+                    if (i % 2 == 1) {
+                        String invoice = post(client, base, "/invoices", "{\"appointment\":" + id + "}");
+                        checkBranchID(jsonNumber(invoice, "invoiceID"),
+                                partition, "invoice", problems);
+                    }
+                }
+            }
+            checkStatusCodes(client, bases.get(0), problems);
+            start = System.nanoTime();
+            lookups = 2_000;
+            for (int i = 0; i < lookups; i++) {
+                remote.findPatientByNic(BenchmarkFixture.nic(i % (branches * appointments)));
+            }
+            System.out.printf("Processes:   %d branches, scatter-gather NIC lookup %,.0f ns%n", branches,
+                    (System.nanoTime() - start) / (double) lookups);
+            checkPartitions(remote, branches, appointments, shared, BenchmarkFixture.nic(2), expectedRevenue,
+                    "over HTTP", problems);
+
+            // * Stop one branch, the others still answer
+            if (branches > 1) {
+                processes.get(branches - 1).destroy();
+                processes.get(branches - 1).waitFor(10, TimeUnit.SECONDS);
+                ClinicPartitions.Gathered<Patient> partial = remote.findPatientByNic(shared);
+                if (partial.getResults().size() != branches - 1
+                        || !partial.getFailures().containsKey(names.get(branches - 1))) {
+                    problems.add("with a branch down: " + partial.getResults().keySet() + " answered, failures "
+                            + partial.getFailures());
+                } else {
+                    System.out.println("Branch down: " + names.get(branches - 1) + " reported as \""
+                            + partial.getFailures().get(names.get(branches - 1)) + "\"");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            problems.add("interrupted");
+        } finally {
+            remote.close();
+            for (Process process : processes) {
+                process.destroy();
+            }
+            for (Process process : processes) {
+                try {
+                    process.waitFor(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            BenchmarkFixture.deleteTree(root);
+        }
+
+        return BenchmarkFixture.report(problems);
+    }
+
+    // * Cross-branch lookups and totals of a filled set of branches
+    private static void checkPartitions(ClinicPartitions partitions, int branches, int appointments, String shared,
+            String single, long expectedRevenue, String when, List<String> problems) {
+        ClinicPartitions.Gathered<Patient> everywhere = partitions.findPatientByNic(shared.toLowerCase());
+        if (!everywhere.isComplete() || everywhere.getResults().size() != branches) {
+            problems.add(when + ": shared NIC found at " + everywhere.getResults().keySet() + ", failures "
+                    + everywhere.getFailures());
+        }
+        ClinicPartitions.Gathered<Patient> once = partitions.findPatientByNic(single);
+        if (once.getResults().size() != 1 || !once.getResults().containsKey("Branch0")
+                || !once.getResults().get("Branch0").getNIC().equals(single)) {
+            problems.add(when + ": " + single + " found at " + once.getResults().keySet() + ", expected Branch0");
+        }
+        if (!partitions.findPatientByNic("999999999999").getResults().isEmpty()) {
+            problems.add(when + ": an unknown NIC was found");
+        }
+        ClinicPartitions.Gathered<ClinicPartitions.Totals> totals = partitions.totals(null);
+        ClinicPartitions.Totals sum = ClinicPartitions.Totals.sum(totals.getResults().values());
+        ClinicPartitions.Totals expected = new ClinicPartitions.Totals((long) branches * appointments,
+                (long) branches * appointments, (long) branches * appointments, 0, (long) branches * (appointments / 2),
+                0, expectedRevenue);
+        if (!totals.isComplete() || !sum.equals(expected)) {
+            problems.add(when + ": totals " + sum + ", expected " + expected);
+        }
+        System.out.println("Totals " + when + ": " + sum);
+    }
+
+    private static void checkBranchID(int id, ClinicPartitions.Partition partition, String what,
+            List<String> problems) {
+        if (ClinicPartitions.branchOf(id) != partition.getBranch()) {
+            problems.add(what + " ID " + id + " of " + partition.getName() + " is outside its range");
+        }
+    }
+
+    // * Distinct bookable slots of the default doctor hours, as "yyyy-MM-dd hh:mmam"
+    private static List<String> partitionSlots(int count) {
+        SchedulingEngine calendar = new SchedulingEngine();
+        Doctor doctor = new Doctor("Dr. Slots", "slots@aurora.lk", "0770000000", "D001");
+        List<String> slots = new ArrayList<>();
+        SchedulingEngine.Slot slot = calendar.nextFreeSlot(doctor, LocalDate.now().plusDays(1), LocalTime.MIN);
+        while (slots.size() <= count && slot != null) {
+            calendar.book(doctor, slot.getDate(), slot.getTime());
+            slots.add(slot.getDate() + " " + AppointmentDates.formatTime(slot.getTime()));
+            slot = calendar.nextFreeSlot(doctor, slot.getDate(), slot.getTime());
+        }
+        return slots;
+    }
+
+    private static ClinicPartitions.Remote connectWhenUp(URI base) throws IOException, InterruptedException {
+        for (int tries = 0;; tries++) {
+            try {
+                return ClinicPartitions.Remote.connect(base);
+            } catch (IOException e) {
+                if (tries == 100) {
+                    throw e;
+                }
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    // * Creates something in a collection, which answers 201
+    private static String post(HttpClient client, URI base, String path, String json)
+            throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(base.resolve(path))
+                .POST(HttpRequest.BodyPublishers.ofString(json)).build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 201) {
+            throw new IOException("POST " + path + " answered " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    // ! An action answers 200, not 201, and a method the path does not have 405
+    private static void checkStatusCodes(HttpClient client, URI base, List<String> problems)
+            throws IOException, InterruptedException {
+        int rebuild = status(client, base, "POST", "/analytics/rebuild");
+        int delete = status(client, base, "DELETE", "/doctors");
+        if (rebuild != 200 || delete != 405) {
+            problems.add("POST /analytics/rebuild answered " + rebuild + " and DELETE /doctors " + delete
+                    + ", expected 200 and 405");
+        }
+    }
+
+    private static int status(HttpClient client, URI base, String method, String path)
+            throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(base.resolve(path)).method(method,
+                HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    // * The first number under that key in a JSON answer
+    private static int jsonNumber(String json, String key) {
+        int start = json.indexOf("\"" + key + "\":") + key.length() + 3;
+        int end = start;
+        while (end < json.length() && Character.isDigit(json.charAt(end))) {
+            end++;
+        }
+        return Integer.parseInt(json.substring(start, end));
+    }
+}
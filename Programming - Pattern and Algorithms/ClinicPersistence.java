@@ -0,0 +1,496 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Persistence Class
+// ! Write path of the clinic: every change is first appended to the journal,
+// then applied to the repository. Snapshots of the whole state are taken every
+// few thousand events so a restart only replays the journal tail.
+class ClinicPersistence implements AutoCloseable {
+    // * Event types stored in the journal
+    static final byte PATIENT_REGISTERED = 1;
+    static final byte APPOINTMENT_BOOKED = 2;
+    static final byte APPOINTMENT_UPDATED = 3;
+    static final byte APPOINTMENT_CANCELLED = 4;
+    static final byte INVOICE_ISSUED = 5;
+    static final byte INVOICES_ISSUED = 6; // * A block of invoice IDs used by a batch run
+    static final byte APPOINTMENT_STATUS_CHANGED = 7; // * Completed or no-show
+    static final byte DOCTOR_REGISTERED = 8;
+    static final byte PATIENTS_IMPORTED = 9; // * One batch of a CSV import
+    static final byte APPOINTMENTS_IMPORTED = 10;
+    // ! The same three with the day the date resolved to, written since 2, 3
+    // and 10 re-parsed a typed "Mon" against the day of the restart
+    static final byte APPOINTMENT_BOOKED_ON = 11;
+    static final byte APPOINTMENT_MOVED_TO = 12;
+    static final byte APPOINTMENTS_IMPORTED_ON = 13;
+    static final byte APPOINTMENT_COMPLETED_WITH = 14; // * Completed with another treatment than booked
+
+    private static final int SNAPSHOT_MAGIC = 0x41555253; // * "AURS"
+    private static final int SNAPSHOT_VERSION = 4; // * 4 added the archived rows, 3 the days, 2 the doctors
+    private static final int NO_DAY = Integer.MIN_VALUE; // * Saved for a date that did not parse
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String JOURNAL_FILE = "journal.log";
+
+    private final Path directory;
+    private final ClinicRepository repository;
+    private final TreatmentCatalog treatments;
+    private final int snapshotInterval;
+    private final ClinicJournal journal;
+    private final AtomicInteger nextAppointmentID = new AtomicInteger(1);
+    private final AtomicInteger nextInvoiceID = new AtomicInteger(1);
+    private final AtomicInteger eventsSinceSnapshot = new AtomicInteger(); // * Written since the last snapshot
+    private final AtomicLong failedSnapshots = new AtomicLong();
+    private volatile String lastSnapshotFailure; // * Why the last snapshot failed, for the reports
+    private volatile boolean journalTail; // * Replayed or failed events the snapshot does not hold yet
+
+    // ! Events from many threads share the read side, a snapshot takes the
+    // write side so it never misses an event that is journaled but not applied
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    // ! Loads the last snapshot, then replays the journal records written after
+    // it. A repository with an appointment store has it attached before.
+    ClinicPersistence(Path directory, ClinicRepository repository, TreatmentCatalog treatments,
+            int snapshotInterval) throws IOException {
+        this.directory = directory;
+        this.repository = repository;
+        this.treatments = treatments;
+        this.snapshotInterval = snapshotInterval;
+        Files.createDirectories(directory);
+        long snapshotSequence = loadSnapshot();
+        this.journal = new ClinicJournal(directory.resolve(JOURNAL_FILE), snapshotSequence, this::replay);
+    }
+
+    // * One past the highest appointment ID saved so far
+    public int getNextAppointmentID() {
+        return nextAppointmentID.get();
+    }
+
+    // * ID the next invoice should get
+    public int getNextInvoiceID() {
+        return nextInvoiceID.get();
+    }
+
+    // * Snapshots due after an event that could not be written, retried later
+    public long getFailedSnapshots() {
+        return failedSnapshots.get();
+    }
+
+    // * Null while no snapshot has failed
+    public String getLastSnapshotFailure() {
+        return lastSnapshotFailure;
+    }
+
+    // ! Write operations: journal first, then memory
+
+    public void registerPatient(Patient patient) {
+        record(PATIENT_REGISTERED, out -> writePatient(out, patient), () -> repository.addPatient(patient));
+    }
+
+    public void registerDoctor(Doctor doctor) {
+        record(DOCTOR_REGISTERED, out -> writeDoctor(out, doctor), () -> addDoctor(doctor));
+    }
+
+    // ! A whole import batch is one journal record, so it costs one fsync
+    public void importPatients(List<Patient> patients) {
+        record(PATIENTS_IMPORTED, out -> {
+            out.writeInt(patients.size());
+            for (Patient patient : patients) {
+                writePatient(out, patient);
+            }
+        }, () -> repository.addPatients(patients));
+    }
+
+    public void importAppointments(List<Appointment> appointments) {
+        record(APPOINTMENTS_IMPORTED_ON, out -> {
+            out.writeInt(appointments.size());
+            for (Appointment appointment : appointments) {
+                out.writeByte(appointment.getStatus().ordinal());
+                writeAppointment(out, appointment);
+            }
+        }, () -> {
+            repository.addAppointments(appointments);
+            for (Appointment appointment : appointments) {
+                saved(appointment);
+            }
+        });
+    }
+
+    public void bookAppointment(Appointment appointment) {
+        record(APPOINTMENT_BOOKED_ON, out -> writeAppointment(out, appointment), () -> {
+            repository.addAppointment(appointment);
+            saved(appointment);
+        });
+    }
+
+    private void saved(Appointment appointment) {
+        nextAppointmentID.accumulateAndGet(appointment.getAppointmentID() + 1, Math::max);
+    }
+
+    // * The day is the one the service booked the slot on
+    public void rescheduleAppointment(Appointment appointment, String date, LocalDate day, String time) {
+        record(APPOINTMENT_MOVED_TO, out -> {
+            out.writeInt(appointment.getAppointmentID());
+            out.writeUTF(date);
+            writeDay(out, day);
+            out.writeUTF(time);
+        }, () -> repository.rescheduleAppointment(appointment, date, day, time));
+    }
+
+    public void cancelAppointment(Appointment appointment) {
+        record(APPOINTMENT_CANCELLED, out -> out.writeInt(appointment.getAppointmentID()),
+                () -> repository.cancelAppointment(appointment));
+    }
+
+    public void changeStatus(Appointment appointment, Status status) {
+        record(APPOINTMENT_STATUS_CHANGED, out -> {
+            out.writeInt(appointment.getAppointmentID());
+            out.writeByte(status.ordinal());
+        }, () -> repository.changeStatus(appointment, status));
+    }
+
+    // * Completion and the treatment that was given, one record so a restart sees both or neither
+    public void completeWith(Appointment appointment, Treatment treatment) {
+        record(APPOINTMENT_COMPLETED_WITH, out -> {
+            out.writeInt(appointment.getAppointmentID());
+            out.writeInt(treatment.getTreatmentID());
+        }, () -> repository.changeStatus(appointment, Status.COMPLETED, treatment));
+    }
+
+    public void issueInvoice(int invoiceID, Appointment appointment, Treatment treatment) {
+        record(INVOICE_ISSUED, out -> {
+            out.writeInt(invoiceID);
+            out.writeInt(appointment.getAppointmentID());
+            out.writeInt(treatment.getTreatmentID());
+        }, () -> nextInvoiceID.accumulateAndGet(invoiceID + 1, Math::max));
+    }
+
+    public void issueInvoices(int firstInvoiceID, int count) {
+        record(INVOICES_ISSUED, out -> {
+            out.writeInt(firstInvoiceID);
+            out.writeInt(count);
+        }, () -> nextInvoiceID.accumulateAndGet(firstInvoiceID + count, Math::max));
+    }
+
+    // ! Moves closed appointments of the days before the given one into the
+    // store. Not journaled: until a snapshot counts the new rows, a restart
+    // loads those appointments from the last snapshot and the journal again.
+    public int archive(LocalDate before) {
+        snapshotLock.readLock().lock(); // * A snapshot sees the store and the heap either before or after
+        try {
+            return repository.archiveBefore(before);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    private interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // * Journals the event, applies it, and takes a snapshot when one is due
+    private void record(byte type, Payload payload, Runnable apply) {
+        snapshotLock.readLock().lock();
+        try {
+            append(type, payload);
+            apply.run();
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        int count = eventsSinceSnapshot.incrementAndGet();
+        // ! Only the thread that resets the count takes the snapshot. A failed one
+        // is retried once another interval of events is journaled, and it is never
+        // reported as a failure of this event, which is already journaled and applied.
+        if (count >= snapshotInterval && eventsSinceSnapshot.compareAndSet(count, 0)) {
+            try {
+                snapshot();
+            } catch (UncheckedIOException e) {
+                lastSnapshotFailure = e.getMessage() + ": " + e.getCause();
+                journalTail = true;
+                failedSnapshots.incrementAndGet();
+            }
+        }
+    }
+
+    private void append(byte type, Payload payload) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            payload.write(out);
+            out.flush();
+            journal.append(type, bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to the journal", e);
+        }
+    }
+
+    // ! Writes the full state to a new snapshot file, then empties the journal
+    public void snapshot() {
+        Path target = directory.resolve(SNAPSHOT_FILE);
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        snapshotLock.writeLock().lock();
+        try {
+            long sequence = journal.getLastSequence();
+            try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(sequence);
+                out.writeInt(nextAppointmentID.get());
+                out.writeInt(nextInvoiceID.get());
+
+                List<Doctor> doctors = repository.getDoctors();
+                out.writeInt(doctors.size());
+                for (Doctor doctor : doctors) {
+                    writeDoctor(out, doctor);
+                }
+
+                List<Patient> patients = repository.getPatients();
+                out.writeInt(patients.size());
+                for (Patient patient : patients) {
+                    writePatient(out, patient);
+                }
+
+                // ! The store rows are written through first, the snapshot counts on them
+                int archived = repository.getArchivedCount();
+                if (archived > 0) {
+                    repository.getStore().force();
+                }
+                out.writeInt(archived);
+                List<Appointment> appointments = repository.getAppointmentsInMemory();
+                out.writeInt(appointments.size());
+                for (Appointment appointment : appointments) {
+                    out.writeByte(appointment.getStatus().ordinal());
+                    writeAppointment(out, appointment);
+                }
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journal.reset(); // * Records up to the snapshot sequence are skipped on replay anyway
+            eventsSinceSnapshot.set(0);
+            journalTail = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the snapshot", e);
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    private long loadSnapshot() throws IOException {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            int version = in.readInt() == SNAPSHOT_MAGIC ? in.readInt() : -1;
+            if (version < 1 || version > SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot file: " + file);
+            }
+            long sequence = in.readLong();
+            nextAppointmentID.set(in.readInt());
+            Appointment.resumeIDsFrom(nextAppointmentID.get());
+            nextInvoiceID.set(in.readInt());
+
+            if (version >= 2) {
+                int doctorCount = in.readInt();
+                for (int i = 0; i < doctorCount; i++) {
+                    addDoctor(readDoctor(in));
+                }
+            }
+            int patientCount = in.readInt();
+            for (int i = 0; i < patientCount; i++) {
+                repository.addPatient(readPatient(in));
+            }
+            int archived = version >= 4 ? in.readInt() : 0;
+            if (archived > 0) {
+                if (repository.getStore() == null) {
+                    throw new IOException("The snapshot needs the appointment store for " + archived + " rows.");
+                }
+                repository.resumeStore(archived);
+            }
+            int appointmentCount = in.readInt();
+            for (int i = 0; i < appointmentCount; i++) {
+                Status status = Status.values()[in.readByte()];
+                repository.addAppointment(readAppointment(in, status, version >= 3));
+            }
+            return sequence;
+        }
+    }
+
+    // * Applies one journal record during startup
+    private void replay(long sequence, byte type, DataInputStream in) throws IOException {
+        switch (type) {
+            case PATIENT_REGISTERED:
+                repository.addPatient(readPatient(in));
+                break;
+            case DOCTOR_REGISTERED:
+                addDoctor(readDoctor(in));
+                break;
+            case PATIENTS_IMPORTED:
+                repository.addPatients(readPatients(in));
+                break;
+            case APPOINTMENTS_IMPORTED:
+            case APPOINTMENTS_IMPORTED_ON:
+                repository.addAppointments(readAppointments(in, type == APPOINTMENTS_IMPORTED_ON));
+                break;
+            case APPOINTMENT_BOOKED:
+            case APPOINTMENT_BOOKED_ON:
+                repository.addAppointment(readAppointment(in, Status.BOOKED, type == APPOINTMENT_BOOKED_ON));
+                break;
+            case APPOINTMENT_UPDATED:
+                repository.rescheduleAppointment(findAppointment(in.readInt()), in.readUTF(), in.readUTF());
+                break;
+            case APPOINTMENT_MOVED_TO: {
+                Appointment appointment = findAppointment(in.readInt());
+                String date = in.readUTF();
+                LocalDate day = readDay(in);
+                repository.rescheduleAppointment(appointment, date, day, in.readUTF());
+                break;
+            }
+            case APPOINTMENT_CANCELLED:
+                repository.cancelAppointment(findAppointment(in.readInt()));
+                break;
+            case APPOINTMENT_STATUS_CHANGED:
+                repository.changeStatus(findAppointment(in.readInt()), Status.values()[in.readByte()]);
+                break;
+            case APPOINTMENT_COMPLETED_WITH: {
+                Appointment appointment = findAppointment(in.readInt());
+                int treatmentID = in.readInt();
+                Treatment treatment = treatments.find(treatmentID);
+                if (treatment == null) {
+                    throw new IOException("Appointment " + appointment.getAppointmentID()
+                            + " was completed with unknown treatment " + treatmentID);
+                }
+                repository.changeStatus(appointment, Status.COMPLETED, treatment);
+                break;
+            }
+            case INVOICE_ISSUED:
+                nextInvoiceID.accumulateAndGet(in.readInt() + 1, Math::max);
+                break;
+            case INVOICES_ISSUED:
+                nextInvoiceID.accumulateAndGet(in.readInt() + in.readInt(), Math::max);
+                break;
+            default:
+                throw new IOException("Unknown journal event type " + type + " at sequence " + sequence);
+        }
+        journalTail = true; // * Not counted, a restart does not bring the next snapshot closer
+    }
+
+    private static void writePatient(DataOutputStream out, Patient patient) throws IOException {
+        out.writeUTF(patient.name);
+        out.writeUTF(patient.getEmail());
+        out.writeUTF(patient.contactNumber);
+        out.writeUTF(patient.getNIC());
+    }
+
+    private static Patient readPatient(DataInputStream in) throws IOException {
+        return new Patient(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+    }
+
+    private static List<Patient> readPatients(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Patient> patients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            patients.add(readPatient(in));
+        }
+        return patients;
+    }
+
+    private List<Appointment> readAppointments(DataInputStream in, boolean dated) throws IOException {
+        int count = in.readInt();
+        List<Appointment> appointments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Status status = Status.values()[in.readByte()];
+            appointments.add(readAppointment(in, status, dated));
+        }
+        return appointments;
+    }
+
+    private static void writeDoctor(DataOutputStream out, Doctor doctor) throws IOException {
+        out.writeUTF(doctor.name);
+        out.writeUTF(doctor.getEmail());
+        out.writeUTF(doctor.contactNumber);
+        out.writeUTF(doctor.employeeID);
+    }
+
+    private static Doctor readDoctor(DataInputStream in) throws IOException {
+        return new Doctor(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+    }
+
+    // * The doctors set up in main are added before loading, saved copies of them are skipped
+    private void addDoctor(Doctor doctor) {
+        if (repository.findDoctorByEmployeeID(doctor.employeeID) == null) {
+            repository.addDoctor(doctor);
+        }
+    }
+
+    private static void writeAppointment(DataOutputStream out, Appointment appointment) throws IOException {
+        out.writeInt(appointment.getAppointmentID());
+        out.writeUTF(appointment.getDate());
+        writeDay(out, appointment.getLocalDate());
+        out.writeUTF(appointment.getTime());
+        out.writeUTF(appointment.getPatient().getNIC());
+        out.writeUTF(appointment.getDoctor().employeeID);
+        out.writeInt(appointment.getTreatment().getTreatmentID());
+    }
+
+    // ! Records without a saved day are resolved against today, as they were before
+    private Appointment readAppointment(DataInputStream in, Status status, boolean dated) throws IOException {
+        int id = in.readInt();
+        String date = in.readUTF();
+        LocalDate day = dated ? readDay(in) : AppointmentDates.parseDate(date);
+        String time = in.readUTF();
+        String nic = in.readUTF();
+        String employeeID = in.readUTF();
+        int treatmentID = in.readInt();
+
+        Patient patient = repository.findPatientByNic(nic);
+        Doctor doctor = repository.findDoctorByEmployeeID(employeeID);
+        Treatment treatment = treatments.find(treatmentID);
+        if (patient == null || doctor == null || treatment == null) {
+            throw new IOException("Appointment " + id + " refers to an unknown patient, doctor or treatment");
+        }
+        nextAppointmentID.accumulateAndGet(id + 1, Math::max);
+        return new Appointment(id, date, day, time, status, patient, doctor, treatment);
+    }
+
+    private static void writeDay(DataOutputStream out, LocalDate day) throws IOException {
+        out.writeInt(day == null ? NO_DAY : Math.toIntExact(day.toEpochDay()));
+    }
+
+    private static LocalDate readDay(DataInputStream in) throws IOException {
+        int epochDay = in.readInt();
+        return epochDay == NO_DAY ? null : AppointmentDates.day(epochDay);
+    }
+
+    private Appointment findAppointment(int id) throws IOException {
+        Appointment appointment = repository.findAppointmentByID(id);
+        if (appointment == null) {
+            throw new IOException("Journal refers to unknown appointment " + id);
+        }
+        return appointment;
+    }
+
+    // ! Takes a final snapshot so the next start does not need the journal
+    @Override
+    public void close() throws IOException {
+        if (eventsSinceSnapshot.get() > 0 || journalTail) {
+            snapshot();
+        }
+        journal.close();
+    }
+}
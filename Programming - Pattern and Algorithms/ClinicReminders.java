@@ -0,0 +1,635 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+// Clinic Reminders
+// ! Sends patients a reminder a fixed time (24 hours by default) before each
+// upcoming appointment. Listens on the event bus: a booking or a move
+// (re)schedules the appointment's timer, a cancellation or a final visit
+// outcome cancels it. The timers sit in a hierarchical timing wheel of
+// primitive arrays, so scheduling and cancelling are O(1) and millions of
+// pending reminders cost a few dozen bytes each. A dispatcher thread advances
+// the wheel once a second and hands the due reminders to a pluggable Sender
+// in batches, no faster than the configured rate. A failed batch is retried
+// with a growing pause. Reminders are not journaled: after a restart the
+// upcoming ones are scheduled again from the appointments, and those whose
+// time passed while the clinic was down are not sent.
+class ClinicReminders implements ClinicEventBus.Subscriber, AutoCloseable {
+    static final Duration DEFAULT_LEAD = Duration.ofHours(24);
+    static final double DEFAULT_RATE = 50; // * Messages per second
+    static final int DEFAULT_BATCH = 100;
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // Message Class
+    // ! One reminder as handed to the sender, with both ways to reach the patient.
+    static final class Message {
+        private final int appointmentID;
+        private final String patientName;
+        private final String email;
+        private final String contactNumber;
+        private final LocalDate date;
+        private final LocalTime time;
+        private final String text;
+        private final long sentAt; // * Clock milliseconds of the batch
+
+        Message(Appointment appointment, LocalDate date, LocalTime time, long sentAt) {
+            Patient patient = appointment.getPatient();
+            this.appointmentID = appointment.getAppointmentID();
+            this.patientName = patient.name;
+            this.email = patient.getEmail();
+            this.contactNumber = patient.contactNumber;
+            this.date = date;
+            this.time = time;
+            this.text = "Reminder: " + patient.name + ", your appointment " + appointmentID + " with "
+                    + appointment.getDoctor().name + " is on " + date + " at " + AppointmentDates.formatTime(time)
+                    + ". Aurora Skin Care Clinic";
+            this.sentAt = sentAt;
+        }
+
+        public int getAppointmentID() {
+            return appointmentID;
+        }
+
+        public String getPatientName() {
+            return patientName;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public String getContactNumber() {
+            return contactNumber;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public LocalTime getTime() {
+            return time;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public long getSentAt() {
+            return sentAt;
+        }
+    }
+
+    // Sender Interface
+    // ! Delivers one batch, called on the dispatcher thread only. Throwing
+    // IOException means none of the batch was delivered, it is sent again.
+    interface Sender extends Closeable {
+        void send(List<Message> batch) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    // File Sender Class
+    // ! Stands in for SMTP and SMS: appends one line per channel to an outbox
+    // file, "<time> <tab> email|sms <tab> <address> <tab> <text>". One write per batch.
+    static final class FileSender implements Sender {
+        private final FileChannel channel;
+
+        FileSender(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+
+        @Override
+        public void send(List<Message> batch) throws IOException {
+            StringBuilder lines = new StringBuilder(batch.size() * 256);
+            for (Message message : batch) {
+                String sentAt = Instant.ofEpochMilli(message.sentAt).toString();
+                if (message.email != null && !message.email.isBlank()) {
+                    lines.append(sentAt).append("\temail\t").append(message.email).append('\t')
+                            .append(message.text).append('\n');
+                }
+                if (message.contactNumber != null && !message.contactNumber.isBlank()) {
+                    lines.append(sentAt).append("\tsms\t").append(message.contactNumber).append('\t')
+                            .append(message.text).append('\n');
+                }
+            }
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(lines.toString());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    // Memory Sender Class
+    // * Keeps the messages and the batch sizes, for tests and benchmarks
+    static final class MemorySender implements Sender {
+        private final List<Message> messages = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void send(List<Message> batch) {
+            messages.addAll(batch);
+            batches.add(batch.size());
+        }
+
+        public List<Message> getMessages() {
+            synchronized (messages) {
+                return new ArrayList<>(messages);
+            }
+        }
+
+        public List<Integer> getBatchSizes() {
+            synchronized (batches) {
+                return new ArrayList<>(batches);
+            }
+        }
+    }
+
+    private final ClinicRepository repository;
+    private final Sender sender;
+    private final Clock clock;
+    private final long leadSeconds;
+    private final double ratePerSecond;
+    private final int batchSize;
+    private final TimingWheel wheel; // * Guarded by itself, the event and dispatcher threads share it
+    // * Dispatcher state, guarded by this
+    private final ArrayDeque<Appointment> pending = new ArrayDeque<>();
+    private int[] due = new int[256];
+    private int dueCount;
+    private double tokens;
+    private long refilledAt;
+    private long retryAt;
+    private int failures;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private volatile String lastFailure; // * Why the last failed batch failed, for the reports
+    private volatile boolean running;
+    private Thread dispatcher;
+
+    ClinicReminders(ClinicRepository repository, Sender sender) {
+        this(repository, sender, Clock.systemDefaultZone(), DEFAULT_LEAD, DEFAULT_RATE, DEFAULT_BATCH);
+    }
+
+    ClinicReminders(ClinicRepository repository, Sender sender, Clock clock, Duration lead, double ratePerSecond,
+            int batchSize) {
+        if (ratePerSecond <= 0 || batchSize < 1 || lead.isNegative()) {
+            throw new IllegalArgumentException("Reminders need a positive rate, batch size and lead time.");
+        }
+        this.repository = repository;
+        this.sender = sender;
+        this.clock = clock;
+        this.leadSeconds = lead.getSeconds();
+        this.ratePerSecond = ratePerSecond;
+        this.batchSize = batchSize;
+        this.wheel = new TimingWheel(Math.floorDiv(clock.millis(), 1000));
+        this.refilledAt = clock.millis();
+        this.tokens = batchSize;
+    }
+
+    // ! Schedules the reminders of the upcoming appointments, for a start or a
+    // restart. Subscribe first, so no booking made meanwhile is missed.
+    public void rebuild(Collection<Appointment> appointments) {
+        long now = Math.floorDiv(clock.millis(), 1000);
+        for (Appointment appointment : appointments) {
+            if (appointment.getStatus().isActive()) {
+                long reminder = reminderSecond(appointment.getLocalDate(), appointment.getLocalTime());
+                if (reminder > now) { // * A passed reminder may already have gone out before the restart
+                    synchronized (wheel) {
+                        wheel.schedule(appointment.getAppointmentID(), reminder);
+                    }
+                }
+            }
+        }
+    }
+
+    // ! Keeps the appointment's timer in step with its lifecycle
+    @Override
+    public void onEvent(ClinicEventBus.Event event) {
+        int id = event.getAppointment().getAppointmentID();
+        long reminder = event.getStatus().isActive() ? reminderSecond(event.getDate(), event.getTime())
+                : Long.MIN_VALUE;
+        synchronized (wheel) {
+            if (reminder + leadSeconds > Math.floorDiv(clock.millis(), 1000)) {
+                wheel.schedule(id, reminder); // * Replaces the timer of an earlier slot
+            } else {
+                wheel.cancel(id); // * Canceled, finished, or the visit is already past
+            }
+        }
+    }
+
+    // * Epoch second the reminder is due, Long.MIN_VALUE when the slot is unknown
+    private long reminderSecond(LocalDate date, LocalTime time) {
+        if (date == null || time == null) {
+            return Long.MIN_VALUE;
+        }
+        return date.atTime(time).atZone(clock.getZone()).toEpochSecond() - leadSeconds;
+    }
+
+    // ! Starts the dispatcher thread
+    public synchronized void start() {
+        if (dispatcher != null) {
+            return;
+        }
+        running = true;
+        dispatcher = new Thread(() -> {
+            while (running) {
+                long wait = dispatch();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(wait));
+            }
+        }, "clinic-reminders");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    // ! Advances the wheel to the clock and sends what the rate allows.
+    // Returns the milliseconds until it is worth calling again.
+    synchronized long dispatch() {
+        long now = clock.millis();
+        dueCount = 0;
+        synchronized (wheel) {
+            wheel.advance(Math.floorDiv(now, 1000), this::addDue);
+        }
+        for (int i = 0; i < dueCount; i++) {
+            Appointment appointment = repository.findAppointmentByID(due[i]);
+            if (appointment != null) {
+                pending.add(appointment);
+            }
+        }
+        long nextTick = 1000 - Math.floorMod(now, 1000);
+        if (now < retryAt) {
+            return Math.min(nextTick, retryAt - now);
+        }
+        tokens = Math.min(batchSize, tokens + (now - refilledAt) * ratePerSecond / 1000);
+        refilledAt = now;
+        while (!pending.isEmpty()) {
+            int wanted = Math.min(batchSize, pending.size());
+            if (tokens < wanted) {
+                return Math.max(1, Math.min(nextTick, (long) Math.ceil((wanted - tokens) * 1000 / ratePerSecond)));
+            }
+            List<Appointment> taken = new ArrayList<>(wanted);
+            List<Message> batch = new ArrayList<>(wanted);
+            while (taken.size() < wanted && !pending.isEmpty()) {
+                Appointment appointment = pending.poll();
+                taken.add(appointment);
+                Message message = message(appointment, now);
+                if (message != null) {
+                    batch.add(message);
+                }
+            }
+            skipped.addAndGet(taken.size() - batch.size());
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                sender.send(batch);
+            } catch (IOException | RuntimeException e) {
+                // ! Nothing of the batch went out, it goes back to the front of the queue
+                for (int i = taken.size() - 1; i >= 0; i--) {
+                    pending.addFirst(taken.get(i));
+                }
+                lastFailure = e.toString();
+                failedBatches.incrementAndGet();
+                long backoff = Math.min(MAX_BACKOFF_MILLIS, 1000L << Math.min(failures++, 16));
+                retryAt = now + backoff;
+                return backoff;
+            }
+            failures = 0;
+            tokens -= batch.size();
+            sent.addAndGet(batch.size());
+        }
+        return nextTick;
+    }
+
+    private void addDue(int id) {
+        if (dueCount == due.length) {
+            due = Arrays.copyOf(due, dueCount * 2);
+        }
+        due[dueCount++] = id;
+    }
+
+    // * The reminder to send now, null when the visit is no longer upcoming or
+    // was moved to a later slot whose event is still on its way
+    private Message message(Appointment appointment, long now) {
+        LocalDate date = appointment.getLocalDate();
+        LocalTime time = appointment.getLocalTime();
+        if (!appointment.getStatus().isActive() || date == null || time == null) {
+            return null;
+        }
+        long reminder = reminderSecond(date, time);
+        if (reminder + leadSeconds <= Math.floorDiv(now, 1000) || reminder > Math.floorDiv(now, 1000) + 1) {
+            return null;
+        }
+        return new Message(appointment, date, time, now);
+    }
+
+    // * Reminders waiting in the wheel
+    public int getScheduled() {
+        synchronized (wheel) {
+            return wheel.size();
+        }
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    // * Due reminders dropped because the visit was canceled, finished or moved
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    // * Null while no batch has failed
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    // ! Stops the dispatcher and closes the sender, unsent reminders are dropped
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = dispatcher;
+            dispatcher = null;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sender.close();
+    }
+
+    // Timing Wheel Class
+    // ! Hierarchical timing wheel of int keys over whole ticks, in the layout
+    // of the classic Linux kernel timers: four levels of 256 slots, the first
+    // holds the next 256 ticks one per slot, every further level is 256 times
+    // coarser, together 2^32 ticks ahead. When the first level comes round,
+    // one slot of the next level is spread back over the finer ones, so every
+    // timer fires on its own tick. Timers are nodes of parallel arrays linked
+    // into circular lists, whose first 1024 nodes are the slot heads, and a key
+    // finds its node through an open-addressing table. Not thread safe.
+    static final class TimingWheel {
+        private static final int SLOT_BITS = 8;
+        private static final int SLOTS = 1 << SLOT_BITS;
+        private static final int LEVELS = 4;
+        private static final int HEADS = SLOTS * LEVELS;
+        private static final long SPAN = 1L << (SLOT_BITS * LEVELS); // * Ticks the wheel reaches ahead
+        private static final int NONE = -1;
+
+        private long base; // * Next tick to process
+        private long[] expires;
+        private int[] keys;
+        private int[] next;
+        private int[] prev;
+        private int allocated = HEADS; // * Nodes ever handed out, the heads included
+        private int free = NONE; // * Free list through next[]
+        private int size;
+        // * Key to node, keys are never 0, the empty mark
+        private int[] tableKeys = new int[1 << 10];
+        private int[] tableNodes = new int[1 << 10];
+
+        TimingWheel(long firstTick) {
+            base = firstTick;
+            int capacity = HEADS + 1024;
+            expires = new long[capacity];
+            keys = new int[capacity];
+            next = new int[capacity];
+            prev = new int[capacity];
+            for (int head = 0; head < HEADS; head++) {
+                next[head] = head;
+                prev[head] = head;
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        // * Next tick advance() will process
+        public long getBase() {
+            return base;
+        }
+
+        // ! Sets the key's timer to the tick, a tick already passed fires on the next advance
+        public void schedule(int key, long tick) {
+            if (key == 0) {
+                throw new IllegalArgumentException("Timer keys must not be 0.");
+            }
+            int node = find(key);
+            if (node == NONE) {
+                node = allocate();
+                keys[node] = key;
+                put(key, node);
+                size++;
+            } else {
+                unlink(node);
+            }
+            expires[node] = tick;
+            insert(node);
+        }
+
+        // * False when the key has no timer
+        public boolean cancel(int key) {
+            int node = find(key);
+            if (node == NONE) {
+                return false;
+            }
+            unlink(node);
+            remove(key);
+            release(node);
+            size--;
+            return true;
+        }
+
+        // ! Processes every tick up to and including the given one and hands
+        // the keys of the timers due on them to the consumer
+        public void advance(long tick, IntConsumer due) {
+            while (base <= tick) {
+                int index = (int) (base & (SLOTS - 1));
+                if (index == 0) {
+                    for (int level = 1; level < LEVELS; level++) {
+                        int slot = (int) (base >>> (SLOT_BITS * level)) & (SLOTS - 1);
+                        cascade(level * SLOTS + slot);
+                        if (slot != 0) {
+                            break; // * The coarser levels have not come round yet
+                        }
+                    }
+                }
+                int head = index;
+                int node = next[head];
+                next[head] = head; // * Detach the whole slot before running it
+                prev[head] = head;
+                while (node != head) {
+                    int following = next[node];
+                    int key = keys[node];
+                    remove(key);
+                    release(node);
+                    size--;
+                    due.accept(key);
+                    node = following;
+                }
+                base++;
+            }
+        }
+
+        // * Puts the timers of a coarse slot back at their finer place
+        private void cascade(int head) {
+            int node = next[head];
+            next[head] = head;
+            prev[head] = head;
+            while (node != head) {
+                int following = next[node];
+                insert(node);
+                node = following;
+            }
+        }
+
+        private void insert(int node) {
+            long tick = Math.max(expires[node], base);
+            long delta = tick - base;
+            if (delta >= SPAN) {
+                tick = base + SPAN - 1;
+                delta = SPAN - 1;
+                expires[node] = tick;
+            }
+            int level = delta < SLOTS ? 0 : (63 - Long.numberOfLeadingZeros(delta)) / SLOT_BITS;
+            int head = level * SLOTS + ((int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+            int last = prev[head];
+            next[last] = node;
+            prev[node] = last;
+            next[node] = head;
+            prev[head] = node;
+        }
+
+        private void unlink(int node) {
+            next[prev[node]] = next[node];
+            prev[next[node]] = prev[node];
+        }
+
+        private int allocate() {
+            if (free != NONE) {
+                int node = free;
+                free = next[node];
+                return node;
+            }
+            if (allocated == keys.length) {
+                int capacity = keys.length * 2;
+                expires = Arrays.copyOf(expires, capacity);
+                keys = Arrays.copyOf(keys, capacity);
+                next = Arrays.copyOf(next, capacity);
+                prev = Arrays.copyOf(prev, capacity);
+            }
+            return allocated++;
+        }
+
+        private void release(int node) {
+            next[node] = free;
+            free = node;
+        }
+
+        // * Fibonacci hashing, then linear probing
+        private int slotOf(int key) {
+            return (key * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(tableKeys.length));
+        }
+
+        private int find(int key) {
+            int mask = tableKeys.length - 1;
+            for (int slot = slotOf(key); tableKeys[slot] != 0; slot = (slot + 1) & mask) {
+                if (tableKeys[slot] == key) {
+                    return tableNodes[slot];
+                }
+            }
+            return NONE;
+        }
+
+        private void put(int key, int node) {
+            if ((size + 1) * 2 > tableKeys.length) {
+                growTable();
+            }
+            int mask = tableKeys.length - 1;
+            int slot = slotOf(key);
+            while (tableKeys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            tableKeys[slot] = key;
+            tableNodes[slot] = node;
+        }
+
+        // * Backward shift deletion, so no tombstones pile up
+        private void remove(int key) {
+            int mask = tableKeys.length - 1;
+            int slot = slotOf(key);
+            while (tableKeys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            int hole = slot;
+            for (int i = (hole + 1) & mask; tableKeys[i] != 0; i = (i + 1) & mask) {
+                int home = slotOf(tableKeys[i]);
+                // * Move the entry into the hole unless its home lies after the hole
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    tableKeys[hole] = tableKeys[i];
+                    tableNodes[hole] = tableNodes[i];
+                    hole = i;
+                }
+            }
+            tableKeys[hole] = 0;
+        }
+
+        private void growTable() {
+            int[] oldKeys = tableKeys;
+            int[] oldNodes = tableNodes;
+            tableKeys = new int[oldKeys.length * 2];
+            tableNodes = new int[oldKeys.length * 2];
+            int mask = tableKeys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = slotOf(oldKeys[i]);
+                    while (tableKeys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    tableKeys[slot] = oldKeys[i];
+                    tableNodes[slot] = oldNodes[i];
+                }
+            }
+        }
+    }
+}
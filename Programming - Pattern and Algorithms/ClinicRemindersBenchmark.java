@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Clinic Reminders Benchmark
+// ! The reminders mode of ClinicBenchmark: the timing wheel at scale and
+// rate-limited dispatch with a failing sender.
+final class ClinicRemindersBenchmark {
+    private ClinicRemindersBenchmark() {
+    }
+
+    // ! Fills a timing wheel with a year of timers, cancels and moves some and
+    // runs the year through it: every timer left must fire once, on its own
+    // second. Then books, moves and cancels appointments of a clinic and runs
+    // the reminders on a clock of its own, with a sender that fails twice.
+    static boolean runReminders(int timers) throws IOException, InterruptedException {
+        List<String> problems = new ArrayList<>();
+        int year = 366 * 86_400;
+        Random random = new Random(11);
+        long[] deadlines = new long[timers + 1];
+        long heapBefore = BenchmarkFixture.usedHeap();
+        ClinicReminders.TimingWheel wheel = new ClinicReminders.TimingWheel(0);
+        long start = System.nanoTime();
+        for (int key = 1; key <= timers; key++) {
+            deadlines[key] = random.nextInt(year);
+            wheel.schedule(key, deadlines[key]);
+        }
+        double scheduleNanos = (System.nanoTime() - start) / (double) timers;
+        long heapAfter = BenchmarkFixture.usedHeap();
+        start = System.nanoTime();
+        int changes = 0;
+        for (int key = 1; key <= timers; key += 4) {
+            wheel.cancel(key);
+            deadlines[key] = -1;
+            changes++;
+        }
+        for (int key = 2; key <= timers; key += 4) {
+            deadlines[key] = random.nextInt(year);
+            wheel.schedule(key, deadlines[key]);
+            changes++;
+        }
+        double changeNanos = (System.nanoTime() - start) / (double) changes;
+        int expected = wheel.size();
+        BitSet fired = new BitSet(timers + 1);
+        AtomicInteger late = new AtomicInteger();
+        AtomicInteger twice = new AtomicInteger();
+        start = System.nanoTime();
+        wheel.advance(year, key -> {
+            if (deadlines[key] != wheel.getBase()) {
+                late.incrementAndGet();
+            }
+            if (fired.get(key)) {
+                twice.incrementAndGet();
+            }
+            fired.set(key);
+        });
+        double advanceSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Timing wheel: %,d timers, %.0f ns to schedule, %.0f ns to cancel or move,"
+                + " about %d bytes each, a year of seconds in %.2f s%n", timers, scheduleNanos, changeNanos,
+                (heapAfter - heapBefore) / timers, advanceSeconds);
+        if (fired.cardinality() != expected || wheel.size() != 0) {
+            problems.add(fired.cardinality() + " timers fired, expected " + expected + ", " + wheel.size() + " left");
+        }
+        if (late.get() > 0 || twice.get() > 0) {
+            problems.add(late.get() + " timers fired on the wrong second, " + twice.get() + " twice");
+        }
+        for (int key = 1; key <= timers; key += 4) {
+            if (fired.get(key)) {
+                problems.add("Canceled timer " + key + " fired");
+                break;
+            }
+        }
+
+        // * Appointments of the next two weeks, reminded on a clock the benchmark moves
+        Path directory = Files.createTempDirectory("aurora-reminders");
+        List<Treatment> treatments = new ArrayList<>();
+        treatments.add(new Treatment(1, "Acne Treatment", 2750.00));
+        ClinicService clinic = BenchmarkFixture.openClinic(directory, TreatmentCatalog.of(treatments));
+        long begin = System.currentTimeMillis();
+        long[] now = { begin };
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneId.systemDefault();
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochMilli(now[0]);
+            }
+        };
+        ClinicReminders.MemorySender sink = new ClinicReminders.MemorySender();
+        AtomicInteger failuresLeft = new AtomicInteger(2);
+        ClinicReminders.Sender flaky = batch -> {
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new IOException("SMTP server not answering");
+            }
+            sink.send(batch);
+        };
+        int rate = 20;
+        int batch = 8;
+        ClinicReminders reminders = new ClinicReminders(clinic.getRepository(), flaky, clock,
+                Duration.ofHours(24), rate, batch);
+        clinic.getEvents().subscribe("reminders", reminders);
+        List<Doctor> doctors = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            Doctor doctor = new Doctor("Dr. Remind " + i, "remind" + i + "@aurora.lk", "077100000" + i,
+                    String.format("D%03d", i));
+            clinic.importDoctor(doctor);
+            doctors.add(doctor);
+        }
+        List<Appointment> booked = new ArrayList<>();
+        LocalDate last = LocalDate.now().plusDays(14);
+        for (int i = 0; i < 600; i++) {
+            Doctor doctor = doctors.get(i % doctors.size());
+            SchedulingEngine.Slot slot = clinic.getScheduler().nextFreeSlot(doctor,
+                    LocalDate.now().plusDays(1 + random.nextInt(13)), LocalTime.MIN);
+            if (slot == null || slot.getDate().isAfter(last)) {
+                continue;
+            }
+            Patient patient = BenchmarkFixture.register(clinic, i);
+            booked.add(clinic.bookAppointment(patient, doctor, treatments.get(0), slot.getDate().toString(),
+                    AppointmentDates.formatTime(slot.getTime())));
+        }
+        for (int i = 0; i < booked.size(); i++) {
+            Appointment appointment = booked.get(i);
+            if (i % 5 == 0) {
+                clinic.cancelAppointment(appointment);
+            } else if (i % 7 == 0) {
+                SchedulingEngine.Slot slot = clinic.getScheduler().nextFreeSlot(appointment.getDoctor(),
+                        appointment.getLocalDate().plusDays(1), LocalTime.MIN);
+                if (slot != null && !slot.getDate().isAfter(last)) {
+                    clinic.rescheduleAppointment(appointment, slot.getDate().toString(),
+                            AppointmentDates.formatTime(slot.getTime()));
+                }
+            } else if (i % 11 == 0) {
+                clinic.markNoShow(appointment);
+            }
+        }
+        clinic.getEvents().awaitIdle(10, TimeUnit.SECONDS);
+        Map<Integer, Appointment> upcoming = new HashMap<>();
+        for (Appointment appointment : booked) {
+            if (appointment.getStatus().isActive()) {
+                upcoming.put(appointment.getAppointmentID(), appointment);
+            }
+        }
+        ClinicReminders restarted = new ClinicReminders(clinic.getRepository(), new ClinicReminders.MemorySender(),
+                clock, Duration.ofHours(24), rate, batch);
+        restarted.rebuild(clinic.getRepository().getAppointmentsInMemory());
+        if (restarted.getScheduled() > reminders.getScheduled()) {
+            problems.add("A rebuild scheduled " + restarted.getScheduled() + " reminders, the events "
+                    + reminders.getScheduled());
+        }
+
+        long end = LocalDate.now().plusDays(16).atStartOfDay(ZoneId.systemDefault()).toInstant()
+                .toEpochMilli();
+        while (now[0] < end) {
+            now[0] += Math.max(1, Math.min(reminders.dispatch(), 1000));
+        }
+        List<ClinicReminders.Message> messages = sink.getMessages();
+        System.out.printf("Reminders: %,d upcoming, %,d sent in %,d batches, %,d failed batches%n", upcoming.size(),
+                messages.size(), sink.getBatchSizes().size(), reminders.getFailedBatches());
+        Set<Integer> reminded = new HashSet<>();
+        long worstDelay = 0;
+        for (ClinicReminders.Message message : messages) {
+            Appointment appointment = upcoming.get(message.getAppointmentID());
+            if (appointment == null || !reminded.add(message.getAppointmentID())) {
+                problems.add("Unexpected reminder: " + message.getText());
+                break;
+            }
+            if (!message.getDate().equals(appointment.getLocalDate())
+                    || !message.getTime().equals(appointment.getLocalTime())) {
+                problems.add("Reminder for the old slot: " + message.getText());
+                break;
+            }
+            long visit = appointment.getLocalDate().atTime(appointment.getLocalTime())
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            long due = Math.max(begin, visit - TimeUnit.HOURS.toMillis(24));
+            if (message.getSentAt() < due - 1000 || message.getSentAt() >= visit) {
+                problems.add("Reminder sent at the wrong time: " + message.getText());
+                break;
+            }
+            worstDelay = Math.max(worstDelay, message.getSentAt() - due);
+        }
+        if (reminded.size() != upcoming.size()) {
+            problems.add(reminded.size() + " patients reminded, expected " + upcoming.size());
+        }
+        for (int size : sink.getBatchSizes()) {
+            if (size > batch) {
+                problems.add("A batch of " + size + " messages, the limit is " + batch);
+                break;
+            }
+        }
+        for (int i = 0, j = 0; i < messages.size(); i++) {
+            while (messages.get(i).getSentAt() - messages.get(j).getSentAt() >= 1000) {
+                j++;
+            }
+            if (i - j + 1 > rate + batch) {
+                problems.add((i - j + 1) + " messages within a second, the rate is " + rate);
+                break;
+            }
+        }
+        if (reminders.getFailedBatches() != 2 || reminders.getLastFailure() == null
+                || !reminders.getLastFailure().contains("SMTP server not answering")) {
+            problems.add(reminders.getFailedBatches() + " failed batches (last " + reminders.getLastFailure()
+                    + "), expected 2");
+        }
+        System.out.printf("Longest wait after the reminder time: %.1f s%n", worstDelay / 1000.0);
+
+        // * The real dispatcher thread, with a booking inside the lead time
+        ClinicReminders.MemorySender live = new ClinicReminders.MemorySender();
+        ClinicReminders running = new ClinicReminders(clinic.getRepository(), live,
+                Clock.systemDefaultZone(), Duration.ofDays(30), rate, batch);
+        clinic.getEvents().subscribe("live-reminders", running);
+        // * A subscriber that throws is counted and skipped, the others go on
+        long firstFailing = clinic.getEvents().getPublishedCount();
+        clinic.getEvents().subscribe("failing", event -> {
+            throw new IllegalStateException("Dashboard offline");
+        });
+        running.start();
+        Doctor doctor = doctors.get(0);
+        SchedulingEngine.Slot slot = clinic.getScheduler().nextFreeSlot(doctor, LocalDate.now().plusDays(1),
+                LocalTime.MIN);
+        Patient patient = clinic.registerPatient("Live Reminder", "live@mail.com", "0770000001", "199900000001");
+        Appointment soon = clinic.bookAppointment(patient, doctor, treatments.get(0), slot.getDate().toString(),
+                AppointmentDates.formatTime(slot.getTime()));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (live.getMessages().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        running.close();
+        clinic.getEvents().awaitIdle(5, TimeUnit.SECONDS);
+        long failed = clinic.getEvents().getFailures().get("failing");
+        if (failed != clinic.getEvents().getPublishedCount() - firstFailing || failed == 0
+                || !clinic.getEvents().getLastFailure("failing").contains("Dashboard offline")) {
+            problems.add("The failing subscriber counted " + failed + " failures, last "
+                    + clinic.getEvents().getLastFailure("failing"));
+        }
+        if (live.getMessages().size() != 1 || live.getMessages().get(0).getAppointmentID() != soon
+                .getAppointmentID()) {
+            problems.add("The dispatcher thread sent " + live.getMessages().size() + " reminders, expected 1");
+        }
+        reminders.close();
+        BenchmarkFixture.closeClinic(clinic);
+        BenchmarkFixture.deleteTree(directory);
+
+        return BenchmarkFixture.report(problems);
+    }
+}
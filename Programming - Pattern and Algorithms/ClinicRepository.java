@@ -0,0 +1,604 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Repository Class
+// ! This class keeps the clinic records in registration order and maintains
+// hash indexes next to them, so point lookups do not scan the whole history.
+class ClinicRepository {
+    private final List<Patient> patients = new ArrayList<>();
+    private final List<Doctor> doctors = new ArrayList<>();
+    private final List<Appointment> appointments = new ArrayList<>();
+
+    // * Hash indexes, updated together with the lists above
+    private final NicIndex patientsByNic = new NicIndex(); // * Keyed by the NIC as a long
+    private final PatientNameIndex patientNames = new PatientNameIndex();
+    private final Map<String, Doctor> doctorsByEmployeeID = new HashMap<>();
+    private final Map<String, Doctor> doctorsByName = new HashMap<>();
+    private final Map<Integer, Appointment> appointmentsByID = new HashMap<>();
+    private final PatientHistory history = new PatientHistory(); // * Appointment IDs by NIC, in slot order
+
+    // * Dense numbers of patients and doctors (their list position), used as
+    // compact references by the off-heap appointment store
+    private final Map<Patient, Integer> patientRefs = new IdentityHashMap<>();
+    private final Map<Doctor, Integer> doctorRefs = new IdentityHashMap<>();
+    private AppointmentStore store; // * Archived appointments, none are kept on the heap
+    private TreatmentCatalog treatments;
+
+    // ! Many readers or one writer at a time, so several front-desk terminals
+    // can share the repository
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    // * Day index of active bookings, each bucket is kept ordered by time
+    private final NavigableMap<LocalDate, List<Appointment>> appointmentsByDay = new TreeMap<>();
+    private static final Comparator<Appointment> BY_TIME = Comparator.comparing(Appointment::getLocalTime,
+            Comparator.nullsLast(Comparator.<LocalTime>naturalOrder()));
+    private static final Comparator<Appointment> BY_DAY_AND_TIME = Comparator.comparing(Appointment::getLocalDate,
+            Comparator.nullsFirst(Comparator.<LocalDate>naturalOrder())).thenComparing(BY_TIME)
+            .thenComparingInt(Appointment::getAppointmentID);
+
+    // ! Keys are normalised so the case insensitive searches can use the indexes
+    private static String key(String value) {
+        return value.trim().toUpperCase(Locale.ROOT);
+    }
+
+    // ! Adds a patient, the first registration of a NIC keeps the NIC index entry
+    public void addPatient(Patient patient) {
+        writeLock.lock();
+        try {
+            indexPatient(patient);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // * A batch of an import under one lock
+    public void addPatients(List<Patient> batch) {
+        writeLock.lock();
+        try {
+            for (Patient patient : batch) {
+                indexPatient(patient);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void indexPatient(Patient patient) {
+        patientRefs.put(patient, patients.size());
+        patients.add(patient);
+        patientsByNic.putIfAbsent(patient);
+        patientNames.add(patient);
+    }
+
+    public void addDoctor(Doctor doctor) {
+        writeLock.lock();
+        try {
+            doctorRefs.put(doctor, doctors.size());
+            doctors.add(doctor);
+            doctorsByEmployeeID.putIfAbsent(key(doctor.employeeID), doctor);
+            doctorsByName.putIfAbsent(key(doctor.name), doctor);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void addAppointment(Appointment appointment) {
+        writeLock.lock();
+        try {
+            indexAppointment(appointment);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // * A batch of an import under one lock
+    public void addAppointments(List<Appointment> batch) {
+        writeLock.lock();
+        try {
+            for (Appointment appointment : batch) {
+                indexAppointment(appointment);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void indexAppointment(Appointment appointment) {
+        appointments.add(appointment);
+        appointmentsByID.put(appointment.getAppointmentID(), appointment);
+        addToDay(appointment);
+        history.add(appointment);
+    }
+
+    // ! Canceled appointments stay in the history but leave the day index
+    public void cancelAppointment(Appointment appointment) {
+        changeStatus(appointment, Status.CANCELED);
+    }
+
+    // ! Applies a lifecycle transition, refused ones leave everything unchanged
+    public void changeStatus(Appointment appointment, Status status) {
+        changeStatus(appointment, status, appointment.getTreatment());
+    }
+
+    // * Same, a completed visit may have had another treatment than was booked
+    public void changeStatus(Appointment appointment, Status status, Treatment treatment) {
+        writeLock.lock();
+        try {
+            if (status == Status.COMPLETED && treatment != appointment.getTreatment()) {
+                appointment.completeWith(treatment);
+            } else {
+                appointment.transitionTo(status);
+            }
+            if (!status.holdsSlot()) {
+                removeFromDay(appointment);
+            }
+            if (status == Status.COMPLETED) {
+                history.completed(appointment);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // ! Moves the appointment to the bucket of its new date
+    public void rescheduleAppointment(Appointment appointment, String date, String time) {
+        rescheduleAppointment(appointment, date, AppointmentDates.parseDate(date), time);
+    }
+
+    // * Same, on a day resolved when the change was made
+    public void rescheduleAppointment(Appointment appointment, String date, LocalDate day, String time) {
+        writeLock.lock();
+        try {
+            if (!appointment.getStatus().canBecome(Status.RESCHEDULED)) {
+                throw new IllegalStateException(appointment.getStatus().getLabel() + " appointments cannot be moved.");
+            }
+            removeFromDay(appointment);
+            LocalDate oldDate = appointment.getLocalDate();
+            LocalTime oldTime = appointment.getLocalTime();
+            appointment.reschedule(date, day, time);
+            addToDay(appointment);
+            history.moved(appointment, oldDate, oldTime);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // ! Archives closed appointments into the store from now on, see
+    // archiveBefore(). The treatments rebuild the archived appointments.
+    public void attachStore(AppointmentStore store, TreatmentCatalog treatments) {
+        writeLock.lock();
+        try {
+            this.store = store;
+            this.treatments = treatments;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public AppointmentStore getStore() {
+        return store;
+    }
+
+    // ! Takes back the rows a snapshot counted on, after its patients and
+    // doctors are loaded, and puts them back into the patients' timelines
+    public void resumeStore(int rows) throws IOException {
+        writeLock.lock();
+        try {
+            store.resume(rows);
+            for (int row = 0; row < rows; row++) {
+                history.add(archived(row));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // ! Moves the closed appointments of the days before the given one from
+    // the heap into the store and returns how many moved. Rows stay in day
+    // order, so days before the last archived one are left alone: a booking
+    // closed late, or history imported after a later archive, stays in memory.
+    public int archiveBefore(LocalDate day) {
+        writeLock.lock();
+        try {
+            if (store == null) {
+                return 0;
+            }
+            LocalDate from = store.size() == 0 ? LocalDate.MIN
+                    : AppointmentDates.day(store.getEpochDay(store.size() - 1));
+            List<Appointment> closed = new ArrayList<>();
+            for (Appointment appointment : appointments) {
+                LocalDate date = appointment.getLocalDate();
+                if (date != null && date.isBefore(day) && !date.isBefore(from) && appointment.getLocalTime() != null
+                        && !appointment.getStatus().isActive() && store.accepts(appointment.getAppointmentID())) {
+                    closed.add(appointment);
+                }
+            }
+            if (closed.isEmpty()) {
+                return 0;
+            }
+            closed.sort(BY_DAY_AND_TIME);
+            for (Appointment appointment : closed) {
+                store.append(appointment.getAppointmentID(), patientRefs.get(appointment.getPatient()),
+                        doctorRefs.get(appointment.getDoctor()), appointment.getTreatment().getTreatmentID(),
+                        appointment.getLocalDate(), appointment.getLocalTime(), appointment.getStatus(),
+                        appointment.getRegistrationFeeCents());
+                appointmentsByID.remove(appointment.getAppointmentID());
+                removeFromDay(appointment);
+            }
+            appointments.removeIf(appointment -> !appointmentsByID.containsKey(appointment.getAppointmentID()));
+            return closed.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow the appointment store", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // * A new Appointment for a row of the store, closed appointments never change
+    private Appointment archived(int row) {
+        LocalDate date = AppointmentDates.day(store.getEpochDay(row));
+        LocalTime time = AppointmentDates.minute(store.getMinuteOfDay(row));
+        Appointment appointment = new Appointment(store.getAppointmentID(row), date.toString(), date,
+                AppointmentDates.formatTime(time), store.getStatus(row), patients.get(store.getPatientRef(row)),
+                doctors.get(store.getDoctorRef(row)), treatments.find(store.getTreatmentID(row)));
+        appointment.restoreRegistrationFeeCents(store.getFeeCents(row));
+        return appointment;
+    }
+
+    // * Archived appointments from the row on, up to and including the day, the ones that held a slot
+    private void addArchived(int row, LocalDate to, List<Appointment> result) {
+        long last = to.toEpochDay();
+        for (; row < store.size() && store.getEpochDay(row) <= last; row++) {
+            if (store.getStatus(row).holdsSlot()) {
+                result.add(archived(row));
+            }
+        }
+    }
+
+    private void addToDay(Appointment appointment) {
+        if (appointment.getLocalDate() == null || !appointment.getStatus().holdsSlot()) {
+            return;
+        }
+        List<Appointment> bucket = appointmentsByDay.computeIfAbsent(appointment.getLocalDate(),
+                d -> new ArrayList<>());
+        // * Binary search keeps the bucket ordered, equal times stay in booking order
+        int low = 0;
+        int high = bucket.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (BY_TIME.compare(bucket.get(mid), appointment) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        bucket.add(low, appointment);
+    }
+
+    private void removeFromDay(Appointment appointment) {
+        if (appointment.getLocalDate() == null) {
+            return;
+        }
+        List<Appointment> bucket = appointmentsByDay.get(appointment.getLocalDate());
+        if (bucket != null && bucket.remove(appointment) && bucket.isEmpty()) {
+            appointmentsByDay.remove(appointment.getLocalDate());
+        }
+    }
+
+    // * Exact NIC lookup, same result as the previous stream filter
+    public Patient findPatientByNic(String nic) {
+        readLock.lock();
+        try {
+            Patient patient = patientsByNic.get(nic);
+            return patient != null && patient.hasNIC(nic) ? patient : null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // * Case insensitive lookup by NIC, used by the patient search
+    public Patient findPatientByNicIgnoreCase(String nic) {
+        readLock.lock();
+        try {
+            return patientsByNic.get(nic);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // * Case insensitive exact name lookup
+    public List<Patient> findPatientsByName(String name) {
+        readLock.lock();
+        try {
+            return new ArrayList<>(patientNames.findExact(name));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // * Prefix and typo tolerant name search, best matches first
+    public List<Patient> searchPatientsByName(String query, int limit) {
+        readLock.lock();
+        try {
+            return patientNames.search(query, limit);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public Doctor findDoctorByEmployeeID(String employeeID) {
+        readLock.lock();
+        try {
+            return doctorsByEmployeeID.get(key(employeeID));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public Doctor findDoctorByName(String name) {
+        readLock.lock();
+        try {
+            return doctorsByName.get(key(name));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public Appointment findAppointmentByID(int id) {
+        readLock.lock();
+        try {
+            return find(id);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // * In memory or archived, null when there is none
+    private Appointment find(int id) {
+        Appointment appointment = appointmentsByID.get(id);
+        if (appointment != null || store == null) {
+            return appointment;
+        }
+        int row = store.rowOf(id);
+        return row < 0 ? null : archived(row);
+    }
+
+    // ! Active bookings on one day, ordered by time
+    public List<Appointment> findAppointmentsOn(LocalDate date) {
+        return findAppointmentsBetween(date, date);
+    }
+
+    // ! Active bookings between two days (both included), only the matching
+    // buckets are visited
+    public List<Appointment> findAppointmentsBetween(LocalDate from, LocalDate to) {
+        readLock.lock();
+        try {
+            List<Appointment> result = new ArrayList<>();
+            if (from.isAfter(to)) {
+                return result;
+            }
+            for (List<Appointment> bucket : appointmentsByDay.subMap(from, true, to, true).values()) {
+                result.addAll(bucket);
+            }
+            if (store != null && store.size() > 0) {
+                int size = result.size();
+                addArchived(store.firstRowFrom(from), to, result);
+                if (result.size() > size && size > 0) {
+                    result.sort(BY_DAY_AND_TIME); // * Only when a day has both
+                }
+            }
+            return result;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // ! One page of the appointments made with the NIC, newest slot first, so
+    // page 0 starts with the upcoming bookings and goes back into the past.
+    // Costs the page, not the patient's whole history.
+    public List<Appointment> findHistoryOfPatient(String nic, int page, int pageSize) {
+        readLock.lock();
+        try {
+            List<Appointment> result = new ArrayList<>();
+            PatientHistory.Timeline timeline = history.get(nic);
+            if (timeline == null || page < 0 || pageSize <= 0) {
+                return result;
+            }
+            long first = timeline.size() - 1 - (long) page * pageSize;
+            for (long i = first; i >= 0 && i > first - pageSize; i--) {
+                result.add(find(timeline.idAt((int) i)));
+            }
+            return result;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // * Appointments ever made with the NIC, canceled ones included
+    public int countHistoryOfPatient(String nic) {
+        readLock.lock();
+        try {
+            PatientHistory.Timeline timeline = history.get(nic);
+            return timeline == null ? 0 : timeline.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // * Latest completed appointment of the NIC, or null before the first visit
+    public Appointment findLastVisitOfPatient(String nic) {
+        readLock.lock();
+        try {
+            PatientHistory.Timeline timeline = history.get(nic);
+            return timeline == null || timeline.getLastVisitID() < 0 ? null
+                    : find(timeline.getLastVisitID());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // * What the completed appointments of the NIC came to in cents, as they are billed
+    public long findLifetimeSpendCentsOfPatient(String nic) {
+        readLock.lock();
+        try {
+            PatientHistory.Timeline timeline = history.get(nic);
+            return timeline == null ? 0 : timeline.getSpentCents();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // * Copies of the records in registration order, safe to iterate while
+    // other threads keep booking
+    public List<Patient> getPatients() {
+        readLock.lock();
+        try {
+            return new ArrayList<>(patients);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // * Patient at a list position, as the store refers to them, without a copy
+    public Patient getPatientAt(int ref) {
+        readLock.lock();
+        try {
+            return patients.get(ref);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public Doctor getDoctorAt(int ref) {
+        readLock.lock();
+        try {
+            return doctors.get(ref);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int getPatientCount() {
+        readLock.lock();
+        try {
+            return patients.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int getAppointmentCount() {
+        readLock.lock();
+        try {
+            return appointments.size() + archivedCount();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public List<Doctor> getDoctors() {
+        readLock.lock();
+        try {
+            return new ArrayList<>(doctors);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // ! Every appointment, the archived ones first. Those are rebuilt from the
+    // store on each call, so this is for exports only; the totals are
+    // recounted from getHistory() without bringing the archive back.
+    public List<Appointment> getAppointments() {
+        readLock.lock();
+        try {
+            int archived = archivedCount();
+            List<Appointment> result = new ArrayList<>(appointments.size() + archived);
+            for (int row = 0; row < archived; row++) {
+                result.add(archived(row));
+            }
+            result.addAll(appointments);
+            return result;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // ! The appointments on the heap with the number of archived rows, taken
+    // under one read lock so an archive run in between neither drops nor
+    // counts an appointment twice
+    public History getHistory() {
+        readLock.lock();
+        try {
+            return new History(this, new ArrayList<>(appointments), archivedCount());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // * The appointments still on the heap, what a snapshot saves besides the store
+    public List<Appointment> getAppointmentsInMemory() {
+        readLock.lock();
+        try {
+            return new ArrayList<>(appointments);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int getArchivedCount() {
+        readLock.lock();
+        try {
+            return archivedCount();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private int archivedCount() {
+        return store == null ? 0 : store.size();
+    }
+
+    // History Class
+    // ! The full history of the clinic for a recount: the appointments on the
+    // heap, and the archived rows read through store views in place.
+    static final class History {
+        private final ClinicRepository repository;
+        private final List<Appointment> inMemory;
+        private final int archived;
+
+        private History(ClinicRepository repository, List<Appointment> inMemory, int archived) {
+            this.repository = repository;
+            this.inMemory = inMemory;
+            this.archived = archived;
+        }
+
+        public List<Appointment> getInMemory() {
+            return inMemory;
+        }
+
+        // * Rows 0 to the count are archived, closed appointments, they never change
+        public int getArchivedCount() {
+            return archived;
+        }
+
+        // * A new view over the archived rows, a view is not shared between threads
+        public AppointmentStore.View archiveView() {
+            return new AppointmentStore.View(repository.store, repository, repository.treatments);
+        }
+    }
+}
@@ -0,0 +1,527 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Clinic Script
+// ! Runs a file of clinic operations without the menu, to load test the clinic
+// and to replay the steps that led to a reported problem. Every line is one
+// operation written as a CSV record:
+//   register,<name>,<email>,<contact number>,<NIC>
+//   doctor,<name>,<email>,<contact number>,<employee ID>
+//   book,<NIC or name>,<doctor ID, name or any>,<treatment ID>,<date>,<time>
+//   update,<appointment>,<date>,<time>
+//   cancel,<appointment>          complete,<appointment>      noshow,<appointment>
+//   invoice,<appointment>[,<treatment ID>]
+//   find-patient,<NIC or name>    find-doctor,<ID or name>
+//   find-date,<day or range>      find-appointments,<patient name>
+// An <appointment> is an appointment ID, or @n for the appointment made by
+// the n-th book line of the script, so a script does not depend on the IDs
+// the clinic hands out. Blank lines and lines starting with # are skipped.
+// The operations go through ClinicService like the menu and the HTTP API, a
+// failed one is reported and the script carries on. What the menu would print
+// goes to one buffered stream, which a load test can switch off.
+class ClinicScript {
+    static final int SEARCH_RESULT_LIMIT = 10; // * Same as the menu
+    private static final int PROGRESS_EVERY = 4096; // * Operations between progress reports
+
+    // Command Enum
+    // ! The operations a script can run, by the word that starts their line.
+    enum Command {
+        REGISTER("register"), DOCTOR("doctor"), BOOK("book"), UPDATE("update"), CANCEL("cancel"),
+        COMPLETE("complete"), NO_SHOW("noshow"), INVOICE("invoice"), FIND_PATIENT("find-patient"),
+        FIND_DOCTOR("find-doctor"), FIND_DATE("find-date"), FIND_APPOINTMENTS("find-appointments");
+
+        private final String word;
+
+        Command(String word) {
+            this.word = word;
+        }
+
+        public String getWord() {
+            return word;
+        }
+
+        // * By its word in any case, null if unknown
+        static Command parse(String word) {
+            for (Command command : values()) {
+                if (command.word.equalsIgnoreCase(word)) {
+                    return command;
+                }
+            }
+            return null;
+        }
+    }
+
+    // Summary Class
+    // ! What a script run did, per operation.
+    static final class Summary {
+        private final long[] done;
+        private final long[] failed;
+        private final long unknown;
+        private final double seconds;
+
+        private Summary(long[] done, long[] failed, long unknown, double seconds) {
+            this.done = done;
+            this.failed = failed;
+            this.unknown = unknown;
+            this.seconds = seconds;
+        }
+
+        public long getDone(Command command) {
+            return done[command.ordinal()];
+        }
+
+        public long getFailed(Command command) {
+            return failed[command.ordinal()];
+        }
+
+        // * Lines with an operation the script does not know
+        public long getUnknown() {
+            return unknown;
+        }
+
+        // * Operations run, the failed ones included
+        public long getOperations() {
+            long operations = unknown;
+            for (int i = 0; i < done.length; i++) {
+                operations += done[i] + failed[i];
+            }
+            return operations;
+        }
+
+        public long getFailed() {
+            long total = unknown;
+            for (long count : failed) {
+                total += count;
+            }
+            return total;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        public double getOperationsPerSecond() {
+            return seconds > 0 ? getOperations() / seconds : 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format(Locale.ROOT, "%-18s %12s %12s%n", "Operation", "Done", "Failed"));
+            for (Command command : Command.values()) {
+                if (getDone(command) + getFailed(command) > 0) {
+                    text.append(String.format(Locale.ROOT, "%-18s %,12d %,12d%n", command.word, getDone(command),
+                            getFailed(command)));
+                }
+            }
+            if (unknown > 0) {
+                text.append(String.format(Locale.ROOT, "%-18s %12s %,12d%n", "(unknown)", "", unknown));
+            }
+            text.append(String.format(Locale.ROOT, "%,d operations (%,d failed) in %.2f s, %,.0f operations/s",
+                    getOperations(), getFailed(), seconds, getOperationsPerSecond()));
+            return text.toString();
+        }
+    }
+
+    private final ClinicService service;
+    private final PrintStream out;
+    private final ClinicCsv.Progress progress;
+    private int[] bookings = new int[1024]; // * Appointment ID of each book line, 0 when it failed
+    private int bookingCount;
+
+    // * Output is flushed at the end of the run, pass a null stream to drop it
+    ClinicScript(ClinicService service, PrintStream out, ClinicCsv.Progress progress) {
+        this.service = service;
+        this.out = out;
+        this.progress = progress;
+    }
+
+    // ! Runs every operation of the file in order. A failed journal write
+    // stops the run, the operations after it may depend on the change.
+    public Summary run(Path file) throws IOException {
+        long start = System.nanoTime();
+        long[] done = new long[Command.values().length];
+        long[] failed = new long[Command.values().length];
+        long unknown = 0;
+        long operations = 0;
+        try (CsvReader reader = new CsvReader(file)) {
+            while (reader.next()) {
+                String word = reader.get(0).trim();
+                if (word.isEmpty() || word.startsWith("#")) {
+                    continue;
+                }
+                Command command = Command.parse(word);
+                if (command == null) {
+                    unknown++;
+                    out.println("Line " + reader.getLine() + ": unknown operation " + word);
+                } else {
+                    try {
+                        execute(command, reader);
+                        done[command.ordinal()]++;
+                    } catch (IllegalArgumentException | IllegalStateException e) {
+                        failed[command.ordinal()]++;
+                        out.println("Line " + reader.getLine() + ": " + word + " failed: " + e.getMessage());
+                    }
+                }
+                if (++operations % PROGRESS_EVERY == 0 && progress != null) {
+                    progress.update(file, reader.position(), reader.size(), operations);
+                }
+            }
+            if (progress != null) {
+                progress.update(file, reader.size(), reader.size(), operations);
+            }
+        } finally {
+            out.flush();
+        }
+        return new Summary(done, failed, unknown, (System.nanoTime() - start) / 1e9);
+    }
+
+    private void execute(Command command, CsvReader line) {
+        switch (command) {
+            case REGISTER: {
+                Patient patient = service.registerPatient(line.get(1), line.get(2), line.get(3), line.get(4));
+                out.println("Patient Registered Successfully: " + patient.getContactInfo() + ", NIC: "
+                        + patient.getNIC());
+                break;
+            }
+            case DOCTOR: {
+                String employeeID = line.get(4).trim();
+                if (line.isBlank(1) || line.isBlank(2) || line.isBlank(3) || employeeID.isEmpty()) {
+                    throw new IllegalArgumentException("All fields are required.");
+                }
+                Doctor doctor = service.getRepository().findDoctorByEmployeeID(employeeID);
+                if (doctor == null) {
+                    doctor = new Doctor(line.get(1).trim(), line.get(2).trim(), line.get(3).trim(), employeeID);
+                    service.importDoctor(doctor);
+                }
+                out.println("Doctor: " + doctor.getEmployeeDetails());
+                break;
+            }
+            case BOOK: {
+                int booking = bookingCount++;
+                if (booking == bookings.length) {
+                    bookings = Arrays.copyOf(bookings, booking * 2);
+                }
+                Appointment appointment = line.get(2).trim().equalsIgnoreCase("any")
+                        ? service.bookWithAnyDoctor(patient(line.get(1)), treatment(line.get(3)),
+                                line.get(4).trim(), line.get(5).trim())
+                        : service.bookAppointment(patient(line.get(1)), doctor(line.get(2)), treatment(line.get(3)),
+                                line.get(4).trim(), line.get(5).trim());
+                bookings[booking] = appointment.getAppointmentID();
+                out.println("Appointment booked successfully. Appointment Details: " + appointment.getDetails());
+                break;
+            }
+            case UPDATE: {
+                Appointment appointment = appointment(line.get(1));
+                service.rescheduleAppointment(appointment, line.get(2).trim(), line.get(3).trim());
+                out.println("Appointment updated successfully. Updated Appointment Details: "
+                        + appointment.getDetails());
+                break;
+            }
+            case CANCEL: {
+                Appointment appointment = appointment(line.get(1));
+                Appointment backfilled = service.cancelAppointment(appointment);
+                out.println("Appointment canceled for: " + appointment.getPatient().name);
+                if (backfilled != null) {
+                    out.println("The slot was given to the waitlist: " + backfilled.getDetails());
+                }
+                break;
+            }
+            case COMPLETE: {
+                Appointment appointment = appointment(line.get(1));
+                service.completeAppointment(appointment);
+                out.println("Visit recorded: " + appointment.getDetails());
+                break;
+            }
+            case NO_SHOW: {
+                Appointment appointment = appointment(line.get(1));
+                service.markNoShow(appointment);
+                out.println("No-show recorded: " + appointment.getDetails());
+                break;
+            }
+            case INVOICE: {
+                Appointment appointment = appointment(line.get(1));
+                Treatment treatment = line.isBlank(2) ? appointment.getTreatment() : treatment(line.get(2));
+                Invoice invoice = service.issueInvoice(appointment, treatment);
+                out.println("Invoice " + invoice.getInvoiceID() + " for appointment " + appointment.getAppointmentID()
+                        + ", Total: LKR " + Money.format(invoice.getBill().getTotalCents()));
+                break;
+            }
+            case FIND_PATIENT: {
+                String query = line.get(1);
+                Patient patient = service.findPatient(query);
+                if (patient != null) {
+                    out.println("Patient Found: " + patient.getContactInfo() + ", NIC: " + patient.getNIC());
+                    break;
+                }
+                List<Patient> matches = service.searchPatients(query, SEARCH_RESULT_LIMIT);
+                if (matches.isEmpty()) {
+                    out.println("Patient not found: " + query);
+                }
+                for (Patient match : matches) {
+                    out.println("Patient Found: " + match.getContactInfo() + ", NIC: " + match.getNIC());
+                }
+                break;
+            }
+            case FIND_DOCTOR: {
+                Doctor doctor = service.findDoctor(line.get(1));
+                out.println(doctor != null ? "Doctor Found: " + doctor.getEmployeeDetails()
+                        : "Doctor not found: " + line.get(1));
+                break;
+            }
+            case FIND_DATE: {
+                List<Appointment> found = service.findAppointmentsOn(line.get(1));
+                out.println(found.size() + " appointments on " + line.get(1).trim());
+                for (Appointment appointment : found) {
+                    out.println(appointment.getDetails());
+                }
+                break;
+            }
+            case FIND_APPOINTMENTS: {
+                List<Appointment> found = service.findAppointmentsOfPatient(line.get(1), SEARCH_RESULT_LIMIT);
+                out.println(found.size() + " appointments of " + line.get(1).trim());
+                for (Appointment appointment : found) {
+                    out.println(appointment.getDetails());
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported operation.");
+        }
+    }
+
+    private Patient patient(String query) {
+        Patient patient = query.isBlank() ? null : service.findPatient(query);
+        if (patient == null) {
+            throw new IllegalArgumentException("Patient not found: " + query);
+        }
+        return patient;
+    }
+
+    private Doctor doctor(String query) {
+        Doctor doctor = query.isBlank() ? null : service.findDoctor(query);
+        if (doctor == null) {
+            throw new IllegalArgumentException("Doctor not found: " + query);
+        }
+        return doctor;
+    }
+
+    private Treatment treatment(String id) {
+        Treatment treatment = service.findTreatment(Integer.parseInt(id.trim())); // * NumberFormatException is an IAE
+        if (treatment == null) {
+            throw new IllegalArgumentException("Treatment not found: " + id);
+        }
+        return treatment;
+    }
+
+    // * Appointment by ID, or by @n for the n-th book line of the script
+    private Appointment appointment(String reference) {
+        String text = reference.trim();
+        int id;
+        if (text.startsWith("@")) {
+            int booking = Integer.parseInt(text.substring(1));
+            if (booking < 1 || booking > bookingCount) {
+                throw new IllegalArgumentException("No book line " + text + " before this line.");
+            }
+            id = bookings[booking - 1];
+            if (id == 0) {
+                throw new IllegalStateException("Booking " + text + " failed.");
+            }
+        } else {
+            id = Integer.parseInt(text);
+        }
+        Appointment appointment = service.findAppointment(id);
+        if (appointment == null) {
+            throw new IllegalArgumentException("Appointment not found: " + text);
+        }
+        return appointment;
+    }
+
+    // Workload Generator Class
+    // ! Writes a script with the mix of a busy clinic: registrations, bookings
+    // and their follow-ups, and the searches of the front desk. The bookings
+    // are planned on a calendar of their own, so nearly all of them fit, and
+    // updates, cancellations and invoices only name appointments that are
+    // still active. One generated doctor per BOOKINGS_PER_DOCTOR bookings keeps
+    // their calendars about half full. The same seed gives the same script;
+    // dates are written out, so run it on the day it was made.
+    static final class Generator {
+        static final int BOOKINGS_PER_DOCTOR = 800; // * About half of 26 weeks of the default hours
+        static final int BOOKING_WINDOW_DAYS = 182;
+        private static final int CLASHES_PER_THOUSAND = 50; // * Bookings sent to a random, maybe taken slot
+        private static final String[] FIRST_NAMES = { "Anura", "Kamala", "Nimal", "Anushka", "Sunil", "Dilani",
+                "Ruwan", "Ishara", "Mohamed", "Fathima", "Kasun", "Tharushi", "Brian", "Ijlan", "Sanduni",
+                "Chaminda" };
+        private static final String[] LAST_NAMES = { "Perera", "Fernando", "Silva", "Jayasinghe", "Bandara",
+                "Wickramasinghe", "Rathnayake", "Dissanayake", "Aathi", "Kumara", "Herath", "Gunawardena" };
+        private static final int TREATMENTS = 4; // * IDs of the opening catalog
+
+        private final long seed;
+        private final Random random;
+        private final LocalDate today = LocalDate.now();
+        private final SchedulingEngine calendar = new SchedulingEngine(today);
+        private Doctor[] doctors;
+        private int patients;
+        private int bookings; // * Book lines written, what @n counts
+        // * Active bookings: their @n, doctor, day and minute, removed by swapping in the last one
+        private int[] active = new int[1024];
+        private int[] activeDoctor = new int[1024];
+        private int[] activeDay = new int[1024];
+        private int[] activeMinute = new int[1024];
+        private int activeCount;
+
+        Generator(long seed) {
+            this.seed = seed;
+            this.random = new Random(seed);
+        }
+
+        // ! Writes the number of operations to the file, doctors included
+        public void write(Path file, long operations) throws IOException {
+            int doctorCount = (int) Math.min(Math.max(2, operations * 3 / 10 / BOOKINGS_PER_DOCTOR + 1),
+                    Math.max(1, operations / 2));
+            doctors = new Doctor[doctorCount];
+            try (CsvWriter out = new CsvWriter(file)) {
+                out.field("# " + operations + " operations generated on " + today + " with seed " + seed).endRow();
+                for (int i = 0; i < doctorCount; i++) {
+                    doctors[i] = new Doctor("Dr. " + name(i), "doctor" + (i + 1) + "@aurora.lk",
+                            String.format(Locale.ROOT, "071%07d", i), String.format(Locale.ROOT, "G%04d", i + 1));
+                    out.field(Command.DOCTOR.word).field(doctors[i].name).field(doctors[i].getEmail())
+                            .field(doctors[i].contactNumber).field(doctors[i].employeeID).endRow();
+                }
+                for (long i = doctorCount; i < operations; i++) {
+                    next(out);
+                    out.endRow();
+                }
+            }
+        }
+
+        // * One operation, picked by its share of the mix (per thousand)
+        private void next(CsvWriter out) {
+            int pick = random.nextInt(1000);
+            if (pick < 80 || patients == 0) {
+                register(out);
+            } else if (pick < 380 || activeCount == 0) {
+                book(out);
+            } else if (pick < 450) {
+                update(out);
+            } else if (pick < 530) {
+                finish(out, Command.CANCEL);
+            } else if (pick < 650) {
+                finish(out, Command.INVOICE);
+            } else if (pick < 670) {
+                finish(out, Command.COMPLETE);
+            } else if (pick < 690) {
+                finish(out, Command.NO_SHOW);
+            } else if (pick < 850) {
+                int patient = random.nextInt(patients);
+                out.field(Command.FIND_PATIENT.word).field(random.nextInt(4) == 0 ? name(patient) : nic(patient));
+            } else if (pick < 920) {
+                Doctor doctor = doctors[random.nextInt(doctors.length)];
+                out.field(Command.FIND_DOCTOR.word).field(random.nextInt(5) == 0 ? doctor.name : doctor.employeeID);
+            } else if (pick < 990) {
+                LocalDate day = today.plusDays(1 + random.nextInt(BOOKING_WINDOW_DAYS));
+                out.field(Command.FIND_DATE.word).field(day.toString());
+            } else {
+                out.field(Command.FIND_APPOINTMENTS.word).field(name(random.nextInt(patients)));
+            }
+        }
+
+        private void register(CsvWriter out) {
+            int patient = patients++;
+            out.field(Command.REGISTER.word).field(name(patient)).field("patient" + patient + "@mail.com")
+                    .field(String.format(Locale.ROOT, "077%07d", patient % 10_000_000)).field(nic(patient));
+        }
+
+        private void book(CsvWriter out) {
+            int booking = ++bookings;
+            int doctor = random.nextInt(doctors.length);
+            LocalDate day = today.plusDays(1 + random.nextInt(BOOKING_WINDOW_DAYS));
+            LocalTime time;
+            boolean booked;
+            if (random.nextInt(1000) < CLASHES_PER_THOUSAND) {
+                time = LocalTime.of(9 + random.nextInt(11), 15 * random.nextInt(4));
+                booked = calendar.book(doctors[doctor], day, time);
+            } else {
+                SchedulingEngine.Slot slot = calendar.nextFreeSlot(doctors[doctor], day, LocalTime.MIN);
+                if (slot != null) {
+                    day = slot.getDate();
+                    time = slot.getTime();
+                } else {
+                    time = LocalTime.of(10, 0); // * Fully booked, the clinic refuses it too
+                }
+                booked = slot != null && calendar.book(doctors[doctor], day, time);
+            }
+            out.field(Command.BOOK.word).field(nic(random.nextInt(patients))).field(doctors[doctor].employeeID)
+                    .field(1 + random.nextInt(TREATMENTS)).field(day.toString())
+                    .field(AppointmentDates.formatTime(time));
+            if (booked) {
+                addActive(booking, doctor, day, time);
+            }
+        }
+
+        // * Moves an active booking to the first free slot from a random day
+        private void update(CsvWriter out) {
+            int index = random.nextInt(activeCount);
+            Doctor doctor = doctors[activeDoctor[index]];
+            LocalDate oldDay = LocalDate.ofEpochDay(activeDay[index]);
+            LocalTime oldTime = LocalTime.ofSecondOfDay(activeMinute[index] * 60L);
+            SchedulingEngine.Slot slot = calendar.nextFreeSlot(doctor,
+                    today.plusDays(1 + random.nextInt(BOOKING_WINDOW_DAYS)), LocalTime.MIN);
+            LocalDate day = slot != null ? slot.getDate() : oldDay;
+            LocalTime time = slot != null ? slot.getTime() : oldTime;
+            calendar.move(doctor, oldDay, oldTime, day, time);
+            activeDay[index] = (int) day.toEpochDay();
+            activeMinute[index] = time.getHour() * 60 + time.getMinute();
+            out.field(Command.UPDATE.word).field("@" + active[index]).field(day.toString())
+                    .field(AppointmentDates.formatTime(time));
+        }
+
+        // * Cancels or closes an active booking, it leaves the active ones
+        private void finish(CsvWriter out, Command command) {
+            int index = random.nextInt(activeCount);
+            out.field(command.word).field("@" + active[index]);
+            if (command == Command.CANCEL) {
+                calendar.release(doctors[activeDoctor[index]], LocalDate.ofEpochDay(activeDay[index]),
+                        LocalTime.ofSecondOfDay(activeMinute[index] * 60L));
+            } else if (command == Command.INVOICE && random.nextBoolean()) {
+                out.field(1 + random.nextInt(TREATMENTS)); // * Billed for another treatment than booked
+            }
+            activeCount--;
+            active[index] = active[activeCount];
+            activeDoctor[index] = activeDoctor[activeCount];
+            activeDay[index] = activeDay[activeCount];
+            activeMinute[index] = activeMinute[activeCount];
+        }
+
+        private void addActive(int booking, int doctor, LocalDate day, LocalTime time) {
+            if (activeCount == active.length) {
+                active = Arrays.copyOf(active, activeCount * 2);
+                activeDoctor = Arrays.copyOf(activeDoctor, activeCount * 2);
+                activeDay = Arrays.copyOf(activeDay, activeCount * 2);
+                activeMinute = Arrays.copyOf(activeMinute, activeCount * 2);
+            }
+            active[activeCount] = booking;
+            activeDoctor[activeCount] = doctor;
+            activeDay[activeCount] = (int) day.toEpochDay();
+            activeMinute[activeCount] = time.getHour() * 60 + time.getMinute();
+            activeCount++;
+        }
+
+        // * Common names repeat, as they do at a real front desk
+        static String name(int i) {
+            return FIRST_NAMES[i % FIRST_NAMES.length] + " "
+                    + LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length];
+        }
+
+        static String nic(int i) {
+            return String.format(Locale.ROOT, "%012d", 199000000000L + i);
+        }
+    }
+}
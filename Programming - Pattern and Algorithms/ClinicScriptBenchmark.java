@@ -0,0 +1,69 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Clinic Script Benchmark
+// ! The script mode of ClinicBenchmark: a generated ClinicScript workload replayed
+// on two clinics and after a restart.
+final class ClinicScriptBenchmark {
+    private ClinicScriptBenchmark() {
+    }
+
+    // ! Generates a workload and runs it on two empty clinics. Only the
+    // bookings the generator sent to a random slot may fail, every follow-up
+    // must find its appointment, and both clinics, and the first one after a
+    // restart, must end with the same appointments.
+    static boolean runScript(int operations) throws IOException {
+        List<String> problems = new ArrayList<>();
+        Path directory = Files.createTempDirectory("aurora-script");
+        Path file = directory.resolve("workload.csv");
+        long start = System.nanoTime();
+        new ClinicScript.Generator(42).write(file, operations);
+        System.out.printf("Generated %,d operations in %.2f s (%,d bytes)%n", operations,
+                (System.nanoTime() - start) / 1e9, Files.size(file));
+
+        List<Treatment> treatments = new ArrayList<>();
+        treatments.add(new Treatment(1, "Acne Treatment", 2750.00));
+        treatments.add(new Treatment(2, "Skin Whitening", 7650.00));
+        treatments.add(new Treatment(3, "Mole Removal", 3850.00));
+        treatments.add(new Treatment(4, "Laser Treatment", 12500.00));
+        TreatmentCatalog catalog = TreatmentCatalog.of(treatments);
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+        List<List<Appointment>> results = new ArrayList<>();
+        for (int run = 1; run <= 2; run++) {
+            Path data = directory.resolve("run" + run);
+            ClinicService clinic = BenchmarkFixture.openClinic(data, catalog);
+            ClinicScript.Summary summary = new ClinicScript(clinic, quiet, null).run(file);
+            System.out.println("Run " + run + ":");
+            System.out.println(summary);
+            long booked = summary.getDone(ClinicScript.Command.BOOK);
+            if (summary.getOperations() != operations) {
+                problems.add("Run " + run + " ran " + summary.getOperations() + " operations");
+            }
+            if (summary.getFailed() != summary.getFailed(ClinicScript.Command.BOOK)) {
+                problems.add("Run " + run + " had failures other than bookings");
+            }
+            if (summary.getFailed(ClinicScript.Command.BOOK) * 10 > booked) {
+                problems.add("Run " + run + " refused " + summary.getFailed(ClinicScript.Command.BOOK) + " of "
+                        + booked + " bookings");
+            }
+            results.add(clinic.getRepository().getAppointments());
+            BenchmarkFixture.closeClinic(clinic);
+            if (run == 1) {
+                ClinicService restarted = BenchmarkFixture.openClinic(data, catalog);
+                BenchmarkFixture.compare(results.get(0), restarted.getRepository().getAppointments(), "after a restart",
+                        problems);
+                BenchmarkFixture.closeClinic(restarted);
+            }
+        }
+        BenchmarkFixture.compare(results.get(0), results.get(1), "in the second run", problems);
+
+        BenchmarkFixture.report(problems);
+        BenchmarkFixture.deleteTree(directory);
+        return problems.isEmpty();
+    }
+}
@@ -0,0 +1,740 @@
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Clinic Service
+// ! Booking operations that several front desk terminals can call at the same
+// time. A slot is claimed in the doctor's calendar before anything is saved,
+// so two bookings of one slot cannot both succeed, and bookings of different
+// doctors never wait on each other. Changes to one appointment are serialized
+// by a lock stripe chosen from its ID, and every saved transition is published
+// on the event bus while that lock is held, so subscribers see the events of
+// one appointment in order. Every operation of the menu is timed into the
+// clinic metrics, failures included. A slot freed by a cancellation or a move
+// is offered to the waitlist of that doctor and day before the call returns.
+// Invalid input is reported with IllegalArgumentException and a conflict with
+// the current state (slot taken, already canceled) with IllegalStateException.
+// The service is one branch of the clinic and hands out appointment and
+// invoice IDs from the branch's range only (see ClinicPartitions).
+class ClinicService implements AutoCloseable {
+    private static final int STRIPES = 64; // * Power of two, see stripe()
+    private static final long REBUILD_WAIT_SECONDS = 5;
+    static final int ARCHIVE_AFTER_DAYS = 30; // * Closed appointments older than this leave the heap
+
+    private final ClinicRepository repository;
+    private final ClinicPersistence persistence;
+    private final SchedulingEngine scheduler;
+    private final TreatmentCatalog treatments;
+    private final int branch;
+    private final String branchName;
+    private final AtomicInteger appointmentIDs;
+    private final AtomicInteger invoiceIDs;
+    private final ClinicAnalytics analytics = new ClinicAnalytics();
+    private final ClinicMetrics metrics = new ClinicMetrics();
+    private final ClinicEventBus events = new ClinicEventBus();
+    private final ClinicWaitlist waitlist = new ClinicWaitlist();
+    private final DoctorAssignment assignment = new DoctorAssignment();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final ReentrantLock registration = new ReentrantLock(); // * NIC check and save of a new patient
+
+    // SlotTakenException Class
+    // ! The doctor's slot is taken or outside their hours. Callers that try
+    // another slot or doctor catch only this, other refusals still reach them.
+    static final class SlotTakenException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        SlotTakenException(Doctor doctor) {
+            super(doctor.name + " is not available at that time.");
+        }
+    }
+
+    ClinicService(ClinicRepository repository, ClinicPersistence persistence, SchedulingEngine scheduler,
+            TreatmentCatalog treatments) {
+        this(repository, persistence, scheduler, treatments, 0, ClinicPartitions.DEFAULT_BRANCH_NAME);
+    }
+
+    ClinicService(ClinicRepository repository, ClinicPersistence persistence, SchedulingEngine scheduler,
+            TreatmentCatalog treatments, int branch, String branchName) {
+        ClinicPartitions.checkBranch(branch);
+        this.repository = repository;
+        this.persistence = persistence;
+        this.scheduler = scheduler;
+        this.treatments = treatments;
+        this.branch = branch;
+        this.branchName = branchName;
+        // * Saved IDs of another branch's range are not expected here, the range start wins over them
+        int first = ClinicPartitions.firstID(branch);
+        this.appointmentIDs = new AtomicInteger(inRange(persistence.getNextAppointmentID()) ? persistence
+                .getNextAppointmentID() : first);
+        this.invoiceIDs = new AtomicInteger(inRange(persistence.getNextInvoiceID()) ? persistence
+                .getNextInvoiceID() : first);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        archiveHistory(); // * What became old while the clinic was closed
+        ClinicRepository.History history = repository.getHistory();
+        analytics.rebuild(history, events.getPublishedCount()); // * The restored history
+        events.subscribe("analytics", analytics);
+        // * Archived appointments are closed, they add no load
+        assignment.rebuild(repository.getDoctors(), history.getInMemory());
+    }
+
+    // * Index of the branch, it decides the range of IDs
+    public int getBranch() {
+        return branch;
+    }
+
+    public String getBranchName() {
+        return branchName;
+    }
+
+    private boolean inRange(int id) {
+        return id >= ClinicPartitions.firstID(branch) && id <= ClinicPartitions.lastID(branch) + 1;
+    }
+
+    // ! Next appointment ID of the branch, IllegalStateException once its range is used up
+    int nextAppointmentID() {
+        return checkID(appointmentIDs.getAndIncrement(), 1);
+    }
+
+    private int checkID(int first, int count) {
+        if (first > ClinicPartitions.lastID(branch) - count + 1 || first < ClinicPartitions.firstID(branch)) {
+            throw new IllegalStateException("Branch " + branchName + " has used up its range of IDs.");
+        }
+        return first;
+    }
+
+    public ClinicRepository getRepository() {
+        return repository;
+    }
+
+    public ClinicPersistence getPersistence() {
+        return persistence;
+    }
+
+    public SchedulingEngine getScheduler() {
+        return scheduler;
+    }
+
+    public ClinicAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    public ClinicMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ClinicEventBus getEvents() {
+        return events;
+    }
+
+    public ClinicWaitlist getWaitlist() {
+        return waitlist;
+    }
+
+    public DoctorAssignment getAssignment() {
+        return assignment;
+    }
+
+    public TreatmentCatalog getTreatments() {
+        return treatments;
+    }
+
+    private ReentrantLock stripe(Appointment appointment) {
+        return stripes[appointment.getAppointmentID() & (STRIPES - 1)];
+    }
+
+    // ! Registers a patient, every field is required. A NIC already registered,
+    // in any case, is refused as by the CSV import: the NIC index keeps one
+    // patient per NIC.
+    public Patient registerPatient(String name, String email, String contactNumber, String nic) {
+        long start = metrics.start();
+        try {
+            if (isBlank(name) || isBlank(email) || isBlank(contactNumber) || isBlank(nic)) {
+                throw new IllegalArgumentException("All fields are required. Please try again.");
+            }
+            Patient patient = new Patient(name.trim(), email.trim(), contactNumber.trim(), nic.trim());
+            registration.lock();
+            try {
+                if (repository.findPatientByNicIgnoreCase(patient.getNIC()) != null) {
+                    throw new IllegalStateException("A patient with NIC " + patient.getNIC()
+                            + " is already registered.");
+                }
+                persistence.registerPatient(patient);
+            } finally {
+                registration.unlock();
+            }
+            return patient;
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.REGISTER_PATIENT);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.REGISTER_PATIENT, start);
+        }
+    }
+
+    // ! Books a slot, the appointment ID comes from an atomic counter so
+    // concurrent bookings never share one
+    public Appointment bookAppointment(Patient patient, Doctor doctor, Treatment treatment, String date,
+            String time) {
+        long start = metrics.start();
+        try {
+            if (patient == null || doctor == null || treatment == null) {
+                throw new IllegalArgumentException("Patient, doctor and treatment are required.");
+            }
+            treatment = currentTreatment(treatment);
+            LocalDate slotDate = AppointmentDates.parseDate(date);
+            LocalTime slotTime = AppointmentDates.parseTime(time);
+            if (slotDate == null || slotTime == null) {
+                throw new IllegalArgumentException(
+                        "Invalid date or time. Use a day (Mon, Wed, Fri, Sat) or yyyy-MM-dd, and a time like 10:00am.");
+            }
+
+            // ! Reserve the slot first, the calendar of the doctor is the only contended lock
+            if (!scheduler.book(doctor, slotDate, slotTime)) {
+                throw new SlotTakenException(doctor);
+            }
+            boolean saved = false; // * Until the journal has the appointment, any failure gives the slot back
+            try {
+                Appointment appointment = new Appointment(nextAppointmentID(), date, slotDate, time, Status.BOOKED,
+                        patient, doctor, treatment);
+                ReentrantLock lock = stripe(appointment);
+                lock.lock(); // * Uncontended, but keeps the booking event ahead of any later change
+                try {
+                    persistence.bookAppointment(appointment);
+                    saved = true;
+                    events.publish(appointment, null, null, null);
+                    assignment.record(doctor, null, Status.BOOKED);
+                } finally {
+                    lock.unlock();
+                }
+                return appointment;
+            } finally {
+                if (!saved) {
+                    scheduler.release(doctor, slotDate, slotTime);
+                }
+            }
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.BOOK_APPOINTMENT);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.BOOK_APPOINTMENT, start);
+        }
+    }
+
+    // ! Books the slot with the least loaded doctor who is free then. A doctor
+    // picked while another booking takes the same slot is skipped for the next.
+    public Appointment bookWithAnyDoctor(Patient patient, Treatment treatment, String date, String time) {
+        LocalDate slotDate = AppointmentDates.parseDate(date);
+        LocalTime slotTime = AppointmentDates.parseTime(time);
+        if (slotDate == null || slotTime == null) {
+            throw new IllegalArgumentException(
+                    "Invalid date or time. Use a day (Mon, Wed, Fri, Sat) or yyyy-MM-dd, and a time like 10:00am.");
+        }
+        for (int tries = assignment.size(); tries > 0; tries--) {
+            Doctor doctor = assignment.pick(scheduler, slotDate, slotTime);
+            if (doctor == null) {
+                break;
+            }
+            try {
+                return bookAppointment(patient, doctor, treatment, date, time);
+            } catch (SlotTakenException e) {
+                // * Taken since it was picked, the next pick sees the slot booked
+            }
+        }
+        throw new IllegalStateException("No doctor is available at that time.");
+    }
+
+    // ! Moves an appointment, the old slot is kept if the new one is taken
+    public void rescheduleAppointment(Appointment appointment, String date, String time) {
+        long start = metrics.start();
+        LocalDate freedDate;
+        LocalTime freedTime;
+        try {
+            LocalDate slotDate = AppointmentDates.parseDate(date);
+            LocalTime slotTime = AppointmentDates.parseTime(time);
+            if (slotDate == null || slotTime == null) {
+                throw new IllegalArgumentException(
+                        "Invalid date or time. Use a day (Mon, Wed, Fri, Sat) or yyyy-MM-dd, and a time like 10:00am.");
+            }
+
+            ReentrantLock lock = stripe(appointment);
+            lock.lock();
+            try {
+                Status previous = checkTransition(appointment, Status.RESCHEDULED, "updated");
+                Doctor doctor = appointment.getDoctor();
+                LocalDate oldDate = appointment.getLocalDate();
+                LocalTime oldTime = appointment.getLocalTime();
+                if (!scheduler.move(doctor, oldDate, oldTime, slotDate, slotTime)) {
+                    throw new SlotTakenException(doctor);
+                }
+                try {
+                    persistence.rescheduleAppointment(appointment, date, slotDate, time);
+                } catch (UncheckedIOException e) {
+                    scheduler.move(doctor, slotDate, slotTime, oldDate, oldTime);
+                    throw e;
+                }
+                events.publish(appointment, previous, oldDate, oldTime);
+                boolean moved = !oldDate.equals(slotDate) || !oldTime.equals(slotTime);
+                freedDate = moved ? oldDate : null;
+                freedTime = oldTime;
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.UPDATE_APPOINTMENT);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.UPDATE_APPOINTMENT, start);
+        }
+        if (freedDate != null) {
+            backfill(appointment.getDoctor(), freedDate, freedTime);
+        }
+    }
+
+    // ! Cancels an appointment and frees its slot. Returns the appointment the
+    // slot was given to from the waitlist, or null when nobody was waiting.
+    public Appointment cancelAppointment(Appointment appointment) {
+        long start = metrics.start();
+        try {
+            ReentrantLock lock = stripe(appointment);
+            lock.lock();
+            try {
+                if (appointment.getStatus() == Status.CANCELED) {
+                    throw new IllegalStateException("Appointment is already canceled.");
+                }
+                Status previous = checkTransition(appointment, Status.CANCELED, "canceled");
+                persistence.cancelAppointment(appointment);
+                scheduler.release(appointment.getDoctor(), appointment.getLocalDate(), appointment.getLocalTime());
+                events.publish(appointment, previous, appointment.getLocalDate(), appointment.getLocalTime());
+                assignment.record(appointment.getDoctor(), previous, Status.CANCELED);
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.CANCEL_APPOINTMENT);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.CANCEL_APPOINTMENT, start);
+        }
+        // * The date and time of a canceled appointment no longer change
+        return backfill(appointment.getDoctor(), appointment.getLocalDate(), appointment.getLocalTime());
+    }
+
+    // ! Puts a patient on the waitlist of a fully booked day. Refused when the
+    // doctor does not work that day or still has a free slot on it.
+    public ClinicWaitlist.Entry joinWaitlist(Patient patient, Doctor doctor, Treatment treatment, String date,
+            ClinicWaitlist.Priority priority) {
+        long start = metrics.start();
+        try {
+            if (patient == null || doctor == null || treatment == null || priority == null) {
+                throw new IllegalArgumentException("Patient, doctor, treatment and priority are required.");
+            }
+            treatment = currentTreatment(treatment);
+            LocalDate day = AppointmentDates.parseDate(date);
+            if (day == null) {
+                throw new IllegalArgumentException("Invalid date. Use a day (Mon, Wed, Fri, Sat) or yyyy-MM-dd.");
+            }
+            if (!scheduler.covers(day)) {
+                throw new IllegalArgumentException("Waitlists are open from today to a year ahead.");
+            }
+            if (doctor.getWorkingHours(day.getDayOfWeek()) == null) {
+                throw new IllegalStateException(doctor.name + " does not work on " + day + ".");
+            }
+            SchedulingEngine.Slot free = scheduler.nextFreeSlot(doctor, day, LocalTime.MIN);
+            if (free != null && free.getDate().equals(day)) {
+                throw new IllegalStateException(doctor.name + " still has a free slot on that day: " + free);
+            }
+            waitlist.dropBefore(LocalDate.now());
+            ClinicWaitlist.Entry entry = waitlist.add(patient, doctor, treatment, day, priority);
+            if (entry == null) {
+                throw new IllegalStateException(patient.name + " is already on that waitlist.");
+            }
+            return entry;
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.JOIN_WAITLIST);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.JOIN_WAITLIST, start);
+        }
+    }
+
+    // ! Books a freed slot for the best waiting patient. Runs on the thread that
+    // freed the slot, right after it was released, so the slot is offered
+    // within one poll and one booking. If another booking took the slot first
+    // the patient keeps their place. The cancel is saved already, so a booking
+    // that fails is counted and never thrown to the caller of the cancel.
+    private Appointment backfill(Doctor doctor, LocalDate date, LocalTime time) {
+        if (date == null || time == null || date.atTime(time).isBefore(LocalDateTime.now())) {
+            return null; // * A slot in the past is not worth offering
+        }
+        long start = metrics.start();
+        try {
+            for (ClinicWaitlist.Entry entry = waitlist.poll(doctor, date); entry != null;
+                    entry = waitlist.poll(doctor, date)) {
+                try {
+                    return bookAppointment(entry.getPatient(), doctor, entry.getTreatment(), date.toString(),
+                            AppointmentDates.formatTime(time));
+                } catch (IllegalArgumentException e) {
+                    // * The treatment left the catalog, the entry cannot be booked, try the next one
+                } catch (SlotTakenException e) {
+                    waitlist.putBack(entry); // * Another booking took the slot first
+                    return null;
+                } catch (RuntimeException e) {
+                    waitlist.putBack(entry); // * Not saved, e.g. the journal could not be written or the IDs ran out
+                    metrics.failed(ClinicMetrics.Operation.BACKFILL);
+                    return null;
+                }
+            }
+            return null;
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.BACKFILL);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.BACKFILL, start);
+        }
+    }
+
+    // ! Records that the visit took place, the slot stays taken
+    public void completeAppointment(Appointment appointment) {
+        long start = metrics.start();
+        try {
+            ReentrantLock lock = stripe(appointment);
+            lock.lock();
+            try {
+                // * Completed as the catalog prices it now, unless it was taken off the catalog
+                Treatment current = treatments.find(appointment.getTreatment().getTreatmentID());
+                finish(appointment, Status.COMPLETED, "completed",
+                        current != null ? current : appointment.getTreatment());
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.RECORD_OUTCOME);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.RECORD_OUTCOME, start);
+        }
+    }
+
+    // ! Records that the patient did not come, the slot stays taken
+    public void markNoShow(Appointment appointment) {
+        long start = metrics.start();
+        try {
+            ReentrantLock lock = stripe(appointment);
+            lock.lock();
+            try {
+                finish(appointment, Status.NO_SHOW, "marked as no-show");
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.RECORD_OUTCOME);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.RECORD_OUTCOME, start);
+        }
+    }
+
+    // * Saves and publishes a final state, the caller holds the stripe lock
+    private void finish(Appointment appointment, Status status, String action) {
+        finish(appointment, status, action, appointment.getTreatment());
+    }
+
+    // ! A completed visit keeps the treatment it was given, as priced by the
+    // catalog then. The invoice, the analytics and the patient history all
+    // bill that one.
+    private void finish(Appointment appointment, Status status, String action, Treatment treatment) {
+        Status previous = checkTransition(appointment, status, action);
+        Treatment booked = appointment.getTreatment();
+        if (treatment != booked) {
+            persistence.completeWith(appointment, treatment);
+        } else {
+            persistence.changeStatus(appointment, status);
+        }
+        events.publish(appointment, previous, appointment.getLocalDate(), appointment.getLocalTime(), booked);
+        assignment.record(appointment.getDoctor(), previous, status);
+    }
+
+    // * Current status, or IllegalStateException when the change is not allowed from it
+    private static Status checkTransition(Appointment appointment, Status next, String action) {
+        Status current = appointment.getStatus();
+        if (!current.canBecome(next)) {
+            throw new IllegalStateException(current.getLabel() + " appointments cannot be " + action + ".");
+        }
+        return current;
+    }
+
+    // ! Issues an invoice with the next invoice ID. Billing an active
+    // appointment completes it, canceled and missed visits are not billed.
+    public Invoice issueInvoice(Appointment appointment, Treatment treatment) {
+        long start = metrics.start();
+        try {
+            if (appointment == null || treatment == null) {
+                throw new IllegalArgumentException("Appointment and treatment are required.");
+            }
+            treatment = currentTreatment(treatment); // * Priced from the catalog as it is now
+            ReentrantLock lock = stripe(appointment);
+            lock.lock();
+            try {
+                if (appointment.getStatus().isActive()) {
+                    finish(appointment, Status.COMPLETED, "invoiced", treatment);
+                } else if (appointment.getStatus() != Status.COMPLETED) {
+                    throw new IllegalStateException(appointment.getStatus().getLabel()
+                            + " appointments cannot be invoiced.");
+                } else if (appointment.getTreatment().getTreatmentID() != treatment.getTreatmentID()) {
+                    throw new IllegalStateException("Appointment " + appointment.getAppointmentID()
+                            + " was completed as " + appointment.getTreatment().getName() + ".");
+                }
+                // * Billed as completed, which also prices it as the catalog stood then
+                int invoiceID = checkID(invoiceIDs.getAndIncrement(), 1);
+                persistence.issueInvoice(invoiceID, appointment, appointment.getTreatment());
+                return new Invoice(invoiceID, appointment, appointment.getTreatment());
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.ISSUE_INVOICE);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.ISSUE_INVOICE, start);
+        }
+    }
+
+    // ! Reserves count consecutive invoice IDs for a batch run and returns the first
+    public int reserveInvoiceIDs(int count) {
+        int first = checkID(invoiceIDs.getAndAdd(count), count);
+        persistence.issueInvoices(first, count);
+        return first;
+    }
+
+    // ! Bulk import, the rows arrive validated and in batches (see ClinicCsv)
+
+    public void importDoctor(Doctor doctor) {
+        persistence.registerDoctor(doctor);
+        assignment.addDoctor(doctor);
+    }
+
+    public void importPatients(List<Patient> batch) {
+        persistence.importPatients(batch);
+    }
+
+    // ! Claims the calendar slots of a batch and saves it. Appointments whose
+    // slot is taken or outside the doctor's hours are moved to rejected;
+    // history before today and bookings beyond the calendar are kept as they are.
+    public void importAppointments(List<Appointment> batch, List<Appointment> rejected) {
+        List<Appointment> accepted = new ArrayList<>(batch.size());
+        for (Appointment appointment : batch) {
+            if (appointment.getStatus().holdsSlot() && scheduler.covers(appointment.getLocalDate())
+                    && !scheduler.book(appointment.getDoctor(), appointment.getLocalDate(),
+                            appointment.getLocalTime())) {
+                rejected.add(appointment);
+            } else {
+                accepted.add(appointment);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+        try {
+            persistence.importAppointments(accepted);
+        } catch (UncheckedIOException e) {
+            for (Appointment appointment : accepted) {
+                if (appointment.getStatus().holdsSlot()) {
+                    scheduler.release(appointment.getDoctor(), appointment.getLocalDate(),
+                            appointment.getLocalTime());
+                }
+            }
+            throw e;
+        }
+    }
+
+    // ! Snapshot of the imported state, so a restart does not replay the
+    // batches, and totals and doctor loads that include the imported appointments
+    public void finishImport() {
+        archiveHistory();
+        persistence.snapshot();
+        rebuildTotals();
+    }
+
+    // ! Moves the closed appointments of the days before the last
+    // ARCHIVE_AFTER_DAYS into the appointment store, returns how many moved
+    public int archiveHistory() {
+        return persistence.archive(LocalDate.now().minusDays(ARCHIVE_AFTER_DAYS));
+    }
+
+    // ! Recounts the analytics totals and the doctor loads from the repository
+    // and returns the analytics drift. Every stripe is held meanwhile, so no
+    // transition is saved or published between the copy of the appointments
+    // and the bus sequence the new totals start after.
+    public List<String> rebuildTotals() {
+        for (ReentrantLock lock : stripes) {
+            lock.lock();
+        }
+        try {
+            // * Lets the old totals catch up first, so the drift is only real drift
+            events.awaitIdle(REBUILD_WAIT_SECONDS, TimeUnit.SECONDS);
+            ClinicRepository.History history = repository.getHistory();
+            List<String> drift = analytics.rebuild(history, events.getPublishedCount());
+            assignment.rebuild(repository.getDoctors(), history.getInMemory());
+            return drift;
+        } finally {
+            for (ReentrantLock lock : stripes) {
+                lock.unlock();
+            }
+        }
+    }
+
+    // ! Read operations shared by the menu and the HTTP API
+
+    // * One page of the appointments made with the NIC, newest first
+    public List<Appointment> findPatientHistory(String nic, int page, int pageSize) {
+        long start = metrics.start();
+        try {
+            if (isBlank(nic) || page < 0 || pageSize <= 0) {
+                throw new IllegalArgumentException("A NIC, a page from 0 and a page size above 0 are required.");
+            }
+            return repository.findHistoryOfPatient(nic, page, pageSize);
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.PATIENT_HISTORY);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.PATIENT_HISTORY, start);
+        }
+    }
+
+    // * Patient by NIC (case insensitive), then by exact name, or null
+    public Patient findPatient(String query) {
+        long start = metrics.start();
+        try {
+            Patient patient = repository.findPatientByNicIgnoreCase(query.trim());
+            if (patient == null) {
+                List<Patient> byName = repository.findPatientsByName(query);
+                patient = byName.isEmpty() ? null : byName.get(0);
+            }
+            return patient;
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.SEARCH_PATIENT);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.SEARCH_PATIENT, start);
+        }
+    }
+
+    // * Closest partial or misspelt names, best match first
+    public List<Patient> searchPatients(String query, int limit) {
+        long start = metrics.start();
+        try {
+            return repository.searchPatientsByName(query, limit);
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.SEARCH_PATIENT);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.SEARCH_PATIENT, start);
+        }
+    }
+
+    // * Doctor by employee ID, then by name (case insensitive), or null
+    public Doctor findDoctor(String query) {
+        long start = metrics.start();
+        try {
+            Doctor doctor = repository.findDoctorByEmployeeID(query.trim());
+            return doctor != null ? doctor : repository.findDoctorByName(query);
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.SEARCH_DOCTOR);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.SEARCH_DOCTOR, start);
+        }
+    }
+
+    public Appointment findAppointment(int id) {
+        return repository.findAppointmentByID(id);
+    }
+
+    // * Treatment by its ID in the current catalog, or null
+    public Treatment findTreatment(int treatmentID) {
+        return treatments.find(treatmentID);
+    }
+
+    // * The catalog's current version of a treatment, callers may hold an older one
+    private Treatment currentTreatment(Treatment treatment) {
+        Treatment current = treatments.find(treatment.getTreatmentID());
+        if (current == null) {
+            throw new IllegalArgumentException("Treatment not found.");
+        }
+        return current;
+    }
+
+    // ! Active appointments on a day or a range written as "<from> to <to>",
+    // only the buckets of the requested days are read from the day index
+    public List<Appointment> findAppointmentsOn(String dates) {
+        long start = metrics.start();
+        try {
+            String[] range = dates.trim().split("(?i)\\s+to\\s+", 2);
+            LocalDate from = AppointmentDates.parseDate(range[0]);
+            LocalDate to = range.length == 2 && from != null ? AppointmentDates.parseDate(range[1], from) : from;
+            if (from == null || to == null) {
+                throw new IllegalArgumentException("Invalid date. Use a day (Mon, Wed, Fri, Sat) or yyyy-MM-dd.");
+            }
+            return repository.findAppointmentsBetween(from, to);
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.VIEW_BY_DATE);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.VIEW_BY_DATE, start);
+        }
+    }
+
+    // ! Appointments of the patients with that name, newest first for each
+    // patient, read from their histories. Partial or misspelt names fall back
+    // to the ranked name search.
+    public List<Appointment> findAppointmentsOfPatient(String name, int limit) {
+        long start = metrics.start();
+        try {
+            List<Patient> matches = repository.findPatientsByName(name);
+            if (matches.isEmpty()) {
+                matches = repository.searchPatientsByName(name, limit);
+            }
+            Set<Patient> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<Appointment> found = new ArrayList<>();
+            for (Patient patient : matches) {
+                if (!matched.add(patient)) {
+                    continue;
+                }
+                // * Patients sharing a NIC share a history, each one only gets their own appointments
+                for (Appointment appointment : repository.findHistoryOfPatient(patient.getNIC(), 0,
+                        Integer.MAX_VALUE)) {
+                    if (appointment.getPatient() == patient) {
+                        found.add(appointment);
+                    }
+                }
+            }
+            return found;
+        } catch (RuntimeException e) {
+            metrics.failed(ClinicMetrics.Operation.SEARCH_APPOINTMENTS);
+            throw e;
+        } finally {
+            metrics.record(ClinicMetrics.Operation.SEARCH_APPOINTMENTS, start);
+        }
+    }
+
+    // ! Lets the event subscribers finish, the data itself is already saved
+    @Override
+    public void close() {
+        events.close();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
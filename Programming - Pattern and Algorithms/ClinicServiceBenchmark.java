@@ -0,0 +1,348 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+// Clinic Service Benchmark
+// ! The stress mode of ClinicBenchmark: many terminals on the same slots through
+// ClinicService, then the journal, the snapshots and the billing are checked.
+final class ClinicServiceBenchmark {
+    private ClinicServiceBenchmark() {
+    }
+
+    // ! Many terminals book, move, cancel, miss and invoice the same few slots
+    // at once through ClinicService, then the result is checked for double
+    // bookings, duplicate IDs and lost states, both in memory and after a restart.
+    static boolean runStress(int threads, int operations) throws IOException {
+        Path directory = Files.createTempDirectory("aurora-stress");
+        List<Doctor> doctors = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            doctors.add(new Doctor("Dr. Stress " + i, "stress" + i + "@aurora.lk", "077000000" + i,
+                    String.format("D%03d", i)));
+        }
+        List<Treatment> treatments = new ArrayList<>();
+        treatments.add(new Treatment(1, "Acne Treatment", 2750.00));
+        treatments.add(new Treatment(2, "Skin Whitening", 7650.00));
+        TreatmentCatalog catalog = TreatmentCatalog.of(treatments);
+
+        ClinicRepository repository = new ClinicRepository();
+        doctors.forEach(repository::addDoctor);
+        repository.attachStore(new AppointmentStore(directory.resolve("store")), catalog);
+        ClinicPersistence persistence = new ClinicPersistence(directory, repository, catalog, 1_000);
+        SchedulingEngine scheduler = new SchedulingEngine();
+        ClinicService service = new ClinicService(repository, persistence, scheduler, catalog);
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            patients.add(BenchmarkFixture.register(service, i));
+        }
+
+        // * Working days of the next four weeks, few enough slots that most bookings collide
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate day = LocalDate.now().plusDays(1); days.size() < 16; day = day.plusDays(1)) {
+            if (doctors.get(0).getWorkingHours(day.getDayOfWeek()) != null) {
+                days.add(day);
+            }
+        }
+
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicReference<RuntimeException> firstFailure = new AtomicReference<>();
+        ConcurrentLinkedQueue<Integer> invoiceIDs = new ConcurrentLinkedQueue<>();
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Appointment> mine = new ArrayList<>();
+                try {
+                    startGate.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < operations; i++) {
+                    int choice = random.nextInt(100);
+                    try {
+                        if (choice < 70 || mine.isEmpty()) {
+                            Doctor doctor = doctors.get(random.nextInt(doctors.size()));
+                            LocalDate day = days.get(random.nextInt(days.size()));
+                            mine.add(service.bookAppointment(patients.get(random.nextInt(patients.size())), doctor,
+                                    treatments.get(random.nextInt(treatments.size())), day.toString(),
+                                    randomSlot(doctor, day, random)));
+                            booked.incrementAndGet();
+                        } else if (choice < 85) {
+                            service.cancelAppointment(mine.get(random.nextInt(mine.size())));
+                        } else if (choice < 90) {
+                            Appointment appointment = mine.get(random.nextInt(mine.size()));
+                            LocalDate day = days.get(random.nextInt(days.size()));
+                            service.rescheduleAppointment(appointment, day.toString(),
+                                    randomSlot(appointment.getDoctor(), day, random));
+                        } else if (choice < 92) {
+                            service.markNoShow(mine.get(random.nextInt(mine.size())));
+                        } else {
+                            Appointment appointment = mine.get(random.nextInt(mine.size()));
+                            invoiceIDs.add(service.issueInvoice(appointment, appointment.getTreatment())
+                                    .getInvoiceID());
+                        }
+                    } catch (IllegalStateException e) {
+                        conflicts.incrementAndGet(); // * Slot taken or a refused transition, expected
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                        firstFailure.compareAndSet(null, e);
+                    }
+                }
+            }, "terminal-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+
+        // * Recounts while the terminals work, the totals must not count an event twice
+        AtomicBoolean working = new AtomicBoolean(true);
+        AtomicInteger rebuilds = new AtomicInteger();
+        Thread recounter = new Thread(() -> {
+            while (working.get()) {
+                service.rebuildTotals();
+                rebuilds.incrementAndGet();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+            }
+        }, "recounter");
+
+        long start = System.nanoTime();
+        startGate.countDown();
+        recounter.start();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        working.set(false);
+        try {
+            recounter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        List<String> problems = new ArrayList<>();
+        BenchmarkFixture.checkConsistency(repository.getAppointments(), booked.get(), "in memory", problems);
+        for (Appointment appointment : repository.getAppointments()) {
+            if (appointment.getStatus().holdsSlot()
+                    && scheduler.isFree(appointment.getDoctor(), appointment.getLocalDate(),
+                            appointment.getLocalTime())) {
+                problems.add("Slot of appointment " + appointment.getAppointmentID() + " is free in the calendar");
+            }
+        }
+        if (new HashSet<>(invoiceIDs).size() != invoiceIDs.size()) {
+            problems.add("Duplicate invoice IDs");
+        }
+        if (failures.get() > 0) {
+            problems.add(failures.get() + " operations failed unexpectedly, first: " + firstFailure.get());
+        }
+        // * The running totals must match a recount once the analytics thread caught up
+        if (!service.getEvents().awaitIdle(10, TimeUnit.SECONDS)) {
+            problems.add("Event subscribers did not catch up");
+        }
+        for (String drift : service.rebuildTotals()) {
+            problems.add("Analytics drift: " + drift);
+        }
+
+        // * Restart from the journal and snapshots, the same state must come back
+        service.close();
+        persistence.close();
+        repository.getStore().close();
+        ClinicRepository reloaded = new ClinicRepository();
+        doctors.forEach(reloaded::addDoctor);
+        new ClinicPersistence(directory, reloaded, catalog, 1_000).close();
+        BenchmarkFixture.checkConsistency(reloaded.getAppointments(), booked.get(), "after restart", problems);
+        for (Appointment appointment : reloaded.getAppointments()) {
+            Status before = repository.findAppointmentByID(appointment.getAppointmentID()).getStatus();
+            if (appointment.getStatus() != before) {
+                problems.add("Appointment " + appointment.getAppointmentID() + " was " + before + ", restored as "
+                        + appointment.getStatus());
+            }
+        }
+        checkTypedDays(doctors.get(0), catalog, problems);
+        checkBilledTreatment(doctors.get(0), catalog, problems);
+        checkFailedSnapshot(doctors.get(0), catalog, problems);
+        checkDuplicateNic(catalog, problems);
+
+        int operationsTotal = threads * operations;
+        System.out.printf("Threads:           %d%n", threads);
+        System.out.printf("Operations:        %,d in %.2f s (%,.0f ops/s)%n", operationsTotal, seconds,
+                operationsTotal / seconds);
+        System.out.printf("Bookings:          %,d made, %,d conflicts rejected%n", booked.get(), conflicts.get());
+        System.out.printf("Invoices:          %,d%n", invoiceIDs.size());
+        System.out.printf("Recounts:          %,d during the run%n", rebuilds.get());
+        BenchmarkFixture.report(problems);
+
+        BenchmarkFixture.deleteTree(directory);
+        return problems.isEmpty();
+    }
+
+    // * A random quarter hour inside the doctor's working hours on that day
+    private static String randomSlot(Doctor doctor, LocalDate day, Random random) {
+        LocalTime[] hours = doctor.getWorkingHours(day.getDayOfWeek());
+        int slots = (int) Duration.between(hours[0], hours[1]).toMinutes() / SchedulingEngine.SLOT_MINUTES;
+        return AppointmentDates.formatTime(hours[0].plusMinutes(
+                (long) random.nextInt(slots) * SchedulingEngine.SLOT_MINUTES));
+    }
+
+    // ! A typed "Mon" made last week must come back on that Monday, not on the
+    // next one, both from the journal and from a snapshot
+    private static void checkTypedDays(Doctor doctor, TreatmentCatalog catalog, List<String> problems)
+            throws IOException {
+        LocalDate lastMonday = LocalDate.now().minusWeeks(1).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        LocalDate lastFriday = lastMonday.plusDays(4);
+        for (boolean snapshot : new boolean[] {false, true}) {
+            Path directory = Files.createTempDirectory("aurora-days");
+            ClinicRepository repository = new ClinicRepository();
+            repository.addDoctor(doctor);
+            Patient patient = new Patient("Nimal Perera", "nimal@mail.com", "0771234567", "199012345678");
+            try (ClinicPersistence persistence = new ClinicPersistence(directory, repository, catalog, 1_000)) {
+                persistence.registerPatient(patient);
+                Appointment appointment = new Appointment(persistence.getNextAppointmentID(), "Mon", lastMonday,
+                        "10:00am", Status.BOOKED, patient, doctor, catalog.find(1));
+                persistence.bookAppointment(appointment);
+                persistence.rescheduleAppointment(appointment, "Fri", lastFriday, "10:00am");
+                if (snapshot) {
+                    persistence.snapshot();
+                }
+            }
+            ClinicRepository reloaded = new ClinicRepository();
+            reloaded.addDoctor(doctor);
+            new ClinicPersistence(directory, reloaded, catalog, 1_000).close();
+            LocalDate restored = reloaded.getAppointments().get(0).getLocalDate();
+            if (!lastFriday.equals(restored)) {
+                problems.add("A \"Fri\" appointment on " + lastFriday + " was restored on " + restored
+                        + (snapshot ? " from the snapshot" : " from the journal"));
+            }
+        }
+    }
+
+    // ! A visit invoiced for another treatment than booked: the invoice, the
+    // analytics and the patient's spend must all bill the given one, also after a restart
+    private static void checkBilledTreatment(Doctor doctor, TreatmentCatalog catalog, List<String> problems)
+            throws IOException {
+        Path directory = Files.createTempDirectory("aurora-billed");
+        ClinicService clinic = BenchmarkFixture.openClinic(directory, catalog);
+        clinic.importDoctor(doctor);
+        Patient patient = BenchmarkFixture.register(clinic, 0);
+        SchedulingEngine.Slot slot = clinic.getScheduler().nextFreeSlot(doctor, LocalDate.now().plusDays(1),
+                LocalTime.MIN);
+        Appointment appointment = clinic.bookAppointment(patient, doctor, catalog.find(1), slot.getDate().toString(),
+                AppointmentDates.formatTime(slot.getTime()));
+        long billed = clinic.issueInvoice(appointment, catalog.find(2)).getBill().getTotalCents();
+        try {
+            clinic.issueInvoice(appointment, catalog.find(1));
+            problems.add("A visit completed as treatment 2 was invoiced again as treatment 1");
+        } catch (IllegalStateException e) {
+            // * Expected, it was completed as another treatment
+        }
+        for (String drift : clinic.rebuildTotals()) {
+            problems.add("Billed treatment, analytics drift: " + drift);
+        }
+        ClinicAnalytics analytics = clinic.getAnalytics();
+        if (analytics.forTreatment(2).getRevenueCents() != billed || analytics.forTreatment(2).getBooked() != 1
+                || analytics.forTreatment(1).getBooked() != 0) {
+            problems.add("Analytics count the booked treatment of a visit billed " + billed + " as another one");
+        }
+        BenchmarkFixture.closeClinic(clinic);
+
+        // * The doctor comes back from the journal
+        ClinicService restarted = BenchmarkFixture.openClinic(directory, catalog);
+        Appointment restored = restarted.getRepository().findAppointmentByID(appointment.getAppointmentID());
+        long spent = restarted.getRepository().findLifetimeSpendCentsOfPatient(BenchmarkFixture.nic(0));
+        if (restored.getTreatment().getTreatmentID() != 2 || spent != billed
+                || ClinicAnalytics.revenueOf(restored) != billed) {
+            problems.add("After a restart the visit billed " + billed + " is treatment "
+                    + restored.getTreatment().getTreatmentID() + " with a spend of " + spent);
+        }
+        BenchmarkFixture.closeClinic(restarted);
+    }
+
+    // ! A snapshot that cannot be written must not fail the booking that made
+    // it due, nor give back its slot, and a later interval must try again
+    private static void checkFailedSnapshot(Doctor doctor, TreatmentCatalog catalog, List<String> problems)
+            throws IOException {
+        Path directory = Files.createTempDirectory("aurora-snapshot");
+        ClinicRepository repository = new ClinicRepository();
+        repository.attachStore(new AppointmentStore(directory.resolve("store")), catalog);
+        ClinicPersistence persistence = new ClinicPersistence(directory, repository, catalog, 3);
+        ClinicService clinic = new ClinicService(repository, persistence, new SchedulingEngine(), catalog);
+        clinic.importDoctor(doctor);
+        // * The first snapshot is due on the first booking and cannot be written
+        Path blocked = Files.createDirectory(directory.resolve("snapshot.bin.tmp"));
+        List<Appointment> booked = new ArrayList<>();
+        LocalTime after = LocalTime.MIN;
+        for (int i = 0; i < 8; i++) {
+            if (i == 1) {
+                Files.delete(blocked);
+            }
+            Patient patient = BenchmarkFixture.register(clinic, i);
+            SchedulingEngine.Slot slot = clinic.getScheduler().nextFreeSlot(doctor, LocalDate.now().plusDays(1), after);
+            try {
+                booked.add(clinic.bookAppointment(patient, doctor, catalog.find(1), slot.getDate().toString(),
+                        AppointmentDates.formatTime(slot.getTime())));
+            } catch (RuntimeException e) {
+                problems.add("Booking " + i + " failed because of the snapshot: " + e);
+            }
+            after = slot.getTime().plusMinutes(SchedulingEngine.SLOT_MINUTES);
+        }
+        for (Appointment appointment : booked) {
+            if (clinic.getScheduler().isFree(doctor, appointment.getLocalDate(), appointment.getLocalTime())) {
+                problems.add("Failed snapshot, slot of appointment " + appointment.getAppointmentID() + " was freed");
+            }
+        }
+        if (persistence.getFailedSnapshots() != 1 || persistence.getLastSnapshotFailure() == null
+                || !Files.exists(directory.resolve("snapshot.bin"))) {
+            problems.add(persistence.getFailedSnapshots() + " failed snapshots (last "
+                    + persistence.getLastSnapshotFailure() + "), expected 1 and a retry that wrote it");
+        }
+        BenchmarkFixture.closeClinic(clinic);
+        ClinicService restarted = BenchmarkFixture.openClinic(directory, catalog);
+        BenchmarkFixture.checkConsistency(restarted.getRepository().getAppointments(), booked.size(),
+                "after a failed snapshot", problems);
+        BenchmarkFixture.closeClinic(restarted);
+        BenchmarkFixture.deleteTree(directory);
+    }
+
+    // ! The NIC index holds one patient per NIC in any case, so a second one
+    // differing only in case is refused instead of becoming unreachable
+    private static void checkDuplicateNic(TreatmentCatalog catalog, List<String> problems) throws IOException {
+        Path directory = Files.createTempDirectory("aurora-nic");
+        ClinicService clinic = BenchmarkFixture.openClinic(directory, catalog);
+        Patient first = clinic.registerPatient("Nimal Perera", "nimal@mail.com", "0771234567", "851234567v");
+        try {
+            clinic.registerPatient("Kamal Silva", "kamal@mail.com", "0777654321", "851234567V");
+            problems.add("A NIC differing only in case was registered twice");
+        } catch (IllegalStateException e) {
+            // * Expected, the NIC is taken
+        }
+        if (clinic.getRepository().findPatientByNic("851234567v") != first
+                || clinic.getRepository().getPatients().size() != 1) {
+            problems.add("The first patient of a refused NIC is no longer found by it");
+        }
+        BenchmarkFixture.closeClinic(clinic);
+        BenchmarkFixture.deleteTree(directory);
+    }
+}
@@ -0,0 +1,255 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Clinic Waitlist
+// ! Patients waiting for a slot with a doctor on a given day. Every doctor and
+// day has its own PriorityBlockingQueue, ordered by priority and then by the
+// order the patients joined, so a freed slot goes to the most urgent patient
+// who has waited longest. Taking the best entry is one poll, and waitlists of
+// different doctors or days never share a lock, so a burst of cancellations
+// is backfilled in parallel. Kept in memory only, a restart empties it.
+class ClinicWaitlist {
+    // Priority Enum
+    // ! How soon the patient must be seen, the most urgent first.
+    enum Priority {
+        URGENT("Urgent"), FOLLOW_UP("Follow-up"), ROUTINE("Routine");
+
+        private final String label;
+
+        Priority(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        // * By name or label in any case ("urgent", "Follow-up", "FOLLOW_UP"), null if unknown
+        static Priority parse(String text) {
+            String key = text.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+            for (Priority priority : values()) {
+                if (priority.name().equals(key)) {
+                    return priority;
+                }
+            }
+            return null;
+        }
+    }
+
+    // Entry Class
+    // ! One waiting patient. The ID also orders patients of the same priority.
+    static final class Entry implements Comparable<Entry> {
+        private final long id;
+        private final Patient patient;
+        private final Doctor doctor;
+        private final Treatment treatment;
+        private final LocalDate date;
+        private final Priority priority;
+        private final long joinedAt; // * Wall clock milliseconds
+
+        private Entry(long id, Patient patient, Doctor doctor, Treatment treatment, LocalDate date,
+                Priority priority) {
+            this.id = id;
+            this.patient = patient;
+            this.doctor = doctor;
+            this.treatment = treatment;
+            this.date = date;
+            this.priority = priority;
+            this.joinedAt = System.currentTimeMillis();
+        }
+
+        public long getID() {
+            return id;
+        }
+
+        public Patient getPatient() {
+            return patient;
+        }
+
+        public Doctor getDoctor() {
+            return doctor;
+        }
+
+        public Treatment getTreatment() {
+            return treatment;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public long getJoinedAt() {
+            return joinedAt;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(id, other.id);
+        }
+
+        public String getDetails() {
+            return "Waitlist ID: " + id + ", Patient: " + patient.name + ", Doctor: " + doctor.name + ", Date: "
+                    + date + ", Priority: " + priority.getLabel();
+        }
+    }
+
+    // Key Class
+    // * Doctor and day of one queue, with the patient the place of one entry
+    private static final class Key {
+        private final Patient patient; // * Null for a queue
+        private final Doctor doctor;
+        private final long epochDay;
+
+        Key(Doctor doctor, LocalDate date) {
+            this(null, doctor, date);
+        }
+
+        Key(Patient patient, Doctor doctor, LocalDate date) {
+            this.patient = patient;
+            this.doctor = doctor;
+            this.epochDay = date.toEpochDay();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).patient == patient && ((Key) other).doctor == doctor
+                    && ((Key) other).epochDay == epochDay;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(patient) * 31 + System.identityHashCode(doctor)) * 31
+                    + Long.hashCode(epochDay);
+        }
+    }
+
+    private final Map<Key, PriorityBlockingQueue<Entry>> queues = new ConcurrentHashMap<>();
+    private final Map<Key, Entry> places = new ConcurrentHashMap<>(); // * One entry per patient, doctor and day
+    private final Map<Long, Entry> byID = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong(1);
+
+    // ! Adds a patient to the waitlist of the doctor on that day, null when
+    // they already wait there. The place is claimed with one putIfAbsent, so
+    // two terminals adding the same patient at once get one entry.
+    public Entry add(Patient patient, Doctor doctor, Treatment treatment, LocalDate date, Priority priority) {
+        Entry entry = new Entry(ids.getAndIncrement(), patient, doctor, treatment, date, priority);
+        if (places.putIfAbsent(placeOf(entry), entry) != null) {
+            return null;
+        }
+        byID.put(entry.id, entry);
+        // ! compute() keeps the add and the removal of an empty queue from racing
+        queues.compute(new Key(doctor, date), (key, queue) -> {
+            PriorityBlockingQueue<Entry> target = queue != null ? queue : new PriorityBlockingQueue<>();
+            target.add(entry);
+            return target;
+        });
+        return entry;
+    }
+
+    // ! Takes the best waiting patient of the doctor on that day, or null
+    public Entry poll(Doctor doctor, LocalDate date) {
+        Key key = new Key(doctor, date);
+        while (true) {
+            PriorityBlockingQueue<Entry> queue = queues.get(key);
+            if (queue == null) {
+                return null;
+            }
+            Entry entry = queue.poll();
+            if (entry != null) {
+                forget(entry);
+            }
+            queues.computeIfPresent(key, (k, q) -> q.isEmpty() ? null : q);
+            // * An empty queue may have just been replaced by a new one, look again
+            if (entry != null || queues.get(key) == null) {
+                return entry;
+            }
+        }
+    }
+
+    // * Returns a polled entry that could not be booked, it keeps its place in
+    // the order. Dropped if the patient joined the waitlist again meanwhile.
+    public void putBack(Entry entry) {
+        if (places.putIfAbsent(placeOf(entry), entry) != null) {
+            return;
+        }
+        byID.put(entry.id, entry);
+        queues.compute(new Key(entry.doctor, entry.date), (key, queue) -> {
+            PriorityBlockingQueue<Entry> target = queue != null ? queue : new PriorityBlockingQueue<>();
+            target.add(entry);
+            return target;
+        });
+    }
+
+    public Entry find(long id) {
+        return byID.get(id);
+    }
+
+    // * Takes the patient off the waitlist, false if the entry is no longer waiting
+    public boolean remove(Entry entry) {
+        Key key = new Key(entry.doctor, entry.date);
+        PriorityBlockingQueue<Entry> queue = queues.get(key);
+        if (queue == null || !queue.remove(entry)) {
+            return false;
+        }
+        forget(entry);
+        queues.computeIfPresent(key, (k, q) -> q.isEmpty() ? null : q);
+        return true;
+    }
+
+    // * True if the patient already waits for that doctor on that day
+    public boolean contains(Patient patient, Doctor doctor, LocalDate date) {
+        return places.containsKey(new Key(patient, doctor, date));
+    }
+
+    private static Key placeOf(Entry entry) {
+        return new Key(entry.patient, entry.doctor, entry.date);
+    }
+
+    private void forget(Entry entry) {
+        byID.remove(entry.id);
+        places.remove(placeOf(entry), entry);
+    }
+
+    // ! The waiting patients of the doctor on that day, in the order they will be served
+    public List<Entry> list(Doctor doctor, LocalDate date) {
+        PriorityBlockingQueue<Entry> queue = queues.get(new Key(doctor, date));
+        if (queue == null) {
+            return new ArrayList<>();
+        }
+        Entry[] entries = queue.toArray(new Entry[0]);
+        Arrays.sort(entries);
+        return new ArrayList<>(Arrays.asList(entries));
+    }
+
+    // * Forgets the waitlists of days before the given one, their slots are gone
+    public void dropBefore(LocalDate date) {
+        long first = date.toEpochDay();
+        for (Iterator<Map.Entry<Key, PriorityBlockingQueue<Entry>>> it = queues.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Key, PriorityBlockingQueue<Entry>> queue = it.next();
+            if (queue.getKey().epochDay < first) {
+                it.remove();
+                for (Entry entry : queue.getValue()) {
+                    forget(entry);
+                }
+            }
+        }
+    }
+
+    // * Patients waiting on every doctor and day
+    public int size() {
+        return byID.size();
+    }
+}
@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Clinic Waitlist Benchmark
+// ! The waitlist mode of ClinicBenchmark: backfill of a burst of cancellations
+// and duplicate joins racing each other.
+final class ClinicWaitlistBenchmark {
+    private ClinicWaitlistBenchmark() {
+    }
+
+    // ! Fills one day of every doctor, puts patients with random priorities on
+    // the waitlists and cancels every booking of the day at once from several
+    // threads. Each freed slot must go to the best waiting patient left, every
+    // slot must end up held once, and the result must survive a restart.
+    // ! Terminals adding the same patient at once must leave one entry
+    private static void checkDuplicateJoins(ClinicService clinic, Doctor doctor, Treatment treatment, LocalDate day,
+            int threads, List<String> problems) {
+        Patient patient = clinic.registerPatient("Twice Waiting", "twice@mail.com", "0770000000", "199900000001");
+        AtomicInteger joined = new AtomicInteger();
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < Math.max(2, threads); t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    startGate.await();
+                    clinic.joinWaitlist(patient, doctor, treatment, day.toString(), ClinicWaitlist.Priority.URGENT);
+                    joined.incrementAndGet();
+                } catch (IllegalStateException e) {
+                    // * Already waiting, expected for all but one
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        startGate.countDown();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        List<ClinicWaitlist.Entry> entries = new ArrayList<>();
+        for (ClinicWaitlist.Entry entry : clinic.getWaitlist().list(doctor, day)) {
+            if (entry.getPatient() == patient) {
+                entries.add(entry);
+            }
+        }
+        if (joined.get() != 1 || entries.size() != 1) {
+            problems.add(joined.get() + " of the joins of one patient succeeded, " + entries.size() + " entries");
+        }
+        entries.forEach(clinic.getWaitlist()::remove); // * Keeps the expected order of the others
+    }
+
+    static boolean runWaitlist(int threads, int waiting) throws IOException {
+        List<String> problems = new ArrayList<>();
+        Path directory = Files.createTempDirectory("aurora-waitlist");
+        List<Treatment> treatments = new ArrayList<>();
+        treatments.add(new Treatment(1, "Acne Treatment", 2750.00));
+        TreatmentCatalog catalog = TreatmentCatalog.of(treatments);
+        ClinicService clinic = BenchmarkFixture.openClinic(directory, catalog);
+        List<Doctor> doctors = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            Doctor doctor = new Doctor("Dr. Wait " + i, "wait" + i + "@aurora.lk", "077000000" + i,
+                    String.format("D%03d", i));
+            clinic.importDoctor(doctor);
+            doctors.add(doctor);
+        }
+        LocalDate day = LocalDate.now().plusDays(1);
+        while (doctors.get(0).getWorkingHours(day.getDayOfWeek()) == null) {
+            day = day.plusDays(1);
+        }
+
+        // * Book every slot of the day, then queue the waiting patients
+        int patientCount = 0;
+        List<Appointment> booked = new ArrayList<>();
+        for (Doctor doctor : doctors) {
+            for (SchedulingEngine.Slot slot = clinic.getScheduler().nextFreeSlot(doctor, day, LocalTime.MIN);
+                    slot != null && slot.getDate().equals(day);
+                    slot = clinic.getScheduler().nextFreeSlot(doctor, day, slot.getTime())) {
+                Patient patient = BenchmarkFixture.register(clinic, patientCount++);
+                booked.add(clinic.bookAppointment(patient, doctor, treatments.get(0), day.toString(),
+                        AppointmentDates.formatTime(slot.getTime())));
+            }
+        }
+        Random random = new Random(7);
+        ClinicWaitlist.Priority[] priorities = ClinicWaitlist.Priority.values();
+        Map<Doctor, List<ClinicWaitlist.Entry>> expected = new HashMap<>();
+        for (Doctor doctor : doctors) {
+            List<ClinicWaitlist.Entry> entries = new ArrayList<>();
+            for (int i = 0; i < waiting; i++) {
+                Patient patient = BenchmarkFixture.register(clinic, patientCount++);
+                entries.add(clinic.joinWaitlist(patient, doctor, treatments.get(0), day.toString(),
+                        priorities[random.nextInt(priorities.length)]));
+            }
+            entries.sort(null); // * The order the slots must be handed out in
+            expected.put(doctor, entries);
+        }
+        checkDuplicateJoins(clinic, doctors.get(0), treatments.get(0), day, threads, problems);
+        int slotsPerDoctor = booked.size() / doctors.size();
+        System.out.printf("%s: %d doctors x %d slots booked, %d waiting per doctor, %d threads cancel%n", day,
+                doctors.size(), slotsPerDoctor, waiting, threads);
+
+        // * Cancel the whole day at once
+        Collections.shuffle(booked, random);
+        ConcurrentLinkedQueue<Appointment> backfilled = new ConcurrentLinkedQueue<>();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicReference<RuntimeException> firstFailure = new AtomicReference<>();
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    startGate.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = next.getAndIncrement(); i < booked.size(); i = next.getAndIncrement()) {
+                    try {
+                        Appointment appointment = clinic.cancelAppointment(booked.get(i));
+                        if (appointment != null) {
+                            backfilled.add(appointment);
+                        }
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                        firstFailure.compareAndSet(null, e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        long begin = System.nanoTime();
+        startGate.countDown();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        int served = Math.min(slotsPerDoctor, waiting);
+        for (Doctor doctor : doctors) {
+            Set<Patient> winners = new HashSet<>();
+            for (ClinicWaitlist.Entry entry : expected.get(doctor).subList(0, served)) {
+                winners.add(entry.getPatient());
+            }
+            Set<Patient> got = new HashSet<>();
+            for (Appointment appointment : backfilled) {
+                if (appointment.getDoctor() == doctor) {
+                    got.add(appointment.getPatient());
+                }
+            }
+            if (!got.equals(winners)) {
+                problems.add(doctor.name + ": the slots went to other patients than the " + served + " best waiting");
+            }
+            if (clinic.getWaitlist().list(doctor, day).size() != waiting - served) {
+                problems.add(doctor.name + ": " + clinic.getWaitlist().list(doctor, day).size()
+                        + " still waiting, expected " + (waiting - served));
+            }
+        }
+        if (failures.get() > 0 || backfilled.size() != served * doctors.size()) {
+            problems.add(backfilled.size() + " slots backfilled, expected " + served * doctors.size() + " ("
+                    + failures.get() + " failed cancellations)"
+                    + (firstFailure.get() == null ? "" : ", first: " + firstFailure.get()));
+        }
+        int total = booked.size() + backfilled.size();
+        BenchmarkFixture.checkConsistency(clinic.getRepository().getAppointments(), total, "after the burst", problems);
+
+        ClinicMetrics.Histogram.Snapshot latency = clinic.getMetrics().latency(ClinicMetrics.Operation.BACKFILL)
+                .snapshot();
+        System.out.printf("Cancellations:     %,d in %.3f s (%,.0f per second), %d backfilled%n", booked.size(),
+                seconds, booked.size() / seconds, backfilled.size());
+        System.out.printf("Backfill latency:  p50 %,d ns, p99 %,d ns, max %,d ns%n", latency.percentile(0.5),
+                latency.percentile(0.99), clinic.getMetrics().latency(ClinicMetrics.Operation.BACKFILL)
+                        .getMaxNanos());
+
+        BenchmarkFixture.closeClinic(clinic);
+        ClinicService restarted = BenchmarkFixture.openClinic(directory, catalog);
+        BenchmarkFixture.checkConsistency(restarted.getRepository().getAppointments(), total, "after a restart",
+                problems);
+        BenchmarkFixture.closeClinic(restarted);
+
+        BenchmarkFixture.report(problems);
+        BenchmarkFixture.deleteTree(directory);
+        return problems.isEmpty();
+    }
+}
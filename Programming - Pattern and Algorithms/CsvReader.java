@@ -0,0 +1,263 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// CSV Reader
+// ! Streams the records of a CSV file (RFC 4180: quoted fields, "" inside
+// quotes, CRLF or LF line ends) straight out of a memory-mapped window of the
+// file. A record is only a list of field offsets into the mapped bytes, a
+// field becomes a String when it is asked for, and numbers are parsed from the
+// bytes directly. At most one window is mapped, so a file of any size is read
+// in the same memory.
+class CsvReader implements AutoCloseable {
+    private static final int WINDOW = 1 << 26; // * 64 MiB mapped at a time, also the longest record
+    private static final int MAX_FIELDS = 64;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer buffer;
+    private long windowStart; // * File offset of the first mapped byte
+    private int position; // * Start of the next record in the window
+
+    // * The current record
+    private final int[] starts = new int[MAX_FIELDS];
+    private final int[] ends = new int[MAX_FIELDS];
+    private final boolean[] escaped = new boolean[MAX_FIELDS]; // * Quoted field with "" inside
+    private int fields;
+    private long line; // * Line the current record starts on
+    private long nextLine = 1;
+    private byte[] scratch = new byte[256];
+
+    CsvReader(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        map(0);
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        position = 0;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // * Bytes read so far, for progress reports
+    public long position() {
+        return windowStart + position;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public int fieldCount() {
+        return fields;
+    }
+
+    // ! Moves to the next record, false at the end of the file. Blank lines are skipped.
+    public boolean next() throws IOException {
+        while (true) {
+            int end = parse();
+            if (end >= 0) {
+                position = end;
+                if (fields == 1 && starts[0] == ends[0]) {
+                    continue; // * Blank line
+                }
+                return true;
+            }
+            if (windowStart + buffer.limit() == size) {
+                return false; // * Only reached with nothing left to read
+            }
+            if (position == 0) {
+                throw new IOException(file + ": record on line " + nextLine + " is longer than " + WINDOW + " bytes");
+            }
+            map(windowStart + position); // * The record runs past the window, map again from its start
+        }
+    }
+
+    // * Splits the record at the position, returns where the next one starts,
+    // or -1 if the window ends first (or there is nothing left)
+    private int parse() throws IOException {
+        int limit = buffer.limit();
+        boolean last = windowStart + limit == size; // * The window reaches the end of the file
+        int p = position;
+        if (p >= limit) {
+            return -1;
+        }
+        int newlines = 0;
+        fields = 0;
+        while (true) {
+            if (fields == MAX_FIELDS) {
+                throw new IOException(file + ": more than " + MAX_FIELDS + " fields on line " + nextLine);
+            }
+            boolean hasEscapes = false;
+            int start;
+            int end;
+            if (p < limit && buffer.get(p) == '"') {
+                start = ++p;
+                while (true) {
+                    if (p >= limit) {
+                        if (last) {
+                            throw new IOException(file + ": unterminated quote on line " + nextLine);
+                        }
+                        return -1;
+                    }
+                    byte b = buffer.get(p);
+                    if (b == '"') {
+                        if (p + 1 >= limit && !last) {
+                            return -1; // * Cannot tell a closing quote from an escaped one yet
+                        }
+                        if (p + 1 < limit && buffer.get(p + 1) == '"') {
+                            hasEscapes = true;
+                            p += 2;
+                            continue;
+                        }
+                        end = p++;
+                        break;
+                    }
+                    if (b == '\n') {
+                        newlines++;
+                    }
+                    p++;
+                }
+            } else {
+                start = p;
+                while (p < limit) {
+                    byte b = buffer.get(p);
+                    if (b == ',' || b == '\n' || b == '\r') {
+                        break;
+                    }
+                    p++;
+                }
+                end = p;
+            }
+            starts[fields] = start;
+            ends[fields] = end;
+            escaped[fields] = hasEscapes;
+            fields++;
+
+            if (p >= limit) {
+                if (!last) {
+                    return -1;
+                }
+                break; // * Last record without a line end
+            }
+            byte b = buffer.get(p);
+            if (b == ',') {
+                p++;
+                continue;
+            }
+            if (b == '\r') {
+                if (p + 1 >= limit && !last) {
+                    return -1;
+                }
+                p++;
+                if (p < limit && buffer.get(p) == '\n') {
+                    p++;
+                }
+            } else if (b == '\n') {
+                p++;
+            } else {
+                throw new IOException(file + ": unexpected character after a quoted field on line " + nextLine);
+            }
+            newlines++;
+            break;
+        }
+        line = nextLine;
+        nextLine += Math.max(newlines, 1);
+        return p;
+    }
+
+    // ! Field as a String, "" when the record has fewer fields
+    public String get(int field) {
+        if (field < 0 || field >= fields) {
+            return "";
+        }
+        int length = ends[field] - starts[field];
+        if (length == 0) {
+            return "";
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(starts[field], scratch, 0, length);
+        if (escaped[field]) {
+            int out = 0;
+            for (int i = 0; i < length; i++) {
+                scratch[out++] = scratch[i];
+                if (scratch[i] == '"') {
+                    i++; // * "" stands for one quote
+                }
+            }
+            length = out;
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // * True if the field is missing or only spaces
+    public boolean isBlank(int field) {
+        if (field < 0 || field >= fields) {
+            return true;
+        }
+        for (int i = starts[field]; i < ends[field]; i++) {
+            byte b = buffer.get(i);
+            if (b != ' ' && b != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ! Whole number read from the bytes, surrounding spaces are allowed
+    public int getInt(int field) {
+        if (field < 0 || field >= fields) {
+            throw new NumberFormatException("Missing number");
+        }
+        int i = starts[field];
+        int end = ends[field];
+        while (i < end && buffer.get(i) == ' ') {
+            i++;
+        }
+        while (end > i && buffer.get(end - 1) == ' ') {
+            end--;
+        }
+        boolean negative = i < end && buffer.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > 10) {
+            throw new NumberFormatException("Not a number: " + get(field));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Not a number: " + get(field));
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value != (int) value) {
+            throw new NumberFormatException("Number out of range: " + get(field));
+        }
+        return (int) value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// CSV Writer
+// ! Writes CSV records (RFC 4180, LF line ends) to a file channel. Records are
+// collected in one buffer and written about a megabyte at a time, fields are
+// quoted only when they contain a comma, a quote or a line break.
+class CsvWriter implements AutoCloseable {
+    private static final int FLUSH_CHARS = 1 << 19;
+
+    private final FileChannel channel;
+    private final StringBuilder pending = new StringBuilder(FLUSH_CHARS + 1024);
+    private boolean firstField = true;
+    private long rows;
+
+    // ! Creates the file, an existing one is replaced
+    CsvWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    public CsvWriter field(String value) {
+        separate();
+        if (value == null) {
+            return this;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            pending.append(value);
+            return this;
+        }
+        pending.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                pending.append('"');
+            }
+            pending.append(c);
+        }
+        pending.append('"');
+        return this;
+    }
+
+    public CsvWriter field(long value) {
+        separate();
+        pending.append(value);
+        return this;
+    }
+
+    private void separate() {
+        if (!firstField) {
+            pending.append(',');
+        }
+        firstField = false;
+    }
+
+    // ! Ends the record, full buffers go to the file
+    public void endRow() throws IOException {
+        pending.append('\n');
+        firstField = true;
+        rows++;
+        if (pending.length() >= FLUSH_CHARS) {
+            flush();
+        }
+    }
+
+    // * Records ended so far, the header included
+    public long getRows() {
+        return rows;
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(pending));
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        pending.setLength(0);
+    }
+
+    // ! Writes what is left and forces the file to disk
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
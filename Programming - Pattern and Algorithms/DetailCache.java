@@ -0,0 +1,213 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Detail Cache
+// ! Read-through cache of the detail strings the records render for listings
+// and searches, keyed by the record itself. Each cache is split into
+// segments with their own lock and an access ordered LinkedHashMap, so the
+// least recently used strings go first once a segment is over its share of
+// the byte budget. A record that changes invalidates its entry, and a string
+// rendered while the record was changing is returned but not kept. Treatment
+// prices take effect by day, so a daemon thread drops the strings that show
+// a price at midnight; a hit reads no clock. -Daurora.detail.cache.bytes sets
+// the budget of all four caches, 0 turns them off.
+class DetailCache<T> {
+    static final long BUDGET_BYTES = Long.getLong("aurora.detail.cache.bytes", 8L << 20);
+    private static final int SEGMENTS = 16; // * Power of two
+    private static final int ENTRY_BYTES = 96; // * Map entry, String and array headers, roughly
+
+    // ! The caches of the four detail strings, appointments get the largest share
+    static final DetailCache<Appointment> APPOINTMENTS = new DetailCache<>("appointment", BUDGET_BYTES / 2, true);
+    static final DetailCache<Person> CONTACTS = new DetailCache<>("contact", BUDGET_BYTES * 3 / 8, false);
+    static final DetailCache<Doctor> EMPLOYEES = new DetailCache<>("employee", BUDGET_BYTES / 16, false);
+    static final DetailCache<Treatment> TREATMENTS = new DetailCache<>("treatment", BUDGET_BYTES / 16, true);
+    private static final DetailCache<?>[] ALL = { APPOINTMENTS, CONTACTS, EMPLOYEES, TREATMENTS };
+
+    static {
+        if (BUDGET_BYTES > 0) {
+            Thread midnight = new Thread(DetailCache::clearEveryMidnight, "detail-cache-midnight");
+            midnight.setDaemon(true);
+            midnight.start();
+        }
+    }
+
+    // Segment Class
+    // * Guarded by its own monitor
+    private static final class Segment<T> {
+        final LinkedHashMap<T, String> entries = new LinkedHashMap<>(64, 0.75f, true);
+        long bytes;
+        long invalidations; // * Bumped by every invalidation, a render that saw an older value is not kept
+    }
+
+    private final String name;
+    private final long segmentBudget;
+    private final boolean priced; // * Shows a price, dropped at midnight
+    private final Segment<T>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked") // * Java has no generic arrays, every element is a Segment<T>
+    DetailCache(String name, long budgetBytes, boolean priced) {
+        this.name = name;
+        this.segmentBudget = Math.max(0, budgetBytes) / SEGMENTS;
+        this.priced = priced;
+        this.segments = (Segment<T>[]) new Segment<?>[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>();
+        }
+    }
+
+    static DetailCache<?>[] all() {
+        return ALL.clone();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // ! The cached string of the record, rendered and kept on a miss
+    public String get(T record, Function<? super T, String> render) {
+        if (segmentBudget == 0) {
+            return render.apply(record);
+        }
+        Segment<T> segment = segmentOf(record);
+        long seen;
+        synchronized (segment) {
+            String cached = segment.entries.get(record);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            seen = segment.invalidations;
+        }
+        misses.increment();
+        String rendered = render.apply(record); // * Outside the lock, other records of the segment are not held up
+        long weight = weigh(rendered);
+        if (weight > segmentBudget) {
+            return rendered;
+        }
+        synchronized (segment) {
+            if (segment.invalidations == seen && segment.entries.putIfAbsent(record, rendered) == null) {
+                segment.bytes += weight;
+                for (Iterator<String> eldest = segment.entries.values().iterator(); segment.bytes > segmentBudget;) {
+                    segment.bytes -= weigh(eldest.next());
+                    eldest.remove();
+                    evictions.increment();
+                }
+            }
+        }
+        return rendered;
+    }
+
+    // ! Drops the string of a record that changed, call it after the change
+    public void invalidate(T record) {
+        if (segmentBudget == 0) {
+            return;
+        }
+        Segment<T> segment = segmentOf(record);
+        synchronized (segment) {
+            segment.invalidations++;
+            String removed = segment.entries.remove(record);
+            if (removed != null) {
+                segment.bytes -= weigh(removed);
+            }
+        }
+    }
+
+    public void clear() {
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                segment.invalidations++;
+                segment.entries.clear();
+                segment.bytes = 0;
+            }
+        }
+    }
+
+    // * Sleeps until the next day starts and clears the priced caches, for good
+    private static void clearEveryMidnight() {
+        while (true) {
+            ZoneId zone = ZoneId.systemDefault();
+            long midnight = LocalDate.now(zone).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            try {
+                for (long left = midnight - System.currentTimeMillis(); left > 0;
+                        left = midnight - System.currentTimeMillis()) {
+                    Thread.sleep(left); // * May wake early, so sleep again until the time is reached
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (DetailCache<?> cache : ALL) {
+                if (cache.priced) {
+                    cache.clear();
+                }
+            }
+        }
+    }
+
+    private Segment<T> segmentOf(T record) {
+        int hash = System.identityHashCode(record);
+        return segments[(hash ^ hash >>> 16) & (SEGMENTS - 1)];
+    }
+
+    // * Two bytes a character, Latin-1 strings take half of that
+    private static long weigh(String text) {
+        return ENTRY_BYTES + 2L * text.length();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // * Share of the lookups served from the cache, 0 before the first one
+    public double getHitRatio() {
+        long hit = getHits();
+        long total = hit + getMisses();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public long getBytes() {
+        long bytes = 0;
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                bytes += segment.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    public long getBudgetBytes() {
+        return segmentBudget * SEGMENTS;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "%-12s %,10d entries %,12d bytes  hits %,d, misses %,d (%.1f%% hits), evictions %,d", name, size(),
+                getBytes(), getHits(), getMisses(), getHitRatio() * 100, getEvictions());
+    }
+}
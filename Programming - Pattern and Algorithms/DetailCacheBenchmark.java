@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Detail Cache Benchmark
+// ! The details mode of ClinicBenchmark: hit rate, invalidation and eviction of DetailCache.
+final class DetailCacheBenchmark {
+    private DetailCacheBenchmark() {
+    }
+
+    // ! Lists the appointments of one busy day over and over, rendered every
+    // time and through the detail cache, and checks that the cached strings
+    // follow every change, also while other threads read them, and that a
+    // cache stays within its byte budget.
+    static boolean runDetails(int count, int listings) throws InterruptedException {
+        List<String> problems = new ArrayList<>();
+        List<Doctor> doctors = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            doctors.add(new Doctor("Dr. Detail " + i, "detail" + i + "@aurora.lk", "077000000" + i,
+                    String.format("D%03d", i)));
+        }
+        Treatment[] treatments = { new Treatment(1, "Acne Treatment", 2750.00),
+                new Treatment(2, "Skin Whitening", 7650.00), new Treatment(3, "Mole Removal", 3850.00) };
+        List<Appointment> appointments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Patient patient = BenchmarkFixture.patient(i);
+            appointments.add(new Appointment(i + 1, BenchmarkFixture.dateOf(i), BenchmarkFixture.timeOf(i),
+                    Status.BOOKED, patient, doctors.get(i % doctors.size()), treatments[i % treatments.length]));
+        }
+        List<Appointment> day = appointments.subList(0, Math.min(count, 200)); // * Today's list at the desk
+
+        // * The same listing, rendered every time and then from the cache
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < listings; round++) {
+            for (Appointment appointment : day) {
+                sink += appointment.renderDetails().length();
+            }
+        }
+        double rendered = (System.nanoTime() - start) / (double) listings / day.size();
+        long hitsBefore = DetailCache.APPOINTMENTS.getHits();
+        start = System.nanoTime();
+        for (int round = 0; round < listings; round++) {
+            for (Appointment appointment : day) {
+                sink += appointment.getDetails().length();
+            }
+        }
+        double cached = (System.nanoTime() - start) / (double) listings / day.size();
+        System.out.printf("Appointment details: %.1f ns rendered, %.1f ns cached (%,d hits)%n", rendered, cached,
+                DetailCache.APPOINTMENTS.getHits() - hitsBefore);
+        for (Appointment appointment : day) {
+            sink += appointment.getPatient().getContactInfo().length()
+                    + appointment.getDoctor().getEmployeeDetails().length();
+        }
+
+        // * Every change shows in the next getDetails()
+        Appointment moved = appointments.get(0);
+        moved.getDetails();
+        moved.reschedule("Sat", "11:15am");
+        checkDetails(moved, "after a reschedule", problems);
+        moved.confirm();
+        checkDetails(moved, "after confirm", problems);
+        moved.cancel();
+        checkDetails(moved, "after a cancellation", problems);
+        Appointment finished = appointments.get(1);
+        finished.getDetails();
+        finished.transitionTo(Status.COMPLETED);
+        checkDetails(finished, "after completion", problems);
+
+        // * Readers race a writer, the cache must end up agreeing with the records
+        int threads = 4;
+        List<Appointment> raced = appointments.subList(2, Math.min(count, 2_002));
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread reader = new Thread(() -> {
+                long seen = 0;
+                while (running.get()) {
+                    for (Appointment appointment : raced) {
+                        seen += appointment.getDetails().length();
+                    }
+                }
+                if (seen < 0) {
+                    System.out.println(seen);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        String[] days = { "Mon", "Wed", "Fri", "Sat" };
+        for (int i = 0; i < raced.size(); i++) {
+            Appointment appointment = raced.get(i);
+            appointment.reschedule(days[i & 3], "12:00pm");
+            if (i % 3 == 0) {
+                appointment.cancel();
+            }
+            Thread.yield();
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        for (Appointment appointment : raced) {
+            if (!appointment.getDetails().equals(appointment.renderDetails())) {
+                problems.add("Stale details after the race: " + appointment.getDetails());
+                break;
+            }
+        }
+
+        // * A small cache keeps within its budget and drops the least recently used first
+        DetailCache<Appointment> small = new DetailCache<>("small", 64 << 10, false);
+        Appointment kept = appointments.get(count - 1);
+        for (Appointment appointment : appointments) {
+            small.get(kept, Appointment::renderDetails); // * Touched all the time, never the eldest
+            small.get(appointment, Appointment::renderDetails);
+        }
+        System.out.println("Small cache: " + small);
+        if (small.getBytes() > small.getBudgetBytes()) {
+            problems.add("Small cache holds " + small.getBytes() + " bytes, budget " + small.getBudgetBytes());
+        }
+        if (count > 1_000 && small.getEvictions() == 0) {
+            problems.add("Small cache evicted nothing");
+        }
+        long keptHits = small.getHits();
+        small.get(kept, Appointment::renderDetails);
+        if (small.getHits() != keptHits + 1) {
+            problems.add("The most recently used entry was evicted");
+        }
+        for (DetailCache<?> cache : DetailCache.all()) {
+            System.out.println(cache);
+        }
+        if (sink == 42) {
+            System.out.println(sink);
+        }
+
+        return BenchmarkFixture.report(problems);
+    }
+
+    private static void checkDetails(Appointment appointment, String when, List<String> problems) {
+        if (!appointment.getDetails().equals(appointment.renderDetails())) {
+            problems.add("Stale details " + when + ": " + appointment.getDetails());
+        }
+    }
+}
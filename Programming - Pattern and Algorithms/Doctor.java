@@ -0,0 +1,53 @@
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Doctor Class extending Person
+// ! Inheriting properties and methods from the Person class.
+class Doctor extends Person {
+    private List<String> schedule = new ArrayList<>(); // * List to hold the doctor's availability
+    private Map<DayOfWeek, LocalTime[]> workingHours = new EnumMap<>(DayOfWeek.class); // * Start and end per day
+    protected String employeeID; // Unique identifier for the doctor
+
+    public Doctor(String name, String email, String contactNumber, String employeeID) {
+        super(name, email, contactNumber); // * Call to the superclass constructor
+        this.employeeID = employeeID; // Set the employee ID
+        addAvailability(); // ! Method to populate the doctor's schedule
+    }
+
+    // ! Private method to add availability times to the doctor's schedule
+    private void addAvailability() {
+        addWorkingHours(DayOfWeek.MONDAY, LocalTime.of(10, 0), LocalTime.of(13, 0));
+        addWorkingHours(DayOfWeek.WEDNESDAY, LocalTime.of(14, 0), LocalTime.of(18, 0));
+        addWorkingHours(DayOfWeek.FRIDAY, LocalTime.of(16, 0), LocalTime.of(20, 0));
+        addWorkingHours(DayOfWeek.SATURDAY, LocalTime.of(9, 0), LocalTime.of(13, 0));
+    }
+
+    private void addWorkingHours(DayOfWeek day, LocalTime start, LocalTime end) {
+        workingHours.put(day, new LocalTime[] { start, end });
+        schedule.add(day.getDisplayName(TextStyle.FULL, Locale.ENGLISH) + " " + AppointmentDates.formatTime(start)
+                + " - " + AppointmentDates.formatTime(end));
+    }
+
+    public List<String> getSchedule() {
+        return schedule;
+    }
+
+    // * Start and end of the working hours on that day, null on a day off
+    public LocalTime[] getWorkingHours(DayOfWeek day) {
+        return workingHours.get(day);
+    }
+
+    public String getEmployeeDetails() {
+        return DetailCache.EMPLOYEES.get(this, Doctor::renderEmployeeDetails);
+    }
+
+    String renderEmployeeDetails() {
+        return "Employee ID: " + employeeID + ", " + getContactInfo();
+    }
+}
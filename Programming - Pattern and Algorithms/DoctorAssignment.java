@@ -0,0 +1,212 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Doctor Assignment
+// ! Suggests the doctor for a booking from the doctors' current load, the
+// number of appointments they hold that are still booked or rescheduled.
+// Doctors are kept in buckets of equal load, ordered from the lowest, the
+// way an LFU cache keeps its frequencies: a booking or a closed appointment
+// moves one doctor to the neighbouring bucket, and the least loaded doctor
+// is the first of the first bucket, so neither depends on how many doctors
+// or bookings there are. Within a bucket doctors queue in the order they
+// reached that load, which spreads ties round robin. The service updates the
+// loads in the same call that saves a transition, not from the event bus,
+// so a burst of automatic bookings sees every booking made before it.
+class DoctorAssignment {
+
+    // Bucket Class
+    // * The doctors of one load, a queue of entries
+    private static final class Bucket {
+        final int load;
+        Entry first;
+        Entry last;
+        Bucket previous;
+        Bucket next;
+
+        Bucket(int load) {
+            this.load = load;
+        }
+    }
+
+    // Entry Class
+    private static final class Entry {
+        final Doctor doctor;
+        Bucket bucket;
+        Entry previous;
+        Entry next;
+
+        Entry(Doctor doctor) {
+            this.doctor = doctor;
+        }
+    }
+
+    // * Guarded by this
+    private final Map<Doctor, Entry> entries = new IdentityHashMap<>();
+    private Bucket lowest;
+
+    // ! Adds a doctor with no load, a known doctor keeps theirs
+    public synchronized void addDoctor(Doctor doctor) {
+        if (!entries.containsKey(doctor)) {
+            Entry entry = new Entry(doctor);
+            entries.put(doctor, entry);
+            if (lowest == null || lowest.load > 0) {
+                link(new Bucket(0), null, lowest);
+            }
+            append(lowest, entry);
+        }
+    }
+
+    // ! Counts a transition saved by the service, previous is null for a new
+    // booking. Only a change between active and closed moves the load.
+    public synchronized void record(Doctor doctor, Status previous, Status status) {
+        boolean was = previous != null && previous.isActive();
+        if (was == status.isActive()) {
+            return;
+        }
+        addDoctor(doctor);
+        Entry entry = entries.get(doctor);
+        Bucket from = entry.bucket;
+        if (was) {
+            if (from.load == 0) {
+                return; // * Closed more than was counted, only after a rebuild raced a change
+            }
+            Bucket to = from.previous != null && from.previous.load == from.load - 1 ? from.previous
+                    : link(new Bucket(from.load - 1), from.previous, from);
+            move(entry, to);
+        } else {
+            Bucket to = from.next != null && from.next.load == from.load + 1 ? from.next
+                    : link(new Bucket(from.load + 1), from, from.next);
+            move(entry, to);
+        }
+    }
+
+    // ! Recounts every load from the appointments, for a start or after an import
+    public synchronized void rebuild(Collection<Doctor> doctors, Collection<Appointment> appointments) {
+        Map<Doctor, Integer> loads = new IdentityHashMap<>();
+        for (Doctor doctor : doctors) {
+            loads.put(doctor, 0);
+        }
+        for (Appointment appointment : appointments) {
+            loads.merge(appointment.getDoctor(), appointment.getStatus().isActive() ? 1 : 0, Integer::sum);
+        }
+        entries.clear();
+        lowest = null;
+        Map<Integer, Bucket> buckets = new TreeMap<>();
+        for (Map.Entry<Doctor, Integer> load : loads.entrySet()) {
+            buckets.computeIfAbsent(load.getValue(), Bucket::new);
+        }
+        Bucket last = null;
+        for (Bucket bucket : buckets.values()) {
+            last = link(bucket, last, null);
+        }
+        for (Doctor doctor : doctors) { // * Ties queue in the order of the repository
+            Entry entry = new Entry(doctor);
+            entries.put(doctor, entry);
+            append(buckets.get(loads.remove(doctor)), entry);
+        }
+        for (Map.Entry<Doctor, Integer> load : loads.entrySet()) { // * Doctors of appointments only
+            Entry entry = new Entry(load.getKey());
+            entries.put(load.getKey(), entry);
+            append(buckets.get(load.getValue()), entry);
+        }
+    }
+
+    // * Active appointments of the doctor, 0 for an unknown one
+    public synchronized int getLoad(Doctor doctor) {
+        Entry entry = entries.get(doctor);
+        return entry == null ? 0 : entry.bucket.load;
+    }
+
+    // ! The doctor to give the next booking to, null when there are none
+    public synchronized Doctor leastLoaded() {
+        return lowest == null ? null : lowest.first.doctor;
+    }
+
+    // ! The least loaded doctor who is free at that slot, null when nobody is.
+    // Walks the doctors from the lowest load and stops at the first free one,
+    // so it only looks further than the first doctor when they are busy then.
+    public synchronized Doctor pick(SchedulingEngine scheduler, LocalDate date, LocalTime time) {
+        for (Bucket bucket = lowest; bucket != null; bucket = bucket.next) {
+            for (Entry entry = bucket.first; entry != null; entry = entry.next) {
+                if (scheduler.isFree(entry.doctor, date, time)) {
+                    return entry.doctor;
+                }
+            }
+        }
+        return null;
+    }
+
+    // * Up to limit doctors from the lowest load, in the order they would be picked
+    public synchronized List<Doctor> byLoad(int limit) {
+        List<Doctor> doctors = new ArrayList<>(Math.min(limit, entries.size()));
+        for (Bucket bucket = lowest; bucket != null && doctors.size() < limit; bucket = bucket.next) {
+            for (Entry entry = bucket.first; entry != null && doctors.size() < limit; entry = entry.next) {
+                doctors.add(entry.doctor);
+            }
+        }
+        return doctors;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // * Queues the entry last in its new bucket and drops the old bucket once empty
+    private void move(Entry entry, Bucket to) {
+        Bucket from = entry.bucket;
+        if (entry.previous == null) {
+            from.first = entry.next;
+        } else {
+            entry.previous.next = entry.next;
+        }
+        if (entry.next == null) {
+            from.last = entry.previous;
+        } else {
+            entry.next.previous = entry.previous;
+        }
+        append(to, entry);
+        if (from.first == null) {
+            if (from.previous == null) {
+                lowest = from.next;
+            } else {
+                from.previous.next = from.next;
+            }
+            if (from.next != null) {
+                from.next.previous = from.previous;
+            }
+        }
+    }
+
+    private static void append(Bucket bucket, Entry entry) {
+        entry.bucket = bucket;
+        entry.previous = bucket.last;
+        entry.next = null;
+        if (bucket.last == null) {
+            bucket.first = entry;
+        } else {
+            bucket.last.next = entry;
+        }
+        bucket.last = entry;
+    }
+
+    // * Puts the bucket between two neighbours, either may be null
+    private Bucket link(Bucket bucket, Bucket previous, Bucket next) {
+        bucket.previous = previous;
+        bucket.next = next;
+        if (previous == null) {
+            lowest = bucket;
+        } else {
+            previous.next = bucket;
+        }
+        if (next != null) {
+            next.previous = bucket;
+        }
+        return bucket;
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Doctor Assignment Benchmark
+// ! The assign mode of ClinicBenchmark: doctor load buckets and booking with any doctor.
+final class DoctorAssignmentBenchmark {
+    private DoctorAssignmentBenchmark() {
+    }
+
+    // ! Times the load buckets of the doctor assignment from ten doctors up to
+    // the given number, against a scan for the least loaded doctor, and checks
+    // every answer against plain counters. Then books through a clinic with
+    // "any doctor", cancels and closes some of the bookings, and checks that
+    // the loads agree with the appointments, also after a restart.
+    static boolean runAssign(int maxDoctors, int bookings) throws IOException {
+        List<String> problems = new ArrayList<>();
+        Random random = new Random(11);
+        int changes = 2_000_000;
+        for (int size = 10; size <= maxDoctors; size *= 100) {
+            Doctor[] doctors = new Doctor[size];
+            int[] loads = new int[size];
+            DoctorAssignment assignment = new DoctorAssignment();
+            for (int i = 0; i < size; i++) {
+                doctors[i] = new Doctor("Dr. Load " + i, "load" + i + "@aurora.lk", "0770000000", "L" + i);
+                assignment.addDoctor(doctors[i]);
+            }
+            int[] picks = new int[changes]; // * Drawn up front so the timing is the engine alone
+            for (int i = 0; i < changes; i++) {
+                picks[i] = random.nextInt(size);
+            }
+            long sink = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < changes; i++) {
+                int d = picks[i];
+                boolean close = loads[d] > 0 && (i & 3) == 0; // * Bookings outnumber closes three to one
+                assignment.record(doctors[d], close ? Status.BOOKED : null, close ? Status.CANCELED : Status.BOOKED);
+                loads[d] += close ? -1 : 1;
+                sink += assignment.leastLoaded().hashCode();
+            }
+            double engine = (System.nanoTime() - start) / (double) changes;
+            int scans = Math.max(1, (int) Math.min(changes, BenchmarkFixture.SCAN_BUDGET / size));
+            start = System.nanoTime();
+            for (int i = 0; i < scans; i++) {
+                int least = 0;
+                for (int d = 1; d < size; d++) {
+                    if (loads[d] < loads[least]) {
+                        least = d;
+                    }
+                }
+                sink += least;
+            }
+            double scan = (System.nanoTime() - start) / (double) scans;
+            System.out.printf("%,9d doctors: %,.1f ns a change and pick, %,.1f ns a scan for the least loaded%n",
+                    size, engine, scan);
+            int min = Integer.MAX_VALUE;
+            for (int d = 0; d < size; d++) {
+                min = Math.min(min, loads[d]);
+                if (assignment.getLoad(doctors[d]) != loads[d]) {
+                    problems.add(size + " doctors: load " + assignment.getLoad(doctors[d]) + " of doctor " + d
+                            + ", expected " + loads[d]);
+                    break;
+                }
+            }
+            if (assignment.getLoad(assignment.leastLoaded()) != min) {
+                problems.add(size + " doctors: least loaded has " + assignment.getLoad(assignment.leastLoaded())
+                        + ", expected " + min);
+            }
+            if (sink == 42) {
+                System.out.println(sink);
+            }
+        }
+
+        // * Any-doctor bookings through a clinic fill every doctor of a slot before moving on
+        Path directory = Files.createTempDirectory("aurora-assign");
+        List<Treatment> treatments = new ArrayList<>();
+        treatments.add(new Treatment(1, "Acne Treatment", 2750.00));
+        TreatmentCatalog catalog = TreatmentCatalog.of(treatments);
+        ClinicService clinic = BenchmarkFixture.openClinic(directory, catalog);
+        List<Doctor> doctors = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            Doctor doctor = new Doctor("Dr. Assign " + i, "assign" + i + "@aurora.lk", "077000000" + i,
+                    String.format("D%03d", i));
+            clinic.importDoctor(doctor);
+            doctors.add(doctor);
+        }
+        List<Appointment> booked = new ArrayList<>();
+        SchedulingEngine.Slot slot = clinic.getScheduler().nextFreeSlot(doctors, LocalDate.now().plusDays(1),
+                LocalTime.MIN);
+        while (booked.size() < bookings && slot != null) {
+            String date = slot.getDate().toString();
+            String time = AppointmentDates.formatTime(slot.getTime());
+            for (int i = 0; i < doctors.size(); i++) {
+                Doctor expected = clinic.getAssignment().pick(clinic.getScheduler(), slot.getDate(), slot.getTime());
+                Patient patient = BenchmarkFixture.register(clinic, booked.size());
+                Appointment appointment = clinic.bookWithAnyDoctor(patient, treatments.get(0), date, time);
+                if (appointment.getDoctor() != expected) {
+                    problems.add("Booked " + appointment.getDoctor().name + ", the pick was " + expected.name);
+                }
+                booked.add(appointment);
+            }
+            try {
+                clinic.bookWithAnyDoctor(booked.get(0).getPatient(), treatments.get(0), date, time);
+                problems.add("A fifth booking of " + date + " " + time + " succeeded");
+            } catch (IllegalStateException e) {
+                // * Every doctor is taken then
+            }
+            slot = clinic.getScheduler().nextFreeSlot(doctors, slot.getDate(), slot.getTime());
+        }
+        for (int i = 0; i < booked.size(); i++) {
+            if (i % 3 == 0) {
+                clinic.cancelAppointment(booked.get(i));
+            } else if (i % 7 == 0) {
+                clinic.completeAppointment(booked.get(i));
+            } else if (i % 11 == 0) {
+                clinic.markNoShow(booked.get(i));
+            } else if (i % 5 == 0) {
+                clinic.issueInvoice(booked.get(i), treatments.get(0));
+            }
+        }
+        checkLoads(clinic, doctors, "after the changes", problems);
+        Doctor least = clinic.getAssignment().leastLoaded();
+        Patient patient = booked.get(0).getPatient();
+        Appointment next = clinic.bookWithAnyDoctor(patient, treatments.get(0), slot == null ? "Sat" : slot
+                .getDate().toString(), AppointmentDates.formatTime(slot == null ? LocalTime.of(9, 0) : slot.getTime()));
+        if (next.getDoctor() != least) {
+            problems.add("The next booking went to " + next.getDoctor().name + ", the least loaded is " + least.name);
+        }
+        System.out.print("Loads:");
+        for (Doctor doctor : doctors) {
+            System.out.print(" " + doctor.employeeID + "=" + clinic.getAssignment().getLoad(doctor));
+        }
+        System.out.println();
+        BenchmarkFixture.closeClinic(clinic);
+        ClinicService restarted = BenchmarkFixture.openClinic(directory, catalog);
+        List<Doctor> restored = restarted.getRepository().getDoctors();
+        checkLoads(restarted, restored, "after a restart", problems);
+        BenchmarkFixture.closeClinic(restarted);
+        checkUsedUpRange(treatments.get(0), catalog, problems);
+
+        return BenchmarkFixture.report(problems);
+    }
+
+    // ! A branch out of appointment IDs is reported as such, not as "no doctor
+    // available", and the slot reserved for the refused booking is free again
+    private static void checkUsedUpRange(Treatment treatment, TreatmentCatalog catalog, List<String> problems)
+            throws IOException {
+        Path directory = Files.createTempDirectory("aurora-range");
+        Doctor doctor = new Doctor("Dr. Range", "range@aurora.lk", "0770000000", "D001");
+        ClinicRepository repository = new ClinicRepository();
+        repository.addDoctor(doctor);
+        try (ClinicPersistence persistence = new ClinicPersistence(directory, repository, catalog, 10_000)) {
+            Patient patient = new Patient("Nimal Perera", "nimal@mail.com", "0771234567", "199012345678");
+            persistence.registerPatient(patient);
+            LocalDate past = LocalDate.now().minusDays(30);
+            List<Appointment> last = new ArrayList<>();
+            last.add(new Appointment(ClinicPartitions.lastID(0), past.toString(), past, "10:00am", Status.COMPLETED,
+                    patient, doctor, treatment));
+            persistence.importAppointments(last); // * The last ID of the branch is taken
+            ClinicService clinic = new ClinicService(repository, persistence, new SchedulingEngine(), catalog);
+            SchedulingEngine.Slot slot = clinic.getScheduler().nextFreeSlot(doctor, LocalDate.now().plusDays(1),
+                    LocalTime.MIN);
+            try {
+                clinic.bookWithAnyDoctor(patient, treatment, slot.getDate().toString(),
+                        AppointmentDates.formatTime(slot.getTime()));
+                problems.add("A branch past its last ID booked an appointment");
+            } catch (ClinicService.SlotTakenException e) {
+                problems.add("A branch past its last ID reported: " + e.getMessage());
+            } catch (IllegalStateException e) {
+                if (!e.getMessage().contains("range of IDs")) {
+                    problems.add("A branch past its last ID reported: " + e.getMessage());
+                }
+            }
+            if (!clinic.getScheduler().isFree(doctor, slot.getDate(), slot.getTime())) {
+                problems.add("The slot of a refused booking stayed reserved");
+            }
+            clinic.close();
+        }
+        BenchmarkFixture.deleteTree(directory);
+    }
+
+    // * Every doctor's load is the number of their active appointments
+    private static void checkLoads(ClinicService clinic, List<Doctor> doctors, String when, List<String> problems) {
+        Map<String, Integer> active = new HashMap<>();
+        for (Appointment appointment : clinic.getRepository().getAppointments()) {
+            if (appointment.getStatus().isActive()) {
+                active.merge(appointment.getDoctor().employeeID, 1, Integer::sum);
+            }
+        }
+        for (Doctor doctor : doctors) {
+            int expected = active.getOrDefault(doctor.employeeID, 0);
+            if (clinic.getAssignment().getLoad(doctor) != expected) {
+                problems.add(doctor.employeeID + " has a load of " + clinic.getAssignment().getLoad(doctor) + " "
+                        + when + ", expected " + expected);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Footprint Benchmark
+// ! The footprint mode of ClinicBenchmark: heap bytes per patient and appointment
+// in the previous field layout and in the current one.
+final class FootprintBenchmark {
+    private FootprintBenchmark() {
+    }
+
+    // ! Heap taken by N patients (with the NIC index) and N appointments in
+    // the previous field layout and in the current one. Every text is a new
+    // String, as journal replay and CSV import produce them. Measured as the
+    // growth of the used heap after a full GC, which counts headers, padding
+    // and the index tables.
+    static boolean runFootprint(int records) {
+        List<String> problems = new ArrayList<>();
+        Doctor doctor = new Doctor("Dr. Bench", "bench@aurora.lk", "0770000000", "D001");
+        Treatment treatment = new Treatment(1, "Acne Treatment", 2750.00);
+        String[] domains = { "gmail.com", "yahoo.com", "hotmail.com", "sltnet.lk", "outlook.com" };
+
+        long heapBefore = BenchmarkFixture.usedHeap();
+        LegacyPatient[] legacyPatients = new LegacyPatient[records];
+        Map<String, LegacyPatient> legacyByNic = new HashMap<>();
+        for (int i = 0; i < records; i++) {
+            legacyPatients[i] = new LegacyPatient(BenchmarkFixture.name(i), email(i, domains), "07" + i, nicOf(i));
+            legacyByNic.putIfAbsent(legacyPatients[i].nic.toUpperCase(), legacyPatients[i]);
+        }
+        long legacyPatientBytes = BenchmarkFixture.usedHeap() - heapBefore;
+        heapBefore = BenchmarkFixture.usedHeap();
+        LegacyAppointment[] legacyAppointments = new LegacyAppointment[records];
+        for (int i = 0; i < records; i++) {
+            legacyAppointments[i] = new LegacyAppointment(i + 1, BenchmarkFixture.dateOf(i), BenchmarkFixture.timeOf(i),
+                    legacyPatients[i], doctor, treatment);
+        }
+        long legacyAppointmentBytes = BenchmarkFixture.usedHeap() - heapBefore;
+        long sink = legacyByNic.size() + legacyAppointments[records - 1].localDate.hashCode();
+        legacyPatients = null;
+        legacyByNic = null;
+        legacyAppointments = null;
+
+        heapBefore = BenchmarkFixture.usedHeap();
+        Patient[] patients = new Patient[records];
+        NicIndex byNic = new NicIndex();
+        for (int i = 0; i < records; i++) {
+            patients[i] = new Patient(BenchmarkFixture.name(i), email(i, domains), "07" + i, nicOf(i));
+            byNic.putIfAbsent(patients[i]);
+        }
+        long patientBytes = BenchmarkFixture.usedHeap() - heapBefore;
+        heapBefore = BenchmarkFixture.usedHeap();
+        Appointment[] appointments = new Appointment[records];
+        for (int i = 0; i < records; i++) {
+            appointments[i] = new Appointment(i + 1, BenchmarkFixture.dateOf(i), BenchmarkFixture.timeOf(i),
+                    Status.BOOKED, patients[i], doctor, treatment);
+        }
+        long appointmentBytes = BenchmarkFixture.usedHeap() - heapBefore;
+
+        // * The compact fields must give back exactly what was stored
+        for (int i = 0; i < records; i += 997) {
+            Appointment appointment = appointments[i];
+            if (!patients[i].getNIC().equals(nicOf(i)) || byNic.get(nicOf(i).toLowerCase()) != patients[i]
+                    || !patients[i].getEmail().equals(email(i, domains))
+                    || !appointment.getLocalDate().equals(AppointmentDates.parseDate(BenchmarkFixture.dateOf(i)))
+                    || !appointment.getLocalTime().equals(AppointmentDates.parseTime(BenchmarkFixture.timeOf(i)))
+                    || appointment.getStatus() != Status.BOOKED
+                    || !appointment.getDate().equals(BenchmarkFixture.dateOf(i))) {
+                problems.add("record " + i + " does not round trip");
+                break;
+            }
+        }
+        if (byNic.size() != records) {
+            problems.add("NIC index has " + byNic.size() + " patients, expected " + records);
+        }
+        sink += appointments[records - 1].hashCode();
+
+        System.out.printf("%,d records (heap growth after GC)%n", records);
+        System.out.printf("%-14s %14s %14s%n", "Bytes per", "Before", "After");
+        System.out.printf("%-14s %14.1f %14.1f%n", "Patient", legacyPatientBytes / (double) records,
+                patientBytes / (double) records);
+        System.out.printf("%-14s %14.1f %14.1f%n", "Appointment", legacyAppointmentBytes / (double) records,
+                appointmentBytes / (double) records);
+        System.out.printf("Pooled texts: %d (sink %d)%n", TextPool.size(), sink);
+        if (patientBytes + appointmentBytes >= legacyPatientBytes + legacyAppointmentBytes) {
+            problems.add("the current layout is not smaller");
+        }
+        return BenchmarkFixture.report(problems);
+    }
+
+    // * New Strings on every call, like text read back from a file
+    private static String nicOf(int i) {
+        // * Half of them in the old layout
+        return i % 2 == 0 ? BenchmarkFixture.nic(i) : String.format("%09dV", 850000000 + i);
+    }
+
+    private static String email(int i, String[] domains) {
+        return "patient" + i + "@" + domains[i % domains.length];
+    }
+
+    // LegacyPatient Class
+    // ! Patient fields as they were before the compact layout, for the footprint mode
+    private static final class LegacyPatient {
+        private final String name;
+        private final String email;
+        private final String contactNumber;
+        private final String nic;
+
+        LegacyPatient(String name, String email, String contactNumber, String nic) {
+            this.name = name;
+            this.email = email;
+            this.contactNumber = contactNumber;
+            this.nic = nic;
+        }
+    }
+
+    // LegacyAppointment Class
+    private static final class LegacyAppointment {
+        private final int appointmentID;
+        private final String date;
+        private final String time;
+        private final LocalDate localDate;
+        private final LocalTime localTime;
+        private volatile Status status;
+        private final LegacyPatient patient;
+        private final Doctor doctor;
+        private final Treatment treatment;
+        private final long registrationFeeCents;
+
+        LegacyAppointment(int appointmentID, String date, String time, LegacyPatient patient, Doctor doctor,
+                Treatment treatment) {
+            this.appointmentID = appointmentID;
+            this.date = date;
+            this.time = time;
+            this.localDate = LocalDate.parse(date);
+            this.localTime = LocalTime.parse(time);
+            this.status = Status.BOOKED;
+            this.patient = patient;
+            this.doctor = doctor;
+            this.treatment = treatment;
+            this.registrationFeeCents = 50_000;
+        }
+    }
+}
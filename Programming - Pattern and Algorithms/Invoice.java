@@ -0,0 +1,52 @@
+// Invoice Class
+// ! This class represents an invoice generated for a specific appointment and
+// treatment.
+class Invoice {
+    private int invoiceID;
+    private Appointment appointment;
+    private Treatment treatment;
+    private Tariff.Bill bill; // * Line items and total, priced once
+    private static final InvoiceRenderer RENDERER = new InvoiceRenderer(); // * Layout of the printed invoice
+
+    public Invoice(int invoiceID, Appointment appointment, Treatment treatment) {
+        this.invoiceID = invoiceID;
+        this.appointment = appointment;
+        this.treatment = treatment;
+        // ! The total includes the registration fee, tax is charged on the treatment only.
+        // The treatment is priced as on the day of the visit.
+        this.bill = Tariff.STANDARD.bill(treatment.getPriceCents(appointment.getLocalDate()),
+                appointment.getRegistrationFeeCents());
+    }
+
+    public int getInvoiceID() {
+        return invoiceID;
+    }
+
+    public Appointment getAppointment() {
+        return appointment;
+    }
+
+    public Treatment getTreatment() {
+        return treatment;
+    }
+
+    public Tariff.Bill getBill() {
+        return bill;
+    }
+
+    // * Tax on the treatment price
+    public double getTax() {
+        return Money.toMajor(bill.getTaxCents());
+    }
+
+    public double getTotalAmount() {
+        return Money.toMajor(bill.getTotalCents());
+    }
+
+    // ! This Method allowing users to generate an invoice without needing to
+    // understand calculations for taxes and totals.
+    public void generateInvoice() {
+        // * Rendered into one buffer and printed with a single call
+        System.out.print(RENDERER.render(this, new StringBuilder(512)));
+    }
+}
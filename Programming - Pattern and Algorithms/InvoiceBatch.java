@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Invoice Batch
+// ! End-of-day billing: invoices every COMPLETED appointment in a date range
+// with the treatment it was completed with, priced as the catalog stood at the
+// completion, and writes them to one file. Chunks of invoices are
+// rendered in parallel on a fork-join pool while the calling thread writes the
+// finished chunks to the file channel in order. At most two chunks per pool
+// thread are in flight, so memory stays the same however many are written.
+class InvoiceBatch {
+    static final int CHUNK = 256; // * Invoices per rendering task and per reserved ID block
+
+    private final ClinicService service;
+    private final ForkJoinPool pool;
+    private final int window;
+    private final InvoiceRenderer renderer = new InvoiceRenderer(); // * Stateless, shared by the tasks
+
+    // Summary Class
+    // ! What a batch run produced.
+    static final class Summary {
+        private final int invoices;
+        private final long bytes;
+        private final long billedCents;
+        private final double seconds;
+
+        Summary(int invoices, long bytes, long billedCents, double seconds) {
+            this.invoices = invoices;
+            this.bytes = bytes;
+            this.billedCents = billedCents;
+            this.seconds = seconds;
+        }
+
+        public int getInvoices() {
+            return invoices;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getBilledCents() {
+            return billedCents;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+    }
+
+    // Rendered Chunk Class
+    private static final class Rendered {
+        final ByteBuffer bytes;
+        final long billedCents;
+
+        Rendered(ByteBuffer bytes, long billedCents) {
+            this.bytes = bytes;
+            this.billedCents = billedCents;
+        }
+    }
+
+    InvoiceBatch(ClinicService service) {
+        this(service, ForkJoinPool.commonPool());
+    }
+
+    InvoiceBatch(ClinicService service, ForkJoinPool pool) {
+        this.service = service;
+        this.pool = pool;
+        this.window = pool.getParallelism() * 2;
+    }
+
+    // ! Invoices the completed appointments from the first to the last day
+    // (both included) into the file, which is replaced
+    public Summary run(LocalDate from, LocalDate to, Path file) throws IOException {
+        long start = System.nanoTime();
+        Deque<ForkJoinTask<Rendered>> inFlight = new ArrayDeque<>(window);
+        int invoices = 0;
+        long bytes = 0;
+        long billedCents = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<Appointment> chunk = new ArrayList<>(CHUNK);
+            // * Day by day through the day index, so only one day is listed at a time
+            for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+                for (Appointment appointment : service.getRepository().findAppointmentsOn(day)) {
+                    if (appointment.getStatus() != Status.COMPLETED) {
+                        continue;
+                    }
+                    chunk.add(appointment);
+                    if (chunk.size() < CHUNK) {
+                        continue;
+                    }
+                    invoices += submit(chunk, inFlight);
+                    chunk = new ArrayList<>(CHUNK);
+                    while (inFlight.size() >= window) { // * Wait for the oldest chunk, keeps the file in order
+                        Rendered rendered = inFlight.poll().join();
+                        bytes += write(channel, rendered.bytes);
+                        billedCents += rendered.billedCents;
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                invoices += submit(chunk, inFlight);
+            }
+            while (!inFlight.isEmpty()) {
+                Rendered rendered = inFlight.poll().join();
+                bytes += write(channel, rendered.bytes);
+                billedCents += rendered.billedCents;
+            }
+            channel.force(false);
+        } finally {
+            // * A failed write leaves rendering tasks behind, they must not keep running
+            for (ForkJoinTask<Rendered> task : inFlight) {
+                task.cancel(false);
+            }
+        }
+        return new Summary(invoices, bytes, billedCents, (System.nanoTime() - start) / 1e9);
+    }
+
+    // * Reserves the IDs of a chunk in file order, then renders it in the pool
+    private int submit(List<Appointment> chunk, Deque<ForkJoinTask<Rendered>> inFlight) {
+        int firstID = service.reserveInvoiceIDs(chunk.size());
+        inFlight.add(pool.submit(() -> render(chunk, firstID)));
+        return chunk.size();
+    }
+
+    private Rendered render(List<Appointment> chunk, int firstID) {
+        StringBuilder out = new StringBuilder(chunk.size() * 512);
+        long billedCents = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            Appointment appointment = chunk.get(i);
+            Invoice invoice = new Invoice(firstID + i, appointment, appointment.getTreatment());
+            renderer.render(invoice, out);
+            billedCents += invoice.getBill().getTotalCents();
+        }
+        return new Rendered(StandardCharsets.UTF_8.encode(out.toString()), billedCents);
+    }
+
+    private static long write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        return written;
+    }
+}
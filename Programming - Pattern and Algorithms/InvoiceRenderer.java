@@ -0,0 +1,51 @@
+// Invoice Renderer
+// ! Writes the invoice layout of Invoice.generateInvoice() into a caller's
+// StringBuilder. Separators and labels are built once, and the amounts of the
+// invoice's bill are written straight from cents instead of going through
+// String.format, so a month-end run can render thousands of invoices into one
+// reused buffer and print them with a single call.
+class InvoiceRenderer {
+    private final String appointmentLabel;
+    private final String patientLabel;
+    private final String dateLabel;
+    private final String timeLabel;
+    private final String treatmentSeparator;
+    private final String feeLabel;
+    private final String taxLabel;
+    private final String totalLabel;
+    private final String footer;
+    private final String newLine;
+
+    InvoiceRenderer() {
+        newLine = System.lineSeparator();
+        appointmentLabel = newLine + "=".repeat(30) + newLine + "               INVOICE               " + newLine + "="
+                + "=".repeat(28) + "=" + newLine + "Appointment ID:    ";
+        patientLabel = newLine + "Patient:           ";
+        dateLabel = newLine + "Date:              ";
+        timeLabel = newLine + "Time:              ";
+        treatmentSeparator = newLine + "-".repeat(30) + newLine + "Name: ";
+        feeLabel = newLine + "Registration Fee:  LKR ";
+        taxLabel = newLine + "Tax (2.5%):       LKR ";
+        totalLabel = newLine + "Total:            LKR ";
+        footer = newLine + "=" + "=".repeat(28) + "=" + newLine + "Thank you for choosing our services!" + newLine
+                + "=" + "=".repeat(30) + newLine;
+    }
+
+    // ! Appends one invoice to out and returns out
+    public StringBuilder render(Invoice invoice, StringBuilder out) {
+        Appointment appointment = invoice.getAppointment();
+        Treatment treatment = invoice.getTreatment();
+        Tariff.Bill bill = invoice.getBill();
+        out.append(appointmentLabel).append(appointment.getAppointmentID());
+        out.append(patientLabel).append(appointment.getPatient().name);
+        out.append(dateLabel).append(appointment.getDate());
+        out.append(timeLabel).append(appointment.getTime());
+        // * Same text as Treatment.getDetails(), with the price that was billed
+        out.append(treatmentSeparator).append(treatment.getName()).append(", Price: LKR ")
+                .append(Money.toMajor(bill.getTreatmentCents()));
+        Money.append(out.append(feeLabel), bill.getRegistrationFeeCents());
+        Money.append(out.append(taxLabel), bill.getTaxCents());
+        Money.append(out.append(totalLabel), bill.getTotalCents());
+        return out.append(footer);
+    }
+}
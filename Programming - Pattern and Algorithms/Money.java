@@ -0,0 +1,58 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Money Class
+// ! Amounts in LKR are plain longs counting cents, so sums and taxes are exact
+// and need no objects. Rounding is HALF_UP (half a cent away from zero)
+// everywhere, the same as BigDecimal with RoundingMode.HALF_UP.
+final class Money {
+    static final int BASIS_POINTS = 10_000; // * 100% in basis points
+
+    private Money() {
+    }
+
+    // * Cents of an amount written in rupees, rounded as its decimal text is
+    static long ofMajor(double amount) {
+        return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    static double toMajor(long cents) {
+        return cents / 100.0;
+    }
+
+    // ! basisPoints / 10000 of an amount, rounded HALF_UP to the cent. Throws
+    // ArithmeticException instead of overflowing.
+    static long percentOf(long cents, int basisPoints) {
+        long product = Math.multiplyExact(cents, (long) basisPoints);
+        long result = product / BASIS_POINTS;
+        long remainder = Math.abs(product % BASIS_POINTS);
+        if (remainder * 2 >= BASIS_POINTS) {
+            result += Long.signum(product);
+        }
+        return result;
+    }
+
+    // * Writes the amount as 1234.50 (or -0.05), without allocating
+    static StringBuilder append(StringBuilder out, long cents) {
+        if (cents < 0) {
+            out.append('-');
+        }
+        long units = Math.abs(cents / 100);
+        int rest = (int) Math.abs(cents % 100);
+        out.append(units).append('.');
+        if (rest < 10) {
+            out.append('0');
+        }
+        return out.append(rest);
+    }
+
+    static String format(long cents) {
+        return append(new StringBuilder(24), cents).toString();
+    }
+
+    // * Cents of an amount written with at most two decimals (as format() writes
+    // it), exactly. NumberFormatException or ArithmeticException otherwise.
+    static long parseCents(String text) {
+        return new BigDecimal(text.trim()).setScale(2).unscaledValue().longValueExact();
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// NIC Index
+// ! Case insensitive NIC lookup keyed by a primitive long. Both Sri Lankan NIC
+// layouts fit in a long: the old one (nine digits and V or X) and the new
+// one (twelve digits). Patients keep that key instead of a String, and the
+// index is an open-addressing table of longs, with no entry objects or boxed
+// keys. A NIC in any other layout keeps its text and goes to a small HashMap.
+class NicIndex {
+    static final long NOT_ENCODED = -1;
+
+    private static final long NEW_LAYOUT = 1L << 60;
+    private static final long OLD_LAYOUT = 2L << 60;
+    private static final long LOWER_CASE = 2; // * Bit of the old layout letter, see encode()
+    private static final long EMPTY = 0; // * No encoded NIC is 0, both layouts set a tag bit
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Patient[] values = new Patient[INITIAL_CAPACITY];
+    private int size;
+    private final Map<String, Patient> others = new HashMap<>();
+
+    // ! The NIC as a long, or NOT_ENCODED when it is in neither layout. The
+    // letter's case is kept, so decode() gives back the exact text.
+    static long encode(String nic) {
+        int length = nic.length();
+        if (length == 12) {
+            long digits = digits(nic, 12);
+            return digits < 0 ? NOT_ENCODED : NEW_LAYOUT | digits;
+        }
+        if (length == 10) {
+            long digits = digits(nic, 9);
+            int letter = "VXvx".indexOf(nic.charAt(9)); // * Bit 0: X, bit 1: lower case
+            return digits < 0 || letter < 0 ? NOT_ENCODED : OLD_LAYOUT | digits << 2 | letter;
+        }
+        return NOT_ENCODED;
+    }
+
+    static String decode(long key) {
+        if ((key & NEW_LAYOUT) != 0) {
+            return pad(key & ~NEW_LAYOUT, 12);
+        }
+        return pad((key & ~OLD_LAYOUT) >>> 2, 9) + "VXvx".charAt((int) (key & 3));
+    }
+
+    // * Key with the letter case dropped, what the index is keyed by
+    static long foldCase(long key) {
+        return (key & OLD_LAYOUT) != 0 ? key & ~LOWER_CASE : key;
+    }
+
+    private static long digits(String text, int count) {
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static String pad(long value, int width) {
+        String digits = Long.toString(value);
+        return "0".repeat(width - digits.length()) + digits;
+    }
+
+    // ! Adds the patient unless the NIC is taken, the first registration keeps it
+    public void putIfAbsent(Patient patient) {
+        long key = patient.getNicKey();
+        if (key == NOT_ENCODED) {
+            others.putIfAbsent(patient.getNIC().trim().toUpperCase(Locale.ROOT), patient);
+            return;
+        }
+        key = foldCase(key);
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int slot = slot(key, keys.length);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return;
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        keys[slot] = key;
+        values[slot] = patient;
+        size++;
+    }
+
+    // ! Patient with that NIC in any letter case, surrounding spaces are ignored
+    public Patient get(String nic) {
+        String trimmed = nic.trim();
+        long key = encode(trimmed);
+        if (key == NOT_ENCODED) {
+            return others.get(trimmed.toUpperCase(Locale.ROOT));
+        }
+        key = foldCase(key);
+        for (int slot = slot(key, keys.length); keys[slot] != EMPTY; slot = (slot + 1) & (keys.length - 1)) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return size + others.size();
+    }
+
+    // * Fibonacci hashing spreads the sequential digits of NICs over the table
+    private static int slot(long key, int capacity) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(capacity)));
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Patient[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Patient[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i], keys.length);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & (keys.length - 1);
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
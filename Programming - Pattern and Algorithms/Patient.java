@@ -0,0 +1,27 @@
+// Patient Class extending Person
+// ! Inheriting basic contact information from the Person class.
+class Patient extends Person {
+    // * National Identity Card number of the patient, as a long when it is in
+    // a standard layout (see NicIndex), otherwise as text
+    private final long nicKey;
+    private final String nicText;
+
+    public Patient(String name, String email, String contactNumber, String nic) {
+        super(name, email, contactNumber); // * Call to the superclass constructor to set
+        this.nicKey = NicIndex.encode(nic);
+        this.nicText = nicKey == NicIndex.NOT_ENCODED ? nic : null;
+    }
+
+    public String getNIC() {
+        return nicText != null ? nicText : NicIndex.decode(nicKey);
+    }
+
+    long getNicKey() {
+        return nicKey;
+    }
+
+    // * Exact comparison, without building the NIC text
+    public boolean hasNIC(String nic) {
+        return nicText != null ? nicText.equals(nic) : NicIndex.encode(nic) == nicKey;
+    }
+}
@@ -0,0 +1,143 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Patient History
+// ! Per patient timeline of appointment IDs, keyed by the NIC the way the
+// NIC index is, so a patient's visits are found without scanning every
+// appointment. A timeline is one sorted long[] of the slot in minutes and
+// the appointment ID packed together, so chronological order is plain long
+// order and equal slots stay in ID order. The last visit and the lifetime
+// spend are kept as the appointments complete, completion is final, so both
+// are answered without looking at the timeline at all. Not thread safe, the
+// repository updates and reads it under its own lock.
+class PatientHistory {
+    private static final int INITIAL_CAPACITY = 2; // * Most patients come a few times
+    private static final long NONE = -1;
+
+    // Timeline Class
+    static final class Timeline {
+        private long[] entries = new long[INITIAL_CAPACITY]; // * Slot minute << 32 | appointment ID, ascending
+        private int size;
+        private long lastVisit = NONE; // * Entry of the latest completed appointment
+        private long spentCents;
+
+        public int size() {
+            return size;
+        }
+
+        // * Appointment ID at the position, 0 is the oldest
+        public int idAt(int index) {
+            return (int) entries[index];
+        }
+
+        // * ID of the latest completed appointment, -1 before the first visit
+        public int getLastVisitID() {
+            return lastVisit == NONE ? -1 : (int) lastVisit;
+        }
+
+        public long getSpentCents() {
+            return spentCents;
+        }
+
+        private void insert(long entry) {
+            int at = search(entry);
+            if (at >= 0) {
+                return; // * Already there
+            }
+            at = -at - 1;
+            if (size == entries.length) {
+                long[] grown = new long[size * 2];
+                System.arraycopy(entries, 0, grown, 0, size);
+                entries = grown;
+            }
+            System.arraycopy(entries, at, entries, at + 1, size - at);
+            entries[at] = entry;
+            size++;
+        }
+
+        private void remove(long entry) {
+            int at = search(entry);
+            if (at >= 0) {
+                System.arraycopy(entries, at + 1, entries, at, size - at - 1);
+                size--;
+            }
+        }
+
+        private int search(long entry) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (entries[mid] < entry) {
+                    low = mid + 1;
+                } else if (entries[mid] > entry) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    private final Map<Long, Timeline> byNicKey = new HashMap<>();
+    private final Map<String, Timeline> byNicText = new HashMap<>(); // * NICs in neither standard layout
+
+    // ! Adds an appointment at its slot, a completed one also counts as a visit
+    public void add(Appointment appointment) {
+        Timeline timeline = timelineOf(appointment.getPatient());
+        long entry = entryOf(appointment, appointment.getLocalDate(), appointment.getLocalTime());
+        timeline.insert(entry);
+        if (appointment.getStatus() == Status.COMPLETED) {
+            visited(timeline, appointment, entry);
+        }
+    }
+
+    // ! Moves an appointment from the slot it had to its current one
+    public void moved(Appointment appointment, LocalDate oldDate, LocalTime oldTime) {
+        Timeline timeline = timelineOf(appointment.getPatient());
+        timeline.remove(entryOf(appointment, oldDate, oldTime));
+        timeline.insert(entryOf(appointment, appointment.getLocalDate(), appointment.getLocalTime()));
+    }
+
+    // ! Counts a completed appointment as a visit
+    public void completed(Appointment appointment) {
+        visited(timelineOf(appointment.getPatient()), appointment,
+                entryOf(appointment, appointment.getLocalDate(), appointment.getLocalTime()));
+    }
+
+    // * Timeline of the NIC, null when no appointment was made with it
+    public Timeline get(String nic) {
+        long key = NicIndex.encode(nic.trim());
+        return key == NicIndex.NOT_ENCODED ? byNicText.get(nic.trim().toUpperCase(Locale.ROOT))
+                : byNicKey.get(NicIndex.foldCase(key));
+    }
+
+    public int size() {
+        return byNicKey.size() + byNicText.size();
+    }
+
+    private static void visited(Timeline timeline, Appointment appointment, long entry) {
+        if (timeline.lastVisit == NONE || entry > timeline.lastVisit) {
+            timeline.lastVisit = entry;
+        }
+        timeline.spentCents += ClinicAnalytics.revenueOf(appointment);
+    }
+
+    private Timeline timelineOf(Patient patient) {
+        long key = patient.getNicKey();
+        return key == NicIndex.NOT_ENCODED
+                ? byNicText.computeIfAbsent(patient.getNIC().trim().toUpperCase(Locale.ROOT), k -> new Timeline())
+                : byNicKey.computeIfAbsent(NicIndex.foldCase(key), k -> new Timeline());
+    }
+
+    // * Minutes since 1970 in the high half, days before that and unknown dates sort first
+    private static long entryOf(Appointment appointment, LocalDate date, LocalTime time) {
+        long minute = date == null ? 0 : Math.max(0, date.toEpochDay() * 1440
+                + (time == null ? 0 : time.getHour() * 60 + time.getMinute()));
+        return minute << 32 | appointment.getAppointmentID();
+    }
+}
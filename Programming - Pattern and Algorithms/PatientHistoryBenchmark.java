@@ -0,0 +1,191 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Patient History Benchmark
+// ! The history mode of ClinicBenchmark: patient timelines against the scans they replaced.
+final class PatientHistoryBenchmark {
+    private static final int HISTORY_PAGE = 10;
+    private static final Comparator<Appointment> NEWEST_FIRST = Comparator.comparing(Appointment::getLocalDate)
+            .thenComparing(Appointment::getLocalTime).thenComparingInt(Appointment::getAppointmentID).reversed();
+
+    private PatientHistoryBenchmark() {
+    }
+
+    // ! Patient histories of a year back and a year ahead, a few regulars with
+    // many visits: times a page, the last page, the last visit and the lifetime
+    // spend from the timelines against the scan of every appointment they
+    // replaced, then moves, completes and cancels appointments and checks that
+    // every page and figure still agrees with the scan.
+    static boolean runHistory(int patientCount, double seconds) {
+        List<String> problems = new ArrayList<>();
+        Doctor doctor = new Doctor("Dr. History", "history@aurora.lk", "0770000000", "D001");
+        Treatment[] treatments = { new Treatment(1, "Acne Treatment", 2750.00),
+                new Treatment(2, "Skin Whitening", 7650.00), new Treatment(3, "Mole Removal", 3850.00) };
+        ClinicRepository repository = new ClinicRepository();
+        repository.addDoctor(doctor);
+        Random random = new Random(25);
+        LocalDate today = LocalDate.now();
+        Status[] past = { Status.COMPLETED, Status.COMPLETED, Status.COMPLETED, Status.CANCELED, Status.NO_SHOW };
+        List<Patient> patients = new ArrayList<>(patientCount);
+        List<Appointment> appointments = new ArrayList<>();
+        for (int p = 0; p < patientCount; p++) {
+            Patient patient = BenchmarkFixture.patient(p);
+            repository.addPatient(patient);
+            patients.add(patient);
+            int visits = p % 50 == 0 ? 80 : 1 + random.nextInt(8); // * One regular in fifty
+            for (int v = 0; v < visits; v++) {
+                LocalDate day = today.plusDays(random.nextInt(731) - 365);
+                Status status = day.isBefore(today) ? past[random.nextInt(past.length)] : Status.BOOKED;
+                Appointment appointment = new Appointment(appointments.size() + 1, day.toString(),
+                        String.format("%02d:%02d", 9 + random.nextInt(10), 15 * random.nextInt(4)), status, patient,
+                        doctor, treatments[random.nextInt(treatments.length)]);
+                appointments.add(appointment);
+            }
+        }
+        Collections.shuffle(appointments, random); // * Bookings arrive in no particular order
+        repository.addAppointments(appointments);
+        System.out.printf("Patients: %,d, appointments: %,d, %.1f s per operation%n", patientCount,
+                appointments.size(), seconds);
+
+        String[] nics = new String[BenchmarkFixture.KEYS];
+        int[] lastPages = new int[BenchmarkFixture.KEYS];
+        for (int i = 0; i < BenchmarkFixture.KEYS; i++) {
+            nics[i] = BenchmarkFixture.nic(random.nextInt(patientCount));
+            lastPages[i] = Math.max(0, repository.countHistoryOfPatient(nics[i]) - 1) / HISTORY_PAGE;
+        }
+        BenchmarkHarness harness = new BenchmarkHarness(Math.min(1.0, seconds / 2), seconds);
+        BenchmarkHarness.printHeader();
+        BenchmarkHarness.print(harness.measure("history page (timeline)",
+                i -> repository.findHistoryOfPatient(nics[i & (BenchmarkFixture.KEYS - 1)], 0, HISTORY_PAGE).size()));
+        BenchmarkHarness.print(harness.measure("history page (scan)",
+                i -> scanHistory(repository, nics[i & (BenchmarkFixture.KEYS - 1)], 0).size()));
+        BenchmarkHarness.print(harness.measure("oldest page (timeline)",
+                i -> repository.findHistoryOfPatient(nics[i & (BenchmarkFixture.KEYS - 1)],
+                        lastPages[i & (BenchmarkFixture.KEYS - 1)], HISTORY_PAGE).size()));
+        BenchmarkHarness.print(harness.measure("oldest page (scan)",
+                i -> scanHistory(repository, nics[i & (BenchmarkFixture.KEYS - 1)],
+                        lastPages[i & (BenchmarkFixture.KEYS - 1)]).size()));
+        BenchmarkHarness.print(harness.measure("last visit (timeline)", i -> {
+            Appointment last = repository.findLastVisitOfPatient(nics[i & (BenchmarkFixture.KEYS - 1)]);
+            return last == null ? 0 : last.getAppointmentID();
+        }));
+        BenchmarkHarness.print(harness.measure("last visit (scan)", i -> {
+            Appointment last = scanLastVisit(repository, nics[i & (BenchmarkFixture.KEYS - 1)]);
+            return last == null ? 0 : last.getAppointmentID();
+        }));
+        BenchmarkHarness.print(harness.measure("lifetime spend (timeline)",
+                i -> repository.findLifetimeSpendCentsOfPatient(nics[i & (BenchmarkFixture.KEYS - 1)])));
+        BenchmarkHarness.print(harness.measure("lifetime spend (scan)",
+                i -> scanSpendCents(repository, nics[i & (BenchmarkFixture.KEYS - 1)])));
+
+        // * Changes keep the timelines in order, the figures follow completions only
+        String[] days = { "Mon", "Wed", "Fri", "Sat" };
+        int changed = 0;
+        for (Appointment appointment : appointments) {
+            if (!appointment.getStatus().isActive() || changed++ >= 20_000) {
+                continue;
+            }
+            switch (changed % 4) {
+                case 0:
+                    repository.rescheduleAppointment(appointment, days[changed & 3], "11:15am");
+                    break;
+                case 1:
+                    repository.changeStatus(appointment, Status.COMPLETED);
+                    break;
+                case 2:
+                    repository.cancelAppointment(appointment);
+                    break;
+                default:
+                    repository.rescheduleAppointment(appointment,
+                            today.minusDays(1 + random.nextInt(30)).toString(), "10:00am");
+                    repository.changeStatus(appointment, Status.COMPLETED); // * A visit back in time
+                    break;
+            }
+        }
+        // * One scan for all patients, a scan per patient would take minutes
+        Map<String, List<Appointment>> expected = new HashMap<>();
+        for (Appointment appointment : repository.getAppointments()) {
+            expected.computeIfAbsent(appointment.getPatient().getNIC(), k -> new ArrayList<>()).add(appointment);
+        }
+        for (int p = 0; p < patientCount && problems.size() <= 10; p++) {
+            String nic = BenchmarkFixture.nic(p);
+            List<Appointment> all = expected.getOrDefault(nic, new ArrayList<>());
+            all.sort(NEWEST_FIRST);
+            Appointment lastVisit = null;
+            long spent = 0;
+            for (Appointment appointment : all) {
+                if (appointment.getStatus() == Status.COMPLETED) {
+                    lastVisit = lastVisit == null ? appointment : lastVisit;
+                    spent += ClinicAnalytics.revenueOf(appointment);
+                }
+            }
+            if (repository.countHistoryOfPatient(nic) != all.size()) {
+                problems.add(nic + ": " + repository.countHistoryOfPatient(nic) + " in the history, expected "
+                        + all.size());
+                continue;
+            }
+            for (int page = 0; page * HISTORY_PAGE < all.size(); page++) {
+                List<Appointment> scanned = all.subList(page * HISTORY_PAGE,
+                        Math.min(all.size(), (page + 1) * HISTORY_PAGE));
+                if (!repository.findHistoryOfPatient(nic, page, HISTORY_PAGE).equals(scanned)) {
+                    problems.add(nic + ": page " + page + " differs from the scan");
+                    break;
+                }
+            }
+            if (repository.findLastVisitOfPatient(nic) != lastVisit) {
+                problems.add(nic + ": last visit " + repository.findLastVisitOfPatient(nic) + ", expected "
+                        + lastVisit);
+            }
+            if (repository.findLifetimeSpendCentsOfPatient(nic) != spent) {
+                problems.add(nic + ": spend " + repository.findLifetimeSpendCentsOfPatient(nic) + ", expected "
+                        + spent);
+            }
+        }
+        if (!repository.findHistoryOfPatient("000000000000", 0, HISTORY_PAGE).isEmpty()
+                || repository.findLastVisitOfPatient("000000000000") != null) {
+            problems.add("An unknown NIC has a history");
+        }
+
+        return BenchmarkFixture.report(problems);
+    }
+
+    // * The scan the timelines replaced: every appointment of the NIC, newest first, one page of them
+    private static List<Appointment> scanHistory(ClinicRepository repository, String nic, int page) {
+        List<Appointment> found = new ArrayList<>();
+        for (Appointment appointment : repository.getAppointments()) {
+            if (appointment.getPatient().hasNIC(nic)) {
+                found.add(appointment);
+            }
+        }
+        found.sort(NEWEST_FIRST);
+        int from = Math.min(found.size(), page * HISTORY_PAGE);
+        return new ArrayList<>(found.subList(from, Math.min(found.size(), from + HISTORY_PAGE)));
+    }
+
+    private static Appointment scanLastVisit(ClinicRepository repository, String nic) {
+        Appointment last = null;
+        for (Appointment appointment : repository.getAppointments()) {
+            if (appointment.getStatus() == Status.COMPLETED && appointment.getPatient().hasNIC(nic)
+                    && (last == null || NEWEST_FIRST.compare(appointment, last) < 0)) {
+                last = appointment;
+            }
+        }
+        return last;
+    }
+
+    private static long scanSpendCents(ClinicRepository repository, String nic) {
+        long cents = 0;
+        for (Appointment appointment : repository.getAppointments()) {
+            if (appointment.getStatus() == Status.COMPLETED && appointment.getPatient().hasNIC(nic)) {
+                cents += ClinicAnalytics.revenueOf(appointment);
+            }
+        }
+        return cents;
+    }
+}
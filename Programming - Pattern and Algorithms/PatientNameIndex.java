@@ -0,0 +1,184 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+// Patient Name Index
+// ! Incremental index for partial and misspelt patient names. Sorted maps
+// answer case insensitive prefix queries and a trigram index over the distinct
+// name words finds words within a small edit distance of what was typed.
+class PatientNameIndex {
+    private static final int MAX_KEYS_SCANNED = 256; // * Bounds the work of a very short prefix
+    private static final int MAX_CANDIDATES = 512; // * Bounds the work of a very common name
+    private static final int GRAM = 3;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+"); // * Compiled once, see normalize()
+
+    // * Ranks, lower is better
+    private static final int EXACT_NAME = 0;
+    private static final int NAME_PREFIX = 1;
+    private static final int EXACT_WORD = 2;
+    private static final int WORD_PREFIX = 3;
+    private static final int FUZZY_WORD = 4; // * Plus the edit distance
+
+    private final NavigableMap<String, List<Patient>> byFullName = new TreeMap<>();
+    private final NavigableMap<String, List<Patient>> byWord = new TreeMap<>();
+    private final Map<String, List<String>> wordsByGram = new HashMap<>();
+
+    // ! Adds a patient, called whenever a patient is registered
+    public void add(Patient patient) {
+        String name = normalize(patient.name);
+        if (name.isEmpty()) {
+            return;
+        }
+        byFullName.computeIfAbsent(name, k -> new ArrayList<>()).add(patient);
+        for (String word : name.split(" ")) {
+            List<Patient> withWord = byWord.get(word);
+            if (withWord == null) {
+                withWord = new ArrayList<>();
+                byWord.put(word, withWord);
+                for (String gram : grams(word)) {
+                    wordsByGram.computeIfAbsent(gram, k -> new ArrayList<>()).add(word);
+                }
+            }
+            withWord.add(patient);
+        }
+    }
+
+    // ! Case insensitive exact match on the full name
+    public List<Patient> findExact(String name) {
+        return byFullName.getOrDefault(normalize(name), Collections.emptyList());
+    }
+
+    // ! Returns up to limit patients ranked by how well their name matches the
+    // query: exact name, name prefix, exact word, word prefix, then misspelt words
+    public List<Patient> search(String query, int limit) {
+        String q = normalize(query);
+        Map<Patient, Integer> ranks = new LinkedHashMap<>();
+        if (q.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        collect(byFullName, q, NAME_PREFIX, EXACT_NAME, ranks);
+        for (String word : q.split(" ")) {
+            collect(byWord, word, WORD_PREFIX, EXACT_WORD, ranks);
+            if (word.length() >= GRAM) {
+                collectFuzzy(word, ranks);
+            }
+        }
+
+        List<Map.Entry<Patient, Integer>> ranked = new ArrayList<>(ranks.entrySet());
+        ranked.sort(Map.Entry.comparingByValue()); // * Stable, so ties keep registration order
+        List<Patient> result = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            result.add(ranked.get(i).getKey());
+        }
+        return result;
+    }
+
+    // * Walks the keys starting with the prefix in sorted order
+    private static void collect(NavigableMap<String, List<Patient>> map, String prefix, int prefixRank,
+            int exactRank, Map<Patient, Integer> ranks) {
+        int scanned = 0;
+        for (Map.Entry<String, List<Patient>> entry : map.tailMap(prefix, true).entrySet()) {
+            if (!entry.getKey().startsWith(prefix) || scanned++ == MAX_KEYS_SCANNED) {
+                break;
+            }
+            int rank = entry.getKey().length() == prefix.length() ? exactRank : prefixRank;
+            if (!rankAll(entry.getValue(), rank, ranks)) {
+                break;
+            }
+        }
+    }
+
+    // * Candidate words share enough trigrams with the query (q-gram lemma),
+    // then a bounded edit distance confirms them
+    private void collectFuzzy(String word, Map<Patient, Integer> ranks) {
+        int maxDistance = word.length() <= 4 ? 1 : 2;
+        List<String> queryGrams = grams(word);
+        int needed = Math.max(1, queryGrams.size() - GRAM * maxDistance);
+
+        Map<String, Integer> shared = new HashMap<>();
+        for (String gram : queryGrams) {
+            for (String candidate : wordsByGram.getOrDefault(gram, Collections.emptyList())) {
+                shared.merge(candidate, 1, Integer::sum);
+            }
+        }
+        for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+            String candidate = entry.getKey();
+            if (entry.getValue() < needed || Math.abs(candidate.length() - word.length()) > maxDistance) {
+                continue;
+            }
+            int distance = editDistance(word, candidate, maxDistance);
+            if (distance <= maxDistance && !rankAll(byWord.get(candidate), FUZZY_WORD + distance, ranks)) {
+                break;
+            }
+        }
+    }
+
+    // * Records the rank of each patient, false once enough candidates are found
+    private static boolean rankAll(List<Patient> patients, int rank, Map<Patient, Integer> ranks) {
+        for (Patient patient : patients) {
+            if (ranks.size() >= MAX_CANDIDATES && !ranks.containsKey(patient)) {
+                return false;
+            }
+            ranks.merge(patient, rank, Math::min);
+        }
+        return true;
+    }
+
+    // * Levenshtein distance, gives up with max + 1 once every row exceeds max
+    static int editDistance(String a, String b, int max) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    // * Padded trigrams so the start and end of a word carry extra weight
+    private static List<String> grams(String word) {
+        String padded = "$$" + word + "$";
+        List<String> grams = new ArrayList<>(padded.length() - GRAM + 1);
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        String trimmed = name.trim();
+        // * Most names already have single spaces, only the others need the regex
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c != ' ' && Character.isWhitespace(c) || c == ' ' && trimmed.charAt(i + 1) == ' ') {
+                return WHITESPACE.matcher(trimmed).replaceAll(" ").toLowerCase(Locale.ROOT);
+            }
+        }
+        return trimmed.toLowerCase(Locale.ROOT);
+    }
+}
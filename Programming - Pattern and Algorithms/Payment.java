@@ -0,0 +1,18 @@
+// Payment Class
+// ! This class represents a payment transaction for a specific amount.
+class Payment {
+    private long amountCents; // * The amount to be processed for payment, in cents
+
+    public Payment(double amount) {
+        this.amountCents = Money.ofMajor(amount);
+    }
+
+    // * Method to calculate the total amount including tax
+    public double calculateTotalAmount() {
+        return Money.toMajor(calculateTotalCents());
+    }
+
+    public long calculateTotalCents() {
+        return amountCents + Tariff.STANDARD.taxOn(amountCents);
+    }
+}
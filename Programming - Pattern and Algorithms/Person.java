@@ -0,0 +1,30 @@
+// Base Class: Person
+// ! This class represents a generic person with basic contact information.
+class Person {
+    protected String name;
+    protected String contactNumber;
+    private String emailUser; // * The part before the @, or the whole address if it has none
+    private String emailDomain; // * Pooled, shared by everyone on the same mail provider
+
+    // ! Constructor to initialize a Person object
+    public Person(String name, String email, String contactNumber) {
+        this.name = name;
+        this.contactNumber = contactNumber;
+        int at = email == null ? -1 : email.lastIndexOf('@');
+        this.emailUser = at < 0 ? email : email.substring(0, at);
+        this.emailDomain = at < 0 ? null : TextPool.intern(email.substring(at + 1));
+    }
+
+    public String getEmail() {
+        return emailDomain == null ? emailUser : emailUser + "@" + emailDomain;
+    }
+
+    // ! This method access the information without exposing the data directly
+    public String getContactInfo() {
+        return DetailCache.CONTACTS.get(this, Person::renderContactInfo);
+    }
+
+    String renderContactInfo() {
+        return "Name: " + name + ", Email: " + getEmail() + ", Contact: " + contactNumber;
+    }
+}
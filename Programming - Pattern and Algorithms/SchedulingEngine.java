@@ -0,0 +1,278 @@
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.TextStyle;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Scheduling Engine
+// ! Keeps one slot calendar per doctor. A day is split into 15 minute slots
+// and the booked slots of the next year are bits in a BitSet, so a conflict
+// check is a single bit test. Working hours come from Doctor.addAvailability().
+// The BitSet is a ring of HORIZON_DAYS days: when the clock passes midnight a
+// calendar drops the days gone by and reuses their bits for the days that came
+// into the horizon, so a long running clinic keeps a full year ahead.
+class SchedulingEngine {
+    static final int SLOT_MINUTES = 15;
+    static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+    static final int HORIZON_DAYS = 366; // * How far ahead bookings are accepted
+
+    private final Clock clock; // * Says what today is, read on every call
+    private final Map<Doctor, Calendar> calendars = new ConcurrentHashMap<>();
+
+    SchedulingEngine() {
+        this(Clock.systemDefaultZone());
+    }
+
+    // * A calendar that stays on one day, for generated scripts
+    SchedulingEngine(LocalDate today) {
+        this(Clock.fixed(today.atStartOfDay(Clock.systemDefaultZone().getZone()).toInstant(),
+                Clock.systemDefaultZone().getZone()));
+    }
+
+    SchedulingEngine(Clock clock) {
+        this.clock = clock;
+    }
+
+    // Slot Class
+    // ! A free slot found by the engine.
+    static final class Slot {
+        private final Doctor doctor;
+        private final LocalDate date;
+        private final LocalTime time;
+
+        Slot(Doctor doctor, LocalDate date, LocalTime time) {
+            this.doctor = doctor;
+            this.date = date;
+            this.time = time;
+        }
+
+        public Doctor getDoctor() {
+            return doctor;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public LocalTime getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return date.getDayOfWeek().getDisplayName(TextStyle.FULL, Locale.ENGLISH) + " " + date + " "
+                    + AppointmentDates.formatTime(time) + " with " + doctor.name;
+        }
+    }
+
+    // Calendar Class
+    // ! Working slots per weekday and the booked slots of one doctor.
+    private static final class Calendar {
+        private final int[] firstSlot = new int[7]; // * Indexed by DayOfWeek ordinal
+        private final int[] endSlot = new int[7]; // * Exclusive, equal to firstSlot on a day off
+        private final BitSet booked = new BitSet(); // * Day d uses the bits of ring day d mod HORIZON_DAYS
+        private long firstDay; // * Epoch day the ring starts at, only ever moves forward
+
+        Calendar(Doctor doctor, long today) {
+            firstDay = today;
+            for (DayOfWeek day : DayOfWeek.values()) {
+                LocalTime[] hours = doctor.getWorkingHours(day);
+                if (hours != null) {
+                    firstSlot[day.ordinal()] = slotOf(hours[0]);
+                    endSlot[day.ordinal()] = slotOf(hours[1]);
+                }
+            }
+        }
+
+        boolean isWorking(DayOfWeek day, int slot) {
+            return slot >= firstSlot[day.ordinal()] && slot < endSlot[day.ordinal()];
+        }
+
+        // ! Clears the days before today so their bits serve the days that came
+        // into the horizon. The caller holds the calendar's lock.
+        void rollTo(long today) {
+            if (today <= firstDay) {
+                return; // * Same day, or the clock went back, the ring stays as it is
+            }
+            for (long day = firstDay; day < Math.min(today, firstDay + HORIZON_DAYS); day++) {
+                int base = ringDay(day) * SLOTS_PER_DAY;
+                booked.clear(base, base + SLOTS_PER_DAY);
+            }
+            firstDay = today;
+        }
+
+        // * True if the ring holds the day and it is not in the past
+        boolean holds(long day, long today) {
+            return day >= today && day >= firstDay && day < firstDay + HORIZON_DAYS;
+        }
+    }
+
+    private Calendar calendar(Doctor doctor) {
+        return calendars.computeIfAbsent(doctor, d -> new Calendar(d, today()));
+    }
+
+    private long today() {
+        return LocalDate.now(clock).toEpochDay();
+    }
+
+    private static int ringDay(long day) {
+        return (int) Math.floorMod(day, (long) HORIZON_DAYS);
+    }
+
+    private static int slotOf(LocalTime time) {
+        return (time.getHour() * 60 + time.getMinute()) / SLOT_MINUTES;
+    }
+
+    private static LocalTime timeOf(int slot) {
+        return LocalTime.of(slot * SLOT_MINUTES / 60, slot * SLOT_MINUTES % 60);
+    }
+
+    // ! Bit of a slot, or -1 if the day is in the past or beyond the horizon.
+    // Rolls the calendar to today first, the caller holds its lock.
+    private int indexOf(Calendar calendar, LocalDate date, LocalTime time) {
+        long today = today();
+        calendar.rollTo(today);
+        long day = date.toEpochDay();
+        if (!calendar.holds(day, today)) {
+            return -1;
+        }
+        return ringDay(day) * SLOTS_PER_DAY + slotOf(time);
+    }
+
+    // * True if the day is inside the calendars, from today to the horizon
+    public boolean covers(LocalDate date) {
+        long day = date.toEpochDay() - today();
+        return day >= 0 && day < HORIZON_DAYS;
+    }
+
+    // ! True if the doctor works at that time and the slot is not taken
+    public boolean isFree(Doctor doctor, LocalDate date, LocalTime time) {
+        Calendar calendar = calendar(doctor);
+        synchronized (calendar) {
+            int index = indexOf(calendar, date, time);
+            return index >= 0 && calendar.isWorking(date.getDayOfWeek(), slotOf(time))
+                    && !calendar.booked.get(index);
+        }
+    }
+
+    // ! Books the slot if it is free, false if it is taken or outside the hours
+    public boolean book(Doctor doctor, LocalDate date, LocalTime time) {
+        Calendar calendar = calendar(doctor);
+        synchronized (calendar) {
+            int index = indexOf(calendar, date, time);
+            if (index < 0 || !calendar.isWorking(date.getDayOfWeek(), slotOf(time)) || calendar.booked.get(index)) {
+                return false;
+            }
+            calendar.booked.set(index);
+            return true;
+        }
+    }
+
+    // ! Marks a slot of a saved appointment as taken without any checks
+    public void restore(Doctor doctor, LocalDate date, LocalTime time) {
+        Calendar calendar = calendar(doctor);
+        synchronized (calendar) {
+            int index = indexOf(calendar, date, time);
+            if (index >= 0) {
+                calendar.booked.set(index);
+            }
+        }
+    }
+
+    // ! Moves a booking in one step, the old slot is kept if the new one is taken
+    public boolean move(Doctor doctor, LocalDate fromDate, LocalTime fromTime, LocalDate toDate, LocalTime toTime) {
+        Calendar calendar = calendar(doctor);
+        synchronized (calendar) {
+            int from = indexOf(calendar, fromDate, fromTime);
+            int to = indexOf(calendar, toDate, toTime);
+            if (to == from && to >= 0) {
+                return true;
+            }
+            if (to < 0 || !calendar.isWorking(toDate.getDayOfWeek(), slotOf(toTime)) || calendar.booked.get(to)) {
+                return false;
+            }
+            if (from >= 0) {
+                calendar.booked.clear(from);
+            }
+            calendar.booked.set(to);
+            return true;
+        }
+    }
+
+    // ! Frees the slot of a canceled appointment
+    public void release(Doctor doctor, LocalDate date, LocalTime time) {
+        Calendar calendar = calendar(doctor);
+        synchronized (calendar) {
+            int index = indexOf(calendar, date, time);
+            if (index >= 0) {
+                calendar.booked.clear(index);
+            }
+        }
+    }
+
+    // ! First free slot of the doctor at or after the given time, null if the
+    // doctor is fully booked until the horizon
+    public Slot nextFreeSlot(Doctor doctor, LocalDate fromDate, LocalTime fromTime) {
+        Calendar calendar = calendar(doctor);
+        long today = today();
+        synchronized (calendar) {
+            calendar.rollTo(today);
+            for (long day = Math.max(today, fromDate.toEpochDay()); day < today + HORIZON_DAYS; day++) {
+                int slot = freeSlotOn(calendar, day, today, fromDate, fromTime);
+                if (slot >= 0) {
+                    return new Slot(doctor, LocalDate.ofEpochDay(day), timeOf(slot));
+                }
+            }
+        }
+        return null;
+    }
+
+    // ! Earliest free slot of any of the doctors, days are searched in order so
+    // the search stops on the first day that has room
+    public Slot nextFreeSlot(Collection<Doctor> doctors, LocalDate fromDate, LocalTime fromTime) {
+        long today = today();
+        for (long day = Math.max(today, fromDate.toEpochDay()); day < today + HORIZON_DAYS; day++) {
+            Slot best = null;
+            for (Doctor doctor : doctors) {
+                Calendar calendar = calendar(doctor);
+                int slot;
+                synchronized (calendar) {
+                    calendar.rollTo(today);
+                    slot = freeSlotOn(calendar, day, today, fromDate, fromTime);
+                }
+                if (slot >= 0 && (best == null || timeOf(slot).isBefore(best.getTime()))) {
+                    best = new Slot(doctor, LocalDate.ofEpochDay(day), timeOf(slot));
+                }
+            }
+            if (best != null) {
+                return best;
+            }
+        }
+        return null;
+    }
+
+    // * First free working slot of one day, -1 if there is none or the ring does not hold the day
+    private int freeSlotOn(Calendar calendar, long day, long today, LocalDate fromDate, LocalTime fromTime) {
+        if (!calendar.holds(day, today)) {
+            return -1;
+        }
+        LocalDate date = LocalDate.ofEpochDay(day);
+        DayOfWeek weekday = date.getDayOfWeek();
+        int start = calendar.firstSlot[weekday.ordinal()];
+        int end = calendar.endSlot[weekday.ordinal()];
+        if (date.equals(fromDate)) {
+            start = Math.max(start, slotOf(fromTime));
+        }
+        if (start >= end) {
+            return -1;
+        }
+        int base = ringDay(day) * SLOTS_PER_DAY;
+        int free = calendar.booked.nextClearBit(base + start) - base;
+        return free < end ? free : -1;
+    }
+}
@@ -0,0 +1,64 @@
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+
+// Scheduling Engine Benchmark
+// ! The calendar mode of ClinicBenchmark: the slot calendars follow the clock.
+final class SchedulingEngineBenchmark {
+    private SchedulingEngineBenchmark() {
+    }
+
+    static boolean runCalendar() {
+        List<String> problems = new ArrayList<>();
+        checkRollingCalendar(problems);
+        return BenchmarkFixture.report(problems);
+    }
+
+    // ! The calendars follow the clock past midnight: the day gone by is no
+    // longer bookable and the day that came into the horizon is, without the
+    // bookings of the day whose bits it reuses
+    private static void checkRollingCalendar(List<String> problems) {
+        LocalDate monday = LocalDate.now().with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+        long[] today = { monday.toEpochDay() };
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneId.systemDefault();
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return LocalDate.ofEpochDay(today[0]).atTime(LocalTime.NOON).atZone(getZone()).toInstant();
+            }
+        };
+        SchedulingEngine calendar = new SchedulingEngine(clock);
+        Doctor doctor = new Doctor("Dr. Calendar", "calendar@aurora.lk", "0770000000", "D001");
+        for (int slot = 0; slot < SchedulingEngine.SLOTS_PER_DAY; slot++) { // * Every bit of the day, worked or not
+            calendar.restore(doctor, monday, LocalTime.MIN.plusMinutes((long) slot * SchedulingEngine.SLOT_MINUTES));
+        }
+        LocalDate wednesday = monday.plusDays(SchedulingEngine.HORIZON_DAYS); // * Reuses Monday's bits
+        if (calendar.covers(wednesday)) {
+            problems.add("The calendar covers " + wednesday + " a full horizon ahead");
+        }
+
+        today[0]++; // * Midnight passes
+        if (calendar.covers(monday) || calendar.book(doctor, monday, LocalTime.of(10, 0))) {
+            problems.add("Yesterday, " + monday + ", can still be booked");
+        }
+        SchedulingEngine.Slot slot = calendar.nextFreeSlot(doctor, wednesday, LocalTime.MIN);
+        if (slot == null || !slot.getDate().equals(wednesday)) {
+            problems.add("The day that came into the horizon, " + wednesday + ", offers " + slot);
+        }
+    }
+}
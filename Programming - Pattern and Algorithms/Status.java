@@ -0,0 +1,33 @@
+// Appointment Status Enum
+// ! Represents the possible statuses of an appointment. A booking starts as
+// BOOKED and may be moved (RESCHEDULED) any number of times, then ends as
+// COMPLETED, CANCELED or NO_SHOW, which are final.
+enum Status {
+    BOOKED("Booked"), CANCELED("Canceled"), COMPLETED("Completed"), RESCHEDULED("Rescheduled"),
+    NO_SHOW("No-show"); // ! Saved by ordinal, new states go last
+
+    private final String label;
+
+    Status(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    // * The visit can still take place
+    public boolean isActive() {
+        return this == BOOKED || this == RESCHEDULED;
+    }
+
+    // * Every state but CANCELED keeps its slot in the doctor's calendar and the day index
+    public boolean holdsSlot() {
+        return this != CANCELED;
+    }
+
+    // ! Only an active appointment changes state, and nothing goes back to BOOKED
+    public boolean canBecome(Status next) {
+        return isActive() && next != BOOKED;
+    }
+}
@@ -0,0 +1,63 @@
+// Tariff Class
+// ! Prices a visit once: the treatment, the registration fee, the tax on the
+// treatment and the total that is actually charged. All amounts are in cents.
+final class Tariff {
+    static final Tariff STANDARD = new Tariff(250); // * 2.5% tax on treatments
+
+    private final int taxBasisPoints;
+
+    Tariff(int taxBasisPoints) {
+        if (taxBasisPoints < 0) {
+            throw new IllegalArgumentException("Tax rate must not be negative: " + taxBasisPoints);
+        }
+        this.taxBasisPoints = taxBasisPoints;
+    }
+
+    public int getTaxBasisPoints() {
+        return taxBasisPoints;
+    }
+
+    // * Tax on an amount, rounded HALF_UP to the cent
+    public long taxOn(long cents) {
+        return Money.percentOf(cents, taxBasisPoints);
+    }
+
+    // ! Line items and total of one visit
+    public Bill bill(long treatmentCents, long registrationFeeCents) {
+        long taxCents = taxOn(treatmentCents);
+        return new Bill(treatmentCents, registrationFeeCents, taxCents,
+                Math.addExact(Math.addExact(treatmentCents, registrationFeeCents), taxCents));
+    }
+
+    // Bill Class
+    // ! The priced line items of a visit, computed once by the tariff.
+    static final class Bill {
+        private final long treatmentCents;
+        private final long registrationFeeCents;
+        private final long taxCents;
+        private final long totalCents;
+
+        private Bill(long treatmentCents, long registrationFeeCents, long taxCents, long totalCents) {
+            this.treatmentCents = treatmentCents;
+            this.registrationFeeCents = registrationFeeCents;
+            this.taxCents = taxCents;
+            this.totalCents = totalCents;
+        }
+
+        public long getTreatmentCents() {
+            return treatmentCents;
+        }
+
+        public long getRegistrationFeeCents() {
+            return registrationFeeCents;
+        }
+
+        public long getTaxCents() {
+            return taxCents;
+        }
+
+        public long getTotalCents() {
+            return totalCents;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+// Text Pool
+// ! Dictionary of short texts that repeat across millions of records, such
+// as the typed weekday ("Mon"), the typed time ("10:00am"), ISO dates and
+// e-mail domains. Every record that holds one of them points at the same
+// String. The pool is bounded: once it is full, new texts are kept as they
+// are, so unique values cannot make it grow without limit.
+final class TextPool {
+    private static final int MAX_ENTRIES = 1 << 16;
+    private static final ConcurrentHashMap<String, String> POOL = new ConcurrentHashMap<>();
+
+    private TextPool() {
+    }
+
+    // ! The shared copy of the text, or the text itself when it is new and the pool is full
+    static String intern(String text) {
+        if (text == null) {
+            return null;
+        }
+        String shared = POOL.get(text);
+        if (shared != null) {
+            return shared;
+        }
+        if (POOL.size() >= MAX_ENTRIES) {
+            return text;
+        }
+        shared = POOL.putIfAbsent(text, text);
+        return shared != null ? shared : text;
+    }
+
+    static int size() {
+        return POOL.size();
+    }
+}
@@ -0,0 +1,75 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Treatment Class
+// ! This class represents a treatment that can be provided to a patient. A
+// treatment is immutable and may carry several price versions, each in effect
+// from its date until the next one (see TreatmentCatalog).
+class Treatment {
+    private final int treatmentID;
+    private final String name;
+    private final LocalDate[] effectiveFrom; // * First day of each price, ascending
+    private final long[] priceCents; // * The prices in cents, used for billing
+
+    public Treatment(int treatmentID, String name, double price) {
+        this(treatmentID, name, new LocalDate[] { LocalDate.MIN }, new long[] { Money.ofMajor(price) });
+    }
+
+    Treatment(int treatmentID, String name, LocalDate[] effectiveFrom, long[] priceCents) {
+        this.treatmentID = treatmentID;
+        this.name = name;
+        this.effectiveFrom = effectiveFrom;
+        this.priceCents = priceCents;
+    }
+
+    public int getTreatmentID() {
+        return treatmentID;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // * Method to get a formatted string of treatment details
+    public String getDetails() {
+        return DetailCache.TREATMENTS.get(this, Treatment::renderDetails);
+    }
+
+    String renderDetails() {
+        return "Name: " + name + ", Price: LKR " + calculateFinalPrice();
+    }
+
+    // * Method to calculate the final price of the treatment
+    public double calculateFinalPrice() {
+        return Money.toMajor(getPriceCents());
+    }
+
+    // * Price in effect today
+    public long getPriceCents() {
+        return getPriceCents(null);
+    }
+
+    // ! Price in effect on a day, null is today. Before the first version the
+    // first price applies.
+    public long getPriceCents(LocalDate date) {
+        if (priceCents.length == 1) {
+            return priceCents[0];
+        }
+        int found = Arrays.binarySearch(effectiveFrom, date == null ? LocalDate.now() : date);
+        int version = found >= 0 ? found : -found - 2; // * The last version starting on or before the day
+        return priceCents[Math.max(version, 0)];
+    }
+
+    public int getVersionCount() {
+        return priceCents.length;
+    }
+
+    // * Start of a price version, LocalDate.MIN for the opening price
+    public LocalDate getEffectiveFrom(int version) {
+        return effectiveFrom[version];
+    }
+
+    public long getVersionPriceCents(int version) {
+        return priceCents[version];
+    }
+}
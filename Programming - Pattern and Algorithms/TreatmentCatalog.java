@@ -0,0 +1,290 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Treatment Catalog
+// ! The treatments the clinic offers and their prices, defined once in
+// treatments.csv in the data directory (treatmentID, name, price,
+// effectiveFrom). Each row is one price version; a blank effectiveFrom is the
+// opening price. The parsed file is an immutable snapshot behind a volatile
+// reference: readers take the reference and never lock, a reload parses the
+// file into a new snapshot and swaps it in. A file with an error is refused as
+// a whole and the current snapshot stays.
+class TreatmentCatalog implements AutoCloseable {
+    static final String FILE = "treatments.csv";
+    static final String[] COLUMNS = { "treatmentID", "name", "price", "effectiveFrom" };
+
+    private final Path file; // * null for a fixed catalog
+    private volatile Snapshot snapshot;
+    private FileTime loadedModified; // * Guarded by this, the file the snapshot was read from
+    private long loadedSize;
+    private Thread watcher;
+    private final AtomicLong watchedReloads = new AtomicLong(); // * Edits the watcher picked up
+    private final AtomicLong refusedReloads = new AtomicLong(); // * Edits the watcher refused
+    private volatile String lastReloadFailure; // * Why the last refused edit was refused, for the reports
+
+    // Snapshot Class
+    // ! One version of the catalog. Never changes once published, so it can be
+    // read from any thread, and a caller that needs several treatments from the
+    // same version (a menu and the lookup of the choice) keeps the snapshot.
+    static final class Snapshot {
+        private final long version;
+        private final List<Treatment> treatments; // * By ID
+        private final Map<Integer, Treatment> byID;
+
+        private Snapshot(long version, List<Treatment> treatments) {
+            Map<Integer, Treatment> byID = new HashMap<>();
+            for (Treatment treatment : treatments) {
+                byID.put(treatment.getTreatmentID(), treatment);
+            }
+            this.version = version;
+            this.treatments = Collections.unmodifiableList(new ArrayList<>(treatments));
+            this.byID = byID;
+        }
+
+        // * 1 for the first load, one more on every reload
+        public long getVersion() {
+            return version;
+        }
+
+        public List<Treatment> list() {
+            return treatments;
+        }
+
+        // * Treatment by its ID, or null
+        public Treatment find(int treatmentID) {
+            return byID.get(treatmentID);
+        }
+    }
+
+    private TreatmentCatalog(Path file, List<Treatment> treatments) {
+        this.file = file;
+        this.snapshot = new Snapshot(1, treatments);
+    }
+
+    // ! A catalog that is never reloaded, for tools and benchmarks
+    static TreatmentCatalog of(List<Treatment> treatments) {
+        return new TreatmentCatalog(null, sorted(treatments));
+    }
+
+    // ! Loads the catalog file of the data directory. A missing file is
+    // written first with the given treatments, so it can be edited later.
+    static TreatmentCatalog open(Path directory, List<Treatment> defaults) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(FILE);
+        if (!Files.exists(file)) {
+            write(file, defaults);
+        }
+        TreatmentCatalog catalog = new TreatmentCatalog(file, Collections.emptyList());
+        catalog.reload();
+        return catalog;
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    // * The treatments of the current version, by ID
+    public List<Treatment> list() {
+        return snapshot.list();
+    }
+
+    // * Treatment by its ID in the current version, or null
+    public Treatment find(int treatmentID) {
+        return snapshot.find(treatmentID);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    // ! Reads the file again and publishes it as the next version. Treatments
+    // cannot be removed, since saved appointments refer to them by ID.
+    public synchronized Snapshot reload() throws IOException {
+        if (file == null) {
+            return snapshot;
+        }
+        FileTime modified = Files.getLastModifiedTime(file);
+        long size = Files.size(file);
+        List<Treatment> treatments = read(file);
+        Snapshot current = snapshot;
+        for (Treatment treatment : current.list()) {
+            if (findIn(treatments, treatment.getTreatmentID()) == null) {
+                throw new IOException(file + " no longer has treatment " + treatment.getTreatmentID()
+                        + ", treatments cannot be removed");
+            }
+        }
+        Snapshot next = new Snapshot(current.getVersion() + (loadedModified == null ? 0 : 1), treatments);
+        snapshot = next; // ! Volatile write, readers switch to the complete new version
+        loadedModified = modified;
+        loadedSize = size;
+        return next;
+    }
+
+    // * Reloads only when the file was written since the last load, true if it did
+    public synchronized boolean reloadIfChanged() throws IOException {
+        if (file == null || (Files.getLastModifiedTime(file).equals(loadedModified)
+                && Files.size(file) == loadedSize)) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
+    // ! Checks the file every period on a daemon thread and reloads it when it
+    // changed, so prices can be edited while the clinic runs
+    public synchronized void watch(long period, TimeUnit unit) {
+        if (file == null || watcher != null) {
+            return;
+        }
+        watcher = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    unit.sleep(period);
+                    if (reloadIfChanged()) {
+                        watchedReloads.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException | RuntimeException e) {
+                    // ! A bad edit keeps the current prices, the next change is tried again. It is
+                    // counted for the reports, a line printed here would cut into the menu.
+                    lastReloadFailure = e.getMessage();
+                    refusedReloads.incrementAndGet();
+                    markLoaded();
+                }
+            }
+        }, "treatment-catalog");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    public long getWatchedReloads() {
+        return watchedReloads.get();
+    }
+
+    public long getRefusedReloads() {
+        return refusedReloads.get();
+    }
+
+    // * Null while the watcher has not refused an edit
+    public String getLastReloadFailure() {
+        return lastReloadFailure;
+    }
+
+    // * Remembers the refused file so it is not reported again until it changes
+    private synchronized void markLoaded() {
+        try {
+            loadedModified = Files.getLastModifiedTime(file);
+            loadedSize = Files.size(file);
+        } catch (IOException ignored) {
+            // * Tried again on the next check
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+    // ! Parses the whole file, rows of one treatment are collected into its price versions
+    private static List<Treatment> read(Path file) throws IOException {
+        Map<Integer, String> names = new TreeMap<>();
+        Map<Integer, TreeMap<LocalDate, Long>> prices = new HashMap<>();
+        try (CsvReader csv = new CsvReader(file)) {
+            int[] column = ClinicCsv.header(csv, COLUMNS);
+            while (csv.next()) {
+                String where = file.getFileName() + " line " + csv.getLine() + ": ";
+                int id;
+                long cents;
+                LocalDate from;
+                try {
+                    id = csv.getInt(column[0]);
+                    cents = parsePrice(csv.get(column[2]).trim());
+                    from = csv.isBlank(column[3]) ? LocalDate.MIN : LocalDate.parse(csv.get(column[3]).trim());
+                } catch (NumberFormatException | ArithmeticException | DateTimeParseException e) {
+                    throw new IOException(where + e.getMessage());
+                }
+                String name = csv.get(column[1]).trim();
+                if (id <= 0 || name.isEmpty() || cents < 0) {
+                    throw new IOException(where + "a positive ID, a name and a price are required");
+                }
+                String known = names.putIfAbsent(id, name);
+                if (known != null && !known.equals(name)) {
+                    throw new IOException(where + "treatment " + id + " is already named " + known);
+                }
+                if (prices.computeIfAbsent(id, k -> new TreeMap<>()).put(from, cents) != null) {
+                    throw new IOException(where + "treatment " + id + " has two prices from the same day");
+                }
+            }
+        }
+        if (names.isEmpty()) {
+            throw new IOException(file + " has no treatments");
+        }
+        List<Treatment> treatments = new ArrayList<>(names.size());
+        for (Map.Entry<Integer, String> entry : names.entrySet()) {
+            TreeMap<LocalDate, Long> versions = prices.get(entry.getKey());
+            LocalDate[] from = versions.keySet().toArray(new LocalDate[0]);
+            long[] cents = versions.values().stream().mapToLong(Long::longValue).toArray();
+            treatments.add(new Treatment(entry.getKey(), entry.getValue(), from, cents));
+        }
+        return treatments;
+    }
+
+    // * Rupees with at most two decimals, exactly
+    private static long parsePrice(String text) {
+        try {
+            return Money.parseCents(text);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Not a price: " + text);
+        }
+    }
+
+    private static void write(Path file, List<Treatment> treatments) throws IOException {
+        try (CsvWriter csv = new CsvWriter(file)) {
+            for (String column : COLUMNS) {
+                csv.field(column);
+            }
+            csv.endRow();
+            for (Treatment treatment : sorted(treatments)) {
+                for (int v = 0; v < treatment.getVersionCount(); v++) {
+                    LocalDate from = treatment.getEffectiveFrom(v);
+                    csv.field(treatment.getTreatmentID()).field(treatment.getName())
+                            .field(Money.format(treatment.getVersionPriceCents(v)))
+                            .field(from.equals(LocalDate.MIN) ? "" : from.toString());
+                    csv.endRow();
+                }
+            }
+        }
+    }
+
+    private static List<Treatment> sorted(List<Treatment> treatments) {
+        Treatment[] copy = treatments.toArray(new Treatment[0]);
+        Arrays.sort(copy, (a, b) -> Integer.compare(a.getTreatmentID(), b.getTreatmentID()));
+        return Arrays.asList(copy);
+    }
+
+    private static Treatment findIn(List<Treatment> treatments, int treatmentID) {
+        for (Treatment treatment : treatments) {
+            if (treatment.getTreatmentID() == treatmentID) {
+                return treatment;
+            }
+        }
+        return null;
+    }
+}
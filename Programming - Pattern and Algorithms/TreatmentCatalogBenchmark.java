@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Treatment Catalog Benchmark
+// ! The catalog mode of ClinicBenchmark: price versions and hot reload of TreatmentCatalog.
+final class TreatmentCatalogBenchmark {
+    private TreatmentCatalogBenchmark() {
+    }
+
+    // ! Checks the price versions of the treatment catalog, then reloads it
+    // while readers look treatments up: every snapshot a reader sees must be
+    // whole (all its prices from one file) and versions never go back
+    static boolean runCatalog(int reloads, int readers) throws IOException {
+        Path directory = Files.createTempDirectory("aurora-catalog");
+        Path file = directory.resolve(TreatmentCatalog.FILE);
+        List<String> problems = new ArrayList<>();
+        List<Treatment> opening = new ArrayList<>();
+        opening.add(new Treatment(1, "Acne Treatment", 2750.00));
+        opening.add(new Treatment(2, "Skin Whitening", 7650.00));
+        TreatmentCatalog catalog = TreatmentCatalog.open(directory, opening);
+        if (!Files.exists(file) || catalog.list().size() != 2 || catalog.find(2).getPriceCents() != 765_000) {
+            problems.add("the opening catalog was not written and read back");
+        }
+
+        // * Price versions: the opening price, a rise and a later discount
+        Files.writeString(file, "treatmentID,name,price,effectiveFrom\n1,Acne Treatment,2750.00,\n"
+                + "1,Acne Treatment,3000.00,2026-01-01\n1,Acne Treatment,2900.50,2026-07-01\n"
+                + "2,Skin Whitening,7650,\n");
+        catalog.reload();
+        Treatment acne = catalog.find(1);
+        long[][] expected = { { 2025, 12, 31, 275_000 }, { 2026, 1, 1, 300_000 }, { 2026, 6, 30, 300_000 },
+                { 2026, 7, 1, 290_050 }, { 2030, 1, 1, 290_050 } };
+        for (long[] day : expected) {
+            LocalDate date = LocalDate.of((int) day[0], (int) day[1], (int) day[2]);
+            if (acne.getPriceCents(date) != day[3]) {
+                problems.add("price on " + date + " is " + acne.getPriceCents(date) + ", expected " + day[3]);
+            }
+        }
+        Patient patient = new Patient("Nimal Perera", "nimal@mail.com", "0771234567", "900000001V");
+        Doctor doctor = new Doctor("Dr. Catalog", "catalog@aurora.lk", "0770000000", "D900");
+        Invoice invoice = new Invoice(1, new Appointment("2026-06-30", "10:00am", patient, doctor, acne), acne);
+        if (invoice.getBill().getTreatmentCents() != 300_000) {
+            problems.add("a visit on 2026-06-30 was billed " + invoice.getBill().getTreatmentCents());
+        }
+
+        // * Refused files keep the current version
+        long version = catalog.snapshot().getVersion();
+        String[] refused = { "treatmentID,name,price,effectiveFrom\n1,Acne Treatment,27.505,\n2,Skin Whitening,1,\n",
+                "treatmentID,name,price,effectiveFrom\n1,Acne Treatment,2750.00,\n",
+                "treatmentID,name,price,effectiveFrom\n1,Acne,1,\n1,Acne Treatment,2,2026-01-01\n"
+                        + "2,Skin Whitening,1,\n" };
+        for (String text : refused) {
+            Files.writeString(file, text);
+            try {
+                catalog.reload();
+                problems.add("a bad catalog was accepted: " + text.replace('\n', '|'));
+            } catch (IOException e) {
+                // * Expected
+            }
+        }
+        if (catalog.snapshot().getVersion() != version || catalog.find(1) != acne) {
+            problems.add("a refused reload changed the catalog");
+        }
+
+        // * Hot reload: every file has one price for all treatments, the reload number
+        AtomicInteger torn = new AtomicInteger();
+        AtomicInteger backwards = new AtomicInteger();
+        AtomicLong lookups = new AtomicLong();
+        AtomicBoolean done = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            Thread reader = new Thread(() -> {
+                long seen = 0;
+                long count = 0;
+                while (!done.get()) {
+                    TreatmentCatalog.Snapshot snapshot = catalog.snapshot();
+                    if (snapshot.getVersion() < seen) {
+                        backwards.incrementAndGet();
+                    }
+                    seen = snapshot.getVersion();
+                    long price = snapshot.find(1).getPriceCents();
+                    for (int id = 2; id <= 4; id++) {
+                        if (snapshot.find(id).getPriceCents() != price) {
+                            torn.incrementAndGet();
+                        }
+                    }
+                    count++;
+                }
+                lookups.addAndGet(count * 4);
+            });
+            threads.add(reader);
+        }
+        writeUniformCatalog(file, 0);
+        catalog.reload();
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (int i = 1; i <= reloads; i++) {
+            writeUniformCatalog(file, i);
+            catalog.reload();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        done.set(true);
+        for (Thread reader : threads) {
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        if (torn.get() > 0 || backwards.get() > 0) {
+            problems.add(torn.get() + " torn snapshots and " + backwards.get() + " versions going back");
+        }
+        if (catalog.find(4).getPriceCents() != reloads * 100L) {
+            problems.add("the last reload is not visible");
+        }
+        System.out.printf("%,d reloads in %.2f s (%.0f/s), %,d lookups by %d readers meanwhile%n", reloads,
+                seconds, reloads / seconds, lookups.get(), readers);
+        checkWatcher(catalog, file, reloads + 1, problems);
+
+        BenchmarkFixture.report(problems);
+        catalog.close();
+        BenchmarkFixture.deleteTree(directory);
+        return problems.isEmpty();
+    }
+
+    // ! The watcher thread picks up a good edit and counts a refused one for
+    // the reports, without printing into the menu
+    private static void checkWatcher(TreatmentCatalog catalog, Path file, int rupees, List<String> problems)
+            throws IOException {
+        catalog.watch(10, TimeUnit.MILLISECONDS);
+        Files.writeString(file, "treatmentID,name,price,effectiveFrom\n1,Treatment 1,1,\n");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (catalog.getRefusedReloads() == 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        writeUniformCatalog(file, rupees);
+        while (catalog.getWatchedReloads() == 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        if (catalog.getRefusedReloads() != 1 || catalog.getLastReloadFailure() == null
+                || !catalog.getLastReloadFailure().contains("no longer has treatment")) {
+            problems.add("The watcher counted " + catalog.getRefusedReloads() + " refused edits, last "
+                    + catalog.getLastReloadFailure());
+        }
+        if (catalog.getWatchedReloads() != 1 || catalog.find(4).getPriceCents() != rupees * 100L) {
+            problems.add("The watcher counted " + catalog.getWatchedReloads() + " reloads, price "
+                    + catalog.find(4).getPriceCents());
+        }
+    }
+
+    // * Four treatments priced at the same number of rupees
+    private static void writeUniformCatalog(Path file, int rupees) throws IOException {
+        StringBuilder text = new StringBuilder("treatmentID,name,price,effectiveFrom\n");
+        for (int id = 1; id <= 4; id++) {
+            text.append(id).append(",Treatment ").append(id).append(',').append(rupees).append(",\n");
+        }
+        Files.writeString(file, text);
+    }
+}